@@ -0,0 +1,29 @@
+package performanceTests.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached so every result also reports
+ * allocation rate per operation ({@code gc.alloc.rate.norm}).  Any regular JMH
+ * command line options may be passed, e.g. {@code DeleteBenchmark -p tree=AVLTreeMap}.
+ * 
+ * <pre>
+ * java -cp target/benchmarks.jar performanceTests.jmh.BenchmarkRunner
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+	Options options = new OptionsBuilder()
+		.parent(new CommandLineOptions(args))
+		.addProfiler(GCProfiler.class)
+		.build();
+	new Runner(options).run();
+    }
+}
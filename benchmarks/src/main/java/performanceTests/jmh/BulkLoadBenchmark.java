@@ -0,0 +1,62 @@
+package performanceTests.jmh;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Copying a sorted map into an empty tree.  putAll() takes the linear time
+ * buildFromSorted path when the source is a SortedMap with the same ordering,
+ * putEach() inserts the same entries one put() at a time.  Scores are per entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@OperationsPerInvocation(BulkLoadBenchmark.N)
+public class BulkLoadBenchmark {
+    static final int N = 100000;
+
+    @Param({ "AVLTreeMap", "WAVLTreeMap", "TreeMapRedBlack", "JavaTreeMap" })
+    Trees tree;
+
+    SortedMap<Integer, Integer> source;
+
+    @Setup
+    public void setup() {
+	source = new TreeMap<>();
+	for (Integer key : Keys.random(N))
+	    source.put(key, key);
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> putAll() {
+	Map<Integer, Integer> map = tree.create();
+	map.putAll(source);
+	return map;
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> putEach() {
+	Map<Integer, Integer> map = tree.create();
+	for (Map.Entry<Integer, Integer> e : source.entrySet())
+	    map.put(e.getKey(), e.getValue());
+	return map;
+    }
+}
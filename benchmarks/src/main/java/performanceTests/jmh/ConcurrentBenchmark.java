@@ -0,0 +1,135 @@
+package performanceTests.jmh;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import bbst_showdown.AVLTreeMap;
+import bbst_showdown.ConcurrentAVLTreeMap;
+import performanceTests.Workload;
+
+/**
+ * Shared-map throughput under get/put/remove traffic from many threads.  Keys are
+ * drawn uniformly from a range twice the initial size, so puts and removes keep
+ * the map at about half full.  The operations come from {@link Workload#mixed(int,
+ * int, int, int)}, one precomputed sequence per thread index.  Scores are total
+ * operations across all threads.
+ * 
+ * <p>
+ * Run with {@code -t} for one thread count, or through {@link #main} to sweep
+ * 1 to 64 threads:
+ * 
+ * <pre>
+ * java -cp target/benchmarks.jar performanceTests.jmh.ConcurrentBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ConcurrentBenchmark {
+    static final int N = 1 << 20;
+    static final int[] THREADS = { 1, 2, 4, 8, 16, 32, 64 };
+
+    public enum Maps {
+	ConcurrentAVLTreeMap {
+	    Map<Integer, Integer> create() {
+		return new ConcurrentAVLTreeMap<>();
+	    }
+	},
+	ConcurrentSkipListMap {
+	    Map<Integer, Integer> create() {
+		return new ConcurrentSkipListMap<>();
+	    }
+	},
+	SynchronizedAVLTreeMap {
+	    Map<Integer, Integer> create() {
+		return Collections.synchronizedMap(new AVLTreeMap<>());
+	    }
+	};
+
+	abstract Map<Integer, Integer> create();
+    }
+
+    @Param
+    Maps impl;
+
+    /** Percentage of operations that are lookups, the rest are split evenly between put and remove. */
+    @Param({ "90", "50" })
+    int getPercent;
+
+    Integer[] keys;
+    Map<Integer, Integer> map;
+
+    @Setup
+    public void setup() {
+	keys = Keys.sequential(2 * N);
+	map = impl.create();
+	for (int k : new Workload().uniform(N, keys.length))
+	    map.put(keys[k], keys[k]);
+    }
+
+    /**
+     * Each thread cycles through its own operations, generated before the
+     * measurement from a seed that depends only on the thread's index.
+     */
+    @State(Scope.Thread)
+    public static class ThreadOps {
+	byte[] ops;
+	int[] keys;
+	int next;
+
+	@Setup
+	public void setup(ThreadParams params, ConcurrentBenchmark b) {
+	    Workload.Operations operations = new Workload(Keys.SEED + params.getThreadIndex()).mixed(Keys.PROBES,
+		    b.keys.length, b.getPercent, (100 - b.getPercent) / 2);
+	    ops = operations.ops();
+	    keys = operations.keys();
+	}
+    }
+
+    @Benchmark
+    public Integer mixed(ThreadOps t) {
+	int i = t.next++ & (Keys.PROBES - 1);
+	Integer k = keys[t.keys[i]];
+	switch (t.ops[i]) {
+	case Workload.GET:
+	    return map.get(k);
+	case Workload.PUT:
+	    return map.put(k, k);
+	default:
+	    return map.remove(k);
+	}
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+	for (int threads : THREADS) {
+	    new Runner(new OptionsBuilder()
+		    .parent(new CommandLineOptions(args))
+		    .include(ConcurrentBenchmark.class.getSimpleName())
+		    .threads(threads)
+		    .build()).run();
+	}
+    }
+}
@@ -0,0 +1,60 @@
+package performanceTests.jmh;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Removes every key of a randomly built tree in reverse insertion order, the JMH
+ * version of Standoff.delete.  The tree is rebuilt outside the measurement before
+ * each invocation, scores are per remove().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@OperationsPerInvocation(DeleteBenchmark.N)
+public class DeleteBenchmark {
+    static final int N = 100000;
+
+    @Param
+    Trees.Deletable tree;
+
+    Integer[] keys;
+    Map<Integer, Integer> map;
+
+    @Setup(Level.Trial)
+    public void keys() {
+	keys = Keys.random(N);
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() {
+	map = tree.create();
+	for (int i = 0; i < keys.length; i++)
+	    map.put(keys[i], keys[i]);
+    }
+
+    @Benchmark
+    public int delete() {
+	Map<Integer, Integer> m = map;
+	for (int i = keys.length; i > 0; i--)
+	    m.remove(keys[i - 1]);
+	return m.size();
+    }
+}
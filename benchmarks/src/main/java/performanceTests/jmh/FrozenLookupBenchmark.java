@@ -0,0 +1,110 @@
+package performanceTests.jmh;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bbst_showdown.AVLTreeMap;
+import bbst_showdown.TreeMapRedBlack;
+import bbst_showdown.WAVLTreeMap;
+import performanceTests.Workload;
+
+/**
+ * Lookup latency of the pointer based trees against their frozen breadth first
+ * copy (EytzingerTreeMap), for maps of 1K, 1M and 50M random keys, the pointer
+ * trees built by random or by sorted insertion.  Half the probes are in the map.
+ * The 50M maps need a heap of several gigabytes, hence -Xmx.  Scores are per
+ * get().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx12g")
+@OperationsPerInvocation(FrozenLookupBenchmark.PROBES)
+public class FrozenLookupBenchmark {
+    static final int PROBES = 1024;
+
+    @Param({ "1000", "1000000", "50000000" })
+    int size;
+
+    @Param({ "AVLTreeMap", "WAVLTreeMap", "TreeMapRedBlack" })
+    String tree;
+
+    @Param({ "false", "true" })
+    boolean frozen;
+
+    /**
+     * Order the pointer trees are built in.  Built from sorted keys, their nodes
+     * are allocated in key order, so searches get a locality a long lived map
+     * does not have; random insertion is the realistic baseline.  The frozen
+     * copies are the same either way.
+     */
+    @Param({ "random", "sorted" })
+    String insertion;
+
+    Map<Integer, Integer> map;
+    Integer[] probes;
+
+    @Setup
+    public void fill() {
+	int[] random = Keys.randomInts(size);
+	int[] distinct = random.clone();
+	Arrays.sort(distinct);
+	int n = 0;
+	for (int i = 0; i < size; i++)
+	    if (n == 0 || distinct[i] != distinct[n - 1])
+		distinct[n++] = distinct[i];
+	distinct = Arrays.copyOf(distinct, n);
+	Integer[] keys = Workload.boxed(distinct);
+
+	boolean sorted = insertion.equals("sorted");
+	AVLTreeMap<Integer, Integer> avl = new AVLTreeMap<>();
+	if (sorted)
+	    avl.putAllSorted(keys, keys);
+	if (tree.equals("AVLTreeMap")) {
+	    if (!sorted)
+		insert(avl, random);
+	    map = frozen ? avl.freeze() : avl;
+	} else if (tree.equals("WAVLTreeMap")) {
+	    WAVLTreeMap<Integer, Integer> wavl = sorted ? new WAVLTreeMap<>(avl) : insert(new WAVLTreeMap<>(), random);
+	    map = frozen ? wavl.freeze() : wavl;
+	} else {
+	    TreeMapRedBlack<Integer, Integer> redBlack = sorted ? new TreeMapRedBlack<>(avl)
+		    : insert(new TreeMapRedBlack<>(), random);
+	    map = frozen ? redBlack.freeze() : redBlack;
+	}
+
+	probes = Workload.boxed(new Workload(Keys.SEED + 1).lookups(PROBES, distinct, 50));
+    }
+
+    private static <M extends Map<Integer, Integer>> M insert(M map, int[] keys) {
+	for (int key : keys)
+	    map.put(key, key);
+	return map;
+    }
+
+    @Benchmark
+    public int get() {
+	Map<Integer, Integer> m = map;
+	int found = 0;
+	for (Integer key : probes)
+	    if (m.get(key) != null)
+		found++;
+	return found;
+    }
+}
@@ -0,0 +1,61 @@
+package performanceTests.jmh;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Random and sequential insertion into an empty tree, the JMH version of
+ * Standoff.insert and Standoff.insertInOrder.  Scores are per put().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@OperationsPerInvocation(InsertBenchmark.N)
+public class InsertBenchmark {
+    static final int N = 100000;
+
+    @Param
+    Trees tree;
+
+    Integer[] randomKeys;
+    Integer[] sequentialKeys;
+
+    @Setup
+    public void setup() {
+	randomKeys = Keys.random(N);
+	sequentialKeys = Keys.sequential(N);
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> randomInsert() {
+	return insert(randomKeys);
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> sequentialInsert() {
+	return insert(sequentialKeys);
+    }
+
+    private Map<Integer, Integer> insert(Integer[] keys) {
+	Map<Integer, Integer> map = tree.create();
+	for (int i = 0; i < keys.length; i++)
+	    map.put(keys[i], keys[i]);
+	return map;
+    }
+}
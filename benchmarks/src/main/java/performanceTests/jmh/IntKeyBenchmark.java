@@ -0,0 +1,147 @@
+package performanceTests.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import bbst_showdown.AVLTreeMap;
+import bbst_showdown.IntAVLTreeMap;
+import performanceTests.Workload;
+
+/**
+ * IntAVLTreeMap against AVLTreeMap&lt;Integer, Integer&gt; on the same random or
+ * sequential int keys.  The keys start out as an int[] for both trees, as they would for a
+ * caller holding primitives, so the boxed tree pays Integer.valueOf on every call
+ * as well as compareTo on every comparison.  Both trees map to one shared value
+ * object, scores are per operation.  Inserts start from empty maps, lookups run
+ * on maps filled once and deletes on maps filled again before every call.
+ * <p>
+ * Run with -prof gc to see the allocation difference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@OperationsPerInvocation(IntKeyBenchmark.N)
+public class IntKeyBenchmark {
+    static final int N = 100000;
+
+    static final Integer VALUE = 1;
+
+    /** Random keys, or the keys 0 to N-1 in ascending order. */
+    @Param({ "random", "sequential" })
+    String keyOrder;
+
+    int[] keys;
+
+    @Setup(Level.Trial)
+    public void keys() {
+	keys = keyOrder.equals("sequential") ? Workload.sequential(N) : Keys.randomInts(N);
+    }
+
+    /**
+     * The two maps a benchmark runs on, filled or not by the state that
+     * extends this.
+     */
+    public abstract static class Maps {
+	IntAVLTreeMap<Integer> intMap;
+	AVLTreeMap<Integer, Integer> boxedMap;
+
+	void create(int[] keys) {
+	    intMap = new IntAVLTreeMap<>();
+	    boxedMap = new AVLTreeMap<>();
+	    for (int i = 0; i < keys.length; i++) {
+		intMap.put(keys[i], VALUE);
+		boxedMap.put(keys[i], VALUE);
+	    }
+	}
+    }
+
+    /** New empty maps before every call, for the inserts. */
+    @State(Scope.Thread)
+    public static class Empty extends Maps {
+	@Setup(Level.Invocation)
+	public void setup() {
+	    create(new int[0]);
+	}
+    }
+
+    /** Maps holding the keys, filled once since the lookups do not change them. */
+    @State(Scope.Thread)
+    public static class Filled extends Maps {
+	@Setup(Level.Trial)
+	public void setup(IntKeyBenchmark b) {
+	    create(b.keys);
+	}
+    }
+
+    /** Maps holding the keys, filled again before every call, for the deletes. */
+    @State(Scope.Thread)
+    public static class Refilled extends Maps {
+	@Setup(Level.Invocation)
+	public void setup(IntKeyBenchmark b) {
+	    create(b.keys);
+	}
+    }
+
+    @Benchmark
+    public IntAVLTreeMap<Integer> intInsert(Empty state) {
+	IntAVLTreeMap<Integer> map = state.intMap;
+	for (int i = 0; i < keys.length; i++)
+	    map.put(keys[i], VALUE);
+	return map;
+    }
+
+    @Benchmark
+    public AVLTreeMap<Integer, Integer> boxedInsert(Empty state) {
+	AVLTreeMap<Integer, Integer> map = state.boxedMap;
+	for (int i = 0; i < keys.length; i++)
+	    map.put(keys[i], VALUE);
+	return map;
+    }
+
+    @Benchmark
+    public void intGet(Filled state, Blackhole bh) {
+	IntAVLTreeMap<Integer> map = state.intMap;
+	for (int i = 0; i < keys.length; i++)
+	    bh.consume(map.get(keys[i]));
+    }
+
+    @Benchmark
+    public void boxedGet(Filled state, Blackhole bh) {
+	AVLTreeMap<Integer, Integer> map = state.boxedMap;
+	for (int i = 0; i < keys.length; i++)
+	    bh.consume(map.get(keys[i]));
+    }
+
+    @Benchmark
+    public int intDelete(Refilled state) {
+	IntAVLTreeMap<Integer> map = state.intMap;
+	for (int i = keys.length; i > 0; i--)
+	    map.remove(keys[i - 1]);
+	return map.size();
+    }
+
+    @Benchmark
+    public int boxedDelete(Refilled state) {
+	AVLTreeMap<Integer, Integer> map = state.boxedMap;
+	for (int i = keys.length; i > 0; i--)
+	    map.remove(keys[i - 1]);
+	return map.size();
+    }
+}
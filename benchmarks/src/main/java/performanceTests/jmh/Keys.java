@@ -0,0 +1,34 @@
+package performanceTests.jmh;
+
+import performanceTests.Workload;
+
+/**
+ * Key arrays shared by the benchmarks.  Keys are boxed once during setup so the
+ * measured loops only pay for the tree operations, and a fixed seed keeps every
+ * fork and every tree on identical input.  The keys come from {@link Workload},
+ * which has the other key distributions and the operation mixes.
+ */
+final class Keys {
+    static final long SEED = Workload.SEED;
+
+    /**
+     * Length of the probe arrays the benchmarks cycle through, so that picking
+     * the next key is an array read rather than a call to Random.
+     */
+    static final int PROBES = 1 << 16;
+
+    private Keys() {
+    }
+
+    static Integer[] random(int n) {
+	return Workload.boxed(randomInts(n));
+    }
+
+    static int[] randomInts(int n) {
+	return new Workload(SEED).uniform(n);
+    }
+
+    static Integer[] sequential(int n) {
+	return Workload.boxed(Workload.sequential(n));
+    }
+}
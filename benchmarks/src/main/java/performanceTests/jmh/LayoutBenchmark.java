@@ -0,0 +1,83 @@
+package performanceTests.jmh;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bbst_showdown.AVLTreeMap;
+import bbst_showdown.WAVLTreeMap;
+import performanceTests.Workload;
+
+/**
+ * Lookups in a WAVLTreeMap against its breadth first (EytzingerTreeMap) and van
+ * Emde Boas (VanEmdeBoasTreeMap) copies, on working sets from 1M keys, around
+ * the size of a last level cache, up to 50M.  Half the probes are in the map.
+ * The 50M maps need a heap of several gigabytes, hence -Xmx.  Scores are per
+ * get().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx12g")
+@OperationsPerInvocation(LayoutBenchmark.PROBES)
+public class LayoutBenchmark {
+    static final int PROBES = 1024;
+
+    @Param({ "1000000", "10000000", "50000000" })
+    int size;
+
+    @Param({ "pointer", "eytzinger", "vanEmdeBoas" })
+    String layout;
+
+    Map<Integer, Integer> map;
+    Integer[] probes;
+
+    @Setup
+    public void fill() {
+	int[] random = Keys.randomInts(size);
+	Arrays.sort(random);
+	int n = 0;
+	for (int i = 0; i < size; i++)
+	    if (n == 0 || random[i] != random[n - 1])
+		random[n++] = random[i];
+	int[] distinct = Arrays.copyOf(random, n);
+	Integer[] keys = Workload.boxed(distinct);
+
+	AVLTreeMap<Integer, Integer> sorted = new AVLTreeMap<>();
+	sorted.putAllSorted(keys, keys);
+	WAVLTreeMap<Integer, Integer> wavl = new WAVLTreeMap<>(sorted);
+	if (layout.equals("eytzinger"))
+	    map = wavl.freeze();
+	else if (layout.equals("vanEmdeBoas"))
+	    map = wavl.freezeVanEmdeBoas();
+	else
+	    map = wavl;
+
+	probes = Workload.boxed(new Workload(Keys.SEED + 1).lookups(PROBES, distinct, 50));
+    }
+
+    @Benchmark
+    public int get() {
+	Map<Integer, Integer> m = map;
+	int found = 0;
+	for (Integer key : probes)
+	    if (m.get(key) != null)
+		found++;
+	return found;
+    }
+}
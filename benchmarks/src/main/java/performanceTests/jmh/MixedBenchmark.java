@@ -0,0 +1,88 @@
+package performanceTests.jmh;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import performanceTests.Workload;
+
+/**
+ * Mixed get/put/remove traffic modelled on Standoff.insertDeleteLookup: the tree is
+ * seeded with a sequential run followed by random keys, then a fixed operation
+ * sequence of lookups, inserts and removes is replayed against it.  Scores are per
+ * operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@OperationsPerInvocation(MixedBenchmark.OPS)
+public class MixedBenchmark {
+    static final int N = 100000;
+    static final int SEQUENTIAL = 2000;
+    static final int OPS = 50000;
+
+    @Param
+    Trees.Deletable tree;
+
+    /** Percentage of operations that are lookups, the rest are split evenly between put and remove. */
+    @Param({ "50" })
+    int getPercent;
+
+    Integer[] initial;
+    Integer[] opKeys;
+    byte[] ops;
+    Map<Integer, Integer> map;
+
+    @Setup(Level.Trial)
+    public void workload() {
+	int[] keys = Keys.randomInts(N);
+	System.arraycopy(Workload.sequential(SEQUENTIAL), 0, keys, 0, SEQUENTIAL);
+	initial = Workload.boxed(keys);
+
+	Workload.Operations operations = new Workload(Keys.SEED + 1).mixed(OPS, keys, getPercent, (100 - getPercent) / 2);
+	opKeys = Workload.boxed(operations.keys());
+	ops = operations.ops();
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() {
+	map = tree.create();
+	for (int i = 0; i < initial.length; i++)
+	    map.put(initial[i], initial[i]);
+    }
+
+    @Benchmark
+    public void mixed(Blackhole bh) {
+	Map<Integer, Integer> m = map;
+	for (int i = 0; i < OPS; i++) {
+	    Integer k = opKeys[i];
+	    switch (ops[i]) {
+	    case Workload.GET:
+		bh.consume(m.get(k));
+		break;
+	    case Workload.PUT:
+		bh.consume(m.put(k, k));
+		break;
+	    default:
+		bh.consume(m.remove(k));
+	    }
+	}
+    }
+}
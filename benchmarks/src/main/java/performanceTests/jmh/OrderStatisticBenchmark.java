@@ -0,0 +1,86 @@
+package performanceTests.jmh;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bbst_showdown.AVLTreeMap;
+import bbst_showdown.OrderStatisticAVLTreeMap;
+import performanceTests.Workload;
+
+/**
+ * Percentile style queries: the k-th smallest key and the number of keys below a
+ * bound.  OrderStatisticAVLTreeMap answers from its subtree counts, AVLTreeMap
+ * has to walk the keys, which is what callers do today.  The cost of keeping the
+ * counts on the write path shows up in InsertBenchmark, DeleteBenchmark and
+ * MixedBenchmark with {@code -p tree=AVLTreeMap,OrderStatisticAVLTreeMap}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class OrderStatisticBenchmark {
+
+    @Param({ "1000", "100000" })
+    int n;
+
+    AVLTreeMap<Integer, Integer> avl;
+    OrderStatisticAVLTreeMap<Integer, Integer> orderStatistic;
+    int[] ranks;
+    int[] bounds;
+    int next;
+
+    @Setup
+    public void setup() {
+	avl = new AVLTreeMap<>();
+	orderStatistic = new OrderStatisticAVLTreeMap<>();
+	Integer[] keys = Keys.random(n);
+	for (int i = 0; i < keys.length; i++) {
+	    avl.put(keys[i], keys[i]);
+	    orderStatistic.put(keys[i], keys[i]);
+	}
+	ranks = new Workload(Keys.SEED).uniform(Keys.PROBES, orderStatistic.size());
+	bounds = new Workload(Keys.SEED).uniform(Keys.PROBES);
+    }
+
+    private int probe(int[] probes) {
+	return probes[next++ & (Keys.PROBES - 1)];
+    }
+
+    @Benchmark
+    public Integer select() {
+	return orderStatistic.select(probe(ranks));
+    }
+
+    @Benchmark
+    public Integer selectByIteration() {
+	int k = probe(ranks);
+	Iterator<Integer> it = avl.keySet().iterator();
+	while (k-- > 0)
+	    it.next();
+	return it.next();
+    }
+
+    @Benchmark
+    public int rank() {
+	return orderStatistic.rank(probe(bounds));
+    }
+
+    @Benchmark
+    public int rankByHeadMap() {
+	return avl.headMap(probe(bounds)).size();
+    }
+}
@@ -0,0 +1,67 @@
+package performanceTests.jmh;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parallel streams over the entry set, run inside a pool of {@code parallelism}
+ * workers so the scaling of the tree spliterators can be compared across pool
+ * sizes.  A parallelism of 1 is the sequential baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ParallelStreamBenchmark {
+    static final int N = 2000000;
+
+    @Param({ "AVLTreeMap", "WAVLTreeMap", "JavaTreeMap" })
+    Trees tree;
+
+    @Param({ "1", "2", "4", "8" })
+    int parallelism;
+
+    Map<Integer, Integer> map;
+    ForkJoinPool pool;
+
+    @Setup
+    public void setup() {
+	map = tree.create();
+	Integer[] keys = Keys.random(N);
+	for (int i = 0; i < keys.length; i++)
+	    map.put(keys[i], keys[i]);
+	pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+	pool.shutdown();
+    }
+
+    @Benchmark
+    public long parallelSum() throws InterruptedException, ExecutionException {
+	return pool.submit(() -> map.entrySet().parallelStream().mapToLong(e -> e.getValue()).sum()).get();
+    }
+
+    @Benchmark
+    public long parallelFilterCount() throws InterruptedException, ExecutionException {
+	return pool.submit(() -> map.entrySet().parallelStream().filter(e -> (e.getKey() & 7) == 0).count()).get();
+    }
+}
@@ -0,0 +1,96 @@
+package performanceTests.jmh;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bbst_showdown.PersistentWAVLTreeMap;
+import bbst_showdown.WAVLTreeMap;
+
+/**
+ * Taking a snapshot and then updating, for a map of the given size.  The
+ * persistent map's snapshot is the current version and each update copies the
+ * search path, while WAVLTreeMap has to be copied whole before it can change
+ * without disturbing readers of the snapshot.  The copy is clone(), which
+ * copies the tree node for node in linear time, the cheapest a full copy gets.  Each update removes one key and
+ * inserts another so the size stays fixed.  Run through BenchmarkRunner so
+ * {@code gc.alloc.rate.norm} reports the bytes allocated per update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class PersistentBenchmark {
+
+    @Param({ "1000", "100000" })
+    int size;
+
+    Integer[] keys;
+    int next;
+
+    PersistentWAVLTreeMap<Integer, Integer> persistent;
+    WAVLTreeMap<Integer, Integer> wavl;
+
+    volatile Map<Integer, Integer> snapshot;
+
+    @Setup
+    public void fill() {
+	keys = Keys.random(2 * size);
+	persistent = new PersistentWAVLTreeMap<>();
+	wavl = new WAVLTreeMap<>(false);
+	for (int i = 0; i < size; i++) {
+	    persistent = persistent.plus(keys[i], keys[i]);
+	    wavl.put(keys[i], keys[i]);
+	}
+	next = 0;
+    }
+
+    /**
+     * The key that has been in the map longest and the key that replaces it,
+     * cycling through the key array.
+     */
+    private int step() {
+	int i = next;
+	next = (i + 1 == keys.length) ? 0 : i + 1;
+	return i;
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> persistentSnapshotAndUpdate() {
+	int i = step();
+	snapshot = persistent;
+	persistent = persistent.minus(keys[i]).plus(keys[(i + size) % keys.length], keys[i]);
+	return persistent;
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> copySnapshotAndUpdate() {
+	int i = step();
+	snapshot = wavl;
+	wavl = wavl.clone();
+	wavl.remove(keys[i]);
+	wavl.put(keys[(i + size) % keys.length], keys[i]);
+	return wavl;
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> mutableUpdate() {
+	int i = step();
+	wavl.remove(keys[i]);
+	wavl.put(keys[(i + size) % keys.length], keys[i]);
+	return wavl;
+    }
+}
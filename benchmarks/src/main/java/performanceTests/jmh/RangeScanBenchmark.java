@@ -0,0 +1,71 @@
+package performanceTests.jmh;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import performanceTests.Workload;
+
+/**
+ * Range queries through subMap() views on the trees that implement
+ * NavigableMap.  Each invocation sums the values of about {@code width} entries
+ * starting at a random key, scores are per range.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class RangeScanBenchmark {
+    static final int N = 1000000;
+
+    @Param({ "AVLTreeMap", "TreeMapRedBlack", "JavaTreeMap" })
+    Trees tree;
+
+    @Param({ "10", "1000" })
+    int width;
+
+    NavigableMap<Integer, Integer> map;
+    int[] starts;
+    int next;
+
+    @Setup
+    public void setup() {
+	map = (NavigableMap<Integer, Integer>) tree.create();
+	Integer[] keys = Keys.sequential(N);
+	for (int i = 0; i < keys.length; i++)
+	    map.put(keys[i], keys[i]);
+	starts = new Workload(Keys.SEED).uniform(Keys.PROBES, N - width);
+    }
+
+    @Benchmark
+    public long subMapScan() {
+	int from = starts[next++ & (Keys.PROBES - 1)];
+	long sum = 0;
+	for (Map.Entry<Integer, Integer> e : map.subMap(from, true, from + width, false).entrySet())
+	    sum += e.getValue();
+	return sum;
+    }
+
+    @Benchmark
+    public long descendingScan() {
+	int from = starts[next++ & (Keys.PROBES - 1)];
+	long sum = 0;
+	for (Integer key : map.subMap(from, true, from + width, false).descendingKeySet())
+	    sum += key;
+	return sum;
+    }
+}
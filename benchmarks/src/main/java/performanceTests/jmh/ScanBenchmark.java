@@ -0,0 +1,64 @@
+package performanceTests.jmh;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full in-order scans of a map of random keys.  AVLTreeMap steps to the
+ * successor through parent links, as does AVLTreeMapRB with its one bit of
+ * balance per node; TreeMapAVLStack has no parent links and keeps the way
+ * back up on a stack owned by the iterator.  Each scan sums the
+ * values, once through the entry set iterator and once through the values
+ * spliterator's forEachRemaining.  Scores are per scan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ScanBenchmark {
+
+    @Param({ "AVLTreeMap", "AVLTreeMapRB", "TreeMapAVLStack" })
+    Trees tree;
+
+    @Param({ "1000", "1000000" })
+    int size;
+
+    Map<Integer, Integer> map;
+
+    @Setup
+    public void fill() {
+	map = tree.create();
+	Integer[] keys = Keys.random(size);
+	for (int i = 0; i < keys.length; i++)
+	    map.put(keys[i], keys[i]);
+    }
+
+    @Benchmark
+    public long iterator() {
+	long sum = 0;
+	for (Map.Entry<Integer, Integer> e : map.entrySet())
+	    sum += e.getValue();
+	return sum;
+    }
+
+    @Benchmark
+    public long spliterator() {
+	long[] sum = new long[1];
+	map.values().spliterator().forEachRemaining(v -> sum[0] += v);
+	return sum[0];
+    }
+}
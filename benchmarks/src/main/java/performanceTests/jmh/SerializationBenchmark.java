@@ -0,0 +1,121 @@
+package performanceTests.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bbst_showdown.AVLTreeMap;
+import bbst_showdown.Codec;
+import bbst_showdown.TreeMapRedBlack;
+import bbst_showdown.WAVLTreeMap;
+
+/**
+ * Saving and loading a map of 10M random Integer keys and values.  AVLTreeMap
+ * and WAVLTreeMap write through Codec.INT and load with readFrom(), which
+ * builds the tree without comparing keys.  TreeMapRedBlack and the JDK
+ * TreeMap use Java serialization, which writes every Integer as an object
+ * and loads through buildFromSorted.  Both sides write to and read from a
+ * byte array, so no disk is involved.  The serialized size of each map is
+ * printed at the end of each trial.  Scores are per map; -Xmx covers the
+ * map, its serialized bytes and the map being loaded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 2, jvmArgsAppend = "-Xmx8g")
+public class SerializationBenchmark {
+
+    @Param({ "AVLTreeMap", "WAVLTreeMap", "TreeMapRedBlack", "JavaTreeMap" })
+    String tree;
+
+    @Param({ "10000000" })
+    int size;
+
+    Map<Integer, Integer> map;
+    byte[] serialized;
+    ByteArrayOutputStream buffer;
+
+    @Setup
+    public void setup() throws IOException {
+	TreeMap<Integer, Integer> source = new TreeMap<>();
+	for (Integer key : Keys.random(size))
+	    source.put(key, key);
+	if (tree.equals("AVLTreeMap"))
+	    map = new AVLTreeMap<>(source);
+	else if (tree.equals("WAVLTreeMap"))
+	    map = new WAVLTreeMap<>(source);
+	else if (tree.equals("TreeMapRedBlack"))
+	    map = new TreeMapRedBlack<>(source);
+	else
+	    map = source;
+	buffer = new ByteArrayOutputStream(size * 16);
+	write();
+	serialized = buffer.toByteArray();
+    }
+
+    @TearDown
+    public void report() {
+	System.out.println();
+	System.out.println(tree + ": " + serialized.length + " bytes for " + map.size() + " entries, "
+		+ String.format("%.2f", (double) serialized.length / map.size()) + " per entry");
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+	buffer.reset();
+	if (map instanceof AVLTreeMap) {
+	    DataOutputStream out = new DataOutputStream(buffer);
+	    ((AVLTreeMap<Integer, Integer>) map).writeTo(out, Codec.INT, Codec.INT);
+	    out.flush();
+	} else if (map instanceof WAVLTreeMap) {
+	    DataOutputStream out = new DataOutputStream(buffer);
+	    ((WAVLTreeMap<Integer, Integer>) map).writeTo(out, Codec.INT, Codec.INT);
+	    out.flush();
+	} else {
+	    ObjectOutputStream out = new ObjectOutputStream(buffer);
+	    out.writeObject(map);
+	    out.flush();
+	}
+	return buffer.size();
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> read() throws IOException, ClassNotFoundException {
+	ByteArrayInputStream in = new ByteArrayInputStream(serialized);
+	if (tree.equals("AVLTreeMap")) {
+	    AVLTreeMap<Integer, Integer> loaded = new AVLTreeMap<>();
+	    loaded.readFrom(new DataInputStream(in), Codec.INT, Codec.INT);
+	    return loaded;
+	} else if (tree.equals("WAVLTreeMap")) {
+	    WAVLTreeMap<Integer, Integer> loaded = new WAVLTreeMap<>();
+	    loaded.readFrom(new DataInputStream(in), Codec.INT, Codec.INT);
+	    return loaded;
+	} else {
+	    @SuppressWarnings("unchecked")
+	    Map<Integer, Integer> loaded = (Map<Integer, Integer>) new ObjectInputStream(in).readObject();
+	    return loaded;
+	}
+    }
+}
@@ -0,0 +1,122 @@
+package performanceTests.jmh;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bbst_showdown.AVLTreeMap;
+import bbst_showdown.WAVLTreeMap;
+
+/**
+ * Merging two maps of random keys with the join based union, intersection and
+ * difference against the baseline of one put() or remove() per key of the
+ * second map.  Half the keys of the second map are in the first.  Shapes are
+ * "equal" (two maps of 500k) and "skewed" (1k keys into 1M).  The set
+ * operations consume their argument, so both maps are rebuilt outside the
+ * measurement before each invocation.  Scores are per merge.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class SetOperationBenchmark {
+
+    @Param({ "AVLTreeMap", "WAVLTreeMap" })
+    String tree;
+
+    @Param({ "equal", "skewed" })
+    String shape;
+
+    TreeMap<Integer, Integer> first, second;
+
+    AVLTreeMap<Integer, Integer> avl, avlOther;
+    WAVLTreeMap<Integer, Integer> wavl, wavlOther;
+
+    @Setup(Level.Trial)
+    public void keys() {
+	int n = shape.equals("equal") ? 500000 : 1000000;
+	int m = shape.equals("equal") ? 500000 : 1000;
+	Integer[] keys = Keys.random(n + m);
+	first = new TreeMap<>();
+	second = new TreeMap<>();
+	for (int i = 0; i < n; i++)
+	    first.put(keys[i], keys[i]);
+	for (int j = 0; j < m; j++) {
+	    Integer key = (j % 2 == 0) ? keys[j] : keys[n + j]; // half the keys are in both maps
+	    second.put(key, key);
+	}
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() {
+	if (tree.equals("AVLTreeMap")) {
+	    avl = new AVLTreeMap<>(first);
+	    avlOther = new AVLTreeMap<>(second);
+	} else {
+	    wavl = new WAVLTreeMap<>(first);
+	    wavlOther = new WAVLTreeMap<>(second);
+	}
+    }
+
+    private Map<Integer, Integer> target() {
+	return tree.equals("AVLTreeMap") ? avl : wavl;
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> union() {
+	if (tree.equals("AVLTreeMap"))
+	    avl.union(avlOther);
+	else
+	    wavl.union(wavlOther);
+	return target();
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> putLoop() {
+	Map<Integer, Integer> map = target();
+	for (Map.Entry<Integer, Integer> e : second.entrySet())
+	    map.put(e.getKey(), e.getValue());
+	return map;
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> difference() {
+	if (tree.equals("AVLTreeMap"))
+	    avl.difference(avlOther);
+	else
+	    wavl.difference(wavlOther);
+	return target();
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> removeLoop() {
+	Map<Integer, Integer> map = target();
+	for (Integer key : second.keySet())
+	    map.remove(key);
+	return map;
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> intersection() {
+	if (tree.equals("AVLTreeMap"))
+	    avl.intersection(avlOther);
+	else
+	    wavl.intersection(wavlOther);
+	return target();
+    }
+}
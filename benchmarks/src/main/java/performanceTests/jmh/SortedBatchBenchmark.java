@@ -0,0 +1,78 @@
+package performanceTests.jmh;
+
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bbst_showdown.AVLTreeMap;
+
+/**
+ * Inserting a sorted batch into an AVLTreeMap of 100k keys, with putAllSorted()
+ * searching up from the previous key against one put() per key, the loop of
+ * Standoff.insertInOrder.  "sequential" batches continue the keys 0..100k-1 of
+ * the tree like Standoff.insertInOrder, "random" batches are sorted random keys
+ * spread over a tree of random keys.  The tree is rebuilt outside the
+ * measurement before each invocation, scores are per batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class SortedBatchBenchmark {
+    static final int N = 100000;
+
+    @Param({ "1000", "100000" })
+    int batch;
+
+    @Param({ "random", "sequential" })
+    String keys;
+
+    TreeMap<Integer, Integer> base;
+    Integer[] batchKeys;
+    AVLTreeMap<Integer, Integer> map;
+
+    @Setup(Level.Trial)
+    public void keys() {
+	Integer[] all = keys.equals("random") ? Keys.random(N + batch) : Keys.sequential(N + batch);
+	base = new TreeMap<>();
+	for (int i = 0; i < N; i++)
+	    base.put(all[i], all[i]);
+	batchKeys = Arrays.copyOfRange(all, N, N + batch);
+	Arrays.sort(batchKeys);
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() {
+	map = new AVLTreeMap<>(base);
+    }
+
+    @Benchmark
+    public int putAllSorted() {
+	map.putAllSorted(batchKeys, batchKeys);
+	return map.size();
+    }
+
+    @Benchmark
+    public int putLoop() {
+	AVLTreeMap<Integer, Integer> m = map;
+	Integer[] k = batchKeys;
+	for (int i = 0; i < k.length; i++)
+	    m.put(k[i], k[i]);
+	return m.size();
+    }
+}
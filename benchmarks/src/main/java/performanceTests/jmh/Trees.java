@@ -0,0 +1,104 @@
+package performanceTests.jmh;
+
+import java.util.Map;
+
+import bbst_showdown.AVLTreeMap;
+import bbst_showdown.AVLTreeMapRB;
+import bbst_showdown.OrderStatisticAVLTreeMap;
+import bbst_showdown.TreeMapAVLRec;
+import bbst_showdown.TreeMapAVLStack;
+import bbst_showdown.TreeMapBST;
+import bbst_showdown.TreeMapRedBlack;
+import bbst_showdown.WAVLArrayTreeMap;
+import bbst_showdown.WAVLTreeMap;
+
+/**
+ * The map implementations under test, named after their classes so JMH results read
+ * the same as the source tree.  Not every tree supports removal yet, see
+ * {@link Deletable} for the subset used by the delete and mixed workloads.
+ */
+public enum Trees {
+    AVLTreeMap {
+	Map<Integer, Integer> create() {
+	    return new AVLTreeMap<>();
+	}
+    },
+    OrderStatisticAVLTreeMap {
+	Map<Integer, Integer> create() {
+	    return new OrderStatisticAVLTreeMap<>();
+	}
+    },
+    AVLTreeMapRB {
+	Map<Integer, Integer> create() {
+	    return new AVLTreeMapRB<>();
+	}
+    },
+    TreeMapAVLRec {
+	Map<Integer, Integer> create() {
+	    return new TreeMapAVLRec<>();
+	}
+    },
+    TreeMapAVLStack {
+	Map<Integer, Integer> create() {
+	    return new TreeMapAVLStack<>();
+	}
+    },
+    WAVLTreeMap {
+	Map<Integer, Integer> create() {
+	    return new WAVLTreeMap<>(false);
+	}
+    },
+    WAVLTreeMapWAVLDeletes {
+	Map<Integer, Integer> create() {
+	    return new WAVLTreeMap<>(true);
+	}
+    },
+    WAVLArrayTreeMap {
+	Map<Integer, Integer> create() {
+	    return new WAVLArrayTreeMap<>(false);
+	}
+    },
+    TreeMapRedBlack {
+	Map<Integer, Integer> create() {
+	    return new TreeMapRedBlack<>();
+	}
+    },
+    TreeMapBST {
+	Map<Integer, Integer> create() {
+	    return new TreeMapBST<>();
+	}
+    },
+    JavaTreeMap {
+	Map<Integer, Integer> create() {
+	    return new java.util.TreeMap<>();
+	}
+    };
+
+    abstract Map<Integer, Integer> create();
+
+    /**
+     * Trees with a working remove(), used by workloads that delete.
+     */
+    public enum Deletable {
+	AVLTreeMap(Trees.AVLTreeMap),
+	OrderStatisticAVLTreeMap(Trees.OrderStatisticAVLTreeMap),
+	AVLTreeMapRB(Trees.AVLTreeMapRB),
+	TreeMapAVLStack(Trees.TreeMapAVLStack),
+	WAVLTreeMap(Trees.WAVLTreeMap),
+	WAVLTreeMapWAVLDeletes(Trees.WAVLTreeMapWAVLDeletes),
+	WAVLArrayTreeMap(Trees.WAVLArrayTreeMap),
+	TreeMapRedBlack(Trees.TreeMapRedBlack),
+	TreeMapBST(Trees.TreeMapBST),
+	JavaTreeMap(Trees.JavaTreeMap);
+
+	private final Trees tree;
+
+	Deletable(Trees tree) {
+	    this.tree = tree;
+	}
+
+	Map<Integer, Integer> create() {
+	    return tree.create();
+	}
+    }
+}
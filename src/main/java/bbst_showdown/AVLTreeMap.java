@@ -1,14 +1,26 @@
 package bbst_showdown;
 
+import java.util.AbstractCollection;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
 import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 
 /**
@@ -32,7 +44,7 @@ import java.util.Spliterator;
  * @param <K> the type of keys maintained by this map
  * @param <V> the type of mapped values
  */
-public class AVLTreeMap<K, V> extends AbstractMap<K, V> {
+public class AVLTreeMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V>, Cloneable {
 
     protected transient Entry<K, V> root = null;
 
@@ -56,6 +68,11 @@ public class AVLTreeMap<K, V> extends AbstractMap<K, V> {
 
     protected transient int rotations = 0;
 
+    /**
+     * Counts searches, re-tracing steps and rotations when not null.
+     */
+    protected transient TreeCounters counters;
+
     /**
      * Constructs a new, empty tree map, using the natural ordering of its keys. All
      * keys inserted into the map must implement the {@link Comparable} interface.
@@ -71,6 +88,22 @@ public class AVLTreeMap<K, V> extends AbstractMap<K, V> {
 	comparator = null;
     }
 
+    /**
+     * Constructs a new, empty tree map, ordered according to the given
+     * comparator. All keys inserted into the map must be <em>mutually
+     * comparable</em> by the given comparator: {@code comparator.compare(k1, k2)}
+     * must not throw a {@code ClassCastException} for any keys {@code k1} and
+     * {@code k2} in the map.
+     *
+     * @param comparator
+     *            the comparator that will be used to order this map. If
+     *            {@code null}, the {@linkplain Comparable natural ordering} of the
+     *            keys will be used.
+     */
+    public AVLTreeMap(Comparator<? super K> comparator) {
+	this.comparator = comparator;
+    }
+
     /**
      * Constructs a new tree map containing the same mappings as the given map,
      * ordered according to the <em>natural ordering</em> of its keys. All keys
@@ -92,8 +125,30 @@ public class AVLTreeMap<K, V> extends AbstractMap<K, V> {
 	putAll(m);
     }
 
+    /**
+     * Constructs a new tree map containing the same mappings and using the same
+     * ordering as the specified sorted map. This method runs in linear time.
+     *
+     * @param m
+     *            the sorted map whose mappings are to be placed in this map, and
+     *            whose comparator is to be used to sort this map
+     * @throws NullPointerException
+     *             if the specified map is null
+     */
+    public AVLTreeMap(SortedMap<K, ? extends V> m) {
+	comparator = m.comparator();
+	buildFromSorted(m.size(), m.entrySet().iterator());
+    }
+
+    /**
+     * Returns the height of the tree, or -1 if it is empty, by following the
+     * taller subtree of every entry down from the root.
+     */
     public int treeHeight() {
-	return treeHeight(root) - 1;
+	int height = -1;
+	for (Entry<K, V> p = root; p != null; p = p.balance > 0 ? p.right : p.left)
+	    height++;
+	return height;
     }
 
     protected int treeHeight(Entry<K, V> node) {
@@ -102,10 +157,41 @@ public class AVLTreeMap<K, V> extends AbstractMap<K, V> {
 	return (1 + Math.max(treeHeight(node.left), treeHeight(node.right)));
     }
 
+    /**
+     * Returns the height, average depth and depth histogram of the tree,
+     * walking every entry without recursion.
+     */
+    public TreeStatistics statistics() {
+	return TreeStatistics.of(root, e -> e.left, e -> e.right, e -> e.parent);
+    }
+
     public int rotations() {
 	return rotations;
     }
 
+    /**
+     * Returns the counters this map updates, or null if it is not counting.
+     */
+    public TreeCounters counters() {
+	return counters;
+    }
+
+    /**
+     * Starts counting searches, re-tracing steps and rotations into the given
+     * counters, or stops counting if null.
+     */
+    public void setCounters(TreeCounters counters) {
+	this.counters = counters;
+    }
+
+    /**
+     * Returns an immutable copy of this map laid out in breadth first order for
+     * fast lookups, for maps that are built once and then only read.
+     */
+    public EytzingerTreeMap<K, V> freeze() {
+	return new EytzingerTreeMap<>(size, entrySet().iterator(), comparator);
+    }
+
     public String toString() {
 	return "AVL tree of size: " + size + ", height: " + treeHeight() + ", rotations " + rotations;
     }
@@ -147,6 +233,71 @@ public class AVLTreeMap<K, V> extends AbstractMap<K, V> {
 	return (p == null ? null : p.value);
     }
 
+    /**
+     * Returns {@code true} if this map contains a mapping for the specified key.
+     *
+     * @param key
+     *            key whose presence in this map is to be tested
+     * @return {@code true} if this map contains a mapping for the specified key
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys currently
+     *             in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public boolean containsKey(Object key) {
+	return getEntry(key) != null;
+    }
+
+    public Comparator<? super K> comparator() {
+	return comparator;
+    }
+
+    /**
+     * @throws NoSuchElementException
+     *             {@inheritDoc}
+     */
+    public K firstKey() {
+	return key(getFirstEntry());
+    }
+
+    /**
+     * @throws NoSuchElementException
+     *             {@inheritDoc}
+     */
+    public K lastKey() {
+	return key(getLastEntry());
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map. These
+     * mappings replace any mappings that this map had for any of the keys currently
+     * in the specified map. When this map is empty and the specified map is a
+     * {@link SortedMap} with the same ordering the tree is built in linear time.
+     *
+     * @param map
+     *            mappings to be stored in this map
+     * @throws ClassCastException
+     *             if the class of a key or value in the specified map prevents it
+     *             from being stored in this map
+     * @throws NullPointerException
+     *             if the specified map is null or the specified map contains a null
+     *             key and this map does not permit null keys
+     */
+    public void putAll(Map<? extends K, ? extends V> map) {
+	int mapSize = map.size();
+	if (size == 0 && mapSize != 0 && map instanceof SortedMap) {
+	    Comparator<?> c = ((SortedMap<?, ?>) map).comparator();
+	    if (c == comparator || (c != null && c.equals(comparator))) {
+		++modCount;
+		buildFromSorted(mapSize, map.entrySet().iterator());
+		return;
+	    }
+	}
+	super.putAll(map);
+    }
+
     /**
      * Node in the Tree. Doubles as a means to pass key-value pairs back to user
      * (see Map.Entry).
@@ -232,6 +383,8 @@ public class AVLTreeMap<K, V> extends AbstractMap<K, V> {
      *             or its comparator does not permit null keys
      */
     final Entry<K, V> getEntry(Object key) {
+	if (counters != null)
+	    return getEntryCounting(key);
 	// Offload comparator-based version for sake of performance
 	if (comparator != null)
 	    return getEntryUsingComparator(key);
@@ -276,6 +429,39 @@ public class AVLTreeMap<K, V> extends AbstractMap<K, V> {
 	return null;
     }
 
+    /**
+     * Version of getEntry that counts the entries visited.  Split off from
+     * getEntry so searches only pay for counting when it is switched on.
+     */
+    final Entry<K, V> getEntryCounting(Object key) {
+	if (key == null && comparator == null)
+	    throw new NullPointerException();
+	Entry<K, V> p = root;
+	int visited = 0;
+	while (p != null) {
+	    visited++;
+	    int cmp = compare(key, p.key);
+	    if (cmp < 0)
+		p = p.left;
+	    else if (cmp > 0)
+		p = p.right;
+	    else
+		break;
+	}
+	counters.searched(visited);
+	return p;
+    }
+
+    /**
+     * Counts a search that visited e and all of its ancestors.
+     */
+    private void searched(Entry<K, V> e) {
+	int visited = 0;
+	for (; e != null; e = e.parent)
+	    visited++;
+	counters.searched(visited);
+    }
+
     /**
      * Associates the specified value with the specified key in this map. If the map
      * previously contained a mapping for the key, the old value is replaced.
@@ -318,8 +504,11 @@ public class AVLTreeMap<K, V> extends AbstractMap<K, V> {
 		    t = t.left;
 		else if (cmp > 0)
 		    t = t.right;
-		else
+		else {
+		    if (counters != null)
+			searched(t);
 		    return t.setValue(value);
+		}
 	    } while (t != null);
 	} else {
 	    if (key == null)
@@ -333,12 +522,17 @@ public class AVLTreeMap<K, V> extends AbstractMap<K, V> {
 		    t = t.left;
 		else if (cmp > 0)
 		    t = t.right;
-		else
+		else {
+		    if (counters != null)
+			searched(t);
 		    return t.setValue(value);
+		}
 	    } while (t != null);
 	}
 
 	Entry<K, V> e = new Entry<>(key, value, parent);
+	if (counters != null)
+	    searched(parent);
 	if (cmp < 0) {
 	    parent.left = e;
 	    parent.balance--;
@@ -353,6 +547,137 @@ public class AVLTreeMap<K, V> extends AbstractMap<K, V> {
 	return null;
     }
 
+    /**
+     * Puts a batch of mappings with keys in ascending order, keys[i] mapped to
+     * values[i].  Rather than descending from the root for every key, the search
+     * for each key climbs from the entry of the previous one only as far as the
+     * subtree that holds the new key, so a batch of k keys costs about
+     * O(k log(n/k)) comparisons.  Re-tracing after each insert is amortized
+     * constant for inserts in an AVL tree, so it is not deferred.  A key that is
+     * out of order is searched for from the root.
+     *
+     * @throws IllegalArgumentException
+     *             if the arrays have different lengths
+     * @throws ClassCastException
+     *             if a key cannot be compared with the keys currently in the map
+     * @throws NullPointerException
+     *             if a key is null and this map uses natural ordering, or its
+     *             comparator does not permit null keys
+     */
+    public void putAllSorted(K[] keys, V[] values) {
+	if (keys.length != values.length)
+	    throw new IllegalArgumentException(keys.length + " keys but " + values.length + " values");
+	Entry<K, V> finger = null;
+	for (int i = 0; i < keys.length; i++)
+	    finger = putAfter(finger, keys[i], values[i]);
+    }
+
+    /**
+     * Puts a batch of mappings with keys in ascending order, as
+     * {@link #putAllSorted(Object[], Object[])} does.
+     *
+     * @throws ClassCastException
+     *             if a key cannot be compared with the keys currently in the map
+     * @throws NullPointerException
+     *             if a key is null and this map uses natural ordering, or its
+     *             comparator does not permit null keys
+     */
+    public void putAllSorted(Iterator<? extends Map.Entry<? extends K, ? extends V>> it) {
+	Entry<K, V> finger = null;
+	while (it.hasNext()) {
+	    Map.Entry<? extends K, ? extends V> e = it.next();
+	    finger = putAfter(finger, e.getKey(), e.getValue());
+	}
+    }
+
+    /**
+     * Puts key and value, starting the search at finger, the entry for the
+     * previous key of a sorted batch, or at the root if finger is null.  Returns
+     * the entry for key.  Counts as one search, visiting every entry the key is
+     * compared with on the way up and down.
+     */
+    private Entry<K, V> putAfter(Entry<K, V> finger, K key, V value) {
+	Entry<K, V> t = root;
+	int visited = 0;
+	if (finger != null) {
+	    visited++;
+	    int cmp = compare(key, finger.key);
+	    if (cmp == 0) {
+		if (counters != null)
+		    counters.searched(visited);
+		finger.value = value;
+		return finger;
+	    }
+	    if (cmp > 0) {
+		// climb until key is less than the key bounding t's subtree on the right
+		t = finger;
+		for (Entry<K, V> p = t.parent; p != null; p = t.parent) {
+		    if (p.left == t) {
+			visited++;
+			cmp = compare(key, p.key);
+			if (cmp < 0)
+			    break;
+			if (cmp == 0) {
+			    if (counters != null)
+				counters.searched(visited);
+			    p.value = value;
+			    return p;
+			}
+		    }
+		    t = p;
+		}
+	    }
+	}
+	return insertBelow(t, key, value, visited);
+    }
+
+    /**
+     * Puts key and value in the subtree t, which must be the place for key, or
+     * creates the root if t is null.  Returns the entry for key.  visited is
+     * the number of entries the key was already compared with.
+     */
+    private Entry<K, V> insertBelow(Entry<K, V> t, K key, V value, int visited) {
+	if (t == null) {
+	    compare(key, key); // type (and possibly null) check
+	    root = new Entry<>(key, value, null);
+	    size = 1;
+	    modCount++;
+	    return root;
+	}
+	int cmp;
+	Entry<K, V> parent;
+	do {
+	    parent = t;
+	    visited++;
+	    cmp = compare(key, t.key);
+	    if (cmp < 0)
+		t = t.left;
+	    else if (cmp > 0)
+		t = t.right;
+	    else {
+		if (counters != null)
+		    counters.searched(visited);
+		t.value = value;
+		return t;
+	    }
+	} while (t != null);
+
+	if (counters != null)
+	    counters.searched(visited);
+	Entry<K, V> e = new Entry<>(key, value, parent);
+	if (cmp < 0) {
+	    parent.left = e;
+	    parent.balance--;
+	} else {
+	    parent.right = e;
+	    parent.balance++;
+	}
+	fixAfterInsertion(parent);
+	size++;
+	modCount++;
+	return e;
+    }
+
     public void inOrderTraversal(Entry<K, V> x) {
 	if (x == null)
 	    return;
@@ -363,6 +688,8 @@ public class AVLTreeMap<K, V> extends AbstractMap<K, V> {
 
     private void fixAfterInsertion(Entry<K, V> x) {
 	while (x.balance != 0) {
+	    if (counters != null)
+		counters.retraceSteps++;
 	    if (x.balance == 2) { // right heavy by 2?
 		if (x.right.balance == 1) {
 		    x.balance = 0;
@@ -430,6 +757,8 @@ public class AVLTreeMap<K, V> extends AbstractMap<K, V> {
 	r.left = p;
 	p.parent = r;
 	rotations++;
+	if (counters != null)
+	    counters.rotations++;
     }
 
     /** From CLR */
@@ -448,6 +777,8 @@ public class AVLTreeMap<K, V> extends AbstractMap<K, V> {
 	l.right = p;
 	p.parent = l;
 	rotations++;
+	if (counters != null)
+	    counters.rotations++;
     }
 
 
@@ -574,6 +905,8 @@ public class AVLTreeMap<K, V> extends AbstractMap<K, V> {
 
     private void fixAfterDeletion(Entry<K, V> x) {
 	while (true) {
+	    if (counters != null)
+		counters.retraceSteps++;
 	    if (x.balance == 2) { // right heavy by 2?
 		if (x.right.balance == 1) {
 		    x.balance = 0;
@@ -641,510 +974,2605 @@ public class AVLTreeMap<K, V> extends AbstractMap<K, V> {
     }
 
     /**
-     * Returns a {@link Set} view of the mappings contained in this map.
-     *
-     * <p>
-     * The set's iterator returns the entries in ascending key order. The sets's
-     * spliterator is <em><a href="Spliterator.html#binding">late-binding</a></em>,
-     * <em>fail-fast</em>, and additionally reports {@link Spliterator#SORTED} and
-     * {@link Spliterator#ORDERED} with an encounter order that is ascending key
-     * order.
+     * Linear time tree building algorithm from the entries of a sorted map in
+     * ascending key order, for the SortedMap constructor and for putAll into an
+     * empty map.  The comparator of the map must already be set.
      *
-     * <p>
-     * The set is backed by the map, so changes to the map are reflected in the set,
-     * and vice-versa. If the map is modified while an iteration over the set is in
-     * progress (except through the iterator's own {@code remove} operation, or
-     * through the {@code setValue} operation on a map entry returned by the
-     * iterator) the results of the iteration are undefined. The set supports
-     * element removal, which removes the corresponding mapping from the map, via
-     * the {@code Iterator.remove}, {@code Set.remove}, {@code removeAll},
-     * {@code retainAll} and {@code clear} operations. It does not support the
-     * {@code add} or {@code addAll} operations.
+     * @param size
+     *            the number of entries to be read from the iterator
+     * @param it
+     *            the entries, whose keys and values new entries are created
+     *            from
      */
-    public Set<Map.Entry<K, V>> entrySet() {
-	EntrySet es = entrySet;
-	return (es != null) ? es : (entrySet = new EntrySet());
+    private void buildFromSorted(int size, Iterator<? extends Map.Entry<? extends K, ? extends V>> it) {
+	try {
+	    root = buildFromSorted(0, size - 1, it, null, null, null);
+	} catch (java.io.IOException cannotHappen) {
+	    throw new AssertionError(cannotHappen); // only codecs read from a stream
+	}
+	this.size = size;
     }
 
-    private transient EntrySet entrySet = null;
+    /**
+     * Recursive "helper method" that does the real work of the previous method.
+     * The root of each subtree is the middle element, so the two subtrees of a
+     * node differ in size by at most one and their heights by at most one. The
+     * height of a subtree built this way from n elements is floor(log2(n)), which
+     * gives the balance factor of every node without visiting its children again.
+     *
+     * @param lo
+     *            the first element index of this subtree. Initial should be 0.
+     * @param hi
+     *            the last element index of this subtree. Initial should be size-1.
+     * @param it
+     *            if non-null, new entries are created from the entries it
+     *            returns and str, keys and values should be null.
+     * @param str
+     *            otherwise keys and values are read from str by the codecs keys
+     *            and values.
+     */
+    private final Entry<K, V> buildFromSorted(int lo, int hi,
+	    Iterator<? extends Map.Entry<? extends K, ? extends V>> it, java.io.DataInput str, Codec<? extends K> keys,
+	    Codec<? extends V> values) throws java.io.IOException {
+	if (hi < lo)
+	    return null;
 
-    class EntrySet extends AbstractSet<Map.Entry<K, V>> {
-	public Iterator<Map.Entry<K, V>> iterator() {
-	    return new EntryIterator(getFirstEntry());
-	}
+	int mid = (lo + hi) >>> 1;
 
-	public boolean contains(Object o) {
-	    if (!(o instanceof Map.Entry))
-		return false;
-	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
-	    Object value = entry.getValue();
-	    Entry<K, V> p = getEntry(entry.getKey());
-	    return p != null && valEquals(p.getValue(), value);
-	}
+	Entry<K, V> left = null;
+	if (lo < mid)
+	    left = buildFromSorted(lo, mid - 1, it, str, keys, values);
 
-	public boolean remove(Object o) {
-	    if (!(o instanceof Map.Entry))
-		return false;
-	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
-	    Object value = entry.getValue();
-	    Entry<K, V> p = getEntry(entry.getKey());
-	    if (p != null && valEquals(p.getValue(), value)) {
-		deleteEntry(p);
-		return true;
-	    }
-	    return false;
+	// extract key and value from iterator or stream
+	K key;
+	V value;
+	if (it != null) {
+	    Map.Entry<? extends K, ? extends V> entry = it.next();
+	    key = entry.getKey();
+	    value = entry.getValue();
+	} else {
+	    key = keys.read(str);
+	    value = values.read(str);
 	}
 
-	public int size() {
-	    return AVLTreeMap.this.size();
-	}
+	Entry<K, V> middle = new Entry<>(key, value, null);
+	middle.balance = (byte) (sortedTreeHeight(hi - mid) - sortedTreeHeight(mid - lo));
 
-	public void clear() {
-	    AVLTreeMap.this.clear();
+	if (left != null) {
+	    middle.left = left;
+	    left.parent = middle;
 	}
 
-	public Spliterator<Map.Entry<K, V>> spliterator() {
-	    return null;
+	if (mid < hi) {
+	    Entry<K, V> right = buildFromSorted(mid + 1, hi, it, str, keys, values);
+	    middle.right = right;
+	    right.parent = middle;
 	}
+
+	return middle;
     }
 
     /**
-     * Base class for TreeMap Iterators
+     * Writes the number of mappings in this map followed by each key and value
+     * in ascending key order, each by its codec and with no other framing.
+     * {@link #readFrom} rebuilds a map from them in linear time.
+     *
+     * @param out
+     *            where to write the mappings
+     * @param keys
+     *            the codec for the keys
+     * @param values
+     *            the codec for the values
+     * @throws java.io.IOException
+     *             if out or a codec throws it
      */
-    abstract class PrivateEntryIterator<T> implements Iterator<T> {
-	Entry<K, V> next;
-	Entry<K, V> lastReturned;
-	int expectedModCount;
-
-	PrivateEntryIterator(Entry<K, V> first) {
-	    expectedModCount = modCount;
-	    lastReturned = null;
-	    next = first;
+    public void writeTo(java.io.DataOutput out, Codec<? super K> keys, Codec<? super V> values)
+	    throws java.io.IOException {
+	out.writeInt(size);
+	for (Entry<K, V> e = getFirstEntry(); e != null; e = successor(e)) {
+	    keys.write(out, e.key);
+	    values.write(out, e.value);
 	}
+    }
 
-	public final boolean hasNext() {
-	    return next != null;
-	}
+    /**
+     * Replaces the mappings of this map with mappings written by
+     * {@link #writeTo}.  The keys are not compared: the tree is built in linear
+     * time with the middle key of each range at its root, which fixes every
+     * node's balance factor, so the keys must have been written in the order
+     * of this map's comparator, as they are by a map with the same comparator.
+     * If reading fails this map is left empty.
+     *
+     * @param in
+     *            where to read the mappings
+     * @param keys
+     *            the codec the keys were written with
+     * @param values
+     *            the codec the values were written with
+     * @throws java.io.IOException
+     *             if in or a codec throws it, or the count of mappings is
+     *             negative
+     */
+    public void readFrom(java.io.DataInput in, Codec<? extends K> keys, Codec<? extends V> values)
+	    throws java.io.IOException {
+	clear();
+	int n = in.readInt();
+	if (n < 0)
+	    throw new java.io.StreamCorruptedException("negative size " + n);
+	root = buildFromSorted(0, n - 1, null, in, keys, values);
+	size = n;
+    }
 
-	final Entry<K, V> nextEntry() {
-	    Entry<K, V> e = next;
-	    if (e == null)
-		throw new NoSuchElementException();
-	    if (modCount != expectedModCount)
-		throw new ConcurrentModificationException();
-	    next = successor(e);
-	    lastReturned = e;
-	    return e;
-	}
+    /**
+     * Height of a subtree built by buildFromSorted from n elements, -1 for an
+     * empty subtree.
+     */
+    private static int sortedTreeHeight(int n) {
+	return 31 - Integer.numberOfLeadingZeros(n);
+    }
 
-	final Entry<K, V> prevEntry() {
-	    Entry<K, V> e = next;
-	    if (e == null)
-		throw new NoSuchElementException();
-	    if (modCount != expectedModCount)
-		throw new ConcurrentModificationException();
-	    next = predecessor(e);
-	    lastReturned = e;
-	    return e;
-	}
+    // Join, split and set operations
 
-	public void remove() {
-	    if (lastReturned == null)
-		throw new IllegalStateException();
-	    if (modCount != expectedModCount)
-		throw new ConcurrentModificationException();
-	    // deleted entries are replaced by their successors
-	    if (lastReturned.left != null && lastReturned.right != null)
-		next = lastReturned;
-	    deleteEntry(lastReturned);
-	    expectedModCount = modCount;
-	    lastReturned = null;
-	}
+    /**
+     * Height of a tree below which the set operations stop forking, about four
+     * thousand entries.
+     */
+    private static final int PARALLEL_HEIGHT = 12;
+
+    /**
+     * Moves the mappings of {@code right} into this map and maps key to value,
+     * where every key in this map is less than key and key is less than every key
+     * in {@code right}.  The taller tree's spine is walked down to the height of
+     * the other and key's entry is linked in there, so the cost is proportional
+     * to the difference in heights.  {@code right} is left empty.
+     *
+     * @throws IllegalArgumentException
+     *             if the keys are not in that order, or the maps are ordered
+     *             differently
+     */
+    public void join(K key, V value, AVLTreeMap<K, V> right) {
+	checkSameOrder(right);
+	if ((root != null && compare(getLastEntry().key, key) >= 0)
+		|| (right.root != null && compare(key, right.getFirstEntry().key) >= 0))
+	    throw new IllegalArgumentException("keys out of order");
+	if (root == null && right.root == null)
+	    compare(key, key); // type (and possibly null) check
+	Subtree<K, V> t = join(new Subtree<>(root, treeHeight()), new Entry<>(key, value, null),
+		new Subtree<>(right.root, right.treeHeight()));
+	root = t.root;
+	size += right.size + 1;
+	modCount++;
+	right.moved();
     }
 
-    final class EntryIterator extends PrivateEntryIterator<Map.Entry<K, V>> {
-	EntryIterator(Entry<K, V> first) {
-	    super(first);
+    /**
+     * Removes the mappings with keys greater than or equal to key from this map
+     * and returns them in a new map with the same ordering.  The search path is
+     * cut at key and the pieces on either side are joined back together, which
+     * takes O(log n) time plus counting the smaller of the two maps.
+     *
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys currently
+     *             in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public AVLTreeMap<K, V> split(K key) {
+	AVLTreeMap<K, V> tail = new AVLTreeMap<>(comparator);
+	if (root == null) {
+	    compare(key, key); // type (and possibly null) check
+	    return tail;
 	}
+	Split<K, V> s = split(root, treeHeight(), key);
+	Subtree<K, V> right = s.right;
+	if (s.found != null)
+	    right = join(new Subtree<>(null, -1), s.found, right);
+	root = s.left.root;
+	tail.root = right.root;
+	int headSize = countSmaller(root, tail.root, size);
+	tail.size = size - headSize;
+	size = headSize;
+	modCount++;
+	return tail;
+    }
 
-	public Map.Entry<K, V> next() {
-	    return nextEntry();
-	}
+    /**
+     * Adds the mappings of {@code other} to this map, replacing the values of
+     * keys that are in both.  Instead of a put() per mapping, this map is split
+     * at the root key of {@code other} and the halves are combined recursively,
+     * which takes O(m log(n/m + 1)) time for maps of sizes m &lt;= n.  Large maps
+     * are combined in parallel on the common fork/join pool.  The entries of
+     * {@code other} are moved, so it is left empty.
+     *
+     * @throws IllegalArgumentException
+     *             if the maps are ordered differently
+     */
+    public void union(AVLTreeMap<K, V> other) {
+	checkSameOrder(other);
+	LongAdder shared = new LongAdder();
+	Subtree<K, V> a = new Subtree<>(root, treeHeight()), b = new Subtree<>(other.root, other.treeHeight());
+	root = invoke(() -> union(a, b, shared), a, b).root;
+	size += other.size - shared.intValue();
+	modCount++;
+	other.moved();
     }
 
     /**
-     * Removes all of the mappings from this map. The map will be empty after this
-     * call returns.
+     * Retains only the mappings of this map whose keys are in {@code other},
+     * in O(m log(n/m + 1)) time like {@link #union(AVLTreeMap)}.  {@code other} is
+     * left empty.
+     *
+     * @throws IllegalArgumentException
+     *             if the maps are ordered differently
      */
-    public void clear() {
+    public void intersection(AVLTreeMap<K, V> other) {
+	checkSameOrder(other);
+	LongAdder shared = new LongAdder();
+	Subtree<K, V> a = new Subtree<>(root, treeHeight()), b = new Subtree<>(other.root, other.treeHeight());
+	root = invoke(() -> intersection(a, b, shared), a, b).root;
+	size = shared.intValue();
 	modCount++;
-	size = 0;
-	root = null;
-	rotations = 0;
+	other.moved();
     }
 
     /**
-     * Test two values for equality. Differs from o1.equals(o2) only in that it
-     * copes with {@code null} o1 properly.
+     * Removes the mappings of this map whose keys are in {@code other}, in
+     * O(m log(n/m + 1)) time like {@link #union(AVLTreeMap)}.  {@code other} is left
+     * empty.
+     *
+     * @throws IllegalArgumentException
+     *             if the maps are ordered differently
      */
-    static final boolean valEquals(Object o1, Object o2) {
-	return (o1 == null ? o2 == null : o1.equals(o2));
+    public void difference(AVLTreeMap<K, V> other) {
+	checkSameOrder(other);
+	LongAdder shared = new LongAdder();
+	Subtree<K, V> a = new Subtree<>(root, treeHeight()), b = new Subtree<>(other.root, other.treeHeight());
+	root = invoke(() -> difference(a, b, shared), a, b).root;
+	size -= shared.intValue();
+	modCount++;
+	other.moved();
+    }
+
+    private void checkSameOrder(AVLTreeMap<K, V> other) {
+	if (other == this)
+	    throw new IllegalArgumentException("map combined with itself");
+	Comparator<?> c = other.comparator;
+	if (!(c == comparator || (c != null && c.equals(comparator))))
+	    throw new IllegalArgumentException("maps are ordered differently");
     }
 
     /**
-     * Compares two keys using the correct comparison method for this TreeMap.
+     * Empties a map whose entries were moved into another.
      */
-    @SuppressWarnings("unchecked")
-    final int compare(Object k1, Object k2) {
-	return comparator == null ? ((Comparable<? super K>) k1).compareTo((K) k2) : comparator.compare((K) k1, (K) k2);
+    private void moved() {
+	root = null;
+	size = 0;
+	modCount++;
     }
 
     /**
-     * Returns the key corresponding to the specified Entry.
-     * 
-     * @throws NoSuchElementException
-     *             if the Entry is null
+     * A detached subtree and its height, -1 if it is empty.
      */
-    static <K> K key(Entry<K, ?> e) {
-	if (e == null)
-	    throw new NoSuchElementException();
-	return e.key;
+    static final class Subtree<K, V> {
+	Entry<K, V> root;
+	int height;
+
+	Subtree(Entry<K, V> root, int height) {
+	    this.root = root;
+	    this.height = height;
+	}
     }
 
     /**
-     * Returns the first Entry in the TreeMap (according to the TreeMap's key-sort
-     * function). Returns null if the TreeMap is empty.
+     * The subtrees with keys less and greater than a key, and the entry for the
+     * key if there was one.
      */
-    final Entry<K, V> getFirstEntry() {
-	Entry<K, V> p = root;
-	if (p != null)
-	    while (p.left != null)
-		p = p.left;
-	return p;
+    static final class Split<K, V> {
+	Subtree<K, V> left;
+	Entry<K, V> found;
+	Subtree<K, V> right;
+
+	Split(Subtree<K, V> left, Entry<K, V> found, Subtree<K, V> right) {
+	    this.left = left;
+	    this.found = found;
+	    this.right = right;
+	}
     }
 
     /**
-     * Returns the last Entry in the TreeMap (according to the TreeMap's key-sort
-     * function). Returns null if the TreeMap is empty.
+     * Runs a set operation on the common pool if both trees are tall enough to
+     * fork, otherwise in this thread.
      */
-    final Entry<K, V> getLastEntry() {
-	Entry<K, V> p = root;
-	if (p != null)
-	    while (p.right != null)
-		p = p.right;
-	return p;
+    private static <K, V> Subtree<K, V> invoke(Callable<Subtree<K, V>> op, Subtree<K, V> a, Subtree<K, V> b) {
+	try {
+	    if (Math.min(a.height, b.height) >= PARALLEL_HEIGHT)
+		return ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(op));
+	    return op.call();
+	} catch (RuntimeException e) {
+	    throw e;
+	} catch (Exception cannotHappen) {
+	    throw new IllegalStateException(cannotHappen);
+	}
     }
 
     /**
-     * Returns the successor of the specified Entry, or null if no such.
+     * Detaches the children of t, returning them with heights derived from t's
+     * height and balance.
      */
-    static <K, V> Entry<K, V> successor(Entry<K, V> t) {
-	if (t == null)
-	    return null;
-	else if (t.right != null) {
-	    Entry<K, V> p = t.right;
-	    while (p.left != null)
-		p = p.left;
-	    return p;
-	} else {
-	    Entry<K, V> p = t.parent;
-	    Entry<K, V> ch = t;
-	    while (p != null && ch == p.right) {
-		ch = p;
-		p = p.parent;
+    private static <K, V> Subtree<K, V> detachLeft(Entry<K, V> t, int height) {
+	Entry<K, V> l = t.left;
+	if (l != null)
+	    l.parent = null;
+	t.left = null;
+	return new Subtree<>(l, height - (t.balance > 0 ? 2 : 1));
+    }
+
+    private static <K, V> Subtree<K, V> detachRight(Entry<K, V> t, int height) {
+	Entry<K, V> r = t.right;
+	if (r != null)
+	    r.parent = null;
+	t.right = null;
+	return new Subtree<>(r, height - (t.balance < 0 ? 2 : 1));
+    }
+
+    /**
+     * Joins l, k and r, whose keys are in that order, into one subtree.  When
+     * the heights differ by more than one k is linked in on the spine of the
+     * taller tree and re-traced like an insert.
+     */
+    static <K, V> Subtree<K, V> join(Subtree<K, V> l, Entry<K, V> k, Subtree<K, V> r) {
+	if (l.height > r.height + 1)
+	    return joinRight(l, k, r);
+	if (r.height > l.height + 1)
+	    return joinLeft(l, k, r);
+	link(k, l.root, r.root);
+	k.parent = null;
+	k.balance = (byte) (r.height - l.height);
+	l.root = k;
+	l.height = Math.max(l.height, r.height) + 1;
+	return l;
+    }
+
+    private static <K, V> void link(Entry<K, V> k, Entry<K, V> left, Entry<K, V> right) {
+	k.left = left;
+	if (left != null)
+	    left.parent = k;
+	k.right = right;
+	if (right != null)
+	    right.parent = k;
+    }
+
+    private static <K, V> Subtree<K, V> joinRight(Subtree<K, V> l, Entry<K, V> k, Subtree<K, V> r) {
+	Entry<K, V> p = l.root, g = null;
+	int h = l.height;
+	while (h > r.height + 1) {
+	    h -= (p.balance < 0) ? 2 : 1;
+	    g = p;
+	    p = p.right;
+	}
+	link(k, p, r.root);
+	k.balance = (byte) (r.height - h);
+	k.parent = g;
+	g.right = k;
+
+	// k is one taller than p was, so re-trace as if it had been inserted
+	boolean grew = false;
+	for (Entry<K, V> x = g;; x = x.parent) {
+	    x.balance++;
+	    if (x.balance == 0)
+		break;
+	    if (x.balance == 2) {
+		if (x.right.balance == 1) {
+		    x.balance = 0;
+		    x.right.balance = 0;
+		    lift(x.right);
+		} else { // x.right.balance = -1
+		    Entry<K, V> rl = x.right.left;
+		    int rlBalance = rl.balance;
+		    rl.balance = 0;
+		    x.right.balance = 0;
+		    x.balance = 0;
+		    if (rlBalance == 1)
+			x.balance = -1;
+		    else if (rlBalance == -1)
+			x.right.balance = 1;
+		    lift(rl);
+		    lift(rl);
+		}
+		break;
+	    }
+	    if (x.parent == null) {
+		grew = true;
+		break;
+	    }
+	}
+	if (l.root.parent != null) // rotated at the root
+	    l.root = l.root.parent;
+	if (grew)
+	    l.height++;
+	return l;
+    }
+
+    private static <K, V> Subtree<K, V> joinLeft(Subtree<K, V> l, Entry<K, V> k, Subtree<K, V> r) {
+	Entry<K, V> p = r.root, g = null;
+	int h = r.height;
+	while (h > l.height + 1) {
+	    h -= (p.balance > 0) ? 2 : 1;
+	    g = p;
+	    p = p.left;
+	}
+	link(k, l.root, p);
+	k.balance = (byte) (h - l.height);
+	k.parent = g;
+	g.left = k;
+
+	boolean grew = false;
+	for (Entry<K, V> x = g;; x = x.parent) {
+	    x.balance--;
+	    if (x.balance == 0)
+		break;
+	    if (x.balance == -2) {
+		if (x.left.balance == -1) {
+		    x.balance = 0;
+		    x.left.balance = 0;
+		    lift(x.left);
+		} else { // x.left.balance = 1
+		    Entry<K, V> lr = x.left.right;
+		    int lrBalance = lr.balance;
+		    lr.balance = 0;
+		    x.left.balance = 0;
+		    x.balance = 0;
+		    if (lrBalance == 1)
+			x.left.balance = -1;
+		    else if (lrBalance == -1)
+			x.balance = 1;
+		    lift(lr);
+		    lift(lr);
+		}
+		break;
+	    }
+	    if (x.parent == null) {
+		grew = true;
+		break;
 	    }
-	    return p;
 	}
+	if (r.root.parent != null)
+	    r.root = r.root.parent;
+	if (grew)
+	    r.height++;
+	return r;
     }
 
     /**
-     * Returns the predecessor of the specified Entry, or null if no such.
+     * Rotates x above its parent.  Unlike rotateLeft and rotateRight it leaves
+     * the map's root and rotation count alone, so it works on detached subtrees
+     * from any thread.
      */
-    static <K, V> Entry<K, V> predecessor(Entry<K, V> t) {
-	if (t == null)
-	    return null;
-	else if (t.left != null) {
-	    Entry<K, V> p = t.left;
-	    while (p.right != null)
-		p = p.right;
-	    return p;
+    private static <K, V> void lift(Entry<K, V> x) {
+	Entry<K, V> p = x.parent, g = p.parent;
+	if (p.left == x) {
+	    p.left = x.right;
+	    if (x.right != null)
+		x.right.parent = p;
+	    x.right = p;
 	} else {
-	    Entry<K, V> p = t.parent;
-	    Entry<K, V> ch = t;
-	    while (p != null && ch == p.left) {
-		ch = p;
-		p = p.parent;
-	    }
-	    return p;
+	    p.right = x.left;
+	    if (x.left != null)
+		x.left.parent = p;
+	    x.left = p;
+	}
+	p.parent = x;
+	x.parent = g;
+	if (g != null) {
+	    if (g.left == p)
+		g.left = x;
+	    else
+		g.right = x;
 	}
     }
 
     /**
-     * Return SimpleImmutableEntry for entry, or null if null
+     * Joins l and r without a middle entry by splitting off the last entry of l.
      */
-    static <K, V> Map.Entry<K, V> exportEntry(AVLTreeMap.Entry<K, V> e) {
-	return (e == null) ? null : new AbstractMap.SimpleImmutableEntry<>(e);
+    private Subtree<K, V> join(Subtree<K, V> l, Subtree<K, V> r) {
+	if (l.root == null)
+	    return r;
+	if (r.root == null)
+	    return l;
+	Entry<K, V> last = l.root;
+	while (last.right != null)
+	    last = last.right;
+	Split<K, V> s = split(l.root, l.height, last.key);
+	return join(s.left, s.found, r);
     }
 
     /**
-     * Return key for entry, or null if null
+     * Splits the subtree t of the given height around key, taking t apart along
+     * the search path and joining the pieces on either side.
      */
-    static <K, V> K keyOrNull(AVLTreeMap.Entry<K, V> e) {
-	return (e == null) ? null : e.key;
+    final Split<K, V> split(Entry<K, V> t, int height, Object key) {
+	if (t == null)
+	    return new Split<>(new Subtree<>(null, -1), null, new Subtree<>(null, -1));
+	Subtree<K, V> l = detachLeft(t, height), r = detachRight(t, height);
+	int cmp = compare(key, t.key);
+	if (cmp == 0)
+	    return new Split<>(l, t, r);
+	if (cmp < 0) {
+	    Split<K, V> s = split(l.root, l.height, key);
+	    s.right = join(s.right, t, r);
+	    return s;
+	} else {
+	    Split<K, V> s = split(r.root, r.height, key);
+	    s.left = join(l, t, s.left);
+	    return s;
+	}
     }
 
-    // NavigableMap API methods
+    private Subtree<K, V> union(Subtree<K, V> a, Subtree<K, V> b, LongAdder shared) {
+	if (a.root == null)
+	    return b;
+	if (b.root == null)
+	    return a;
+	Entry<K, V> t = a.root;
+	Subtree<K, V> al = detachLeft(t, a.height), ar = detachRight(t, a.height);
+	Split<K, V> s = split(b.root, b.height, t.key);
+	if (s.found != null) {
+	    t.value = s.found.value;
+	    shared.increment();
+	}
+	Subtree<K, V> left, right;
+	if (Math.min(a.height, b.height) >= PARALLEL_HEIGHT) {
+	    ForkJoinTask<Subtree<K, V>> task = ForkJoinTask.adapt(() -> union(al, s.left, shared)).fork();
+	    right = union(ar, s.right, shared);
+	    left = task.join();
+	} else {
+	    left = union(al, s.left, shared);
+	    right = union(ar, s.right, shared);
+	}
+	return join(left, t, right);
+    }
+
+    private Subtree<K, V> intersection(Subtree<K, V> a, Subtree<K, V> b, LongAdder shared) {
+	if (a.root == null || b.root == null)
+	    return new Subtree<>(null, -1);
+	Entry<K, V> t = a.root;
+	Subtree<K, V> al = detachLeft(t, a.height), ar = detachRight(t, a.height);
+	Split<K, V> s = split(b.root, b.height, t.key);
+	Subtree<K, V> left, right;
+	if (Math.min(a.height, b.height) >= PARALLEL_HEIGHT) {
+	    ForkJoinTask<Subtree<K, V>> task = ForkJoinTask.adapt(() -> intersection(al, s.left, shared)).fork();
+	    right = intersection(ar, s.right, shared);
+	    left = task.join();
+	} else {
+	    left = intersection(al, s.left, shared);
+	    right = intersection(ar, s.right, shared);
+	}
+	if (s.found == null)
+	    return join(left, right);
+	shared.increment();
+	return join(left, t, right);
+    }
+
+    private Subtree<K, V> difference(Subtree<K, V> a, Subtree<K, V> b, LongAdder shared) {
+	if (a.root == null || b.root == null)
+	    return a;
+	Entry<K, V> t = b.root;
+	Subtree<K, V> bl = detachLeft(t, b.height), br = detachRight(t, b.height);
+	Split<K, V> s = split(a.root, a.height, t.key);
+	Subtree<K, V> left, right;
+	if (Math.min(a.height, b.height) >= PARALLEL_HEIGHT) {
+	    ForkJoinTask<Subtree<K, V>> task = ForkJoinTask.adapt(() -> difference(s.left, bl, shared)).fork();
+	    right = difference(s.right, br, shared);
+	    left = task.join();
+	} else {
+	    left = difference(s.left, bl, shared);
+	    right = difference(s.right, br, shared);
+	}
+	if (s.found != null)
+	    shared.increment();
+	return join(left, right);
+    }
 
     /**
-     * @since 1.6
+     * Returns the size of the tree rooted at head, given the combined size of
+     * the trees at head and tail, by walking both in step until one runs out.
      */
-    public Map.Entry<K, V> firstEntry() {
-	return exportEntry(getFirstEntry());
+    static <K, V> int countSmaller(Entry<K, V> head, Entry<K, V> tail, int total) {
+	Entry<K, V> h = head, t = tail;
+	if (h != null)
+	    while (h.left != null)
+		h = h.left;
+	if (t != null)
+	    while (t.left != null)
+		t = t.left;
+	int count = 0;
+	while (h != null && t != null) {
+	    h = successor(h);
+	    t = successor(t);
+	    count++;
+	}
+	return (h == null) ? count : total - count;
     }
 
     /**
-     * @since 1.6
+     * Fields initialized to contain an instance of the entry set view the first
+     * time this view is requested. Views are stateless, so there's no reason to
+     * create more than one.
      */
-    public Map.Entry<K, V> lastEntry() {
-	return exportEntry(getLastEntry());
+    private transient EntrySet entrySet = null;
+    private transient KeySet<K> navigableKeySet = null;
+    private transient Values values = null;
+    private transient NavigableMap<K, V> descendingMap = null;
+
+    /**
+     * Returns a {@link Set} view of the keys contained in this map.
+     *
+     * <p>
+     * The set's iterator returns the keys in ascending order. The set is backed by
+     * the map, so changes to the map are reflected in the set, and vice-versa. If
+     * the map is modified while an iteration over the set is in progress (except
+     * through the iterator's own {@code remove} operation), the results of the
+     * iteration are undefined. The set supports element removal, which removes the
+     * corresponding mapping from the map, via the {@code Iterator.remove},
+     * {@code Set.remove}, {@code removeAll}, {@code retainAll}, and {@code clear}
+     * operations. It does not support the {@code add} or {@code addAll}
+     * operations.
+     */
+    public Set<K> keySet() {
+	return navigableKeySet();
     }
 
     /**
      * @since 1.6
      */
-    public Map.Entry<K, V> pollFirstEntry() {
-	Entry<K, V> p = getFirstEntry();
-	Map.Entry<K, V> result = exportEntry(p);
-	if (p != null)
-	    deleteEntry(p);
-	return result;
+    public NavigableSet<K> navigableKeySet() {
+	KeySet<K> nks = navigableKeySet;
+	return (nks != null) ? nks : (navigableKeySet = new KeySet<>(this));
     }
 
     /**
      * @since 1.6
      */
-    public Map.Entry<K, V> pollLastEntry() {
-	Entry<K, V> p = getLastEntry();
-	Map.Entry<K, V> result = exportEntry(p);
-	if (p != null)
-	    deleteEntry(p);
-	return result;
+    public NavigableSet<K> descendingKeySet() {
+	return descendingMap().navigableKeySet();
     }
 
     /**
-     * Gets the entry corresponding to the specified key; if no such entry exists,
-     * returns the entry for the least key greater than the specified key; if no
-     * such entry exists (i.e., the greatest key in the Tree is less than the
-     * specified key), returns {@code null}.
+     * Returns a {@link Collection} view of the values contained in this map.
+     *
+     * <p>
+     * The collection's iterator returns the values in ascending order of the
+     * corresponding keys. The collection is backed by the map, so changes to the
+     * map are reflected in the collection, and vice-versa. If the map is modified
+     * while an iteration over the collection is in progress (except through the
+     * iterator's own {@code remove} operation), the results of the iteration are
+     * undefined. The collection supports element removal, which removes the
+     * corresponding mapping from the map, via the {@code Iterator.remove},
+     * {@code Collection.remove}, {@code removeAll}, {@code retainAll} and
+     * {@code clear} operations. It does not support the {@code add} or
+     * {@code addAll} operations.
      */
-    final Entry<K, V> getCeilingEntry(K key) {
-	Entry<K, V> p = root;
-	while (p != null) {
-	    int cmp = compare(key, p.key);
-	    if (cmp < 0) {
-		if (p.left != null)
-		    p = p.left;
-		else
-		    return p;
-	    } else if (cmp > 0) {
-		if (p.right != null) {
-		    p = p.right;
-		} else {
-		    Entry<K, V> parent = p.parent;
-		    Entry<K, V> ch = p;
-		    while (parent != null && ch == parent.right) {
-			ch = parent;
-			parent = parent.parent;
-		    }
-		    return parent;
-		}
-	    } else
-		return p;
-	}
-	return null;
+    public Collection<V> values() {
+	Values vs = values;
+	return (vs != null) ? vs : (values = new Values());
     }
 
     /**
-     * Gets the entry corresponding to the specified key; if no such entry exists,
-     * returns the entry for the greatest key less than the specified key; if no
-     * such entry exists, returns {@code null}.
-     */
-    final Entry<K, V> getFloorEntry(K key) {
-	Entry<K, V> p = root;
-	while (p != null) {
-	    int cmp = compare(key, p.key);
-	    if (cmp > 0) {
-		if (p.right != null)
-		    p = p.right;
-		else
-		    return p;
-	    } else if (cmp < 0) {
-		if (p.left != null) {
-		    p = p.left;
-		} else {
-		    Entry<K, V> parent = p.parent;
-		    Entry<K, V> ch = p;
-		    while (parent != null && ch == parent.left) {
-			ch = parent;
-			parent = parent.parent;
-		    }
-		    return parent;
-		}
-	    } else
-		return p;
-
-	}
-	return null;
-    }
-
-    /**
-     * Gets the entry for the least key greater than the specified key; if no such
-     * entry exists, returns the entry for the least key greater than the specified
-     * key; if no such entry exists returns {@code null}.
+     * Returns a {@link Set} view of the mappings contained in this map.
+     *
+     * <p>
+     * The set's iterator returns the entries in ascending key order. The sets's
+     * spliterator is <em><a href="Spliterator.html#binding">late-binding</a></em>,
+     * <em>fail-fast</em>, and additionally reports {@link Spliterator#SORTED} and
+     * {@link Spliterator#ORDERED} with an encounter order that is ascending key
+     * order.
+     *
+     * <p>
+     * The set is backed by the map, so changes to the map are reflected in the set,
+     * and vice-versa. If the map is modified while an iteration over the set is in
+     * progress (except through the iterator's own {@code remove} operation, or
+     * through the {@code setValue} operation on a map entry returned by the
+     * iterator) the results of the iteration are undefined. The set supports
+     * element removal, which removes the corresponding mapping from the map, via
+     * the {@code Iterator.remove}, {@code Set.remove}, {@code removeAll},
+     * {@code retainAll} and {@code clear} operations. It does not support the
+     * {@code add} or {@code addAll} operations.
      */
-    final Entry<K, V> getHigherEntry(K key) {
-	Entry<K, V> p = root;
-	while (p != null) {
-	    int cmp = compare(key, p.key);
-	    if (cmp < 0) {
-		if (p.left != null)
-		    p = p.left;
-		else
-		    return p;
-	    } else {
-		if (p.right != null) {
-		    p = p.right;
-		} else {
-		    Entry<K, V> parent = p.parent;
-		    Entry<K, V> ch = p;
-		    while (parent != null && ch == parent.right) {
-			ch = parent;
-			parent = parent.parent;
-		    }
-		    return parent;
-		}
-	    }
-	}
-	return null;
+    public Set<Map.Entry<K, V>> entrySet() {
+	EntrySet es = entrySet;
+	return (es != null) ? es : (entrySet = new EntrySet());
     }
 
     /**
-     * Returns the entry for the greatest key less than the specified key; if no
-     * such entry exists (i.e., the least key in the Tree is greater than the
-     * specified key), returns {@code null}.
+     * @since 1.6
      */
-    final Entry<K, V> getLowerEntry(K key) {
-	Entry<K, V> p = root;
-	while (p != null) {
-	    int cmp = compare(key, p.key);
-	    if (cmp > 0) {
-		if (p.right != null)
-		    p = p.right;
-		else
-		    return p;
-	    } else {
-		if (p.left != null) {
-		    p = p.left;
-		} else {
-		    Entry<K, V> parent = p.parent;
-		    Entry<K, V> ch = p;
-		    while (parent != null && ch == parent.left) {
-			ch = parent;
-			parent = parent.parent;
-		    }
-		    return parent;
-		}
-	    }
-	}
-	return null;
+    public NavigableMap<K, V> descendingMap() {
+	NavigableMap<K, V> km = descendingMap;
+	return (km != null) ? km
+		: (descendingMap = new DescendingSubMap<>(this, true, null, true, true, null, true));
     }
 
     /**
-     * @throws ClassCastException {@inheritDoc}
+     * Returns a view of the portion of this map whose keys range from
+     * {@code fromKey} to {@code toKey}. The view walks the tree in place: locating
+     * either end costs one descent and each entry after that one successor step,
+     * so a scan of k entries costs O(log n + k) and nothing is copied.
+     *
+     * @throws ClassCastException
+     *             {@inheritDoc}
      * @throws NullPointerException
-     *             if the specified key is null and this map uses natural ordering,
-     *             or its comparator does not permit null keys
+     *             if {@code fromKey} or {@code toKey} is null and this map uses
+     *             natural ordering, or its comparator does not permit null keys
+     * @throws IllegalArgumentException
+     *             {@inheritDoc}
      * @since 1.6
      */
-    public Map.Entry<K, V> lowerEntry(K key) {
-	return exportEntry(getLowerEntry(key));
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+	return new AscendingSubMap<>(this, false, fromKey, fromInclusive, false, toKey, toInclusive);
     }
 
     /**
-     * @throws ClassCastException {@inheritDoc}
+     * @throws ClassCastException
+     *             {@inheritDoc}
      * @throws NullPointerException
-     *             if the specified key is null and this map uses natural ordering,
-     *             or its comparator does not permit null keys
+     *             if {@code toKey} is null and this map uses natural ordering, or
+     *             its comparator does not permit null keys
+     * @throws IllegalArgumentException
+     *             {@inheritDoc}
      * @since 1.6
      */
-    public K lowerKey(K key) {
-	return keyOrNull(getLowerEntry(key));
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+	return new AscendingSubMap<>(this, true, null, true, false, toKey, inclusive);
     }
 
     /**
-     * @throws ClassCastException {@inheritDoc}
+     * @throws ClassCastException
+     *             {@inheritDoc}
      * @throws NullPointerException
-     *             if the specified key is null and this map uses natural ordering,
-     *             or its comparator does not permit null keys
+     *             if {@code fromKey} is null and this map uses natural ordering, or
+     *             its comparator does not permit null keys
+     * @throws IllegalArgumentException
+     *             {@inheritDoc}
      * @since 1.6
      */
-    public Map.Entry<K, V> floorEntry(K key) {
-	return exportEntry(getFloorEntry(key));
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+	return new AscendingSubMap<>(this, false, fromKey, inclusive, true, null, true);
     }
 
     /**
-     * @throws ClassCastException {@inheritDoc}
+     * @throws ClassCastException
+     *             {@inheritDoc}
      * @throws NullPointerException
-     *             if the specified key is null and this map uses natural ordering,
-     *             or its comparator does not permit null keys
-     * @since 1.6
+     *             if {@code fromKey} or {@code toKey} is null and this map uses
+     *             natural ordering, or its comparator does not permit null keys
+     * @throws IllegalArgumentException
+     *             {@inheritDoc}
      */
-    public K floorKey(K key) {
-	return keyOrNull(getFloorEntry(key));
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+	return subMap(fromKey, true, toKey, false);
     }
 
     /**
-     * @throws ClassCastException {@inheritDoc}
+     * @throws ClassCastException
+     *             {@inheritDoc}
      * @throws NullPointerException
-     *             if the specified key is null and this map uses natural ordering,
-     *             or its comparator does not permit null keys
-     * @since 1.6
+     *             if {@code toKey} is null and this map uses natural ordering, or
+     *             its comparator does not permit null keys
+     * @throws IllegalArgumentException
+     *             {@inheritDoc}
      */
-    public Map.Entry<K, V> ceilingEntry(K key) {
-	return exportEntry(getCeilingEntry(key));
+    public SortedMap<K, V> headMap(K toKey) {
+	return headMap(toKey, false);
     }
 
     /**
      * @throws ClassCastException
      *             {@inheritDoc}
      * @throws NullPointerException
-     *             if the specified key is null and this map uses natural ordering,
-     *             or its comparator does not permit null keys
-     * @since 1.6
+     *             if {@code fromKey} is null and this map uses natural ordering, or
+     *             its comparator does not permit null keys
+     * @throws IllegalArgumentException
+     *             {@inheritDoc}
      */
-    public K ceilingKey(K key) {
-	return keyOrNull(getCeilingEntry(key));
+    public SortedMap<K, V> tailMap(K fromKey) {
+	return tailMap(fromKey, true);
     }
 
-    /**
-     * @throws ClassCastException {@inheritDoc}
-     * @throws NullPointerException
-     *             if the specified key is null and this map uses natural ordering,
-     *             or its comparator does not permit null keys
-     * @since 1.6
+    // View class support
+
+    class Values extends AbstractCollection<V> {
+	public Iterator<V> iterator() {
+	    return new ValueIterator(getFirstEntry());
+	}
+
+	public int size() {
+	    return AVLTreeMap.this.size();
+	}
+
+	public boolean contains(Object o) {
+	    return AVLTreeMap.this.containsValue(o);
+	}
+
+	public boolean remove(Object o) {
+	    for (Entry<K, V> e = getFirstEntry(); e != null; e = successor(e)) {
+		if (valEquals(e.getValue(), o)) {
+		    deleteEntry(e);
+		    return true;
+		}
+	    }
+	    return false;
+	}
+
+	public void clear() {
+	    AVLTreeMap.this.clear();
+	}
+
+	public Spliterator<V> spliterator() {
+	    return new ValueSpliterator<>(AVLTreeMap.this, null, null, 0, -1, 0);
+	}
+    }
+
+    class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+	public Iterator<Map.Entry<K, V>> iterator() {
+	    return new EntryIterator(getFirstEntry());
+	}
+
+	public boolean contains(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    Object value = entry.getValue();
+	    Entry<K, V> p = getEntry(entry.getKey());
+	    return p != null && valEquals(p.getValue(), value);
+	}
+
+	public boolean remove(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    Object value = entry.getValue();
+	    Entry<K, V> p = getEntry(entry.getKey());
+	    if (p != null && valEquals(p.getValue(), value)) {
+		deleteEntry(p);
+		return true;
+	    }
+	    return false;
+	}
+
+	public int size() {
+	    return AVLTreeMap.this.size();
+	}
+
+	public void clear() {
+	    AVLTreeMap.this.clear();
+	}
+
+	public Spliterator<Map.Entry<K, V>> spliterator() {
+	    return new EntrySpliterator<>(AVLTreeMap.this, null, null, 0, -1, 0);
+	}
+    }
+
+    /*
+     * Unlike Values and EntrySet, the KeySet class is static, delegating to a
+     * NavigableMap to allow use by SubMaps, which outweighs the ugliness of needing
+     * type-tests for the following Iterator methods that are defined appropriately
+     * in main versus submap classes.
      */
-    public Map.Entry<K, V> higherEntry(K key) {
-	return exportEntry(getHigherEntry(key));
+
+    Iterator<K> keyIterator() {
+	return new KeyIterator(getFirstEntry());
+    }
+
+    Iterator<K> descendingKeyIterator() {
+	return new DescendingKeyIterator(getLastEntry());
+    }
+
+    final Spliterator<K> keySpliterator() {
+	return new KeySpliterator<>(this, null, null, 0, -1, 0);
+    }
+
+    final Spliterator<K> descendingKeySpliterator() {
+	return new DescendingKeySpliterator<>(this, null, null, 0, -2, 0);
     }
 
     /**
-     * @throws ClassCastException {@inheritDoc}
-     * @throws NullPointerException
-     *             if the specified key is null and this map uses natural ordering,
-     *             or its comparator does not permit null keys
-     * @since 1.6
+     * Currently, we support Spliterator-based versions only for the full map, in
+     * either plain or descending form, otherwise relying on defaults because size
+     * estimation for submaps would dominate costs. The type tests needed to check
+     * these for key views are not very nice but avoid disrupting existing class
+     * structures. Callers must use plain default spliterators if this returns null.
      */
-    public K higherKey(K key) {
-	return keyOrNull(getHigherEntry(key));
+    static <K> Spliterator<K> keySpliteratorFor(NavigableMap<K, ?> m) {
+	if (m instanceof AVLTreeMap) {
+	    @SuppressWarnings("unchecked")
+	    AVLTreeMap<K, Object> t = (AVLTreeMap<K, Object>) m;
+	    return t.keySpliterator();
+	}
+	if (m instanceof DescendingSubMap) {
+	    @SuppressWarnings("unchecked")
+	    DescendingSubMap<K, ?> dm = (DescendingSubMap<K, ?>) m;
+	    AVLTreeMap<K, ?> tm = dm.m;
+	    if (dm == tm.descendingMap) {
+		@SuppressWarnings("unchecked")
+		AVLTreeMap<K, Object> t = (AVLTreeMap<K, Object>) tm;
+		return t.descendingKeySpliterator();
+	    }
+	}
+	@SuppressWarnings("unchecked")
+	NavigableSubMap<K, ?> sm = (NavigableSubMap<K, ?>) m;
+	return sm.keySpliterator();
+    }
+
+    static final class KeySet<E> extends AbstractSet<E> implements NavigableSet<E> {
+	private final NavigableMap<E, ?> m;
+
+	KeySet(NavigableMap<E, ?> map) {
+	    m = map;
+	}
+
+	public Iterator<E> iterator() {
+	    if (m instanceof AVLTreeMap)
+		return ((AVLTreeMap<E, ?>) m).keyIterator();
+	    else
+		return ((AVLTreeMap.NavigableSubMap<E, ?>) m).keyIterator();
+	}
+
+	public Iterator<E> descendingIterator() {
+	    if (m instanceof AVLTreeMap)
+		return ((AVLTreeMap<E, ?>) m).descendingKeyIterator();
+	    else
+		return ((AVLTreeMap.NavigableSubMap<E, ?>) m).descendingKeyIterator();
+	}
+
+	public Spliterator<E> spliterator() {
+	    return keySpliteratorFor(m);
+	}
+
+	public int size() {
+	    return m.size();
+	}
+
+	public boolean isEmpty() {
+	    return m.isEmpty();
+	}
+
+	public boolean contains(Object o) {
+	    return m.containsKey(o);
+	}
+
+	public void clear() {
+	    m.clear();
+	}
+
+	public E lower(E e) {
+	    return m.lowerKey(e);
+	}
+
+	public E floor(E e) {
+	    return m.floorKey(e);
+	}
+
+	public E ceiling(E e) {
+	    return m.ceilingKey(e);
+	}
+
+	public E higher(E e) {
+	    return m.higherKey(e);
+	}
+
+	public E first() {
+	    return m.firstKey();
+	}
+
+	public E last() {
+	    return m.lastKey();
+	}
+
+	public Comparator<? super E> comparator() {
+	    return m.comparator();
+	}
+
+	public E pollFirst() {
+	    Map.Entry<E, ?> e = m.pollFirstEntry();
+	    return (e == null) ? null : e.getKey();
+	}
+
+	public E pollLast() {
+	    Map.Entry<E, ?> e = m.pollLastEntry();
+	    return (e == null) ? null : e.getKey();
+	}
+
+	public boolean remove(Object o) {
+	    int oldSize = size();
+	    m.remove(o);
+	    return size() != oldSize;
+	}
+
+	public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+	    return new KeySet<>(m.subMap(fromElement, fromInclusive, toElement, toInclusive));
+	}
+
+	public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+	    return new KeySet<>(m.headMap(toElement, inclusive));
+	}
+
+	public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+	    return new KeySet<>(m.tailMap(fromElement, inclusive));
+	}
+
+	public SortedSet<E> subSet(E fromElement, E toElement) {
+	    return subSet(fromElement, true, toElement, false);
+	}
+
+	public SortedSet<E> headSet(E toElement) {
+	    return headSet(toElement, false);
+	}
+
+	public SortedSet<E> tailSet(E fromElement) {
+	    return tailSet(fromElement, true);
+	}
+
+	public NavigableSet<E> descendingSet() {
+	    return new KeySet<>(m.descendingMap());
+	}
+    }
+
+    /**
+     * Base class for TreeMap Iterators
+     */
+    abstract class PrivateEntryIterator<T> implements Iterator<T> {
+	Entry<K, V> next;
+	Entry<K, V> lastReturned;
+	int expectedModCount;
+
+	PrivateEntryIterator(Entry<K, V> first) {
+	    expectedModCount = modCount;
+	    lastReturned = null;
+	    next = first;
+	}
+
+	public final boolean hasNext() {
+	    return next != null;
+	}
+
+	final Entry<K, V> nextEntry() {
+	    Entry<K, V> e = next;
+	    if (e == null)
+		throw new NoSuchElementException();
+	    if (modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    next = successor(e);
+	    lastReturned = e;
+	    return e;
+	}
+
+	final Entry<K, V> prevEntry() {
+	    Entry<K, V> e = next;
+	    if (e == null)
+		throw new NoSuchElementException();
+	    if (modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    next = predecessor(e);
+	    lastReturned = e;
+	    return e;
+	}
+
+	public void remove() {
+	    if (lastReturned == null)
+		throw new IllegalStateException();
+	    if (modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    // deleted entries are replaced by their successors
+	    if (lastReturned.left != null && lastReturned.right != null)
+		next = lastReturned;
+	    deleteEntry(lastReturned);
+	    expectedModCount = modCount;
+	    lastReturned = null;
+	}
+    }
+
+    final class EntryIterator extends PrivateEntryIterator<Map.Entry<K, V>> {
+	EntryIterator(Entry<K, V> first) {
+	    super(first);
+	}
+
+	public Map.Entry<K, V> next() {
+	    return nextEntry();
+	}
+    }
+
+    final class ValueIterator extends PrivateEntryIterator<V> {
+	ValueIterator(Entry<K, V> first) {
+	    super(first);
+	}
+
+	public V next() {
+	    return nextEntry().value;
+	}
+    }
+
+    final class KeyIterator extends PrivateEntryIterator<K> {
+	KeyIterator(Entry<K, V> first) {
+	    super(first);
+	}
+
+	public K next() {
+	    return nextEntry().key;
+	}
+    }
+
+    final class DescendingKeyIterator extends PrivateEntryIterator<K> {
+	DescendingKeyIterator(Entry<K, V> first) {
+	    super(first);
+	}
+
+	public K next() {
+	    return prevEntry().key;
+	}
+
+	public void remove() {
+	    if (lastReturned == null)
+		throw new IllegalStateException();
+	    if (modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    deleteEntry(lastReturned);
+	    lastReturned = null;
+	    expectedModCount = modCount;
+	}
+    }
+
+    /**
+     * Removes all of the mappings from this map. The map will be empty after this
+     * call returns.
+     */
+    public void clear() {
+	modCount++;
+	size = 0;
+	root = null;
+	rotations = 0;
+    }
+
+    /**
+     * Returns a shallow copy of this {@code AVLTreeMap} instance. (The keys and
+     * values themselves are not cloned.) The copy has the same shape and balance
+     * factors as this tree, and is built in linear time without comparing keys.
+     * The copy does not share this map's counters.
+     *
+     * @return a shallow copy of this map
+     */
+    @SuppressWarnings("unchecked")
+    public AVLTreeMap<K, V> clone() {
+	AVLTreeMap<K, V> clone;
+	try {
+	    clone = (AVLTreeMap<K, V>) super.clone();
+	} catch (CloneNotSupportedException e) {
+	    throw new InternalError(e);
+	}
+	clone.root = copyTree(root);
+	clone.modCount = 0;
+	clone.counters = null;
+	clone.entrySet = null;
+	clone.navigableKeySet = null;
+	clone.values = null;
+	clone.descendingMap = null;
+	return clone;
+    }
+
+    /**
+     * Copies the tree rooted at {@code root} node for node, walking down the
+     * links not yet copied and back up through the parents, so no stack is
+     * needed however tall the tree.
+     */
+    static <K, V> Entry<K, V> copyTree(Entry<K, V> root) {
+	if (root == null)
+	    return null;
+	Entry<K, V> copy = new Entry<>(root.key, root.value, null);
+	copy.balance = root.balance;
+	Entry<K, V> p = root, q = copy;
+	for (;;) {
+	    if (p.left != null && q.left == null) {
+		p = p.left;
+		q = q.left = new Entry<>(p.key, p.value, q);
+		q.balance = p.balance;
+	    } else if (p.right != null && q.right == null) {
+		p = p.right;
+		q = q.right = new Entry<>(p.key, p.value, q);
+		q.balance = p.balance;
+	    } else if (p == root) {
+		return copy;
+	    } else {
+		p = p.parent;
+		q = q.parent;
+	    }
+	}
+    }
+
+    /**
+     * Test two values for equality. Differs from o1.equals(o2) only in that it
+     * copes with {@code null} o1 properly.
+     */
+    static final boolean valEquals(Object o1, Object o2) {
+	return (o1 == null ? o2 == null : o1.equals(o2));
+    }
+
+    /**
+     * Compares two keys using the correct comparison method for this TreeMap.
+     */
+    @SuppressWarnings("unchecked")
+    final int compare(Object k1, Object k2) {
+	return comparator == null ? ((Comparable<? super K>) k1).compareTo((K) k2) : comparator.compare((K) k1, (K) k2);
+    }
+
+    /**
+     * Returns the key corresponding to the specified Entry.
+     * 
+     * @throws NoSuchElementException
+     *             if the Entry is null
+     */
+    static <K> K key(Entry<K, ?> e) {
+	if (e == null)
+	    throw new NoSuchElementException();
+	return e.key;
+    }
+
+    /**
+     * Returns the first Entry in the TreeMap (according to the TreeMap's key-sort
+     * function). Returns null if the TreeMap is empty.
+     */
+    final Entry<K, V> getFirstEntry() {
+	Entry<K, V> p = root;
+	if (p != null)
+	    while (p.left != null)
+		p = p.left;
+	return p;
+    }
+
+    /**
+     * Returns the last Entry in the TreeMap (according to the TreeMap's key-sort
+     * function). Returns null if the TreeMap is empty.
+     */
+    final Entry<K, V> getLastEntry() {
+	Entry<K, V> p = root;
+	if (p != null)
+	    while (p.right != null)
+		p = p.right;
+	return p;
+    }
+
+    /**
+     * Returns the successor of the specified Entry, or null if no such.
+     */
+    static <K, V> Entry<K, V> successor(Entry<K, V> t) {
+	if (t == null)
+	    return null;
+	else if (t.right != null) {
+	    Entry<K, V> p = t.right;
+	    while (p.left != null)
+		p = p.left;
+	    return p;
+	} else {
+	    Entry<K, V> p = t.parent;
+	    Entry<K, V> ch = t;
+	    while (p != null && ch == p.right) {
+		ch = p;
+		p = p.parent;
+	    }
+	    return p;
+	}
+    }
+
+    /**
+     * Returns the predecessor of the specified Entry, or null if no such.
+     */
+    static <K, V> Entry<K, V> predecessor(Entry<K, V> t) {
+	if (t == null)
+	    return null;
+	else if (t.left != null) {
+	    Entry<K, V> p = t.left;
+	    while (p.right != null)
+		p = p.right;
+	    return p;
+	} else {
+	    Entry<K, V> p = t.parent;
+	    Entry<K, V> ch = t;
+	    while (p != null && ch == p.left) {
+		ch = p;
+		p = p.parent;
+	    }
+	    return p;
+	}
+    }
+
+    /**
+     * Return SimpleImmutableEntry for entry, or null if null
+     */
+    static <K, V> Map.Entry<K, V> exportEntry(AVLTreeMap.Entry<K, V> e) {
+	return (e == null) ? null : new AbstractMap.SimpleImmutableEntry<>(e);
+    }
+
+    /**
+     * Return key for entry, or null if null
+     */
+    static <K, V> K keyOrNull(AVLTreeMap.Entry<K, V> e) {
+	return (e == null) ? null : e.key;
+    }
+
+    // NavigableMap API methods
+
+    /**
+     * @since 1.6
+     */
+    public Map.Entry<K, V> firstEntry() {
+	return exportEntry(getFirstEntry());
+    }
+
+    /**
+     * @since 1.6
+     */
+    public Map.Entry<K, V> lastEntry() {
+	return exportEntry(getLastEntry());
+    }
+
+    /**
+     * @since 1.6
+     */
+    public Map.Entry<K, V> pollFirstEntry() {
+	Entry<K, V> p = getFirstEntry();
+	Map.Entry<K, V> result = exportEntry(p);
+	if (p != null)
+	    deleteEntry(p);
+	return result;
+    }
+
+    /**
+     * @since 1.6
+     */
+    public Map.Entry<K, V> pollLastEntry() {
+	Entry<K, V> p = getLastEntry();
+	Map.Entry<K, V> result = exportEntry(p);
+	if (p != null)
+	    deleteEntry(p);
+	return result;
+    }
+
+    /**
+     * Gets the entry corresponding to the specified key; if no such entry exists,
+     * returns the entry for the least key greater than the specified key; if no
+     * such entry exists (i.e., the greatest key in the Tree is less than the
+     * specified key), returns {@code null}.
+     */
+    final Entry<K, V> getCeilingEntry(K key) {
+	Entry<K, V> p = root;
+	while (p != null) {
+	    int cmp = compare(key, p.key);
+	    if (cmp < 0) {
+		if (p.left != null)
+		    p = p.left;
+		else
+		    return p;
+	    } else if (cmp > 0) {
+		if (p.right != null) {
+		    p = p.right;
+		} else {
+		    Entry<K, V> parent = p.parent;
+		    Entry<K, V> ch = p;
+		    while (parent != null && ch == parent.right) {
+			ch = parent;
+			parent = parent.parent;
+		    }
+		    return parent;
+		}
+	    } else
+		return p;
+	}
+	return null;
+    }
+
+    /**
+     * Gets the entry corresponding to the specified key; if no such entry exists,
+     * returns the entry for the greatest key less than the specified key; if no
+     * such entry exists, returns {@code null}.
+     */
+    final Entry<K, V> getFloorEntry(K key) {
+	Entry<K, V> p = root;
+	while (p != null) {
+	    int cmp = compare(key, p.key);
+	    if (cmp > 0) {
+		if (p.right != null)
+		    p = p.right;
+		else
+		    return p;
+	    } else if (cmp < 0) {
+		if (p.left != null) {
+		    p = p.left;
+		} else {
+		    Entry<K, V> parent = p.parent;
+		    Entry<K, V> ch = p;
+		    while (parent != null && ch == parent.left) {
+			ch = parent;
+			parent = parent.parent;
+		    }
+		    return parent;
+		}
+	    } else
+		return p;
+
+	}
+	return null;
+    }
+
+    /**
+     * Gets the entry for the least key greater than the specified key; if no such
+     * entry exists, returns the entry for the least key greater than the specified
+     * key; if no such entry exists returns {@code null}.
+     */
+    final Entry<K, V> getHigherEntry(K key) {
+	Entry<K, V> p = root;
+	while (p != null) {
+	    int cmp = compare(key, p.key);
+	    if (cmp < 0) {
+		if (p.left != null)
+		    p = p.left;
+		else
+		    return p;
+	    } else {
+		if (p.right != null) {
+		    p = p.right;
+		} else {
+		    Entry<K, V> parent = p.parent;
+		    Entry<K, V> ch = p;
+		    while (parent != null && ch == parent.right) {
+			ch = parent;
+			parent = parent.parent;
+		    }
+		    return parent;
+		}
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Returns the entry for the greatest key less than the specified key; if no
+     * such entry exists (i.e., the least key in the Tree is greater than the
+     * specified key), returns {@code null}.
+     */
+    final Entry<K, V> getLowerEntry(K key) {
+	Entry<K, V> p = root;
+	while (p != null) {
+	    int cmp = compare(key, p.key);
+	    if (cmp > 0) {
+		if (p.right != null)
+		    p = p.right;
+		else
+		    return p;
+	    } else {
+		if (p.left != null) {
+		    p = p.left;
+		} else {
+		    Entry<K, V> parent = p.parent;
+		    Entry<K, V> ch = p;
+		    while (parent != null && ch == parent.left) {
+			ch = parent;
+			parent = parent.parent;
+		    }
+		    return parent;
+		}
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * @throws ClassCastException {@inheritDoc}
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     * @since 1.6
+     */
+    public Map.Entry<K, V> lowerEntry(K key) {
+	return exportEntry(getLowerEntry(key));
+    }
+
+    /**
+     * @throws ClassCastException {@inheritDoc}
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     * @since 1.6
+     */
+    public K lowerKey(K key) {
+	return keyOrNull(getLowerEntry(key));
+    }
+
+    /**
+     * @throws ClassCastException {@inheritDoc}
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     * @since 1.6
+     */
+    public Map.Entry<K, V> floorEntry(K key) {
+	return exportEntry(getFloorEntry(key));
+    }
+
+    /**
+     * @throws ClassCastException {@inheritDoc}
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     * @since 1.6
+     */
+    public K floorKey(K key) {
+	return keyOrNull(getFloorEntry(key));
+    }
+
+    /**
+     * @throws ClassCastException {@inheritDoc}
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     * @since 1.6
+     */
+    public Map.Entry<K, V> ceilingEntry(K key) {
+	return exportEntry(getCeilingEntry(key));
+    }
+
+    /**
+     * @throws ClassCastException
+     *             {@inheritDoc}
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     * @since 1.6
+     */
+    public K ceilingKey(K key) {
+	return keyOrNull(getCeilingEntry(key));
+    }
+
+    /**
+     * @throws ClassCastException {@inheritDoc}
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     * @since 1.6
+     */
+    public Map.Entry<K, V> higherEntry(K key) {
+	return exportEntry(getHigherEntry(key));
+    }
+
+    /**
+     * @throws ClassCastException {@inheritDoc}
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     * @since 1.6
+     */
+    public K higherKey(K key) {
+	return keyOrNull(getHigherEntry(key));
+    }
+
+    // SubMaps
+
+    /**
+     * Dummy value serving as unmatchable fence key for unbounded SubMapIterators
+     */
+    private static final Object UNBOUNDED = new Object();
+
+    /**
+     * A range of the backing tree. Nothing is copied, every operation is relayed to
+     * the backing map after a bounds check and iteration walks successor links
+     * between the two fence entries.
+     */
+    abstract static class NavigableSubMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+	/**
+	 * The backing map.
+	 */
+	final AVLTreeMap<K, V> m;
+
+	/**
+	 * Endpoints are represented as triples (fromStart, lo, loInclusive) and
+	 * (toEnd, hi, hiInclusive). If fromStart is true, then the low (absolute)
+	 * bound is the start of the backing map, and the other values are ignored.
+	 * Otherwise, if loInclusive is true, lo is the inclusive bound, else lo is
+	 * the exclusive bound. Similarly for the upper bound.
+	 */
+	final K lo, hi;
+	final boolean fromStart, toEnd;
+	final boolean loInclusive, hiInclusive;
+
+	NavigableSubMap(AVLTreeMap<K, V> m, boolean fromStart, K lo, boolean loInclusive, boolean toEnd, K hi,
+		boolean hiInclusive) {
+	    if (!fromStart && !toEnd) {
+		if (m.compare(lo, hi) > 0)
+		    throw new IllegalArgumentException("fromKey > toKey");
+	    } else {
+		if (!fromStart) // type check
+		    m.compare(lo, lo);
+		if (!toEnd)
+		    m.compare(hi, hi);
+	    }
+
+	    this.m = m;
+	    this.fromStart = fromStart;
+	    this.lo = lo;
+	    this.loInclusive = loInclusive;
+	    this.toEnd = toEnd;
+	    this.hi = hi;
+	    this.hiInclusive = hiInclusive;
+	}
+
+	// internal utilities
+
+	final boolean tooLow(Object key) {
+	    if (!fromStart) {
+		int c = m.compare(key, lo);
+		if (c < 0 || (c == 0 && !loInclusive))
+		    return true;
+	    }
+	    return false;
+	}
+
+	final boolean tooHigh(Object key) {
+	    if (!toEnd) {
+		int c = m.compare(key, hi);
+		if (c > 0 || (c == 0 && !hiInclusive))
+		    return true;
+	    }
+	    return false;
+	}
+
+	final boolean inRange(Object key) {
+	    return !tooLow(key) && !tooHigh(key);
+	}
+
+	final boolean inClosedRange(Object key) {
+	    return (fromStart || m.compare(key, lo) >= 0) && (toEnd || m.compare(hi, key) >= 0);
+	}
+
+	final boolean inRange(Object key, boolean inclusive) {
+	    return inclusive ? inRange(key) : inClosedRange(key);
+	}
+
+	/*
+	 * Absolute versions of relation operations. Subclasses map to these using
+	 * like-named "sub" versions that invert senses for descending maps
+	 */
+
+	final AVLTreeMap.Entry<K, V> absLowest() {
+	    AVLTreeMap.Entry<K, V> e = (fromStart ? m.getFirstEntry()
+		    : (loInclusive ? m.getCeilingEntry(lo) : m.getHigherEntry(lo)));
+	    return (e == null || tooHigh(e.key)) ? null : e;
+	}
+
+	final AVLTreeMap.Entry<K, V> absHighest() {
+	    AVLTreeMap.Entry<K, V> e = (toEnd ? m.getLastEntry()
+		    : (hiInclusive ? m.getFloorEntry(hi) : m.getLowerEntry(hi)));
+	    return (e == null || tooLow(e.key)) ? null : e;
+	}
+
+	final AVLTreeMap.Entry<K, V> absCeiling(K key) {
+	    if (tooLow(key))
+		return absLowest();
+	    AVLTreeMap.Entry<K, V> e = m.getCeilingEntry(key);
+	    return (e == null || tooHigh(e.key)) ? null : e;
+	}
+
+	final AVLTreeMap.Entry<K, V> absHigher(K key) {
+	    if (tooLow(key))
+		return absLowest();
+	    AVLTreeMap.Entry<K, V> e = m.getHigherEntry(key);
+	    return (e == null || tooHigh(e.key)) ? null : e;
+	}
+
+	final AVLTreeMap.Entry<K, V> absFloor(K key) {
+	    if (tooHigh(key))
+		return absHighest();
+	    AVLTreeMap.Entry<K, V> e = m.getFloorEntry(key);
+	    return (e == null || tooLow(e.key)) ? null : e;
+	}
+
+	final AVLTreeMap.Entry<K, V> absLower(K key) {
+	    if (tooHigh(key))
+		return absHighest();
+	    AVLTreeMap.Entry<K, V> e = m.getLowerEntry(key);
+	    return (e == null || tooLow(e.key)) ? null : e;
+	}
+
+	/** Returns the absolute high fence for ascending traversal */
+	final AVLTreeMap.Entry<K, V> absHighFence() {
+	    return (toEnd ? null : (hiInclusive ? m.getHigherEntry(hi) : m.getCeilingEntry(hi)));
+	}
+
+	/** Return the absolute low fence for descending traversal */
+	final AVLTreeMap.Entry<K, V> absLowFence() {
+	    return (fromStart ? null : (loInclusive ? m.getLowerEntry(lo) : m.getFloorEntry(lo)));
+	}
+
+	// Abstract methods defined in ascending vs descending classes
+	// These relay to the appropriate absolute versions
+
+	abstract AVLTreeMap.Entry<K, V> subLowest();
+
+	abstract AVLTreeMap.Entry<K, V> subHighest();
+
+	abstract AVLTreeMap.Entry<K, V> subCeiling(K key);
+
+	abstract AVLTreeMap.Entry<K, V> subHigher(K key);
+
+	abstract AVLTreeMap.Entry<K, V> subFloor(K key);
+
+	abstract AVLTreeMap.Entry<K, V> subLower(K key);
+
+	/** Returns ascending iterator from the perspective of this submap */
+	abstract Iterator<K> keyIterator();
+
+	/** Returns descending iterator from the perspective of this submap */
+	abstract Iterator<K> descendingKeyIterator();
+
+	abstract Spliterator<K> keySpliterator();
+
+	// public methods
+
+	public boolean isEmpty() {
+	    return (fromStart && toEnd) ? m.isEmpty() : entrySet().isEmpty();
+	}
+
+	public int size() {
+	    return (fromStart && toEnd) ? m.size() : entrySet().size();
+	}
+
+	public final boolean containsKey(Object key) {
+	    return inRange(key) && m.containsKey(key);
+	}
+
+	public final V put(K key, V value) {
+	    if (!inRange(key))
+		throw new IllegalArgumentException("key out of range");
+	    return m.put(key, value);
+	}
+
+	public final V get(Object key) {
+	    return !inRange(key) ? null : m.get(key);
+	}
+
+	public final V remove(Object key) {
+	    return !inRange(key) ? null : m.remove(key);
+	}
+
+	public final Map.Entry<K, V> ceilingEntry(K key) {
+	    return exportEntry(subCeiling(key));
+	}
+
+	public final K ceilingKey(K key) {
+	    return keyOrNull(subCeiling(key));
+	}
+
+	public final Map.Entry<K, V> higherEntry(K key) {
+	    return exportEntry(subHigher(key));
+	}
+
+	public final K higherKey(K key) {
+	    return keyOrNull(subHigher(key));
+	}
+
+	public final Map.Entry<K, V> floorEntry(K key) {
+	    return exportEntry(subFloor(key));
+	}
+
+	public final K floorKey(K key) {
+	    return keyOrNull(subFloor(key));
+	}
+
+	public final Map.Entry<K, V> lowerEntry(K key) {
+	    return exportEntry(subLower(key));
+	}
+
+	public final K lowerKey(K key) {
+	    return keyOrNull(subLower(key));
+	}
+
+	public final K firstKey() {
+	    return key(subLowest());
+	}
+
+	public final K lastKey() {
+	    return key(subHighest());
+	}
+
+	public final Map.Entry<K, V> firstEntry() {
+	    return exportEntry(subLowest());
+	}
+
+	public final Map.Entry<K, V> lastEntry() {
+	    return exportEntry(subHighest());
+	}
+
+	public final Map.Entry<K, V> pollFirstEntry() {
+	    AVLTreeMap.Entry<K, V> e = subLowest();
+	    Map.Entry<K, V> result = exportEntry(e);
+	    if (e != null)
+		m.deleteEntry(e);
+	    return result;
+	}
+
+	public final Map.Entry<K, V> pollLastEntry() {
+	    AVLTreeMap.Entry<K, V> e = subHighest();
+	    Map.Entry<K, V> result = exportEntry(e);
+	    if (e != null)
+		m.deleteEntry(e);
+	    return result;
+	}
+
+	// Views
+	transient NavigableMap<K, V> descendingMapView = null;
+	transient EntrySetView entrySetView = null;
+	transient KeySet<K> navigableKeySetView = null;
+
+	public final NavigableSet<K> navigableKeySet() {
+	    KeySet<K> nksv = navigableKeySetView;
+	    return (nksv != null) ? nksv : (navigableKeySetView = new AVLTreeMap.KeySet<>(this));
+	}
+
+	public final Set<K> keySet() {
+	    return navigableKeySet();
+	}
+
+	public NavigableSet<K> descendingKeySet() {
+	    return descendingMap().navigableKeySet();
+	}
+
+	public final SortedMap<K, V> subMap(K fromKey, K toKey) {
+	    return subMap(fromKey, true, toKey, false);
+	}
+
+	public final SortedMap<K, V> headMap(K toKey) {
+	    return headMap(toKey, false);
+	}
+
+	public final SortedMap<K, V> tailMap(K fromKey) {
+	    return tailMap(fromKey, true);
+	}
+
+	// View classes
+
+	abstract class EntrySetView extends AbstractSet<Map.Entry<K, V>> {
+	    private transient int size = -1, sizeModCount;
+
+	    public int size() {
+		if (fromStart && toEnd)
+		    return m.size();
+		if (size == -1 || sizeModCount != m.modCount) {
+		    sizeModCount = m.modCount;
+		    size = 0;
+		    Iterator<?> i = iterator();
+		    while (i.hasNext()) {
+			size++;
+			i.next();
+		    }
+		}
+		return size;
+	    }
+
+	    public boolean isEmpty() {
+		AVLTreeMap.Entry<K, V> n = absLowest();
+		return n == null || tooHigh(n.key);
+	    }
+
+	    public boolean contains(Object o) {
+		if (!(o instanceof Map.Entry))
+		    return false;
+		Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+		Object key = entry.getKey();
+		if (!inRange(key))
+		    return false;
+		AVLTreeMap.Entry<?, ?> node = m.getEntry(key);
+		return node != null && valEquals(node.getValue(), entry.getValue());
+	    }
+
+	    public boolean remove(Object o) {
+		if (!(o instanceof Map.Entry))
+		    return false;
+		Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+		Object key = entry.getKey();
+		if (!inRange(key))
+		    return false;
+		AVLTreeMap.Entry<K, V> node = m.getEntry(key);
+		if (node != null && valEquals(node.getValue(), entry.getValue())) {
+		    m.deleteEntry(node);
+		    return true;
+		}
+		return false;
+	    }
+	}
+
+	/**
+	 * Iterators for SubMaps
+	 */
+	abstract class SubMapIterator<T> implements Iterator<T> {
+	    AVLTreeMap.Entry<K, V> lastReturned;
+	    AVLTreeMap.Entry<K, V> next;
+	    final Object fenceKey;
+	    int expectedModCount;
+
+	    SubMapIterator(AVLTreeMap.Entry<K, V> first, AVLTreeMap.Entry<K, V> fence) {
+		expectedModCount = m.modCount;
+		lastReturned = null;
+		next = first;
+		fenceKey = fence == null ? UNBOUNDED : fence.key;
+	    }
+
+	    public final boolean hasNext() {
+		return next != null && next.key != fenceKey;
+	    }
+
+	    final AVLTreeMap.Entry<K, V> nextEntry() {
+		AVLTreeMap.Entry<K, V> e = next;
+		if (e == null || e.key == fenceKey)
+		    throw new NoSuchElementException();
+		if (m.modCount != expectedModCount)
+		    throw new ConcurrentModificationException();
+		next = successor(e);
+		lastReturned = e;
+		return e;
+	    }
+
+	    final AVLTreeMap.Entry<K, V> prevEntry() {
+		AVLTreeMap.Entry<K, V> e = next;
+		if (e == null || e.key == fenceKey)
+		    throw new NoSuchElementException();
+		if (m.modCount != expectedModCount)
+		    throw new ConcurrentModificationException();
+		next = predecessor(e);
+		lastReturned = e;
+		return e;
+	    }
+
+	    final void removeAscending() {
+		if (lastReturned == null)
+		    throw new IllegalStateException();
+		if (m.modCount != expectedModCount)
+		    throw new ConcurrentModificationException();
+		// deleted entries are replaced by their successors
+		if (lastReturned.left != null && lastReturned.right != null)
+		    next = lastReturned;
+		m.deleteEntry(lastReturned);
+		lastReturned = null;
+		expectedModCount = m.modCount;
+	    }
+
+	    final void removeDescending() {
+		if (lastReturned == null)
+		    throw new IllegalStateException();
+		if (m.modCount != expectedModCount)
+		    throw new ConcurrentModificationException();
+		m.deleteEntry(lastReturned);
+		lastReturned = null;
+		expectedModCount = m.modCount;
+	    }
+	}
+
+	final class SubMapEntryIterator extends SubMapIterator<Map.Entry<K, V>> {
+	    SubMapEntryIterator(AVLTreeMap.Entry<K, V> first, AVLTreeMap.Entry<K, V> fence) {
+		super(first, fence);
+	    }
+
+	    public Map.Entry<K, V> next() {
+		return nextEntry();
+	    }
+
+	    public void remove() {
+		removeAscending();
+	    }
+	}
+
+	final class DescendingSubMapEntryIterator extends SubMapIterator<Map.Entry<K, V>> {
+	    DescendingSubMapEntryIterator(AVLTreeMap.Entry<K, V> last, AVLTreeMap.Entry<K, V> fence) {
+		super(last, fence);
+	    }
+
+	    public Map.Entry<K, V> next() {
+		return prevEntry();
+	    }
+
+	    public void remove() {
+		removeDescending();
+	    }
+	}
+
+	final class SubMapKeyIterator extends SubMapIterator<K> implements Spliterator<K> {
+	    SubMapKeyIterator(AVLTreeMap.Entry<K, V> first, AVLTreeMap.Entry<K, V> fence) {
+		super(first, fence);
+	    }
+
+	    public K next() {
+		return nextEntry().key;
+	    }
+
+	    public void remove() {
+		removeAscending();
+	    }
+
+	    public Spliterator<K> trySplit() {
+		return null;
+	    }
+
+	    public void forEachRemaining(Consumer<? super K> action) {
+		while (hasNext())
+		    action.accept(next());
+	    }
+
+	    public boolean tryAdvance(Consumer<? super K> action) {
+		if (hasNext()) {
+		    action.accept(next());
+		    return true;
+		}
+		return false;
+	    }
+
+	    public long estimateSize() {
+		return Long.MAX_VALUE;
+	    }
+
+	    public int characteristics() {
+		return Spliterator.DISTINCT | Spliterator.ORDERED | Spliterator.SORTED;
+	    }
+
+	    public final Comparator<? super K> getComparator() {
+		return NavigableSubMap.this.comparator();
+	    }
+	}
+
+	final class DescendingSubMapKeyIterator extends SubMapIterator<K> implements Spliterator<K> {
+	    DescendingSubMapKeyIterator(AVLTreeMap.Entry<K, V> last, AVLTreeMap.Entry<K, V> fence) {
+		super(last, fence);
+	    }
+
+	    public K next() {
+		return prevEntry().key;
+	    }
+
+	    public void remove() {
+		removeDescending();
+	    }
+
+	    public Spliterator<K> trySplit() {
+		return null;
+	    }
+
+	    public void forEachRemaining(Consumer<? super K> action) {
+		while (hasNext())
+		    action.accept(next());
+	    }
+
+	    public boolean tryAdvance(Consumer<? super K> action) {
+		if (hasNext()) {
+		    action.accept(next());
+		    return true;
+		}
+		return false;
+	    }
+
+	    public long estimateSize() {
+		return Long.MAX_VALUE;
+	    }
+
+	    public int characteristics() {
+		return Spliterator.DISTINCT | Spliterator.ORDERED;
+	    }
+	}
+    }
+
+    static final class AscendingSubMap<K, V> extends NavigableSubMap<K, V> {
+	AscendingSubMap(AVLTreeMap<K, V> m, boolean fromStart, K lo, boolean loInclusive, boolean toEnd, K hi,
+		boolean hiInclusive) {
+	    super(m, fromStart, lo, loInclusive, toEnd, hi, hiInclusive);
+	}
+
+	public Comparator<? super K> comparator() {
+	    return m.comparator();
+	}
+
+	public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+	    if (!inRange(fromKey, fromInclusive))
+		throw new IllegalArgumentException("fromKey out of range");
+	    if (!inRange(toKey, toInclusive))
+		throw new IllegalArgumentException("toKey out of range");
+	    return new AscendingSubMap<>(m, false, fromKey, fromInclusive, false, toKey, toInclusive);
+	}
+
+	public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+	    if (!inRange(toKey, inclusive))
+		throw new IllegalArgumentException("toKey out of range");
+	    return new AscendingSubMap<>(m, fromStart, lo, loInclusive, false, toKey, inclusive);
+	}
+
+	public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+	    if (!inRange(fromKey, inclusive))
+		throw new IllegalArgumentException("fromKey out of range");
+	    return new AscendingSubMap<>(m, false, fromKey, inclusive, toEnd, hi, hiInclusive);
+	}
+
+	public NavigableMap<K, V> descendingMap() {
+	    NavigableMap<K, V> mv = descendingMapView;
+	    return (mv != null) ? mv
+		    : (descendingMapView = new DescendingSubMap<>(m, fromStart, lo, loInclusive, toEnd, hi,
+			    hiInclusive));
+	}
+
+	Iterator<K> keyIterator() {
+	    return new SubMapKeyIterator(absLowest(), absHighFence());
+	}
+
+	Iterator<K> descendingKeyIterator() {
+	    return new DescendingSubMapKeyIterator(absHighest(), absLowFence());
+	}
+
+	Spliterator<K> keySpliterator() {
+	    return new SubMapKeyIterator(absLowest(), absHighFence());
+	}
+
+	final class AscendingEntrySetView extends EntrySetView {
+	    public Iterator<Map.Entry<K, V>> iterator() {
+		return new SubMapEntryIterator(absLowest(), absHighFence());
+	    }
+	}
+
+	public Set<Map.Entry<K, V>> entrySet() {
+	    EntrySetView es = entrySetView;
+	    return (es != null) ? es : (entrySetView = new AscendingEntrySetView());
+	}
+
+	AVLTreeMap.Entry<K, V> subLowest() {
+	    return absLowest();
+	}
+
+	AVLTreeMap.Entry<K, V> subHighest() {
+	    return absHighest();
+	}
+
+	AVLTreeMap.Entry<K, V> subCeiling(K key) {
+	    return absCeiling(key);
+	}
+
+	AVLTreeMap.Entry<K, V> subHigher(K key) {
+	    return absHigher(key);
+	}
+
+	AVLTreeMap.Entry<K, V> subFloor(K key) {
+	    return absFloor(key);
+	}
+
+	AVLTreeMap.Entry<K, V> subLower(K key) {
+	    return absLower(key);
+	}
+    }
+
+    static final class DescendingSubMap<K, V> extends NavigableSubMap<K, V> {
+	DescendingSubMap(AVLTreeMap<K, V> m, boolean fromStart, K lo, boolean loInclusive, boolean toEnd, K hi,
+		boolean hiInclusive) {
+	    super(m, fromStart, lo, loInclusive, toEnd, hi, hiInclusive);
+	}
+
+	private final Comparator<? super K> reverseComparator = Collections.reverseOrder(m.comparator);
+
+	public Comparator<? super K> comparator() {
+	    return reverseComparator;
+	}
+
+	public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+	    if (!inRange(fromKey, fromInclusive))
+		throw new IllegalArgumentException("fromKey out of range");
+	    if (!inRange(toKey, toInclusive))
+		throw new IllegalArgumentException("toKey out of range");
+	    return new DescendingSubMap<>(m, false, toKey, toInclusive, false, fromKey, fromInclusive);
+	}
+
+	public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+	    if (!inRange(toKey, inclusive))
+		throw new IllegalArgumentException("toKey out of range");
+	    return new DescendingSubMap<>(m, false, toKey, inclusive, toEnd, hi, hiInclusive);
+	}
+
+	public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+	    if (!inRange(fromKey, inclusive))
+		throw new IllegalArgumentException("fromKey out of range");
+	    return new DescendingSubMap<>(m, fromStart, lo, loInclusive, false, fromKey, inclusive);
+	}
+
+	public NavigableMap<K, V> descendingMap() {
+	    NavigableMap<K, V> mv = descendingMapView;
+	    return (mv != null) ? mv
+		    : (descendingMapView = new AscendingSubMap<>(m, fromStart, lo, loInclusive, toEnd, hi,
+			    hiInclusive));
+	}
+
+	Iterator<K> keyIterator() {
+	    return new DescendingSubMapKeyIterator(absHighest(), absLowFence());
+	}
+
+	Iterator<K> descendingKeyIterator() {
+	    return new SubMapKeyIterator(absLowest(), absHighFence());
+	}
+
+	Spliterator<K> keySpliterator() {
+	    return new DescendingSubMapKeyIterator(absHighest(), absLowFence());
+	}
+
+	final class DescendingEntrySetView extends EntrySetView {
+	    public Iterator<Map.Entry<K, V>> iterator() {
+		return new DescendingSubMapEntryIterator(absHighest(), absLowFence());
+	    }
+	}
+
+	public Set<Map.Entry<K, V>> entrySet() {
+	    EntrySetView es = entrySetView;
+	    return (es != null) ? es : (entrySetView = new DescendingEntrySetView());
+	}
+
+	AVLTreeMap.Entry<K, V> subLowest() {
+	    return absHighest();
+	}
+
+	AVLTreeMap.Entry<K, V> subHighest() {
+	    return absLowest();
+	}
+
+	AVLTreeMap.Entry<K, V> subCeiling(K key) {
+	    return absFloor(key);
+	}
+
+	AVLTreeMap.Entry<K, V> subHigher(K key) {
+	    return absLower(key);
+	}
+
+	AVLTreeMap.Entry<K, V> subFloor(K key) {
+	    return absCeiling(key);
+	}
+
+	AVLTreeMap.Entry<K, V> subLower(K key) {
+	    return absHigher(key);
+	}
+    }
+
+    /**
+     * Base class for spliterators. Iteration starts at a given origin and continues
+     * up to but not including a given fence (or null for end). At top-level, for
+     * ascending cases, the first split uses the root as left-fence/right-origin.
+     * From there, right-hand splits replace the current fence with its left child,
+     * also serving as origin for the split-off spliterator. Left-hands are
+     * symmetric. Descending versions place the origin at the end and invert
+     * ascending split rules.
+     * <p>
+     * Each split hands off a whole subtree and sibling subtrees of a balanced tree
+     * differ in height by at most one, so halving the estimate on every split
+     * keeps the parts close to even. The estimate is exact only at top-level,
+     * which is the only spliterator reporting SIZED. Split-off parts do not report
+     * SUBSIZED because nodes carry no subtree counts to make their sizes exact.
+     * <p>
+     * To boostrap initialization, external constructors use negative size
+     * estimates: -1 for ascend, -2 for descend.
+     */
+    static class TreeMapSpliterator<K, V> {
+	final AVLTreeMap<K, V> tree;
+	AVLTreeMap.Entry<K, V> current; // traverser; initially first node in range
+	AVLTreeMap.Entry<K, V> fence; // one past last, or null
+	int side; // 0: top, -1: is a left split, +1: right
+	int est; // size estimate (exact only for top-level)
+	int expectedModCount; // for CME checks
+
+	TreeMapSpliterator(AVLTreeMap<K, V> tree, AVLTreeMap.Entry<K, V> origin, AVLTreeMap.Entry<K, V> fence, int side, int est,
+		int expectedModCount) {
+	    this.tree = tree;
+	    this.current = origin;
+	    this.fence = fence;
+	    this.side = side;
+	    this.est = est;
+	    this.expectedModCount = expectedModCount;
+	}
+
+	final int getEstimate() { // force initialization
+	    int s;
+	    AVLTreeMap<K, V> t;
+	    if ((s = est) < 0) {
+		if ((t = tree) != null) {
+		    current = (s == -1) ? t.getFirstEntry() : t.getLastEntry();
+		    s = est = t.size;
+		    expectedModCount = t.modCount;
+		} else
+		    s = est = 0;
+	    }
+	    return s;
+	}
+
+	public final long estimateSize() {
+	    return (long) getEstimate();
+	}
+    }
+
+    static final class KeySpliterator<K, V> extends TreeMapSpliterator<K, V> implements Spliterator<K> {
+	KeySpliterator(AVLTreeMap<K, V> tree, AVLTreeMap.Entry<K, V> origin, AVLTreeMap.Entry<K, V> fence, int side, int est,
+		int expectedModCount) {
+	    super(tree, origin, fence, side, est, expectedModCount);
+	}
+
+	public KeySpliterator<K, V> trySplit() {
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    int d = side;
+	    AVLTreeMap.Entry<K, V> e = current, f = fence;
+	    AVLTreeMap.Entry<K, V> s = ((e == null || e == f) ? null // empty
+		    : (d == 0) ? tree.root // was top
+		    : (d > 0) ? e.right // was right
+		    : (d < 0 && f != null) ? f.left // was left
+		    : null);
+	    if (s != null && s != e && s != f && tree.compare(e.key, s.key) < 0) { // e not already past s
+		side = 1;
+		return new KeySpliterator<>(tree, e, current = s, -1, est >>>= 1, expectedModCount);
+	    }
+	    return null;
+	}
+
+	public void forEachRemaining(Consumer<? super K> action) {
+	    if (action == null)
+		throw new NullPointerException();
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    AVLTreeMap.Entry<K, V> f = fence, e, p, pl;
+	    if ((e = current) != null && e != f) {
+		current = f; // exhaust
+		do {
+		    action.accept(e.key);
+		    if ((p = e.right) != null) {
+			while ((pl = p.left) != null)
+			    p = pl;
+		    } else {
+			while ((p = e.parent) != null && e == p.right)
+			    e = p;
+		    }
+		} while ((e = p) != null && e != f);
+		if (tree.modCount != expectedModCount)
+		    throw new ConcurrentModificationException();
+	    }
+	}
+
+	public boolean tryAdvance(Consumer<? super K> action) {
+	    AVLTreeMap.Entry<K, V> e;
+	    if (action == null)
+		throw new NullPointerException();
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    if ((e = current) == null || e == fence)
+		return false;
+	    current = successor(e);
+	    action.accept(e.key);
+	    if (tree.modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    return true;
+	}
+
+	public int characteristics() {
+	    return (side == 0 ? Spliterator.SIZED : 0) | Spliterator.DISTINCT | Spliterator.SORTED
+		    | Spliterator.ORDERED;
+	}
+
+	public final Comparator<? super K> getComparator() {
+	    return tree.comparator;
+	}
+    }
+
+    static final class DescendingKeySpliterator<K, V> extends TreeMapSpliterator<K, V> implements Spliterator<K> {
+	DescendingKeySpliterator(AVLTreeMap<K, V> tree, AVLTreeMap.Entry<K, V> origin, AVLTreeMap.Entry<K, V> fence, int side,
+		int est, int expectedModCount) {
+	    super(tree, origin, fence, side, est, expectedModCount);
+	}
+
+	public DescendingKeySpliterator<K, V> trySplit() {
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    int d = side;
+	    AVLTreeMap.Entry<K, V> e = current, f = fence;
+	    AVLTreeMap.Entry<K, V> s = ((e == null || e == f) ? null // empty
+		    : (d == 0) ? tree.root // was top
+		    : (d < 0) ? e.left // was left
+		    : (d > 0 && f != null) ? f.right // was right
+		    : null);
+	    if (s != null && s != e && s != f && tree.compare(e.key, s.key) > 0) { // e not already past s
+		side = 1;
+		return new DescendingKeySpliterator<>(tree, e, current = s, -1, est >>>= 1, expectedModCount);
+	    }
+	    return null;
+	}
+
+	public void forEachRemaining(Consumer<? super K> action) {
+	    if (action == null)
+		throw new NullPointerException();
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    AVLTreeMap.Entry<K, V> f = fence, e, p, pr;
+	    if ((e = current) != null && e != f) {
+		current = f; // exhaust
+		do {
+		    action.accept(e.key);
+		    if ((p = e.left) != null) {
+			while ((pr = p.right) != null)
+			    p = pr;
+		    } else {
+			while ((p = e.parent) != null && e == p.left)
+			    e = p;
+		    }
+		} while ((e = p) != null && e != f);
+		if (tree.modCount != expectedModCount)
+		    throw new ConcurrentModificationException();
+	    }
+	}
+
+	public boolean tryAdvance(Consumer<? super K> action) {
+	    AVLTreeMap.Entry<K, V> e;
+	    if (action == null)
+		throw new NullPointerException();
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    if ((e = current) == null || e == fence)
+		return false;
+	    current = predecessor(e);
+	    action.accept(e.key);
+	    if (tree.modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    return true;
+	}
+
+	public int characteristics() {
+	    return (side == 0 ? Spliterator.SIZED : 0) | Spliterator.DISTINCT | Spliterator.ORDERED;
+	}
+    }
+
+    static final class ValueSpliterator<K, V> extends TreeMapSpliterator<K, V> implements Spliterator<V> {
+	ValueSpliterator(AVLTreeMap<K, V> tree, AVLTreeMap.Entry<K, V> origin, AVLTreeMap.Entry<K, V> fence, int side, int est,
+		int expectedModCount) {
+	    super(tree, origin, fence, side, est, expectedModCount);
+	}
+
+	public ValueSpliterator<K, V> trySplit() {
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    int d = side;
+	    AVLTreeMap.Entry<K, V> e = current, f = fence;
+	    AVLTreeMap.Entry<K, V> s = ((e == null || e == f) ? null // empty
+		    : (d == 0) ? tree.root // was top
+		    : (d > 0) ? e.right // was right
+		    : (d < 0 && f != null) ? f.left // was left
+		    : null);
+	    if (s != null && s != e && s != f && tree.compare(e.key, s.key) < 0) { // e not already past s
+		side = 1;
+		return new ValueSpliterator<>(tree, e, current = s, -1, est >>>= 1, expectedModCount);
+	    }
+	    return null;
+	}
+
+	public void forEachRemaining(Consumer<? super V> action) {
+	    if (action == null)
+		throw new NullPointerException();
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    AVLTreeMap.Entry<K, V> f = fence, e, p, pl;
+	    if ((e = current) != null && e != f) {
+		current = f; // exhaust
+		do {
+		    action.accept(e.value);
+		    if ((p = e.right) != null) {
+			while ((pl = p.left) != null)
+			    p = pl;
+		    } else {
+			while ((p = e.parent) != null && e == p.right)
+			    e = p;
+		    }
+		} while ((e = p) != null && e != f);
+		if (tree.modCount != expectedModCount)
+		    throw new ConcurrentModificationException();
+	    }
+	}
+
+	public boolean tryAdvance(Consumer<? super V> action) {
+	    AVLTreeMap.Entry<K, V> e;
+	    if (action == null)
+		throw new NullPointerException();
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    if ((e = current) == null || e == fence)
+		return false;
+	    current = successor(e);
+	    action.accept(e.value);
+	    if (tree.modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    return true;
+	}
+
+	public int characteristics() {
+	    return (side == 0 ? Spliterator.SIZED : 0) | Spliterator.ORDERED;
+	}
+    }
+
+    static final class EntrySpliterator<K, V> extends TreeMapSpliterator<K, V>
+	    implements Spliterator<Map.Entry<K, V>> {
+	EntrySpliterator(AVLTreeMap<K, V> tree, AVLTreeMap.Entry<K, V> origin, AVLTreeMap.Entry<K, V> fence, int side, int est,
+		int expectedModCount) {
+	    super(tree, origin, fence, side, est, expectedModCount);
+	}
+
+	public EntrySpliterator<K, V> trySplit() {
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    int d = side;
+	    AVLTreeMap.Entry<K, V> e = current, f = fence;
+	    AVLTreeMap.Entry<K, V> s = ((e == null || e == f) ? null // empty
+		    : (d == 0) ? tree.root // was top
+		    : (d > 0) ? e.right // was right
+		    : (d < 0 && f != null) ? f.left // was left
+		    : null);
+	    if (s != null && s != e && s != f && tree.compare(e.key, s.key) < 0) { // e not already past s
+		side = 1;
+		return new EntrySpliterator<>(tree, e, current = s, -1, est >>>= 1, expectedModCount);
+	    }
+	    return null;
+	}
+
+	public void forEachRemaining(Consumer<? super Map.Entry<K, V>> action) {
+	    if (action == null)
+		throw new NullPointerException();
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    AVLTreeMap.Entry<K, V> f = fence, e, p, pl;
+	    if ((e = current) != null && e != f) {
+		current = f; // exhaust
+		do {
+		    action.accept(e);
+		    if ((p = e.right) != null) {
+			while ((pl = p.left) != null)
+			    p = pl;
+		    } else {
+			while ((p = e.parent) != null && e == p.right)
+			    e = p;
+		    }
+		} while ((e = p) != null && e != f);
+		if (tree.modCount != expectedModCount)
+		    throw new ConcurrentModificationException();
+	    }
+	}
+
+	public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+	    AVLTreeMap.Entry<K, V> e;
+	    if (action == null)
+		throw new NullPointerException();
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    if ((e = current) == null || e == fence)
+		return false;
+	    current = successor(e);
+	    action.accept(e);
+	    if (tree.modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    return true;
+	}
+
+	public int characteristics() {
+	    return (side == 0 ? Spliterator.SIZED : 0) | Spliterator.DISTINCT | Spliterator.SORTED
+		    | Spliterator.ORDERED;
+	}
+
+	@Override
+	public Comparator<Map.Entry<K, V>> getComparator() {
+	    // Adapt or create a key-based comparator
+	    if (tree.comparator != null) {
+		return Map.Entry.comparingByKey(tree.comparator);
+	    } else {
+		return (Comparator<Map.Entry<K, V>> & java.io.Serializable) (e1, e2) -> {
+		    @SuppressWarnings("unchecked")
+		    Comparable<? super K> k1 = (Comparable<? super K>) e1.getKey();
+		    return k1.compareTo(e2.getKey());
+		};
+	    }
+	}
     }
 }
\ No newline at end of file
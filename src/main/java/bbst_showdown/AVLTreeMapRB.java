@@ -1,10 +1,17 @@
 package bbst_showdown;
 
+import java.util.AbstractCollection;
 import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 
 
 /**
@@ -15,8 +22,8 @@ import java.util.Set;
  * 
  * At the time I wrote it I found no other similar implementations.
  * 
- * TODO
- * I didn't code the delete method yet.  If you need it email me, minimum 1 day of work needed.
+ * Deletion demotes and rotates by the same rank-difference rules, so one bit per
+ * node is also enough to remove keys.
  * 
  * @author David McManamon
  *
@@ -85,8 +92,15 @@ public class AVLTreeMapRB<K, V> extends AbstractMap<K, V> {
         putAll(m);
     }
     
+    /**
+     * Returns the height of the tree, or -1 if it is empty, by following a
+     * child one rank below its parent down from the root.
+     */
     public int treeHeight() {
-	return treeHeight(root) - 1;
+	int height = -1;
+	for (Entry<K, V> p = root; p != null; p = p.left != null && p.left.deltaR == ONE ? p.left : p.right)
+	    height++;
+	return height;
     }
 
     protected int treeHeight(Entry<K, V> node) {
@@ -95,6 +109,14 @@ public class AVLTreeMapRB<K, V> extends AbstractMap<K, V> {
 	return (1 + Math.max(treeHeight(node.left), treeHeight(node.right)));
     }
     
+    /**
+     * Returns the height, average depth and depth histogram of the tree,
+     * walking every entry without recursion.
+     */
+    public TreeStatistics statistics() {
+	return TreeStatistics.of(root, e -> e.left, e -> e.right, e -> e.parent);
+    }
+
     public int rotations() {
 	return rotations;
     }
@@ -495,48 +517,141 @@ If the procedure increases the rank of a node x, so that it becomes equal to the
         if (replacement != null) {
             // Link replacement to parent
 	    replacement.parent = p.parent;
-	    Entry<K, V> mirror = null;
 	    if (p.parent == null) {
 		root = replacement;
+		replacement.deltaR = ONE;
 		return;
-	    } else if (p == p.parent.left) {
+	    }
+	    boolean left = p == p.parent.left;
+	    if (left)
 		p.parent.left = replacement;
-		mirror = p.parent.right;
-	    } else {
+	    else
 		p.parent.right = replacement;
-		mirror = p.parent.left;
-	    }
+	    // the replacement is a leaf taking the place of a node of rank 1,
+	    // so its rank difference grows from 1 to p's plus one
+	    replacement.deltaR = TWO;
 
 	    // Null out links so they are OK to use by fixAfterDeletion.
+	    boolean three = p.deltaR == TWO;
 	    p.left = p.right = p.parent = null;
-	    //TODO
-	    fixAfterDeletion(replacement.parent, mirror);
+	    fixAfterDeletion(replacement.parent, left, three);
         } else if (p.parent == null) { // return if we are the only node.
             root = null;
         } else { //  No children. Use self as phantom replacement and unlink.
-            // TODO check if null check necessary?
             Entry<K, V> fixPoint = p.parent;
-            @SuppressWarnings("unused")
-	    Entry<K, V> sibling = null;
-
-	    if (p == p.parent.left) {
-		p.parent.left = null;
-		sibling = fixPoint.right;
-	    } else if (p == p.parent.right) {
-		p.parent.right = null;
-		sibling = fixPoint.left;
-	    }
+	    boolean left = p == fixPoint.left;
+	    if (left)
+		fixPoint.left = null;
+	    else
+		fixPoint.right = null;
 	    p.parent = null;
-
-	    // TODO
-//	    if (mirror == null || (fixPoint.rank - p.rank >= 2) || (fixPoint.rank - mirror.rank) != 1 ) {
-		fixAfterDeletion(fixPoint, null);
-//	    }
+	    fixAfterDeletion(fixPoint, left, p.deltaR == TWO);
         }
     }
     
-    private void fixAfterDeletion(Entry<K, V> p, Entry<K,V> mirror) {
-	throw new RuntimeException();
+    /**
+     * Re-balances after the rank of p's left or right child, which may be
+     * null, dropped by one.  The child's rank difference is now two, already
+     * recorded in its deltaR bit, or three if it was two before.
+     * 
+     * A node whose children both have rank difference two is demoted, which
+     * may continue up the tree.  A child three ranks below its parent is fixed
+     * by a single or double rotation with its sibling, which only has to be
+     * repeated further up if the rotated subtree lost a rank.
+     */
+    private void fixAfterDeletion(Entry<K, V> p, boolean left, boolean three) {
+	while (true) {
+	    Entry<K, V> x, sibling;
+	    if (left) {
+		x = p.left;
+		sibling = p.right;
+	    } else {
+		x = p.right;
+		sibling = p.left;
+	    }
+	    
+	    if (!three) {
+		if (sibling != null && sibling.deltaR == ONE)
+		    return; // 2,1 node
+		// 2,2 node (a missing sibling means p is left a leaf): demote p
+		if (sibling != null)
+		    sibling.deltaR = ONE;
+		if (x != null)
+		    x.deltaR = ONE;
+	    } else if (left) { // sibling is one rank below p and has a child
+		Entry<K, V> inner = sibling.left, outer = sibling.right;
+		boolean deltaP = p.deltaR;
+		if (outer != null && outer.deltaR == ONE) {
+		    rotateLeft(p);
+		    sibling.deltaR = deltaP;
+		    if (inner != null && inner.deltaR == ONE) { // sibling takes p's rank
+			p.deltaR = ONE;
+			outer.deltaR = TWO;
+			if (x != null)
+			    x.deltaR = TWO;
+			return;
+		    }
+		    if (x != null)
+			x.deltaR = ONE;
+		    if (inner != null)
+			inner.deltaR = ONE;
+		    p.deltaR = ONE;
+		    p = sibling;
+		} else { // inner is one rank below sibling
+		    rotateRight(sibling);
+		    rotateLeft(p);
+		    inner.deltaR = deltaP;
+		    p.deltaR = ONE;
+		    sibling.deltaR = ONE;
+		    if (x != null)
+			x.deltaR = ONE;
+		    if (outer != null)
+			outer.deltaR = ONE;
+		    p = inner;
+		}
+	    } else { // symmetric
+		Entry<K, V> inner = sibling.right, outer = sibling.left;
+		boolean deltaP = p.deltaR;
+		if (outer != null && outer.deltaR == ONE) {
+		    rotateRight(p);
+		    sibling.deltaR = deltaP;
+		    if (inner != null && inner.deltaR == ONE) {
+			p.deltaR = ONE;
+			outer.deltaR = TWO;
+			if (x != null)
+			    x.deltaR = TWO;
+			return;
+		    }
+		    if (x != null)
+			x.deltaR = ONE;
+		    if (inner != null)
+			inner.deltaR = ONE;
+		    p.deltaR = ONE;
+		    p = sibling;
+		} else {
+		    rotateLeft(sibling);
+		    rotateRight(p);
+		    inner.deltaR = deltaP;
+		    p.deltaR = ONE;
+		    sibling.deltaR = ONE;
+		    if (x != null)
+			x.deltaR = ONE;
+		    if (outer != null)
+			outer.deltaR = ONE;
+		    p = inner;
+		}
+	    }
+	    
+	    // the subtree rooted at p lost a rank, p.deltaR still holds its old difference
+	    if (p.parent == null) {
+		p.deltaR = ONE;
+		return;
+	    }
+	    three = p.deltaR == TWO;
+	    p.deltaR = TWO;
+	    left = p == p.parent.left;
+	    p = p.parent;
+	}
     }
     
     /**
@@ -646,12 +761,521 @@ If the procedure increases the rank of a node x, so that it becomes equal to the
         }
     }
 
-    @Override
-    public Set<java.util.Map.Entry<K, V>> entrySet() {
-	// TODO Auto-generated method stub
+    /**
+     * Returns {@code true} if this map contains a mapping for the specified
+     * key.
+     *
+     * @throws ClassCastException if the specified key cannot be compared
+     *         with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    public boolean containsKey(Object key) {
+        return getEntry(key) != null;
+    }
+
+    public Comparator<? super K> comparator() {
+	return comparator;
+    }
+
+    /**
+     * @throws NoSuchElementException
+     *             if this map is empty
+     */
+    public K firstKey() {
+	return key(getFirstEntry());
+    }
+
+    /**
+     * @throws NoSuchElementException
+     *             if this map is empty
+     */
+    public K lastKey() {
+	return key(getLastEntry());
+    }
+
+    /**
+     * Return SimpleImmutableEntry for entry, or null if null
+     */
+    static <K, V> Map.Entry<K, V> exportEntry(AVLTreeMapRB.Entry<K, V> e) {
+	return (e == null) ? null : new AbstractMap.SimpleImmutableEntry<>(e);
+    }
+
+    /**
+     * Return key for entry, or null if null
+     */
+    static <K, V> K keyOrNull(AVLTreeMapRB.Entry<K, V> e) {
+	return (e == null) ? null : e.key;
+    }
+
+    // NavigableMap API methods
+
+    public Map.Entry<K, V> firstEntry() {
+	return exportEntry(getFirstEntry());
+    }
+
+    public Map.Entry<K, V> lastEntry() {
+	return exportEntry(getLastEntry());
+    }
+
+    public Map.Entry<K, V> pollFirstEntry() {
+	Entry<K, V> p = getFirstEntry();
+	Map.Entry<K, V> result = exportEntry(p);
+	if (p != null)
+	    deleteEntry(p);
+	return result;
+    }
+
+    public Map.Entry<K, V> pollLastEntry() {
+	Entry<K, V> p = getLastEntry();
+	Map.Entry<K, V> result = exportEntry(p);
+	if (p != null)
+	    deleteEntry(p);
+	return result;
+    }
+
+    /**
+     * Gets the entry corresponding to the specified key; if no such entry exists,
+     * returns the entry for the least key greater than the specified key; if no
+     * such entry exists (i.e., the greatest key in the Tree is less than the
+     * specified key), returns {@code null}.
+     */
+    final Entry<K, V> getCeilingEntry(K key) {
+	Entry<K, V> p = root;
+	while (p != null) {
+	    int cmp = compare(key, p.key);
+	    if (cmp < 0) {
+		if (p.left != null)
+		    p = p.left;
+		else
+		    return p;
+	    } else if (cmp > 0) {
+		if (p.right != null) {
+		    p = p.right;
+		} else {
+		    Entry<K, V> parent = p.parent;
+		    Entry<K, V> ch = p;
+		    while (parent != null && ch == parent.right) {
+			ch = parent;
+			parent = parent.parent;
+		    }
+		    return parent;
+		}
+	    } else
+		return p;
+	}
 	return null;
     }
-    
+
+    /**
+     * Gets the entry corresponding to the specified key; if no such entry exists,
+     * returns the entry for the greatest key less than the specified key; if no
+     * such entry exists, returns {@code null}.
+     */
+    final Entry<K, V> getFloorEntry(K key) {
+	Entry<K, V> p = root;
+	while (p != null) {
+	    int cmp = compare(key, p.key);
+	    if (cmp > 0) {
+		if (p.right != null)
+		    p = p.right;
+		else
+		    return p;
+	    } else if (cmp < 0) {
+		if (p.left != null) {
+		    p = p.left;
+		} else {
+		    Entry<K, V> parent = p.parent;
+		    Entry<K, V> ch = p;
+		    while (parent != null && ch == parent.left) {
+			ch = parent;
+			parent = parent.parent;
+		    }
+		    return parent;
+		}
+	    } else
+		return p;
+
+	}
+	return null;
+    }
+
+    /**
+     * Gets the entry for the least key greater than the specified key; if no such
+     * entry exists, returns the entry for the least key greater than the specified
+     * key; if no such entry exists returns {@code null}.
+     */
+    final Entry<K, V> getHigherEntry(K key) {
+	Entry<K, V> p = root;
+	while (p != null) {
+	    int cmp = compare(key, p.key);
+	    if (cmp < 0) {
+		if (p.left != null)
+		    p = p.left;
+		else
+		    return p;
+	    } else {
+		if (p.right != null) {
+		    p = p.right;
+		} else {
+		    Entry<K, V> parent = p.parent;
+		    Entry<K, V> ch = p;
+		    while (parent != null && ch == parent.right) {
+			ch = parent;
+			parent = parent.parent;
+		    }
+		    return parent;
+		}
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Returns the entry for the greatest key less than the specified key; if no
+     * such entry exists (i.e., the least key in the Tree is greater than the
+     * specified key), returns {@code null}.
+     */
+    final Entry<K, V> getLowerEntry(K key) {
+	Entry<K, V> p = root;
+	while (p != null) {
+	    int cmp = compare(key, p.key);
+	    if (cmp > 0) {
+		if (p.right != null)
+		    p = p.right;
+		else
+		    return p;
+	    } else {
+		if (p.left != null) {
+		    p = p.left;
+		} else {
+		    Entry<K, V> parent = p.parent;
+		    Entry<K, V> ch = p;
+		    while (parent != null && ch == parent.left) {
+			ch = parent;
+			parent = parent.parent;
+		    }
+		    return parent;
+		}
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys
+     *             currently in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public Map.Entry<K, V> lowerEntry(K key) {
+	return exportEntry(getLowerEntry(key));
+    }
+
+    /**
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys
+     *             currently in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public K lowerKey(K key) {
+	return keyOrNull(getLowerEntry(key));
+    }
+
+    /**
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys
+     *             currently in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public Map.Entry<K, V> floorEntry(K key) {
+	return exportEntry(getFloorEntry(key));
+    }
+
+    /**
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys
+     *             currently in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public K floorKey(K key) {
+	return keyOrNull(getFloorEntry(key));
+    }
+
+    /**
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys
+     *             currently in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public Map.Entry<K, V> ceilingEntry(K key) {
+	return exportEntry(getCeilingEntry(key));
+    }
+
+    /**
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys
+     *             currently in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public K ceilingKey(K key) {
+	return keyOrNull(getCeilingEntry(key));
+    }
+
+    /**
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys
+     *             currently in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public Map.Entry<K, V> higherEntry(K key) {
+	return exportEntry(getHigherEntry(key));
+    }
+
+    /**
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys
+     *             currently in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public K higherKey(K key) {
+	return keyOrNull(getHigherEntry(key));
+    }
+
+
+    // Views
+
+    private transient EntrySet entrySet = null;
+    private transient KeySet keySet = null;
+    private transient Values values = null;
+
+    /**
+     * Returns a {@link Set} view of the keys contained in this map, in
+     * ascending order.  The set is backed by the map, so changes to the map
+     * are reflected in the set, and vice-versa.  It supports element removal
+     * but not the {@code add} or {@code addAll} operations.
+     */
+    public Set<K> keySet() {
+	KeySet ks = keySet;
+	return (ks != null) ? ks : (keySet = new KeySet());
+    }
+
+    /**
+     * Returns a {@link Collection} view of the values contained in this map,
+     * in ascending order of the corresponding keys.  The collection is backed
+     * by the map and supports element removal but not the {@code add} or
+     * {@code addAll} operations.
+     */
+    public Collection<V> values() {
+	Values vs = values;
+	return (vs != null) ? vs : (values = new Values());
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map, in
+     * ascending key order.  The set's spliterator is late-binding, fail-fast,
+     * and additionally reports {@link Spliterator#SORTED} and
+     * {@link Spliterator#ORDERED}.  The set is backed by the map and supports
+     * element removal but not the {@code add} or {@code addAll} operations.
+     */
+    public Set<Map.Entry<K, V>> entrySet() {
+	EntrySet es = entrySet;
+	return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    class KeySet extends AbstractSet<K> {
+	public Iterator<K> iterator() {
+	    return new KeyIterator(getFirstEntry());
+	}
+
+	public int size() {
+	    return AVLTreeMapRB.this.size();
+	}
+
+	public boolean contains(Object o) {
+	    return containsKey(o);
+	}
+
+	public boolean remove(Object o) {
+	    Entry<K, V> p = getEntry(o);
+	    if (p == null)
+		return false;
+	    deleteEntry(p);
+	    return true;
+	}
+
+	public void clear() {
+	    AVLTreeMapRB.this.clear();
+	}
+
+	public Spliterator<K> spliterator() {
+	    return new KeySpliterator<>(AVLTreeMapRB.this, null, null, 0, -1, 0);
+	}
+    }
+
+    class Values extends AbstractCollection<V> {
+	public Iterator<V> iterator() {
+	    return new ValueIterator(getFirstEntry());
+	}
+
+	public int size() {
+	    return AVLTreeMapRB.this.size();
+	}
+
+	public boolean contains(Object o) {
+	    return AVLTreeMapRB.this.containsValue(o);
+	}
+
+	public boolean remove(Object o) {
+	    for (Entry<K, V> e = getFirstEntry(); e != null; e = successor(e)) {
+		if (valEquals(e.getValue(), o)) {
+		    deleteEntry(e);
+		    return true;
+		}
+	    }
+	    return false;
+	}
+
+	public void clear() {
+	    AVLTreeMapRB.this.clear();
+	}
+
+	public Spliterator<V> spliterator() {
+	    return new ValueSpliterator<>(AVLTreeMapRB.this, null, null, 0, -1, 0);
+	}
+    }
+
+    class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+	public Iterator<Map.Entry<K, V>> iterator() {
+	    return new EntryIterator(getFirstEntry());
+	}
+
+	public boolean contains(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    Object value = entry.getValue();
+	    Entry<K, V> p = getEntry(entry.getKey());
+	    return p != null && valEquals(p.getValue(), value);
+	}
+
+	public boolean remove(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    Object value = entry.getValue();
+	    Entry<K, V> p = getEntry(entry.getKey());
+	    if (p != null && valEquals(p.getValue(), value)) {
+		deleteEntry(p);
+		return true;
+	    }
+	    return false;
+	}
+
+	public int size() {
+	    return AVLTreeMapRB.this.size();
+	}
+
+	public void clear() {
+	    AVLTreeMapRB.this.clear();
+	}
+
+	public Spliterator<Map.Entry<K, V>> spliterator() {
+	    return new EntrySpliterator<>(AVLTreeMapRB.this, null, null, 0, -1, 0);
+	}
+    }
+
+    /**
+     * Base class for TreeMap Iterators
+     */
+    abstract class PrivateEntryIterator<T> implements Iterator<T> {
+	Entry<K, V> next;
+	Entry<K, V> lastReturned;
+	int expectedModCount;
+
+	PrivateEntryIterator(Entry<K, V> first) {
+	    expectedModCount = modCount;
+	    lastReturned = null;
+	    next = first;
+	}
+
+	public final boolean hasNext() {
+	    return next != null;
+	}
+
+	final Entry<K, V> nextEntry() {
+	    Entry<K, V> e = next;
+	    if (e == null)
+		throw new NoSuchElementException();
+	    if (modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    next = successor(e);
+	    lastReturned = e;
+	    return e;
+	}
+
+
+	public void remove() {
+	    if (lastReturned == null)
+		throw new IllegalStateException();
+	    if (modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    // deleted entries are replaced by their successors
+	    if (lastReturned.left != null && lastReturned.right != null)
+		next = lastReturned;
+	    deleteEntry(lastReturned);
+	    expectedModCount = modCount;
+	    lastReturned = null;
+	}
+    }
+
+    final class EntryIterator extends PrivateEntryIterator<Map.Entry<K, V>> {
+	EntryIterator(Entry<K, V> first) {
+	    super(first);
+	}
+
+	public Map.Entry<K, V> next() {
+	    return nextEntry();
+	}
+    }
+
+    final class ValueIterator extends PrivateEntryIterator<V> {
+	ValueIterator(Entry<K, V> first) {
+	    super(first);
+	}
+
+	public V next() {
+	    return nextEntry().value;
+	}
+    }
+
+    final class KeyIterator extends PrivateEntryIterator<K> {
+	KeyIterator(Entry<K, V> first) {
+	    super(first);
+	}
+
+	public K next() {
+	    return nextEntry().key;
+	}
+    }
+
     public void inOrderTraversal(Entry<K, V> x) {
 	if (x == null)
 	    return;
@@ -672,4 +1296,274 @@ If the procedure increases the rank of a node x, so that it becomes equal to the
 	/* 3. one empty, one not -> false */
 	return false;
     }
-}
\ No newline at end of file
+
+    /**
+     * Base class for spliterators. Iteration starts at a given origin and continues
+     * up to but not including a given fence (or null for end). At top-level, for
+     * ascending cases, the first split uses the root as left-fence/right-origin.
+     * From there, right-hand splits replace the current fence with its left child,
+     * also serving as origin for the split-off spliterator. Left-hands are
+     * symmetric.
+     * <p>
+     * Ported from TreeMap as {@code AVLTreeMap.TreeMapSpliterator} is, which
+     * explains the size estimates; the rank bits keep this tree just as balanced.
+     * <p>
+     * To boostrap initialization, external constructors use a negative size
+     * estimate.
+     */
+    static class TreeMapSpliterator<K, V> {
+	final AVLTreeMapRB<K, V> tree;
+	AVLTreeMapRB.Entry<K, V> current; // traverser; initially first node in range
+	AVLTreeMapRB.Entry<K, V> fence; // one past last, or null
+	int side; // 0: top, -1: is a left split, +1: right
+	int est; // size estimate (exact only for top-level)
+	int expectedModCount; // for CME checks
+
+	TreeMapSpliterator(AVLTreeMapRB<K, V> tree, AVLTreeMapRB.Entry<K, V> origin, AVLTreeMapRB.Entry<K, V> fence, int side, int est,
+		int expectedModCount) {
+	    this.tree = tree;
+	    this.current = origin;
+	    this.fence = fence;
+	    this.side = side;
+	    this.est = est;
+	    this.expectedModCount = expectedModCount;
+	}
+
+	final int getEstimate() { // force initialization
+	    int s;
+	    AVLTreeMapRB<K, V> t;
+	    if ((s = est) < 0) {
+		if ((t = tree) != null) {
+		    current = t.getFirstEntry();
+		    s = est = t.size;
+		    expectedModCount = t.modCount;
+		} else
+		    s = est = 0;
+	    }
+	    return s;
+	}
+
+	public final long estimateSize() {
+	    return (long) getEstimate();
+	}
+    }
+
+    static final class KeySpliterator<K, V> extends TreeMapSpliterator<K, V> implements Spliterator<K> {
+	KeySpliterator(AVLTreeMapRB<K, V> tree, AVLTreeMapRB.Entry<K, V> origin, AVLTreeMapRB.Entry<K, V> fence, int side, int est,
+		int expectedModCount) {
+	    super(tree, origin, fence, side, est, expectedModCount);
+	}
+
+	public KeySpliterator<K, V> trySplit() {
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    int d = side;
+	    AVLTreeMapRB.Entry<K, V> e = current, f = fence;
+	    AVLTreeMapRB.Entry<K, V> s = ((e == null || e == f) ? null // empty
+		    : (d == 0) ? tree.root // was top
+		    : (d > 0) ? e.right // was right
+		    : (d < 0 && f != null) ? f.left // was left
+		    : null);
+	    if (s != null && s != e && s != f && tree.compare(e.key, s.key) < 0) { // e not already past s
+		side = 1;
+		return new KeySpliterator<>(tree, e, current = s, -1, est >>>= 1, expectedModCount);
+	    }
+	    return null;
+	}
+
+	public void forEachRemaining(Consumer<? super K> action) {
+	    if (action == null)
+		throw new NullPointerException();
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    AVLTreeMapRB.Entry<K, V> f = fence, e, p, pl;
+	    if ((e = current) != null && e != f) {
+		current = f; // exhaust
+		do {
+		    action.accept(e.key);
+		    if ((p = e.right) != null) {
+			while ((pl = p.left) != null)
+			    p = pl;
+		    } else {
+			while ((p = e.parent) != null && e == p.right)
+			    e = p;
+		    }
+		} while ((e = p) != null && e != f);
+		if (tree.modCount != expectedModCount)
+		    throw new ConcurrentModificationException();
+	    }
+	}
+
+	public boolean tryAdvance(Consumer<? super K> action) {
+	    AVLTreeMapRB.Entry<K, V> e;
+	    if (action == null)
+		throw new NullPointerException();
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    if ((e = current) == null || e == fence)
+		return false;
+	    current = successor(e);
+	    action.accept(e.key);
+	    if (tree.modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    return true;
+	}
+
+	public int characteristics() {
+	    return (side == 0 ? Spliterator.SIZED : 0) | Spliterator.DISTINCT | Spliterator.SORTED
+		    | Spliterator.ORDERED;
+	}
+
+	public final Comparator<? super K> getComparator() {
+	    return tree.comparator;
+	}
+    }
+
+    static final class ValueSpliterator<K, V> extends TreeMapSpliterator<K, V> implements Spliterator<V> {
+	ValueSpliterator(AVLTreeMapRB<K, V> tree, AVLTreeMapRB.Entry<K, V> origin, AVLTreeMapRB.Entry<K, V> fence, int side, int est,
+		int expectedModCount) {
+	    super(tree, origin, fence, side, est, expectedModCount);
+	}
+
+	public ValueSpliterator<K, V> trySplit() {
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    int d = side;
+	    AVLTreeMapRB.Entry<K, V> e = current, f = fence;
+	    AVLTreeMapRB.Entry<K, V> s = ((e == null || e == f) ? null // empty
+		    : (d == 0) ? tree.root // was top
+		    : (d > 0) ? e.right // was right
+		    : (d < 0 && f != null) ? f.left // was left
+		    : null);
+	    if (s != null && s != e && s != f && tree.compare(e.key, s.key) < 0) { // e not already past s
+		side = 1;
+		return new ValueSpliterator<>(tree, e, current = s, -1, est >>>= 1, expectedModCount);
+	    }
+	    return null;
+	}
+
+	public void forEachRemaining(Consumer<? super V> action) {
+	    if (action == null)
+		throw new NullPointerException();
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    AVLTreeMapRB.Entry<K, V> f = fence, e, p, pl;
+	    if ((e = current) != null && e != f) {
+		current = f; // exhaust
+		do {
+		    action.accept(e.value);
+		    if ((p = e.right) != null) {
+			while ((pl = p.left) != null)
+			    p = pl;
+		    } else {
+			while ((p = e.parent) != null && e == p.right)
+			    e = p;
+		    }
+		} while ((e = p) != null && e != f);
+		if (tree.modCount != expectedModCount)
+		    throw new ConcurrentModificationException();
+	    }
+	}
+
+	public boolean tryAdvance(Consumer<? super V> action) {
+	    AVLTreeMapRB.Entry<K, V> e;
+	    if (action == null)
+		throw new NullPointerException();
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    if ((e = current) == null || e == fence)
+		return false;
+	    current = successor(e);
+	    action.accept(e.value);
+	    if (tree.modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    return true;
+	}
+
+	public int characteristics() {
+	    return (side == 0 ? Spliterator.SIZED : 0) | Spliterator.ORDERED;
+	}
+    }
+
+    static final class EntrySpliterator<K, V> extends TreeMapSpliterator<K, V>
+	    implements Spliterator<Map.Entry<K, V>> {
+	EntrySpliterator(AVLTreeMapRB<K, V> tree, AVLTreeMapRB.Entry<K, V> origin, AVLTreeMapRB.Entry<K, V> fence, int side, int est,
+		int expectedModCount) {
+	    super(tree, origin, fence, side, est, expectedModCount);
+	}
+
+	public EntrySpliterator<K, V> trySplit() {
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    int d = side;
+	    AVLTreeMapRB.Entry<K, V> e = current, f = fence;
+	    AVLTreeMapRB.Entry<K, V> s = ((e == null || e == f) ? null // empty
+		    : (d == 0) ? tree.root // was top
+		    : (d > 0) ? e.right // was right
+		    : (d < 0 && f != null) ? f.left // was left
+		    : null);
+	    if (s != null && s != e && s != f && tree.compare(e.key, s.key) < 0) { // e not already past s
+		side = 1;
+		return new EntrySpliterator<>(tree, e, current = s, -1, est >>>= 1, expectedModCount);
+	    }
+	    return null;
+	}
+
+	public void forEachRemaining(Consumer<? super Map.Entry<K, V>> action) {
+	    if (action == null)
+		throw new NullPointerException();
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    AVLTreeMapRB.Entry<K, V> f = fence, e, p, pl;
+	    if ((e = current) != null && e != f) {
+		current = f; // exhaust
+		do {
+		    action.accept(e);
+		    if ((p = e.right) != null) {
+			while ((pl = p.left) != null)
+			    p = pl;
+		    } else {
+			while ((p = e.parent) != null && e == p.right)
+			    e = p;
+		    }
+		} while ((e = p) != null && e != f);
+		if (tree.modCount != expectedModCount)
+		    throw new ConcurrentModificationException();
+	    }
+	}
+
+	public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+	    AVLTreeMapRB.Entry<K, V> e;
+	    if (action == null)
+		throw new NullPointerException();
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    if ((e = current) == null || e == fence)
+		return false;
+	    current = successor(e);
+	    action.accept(e);
+	    if (tree.modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    return true;
+	}
+
+	public int characteristics() {
+	    return (side == 0 ? Spliterator.SIZED : 0) | Spliterator.DISTINCT | Spliterator.SORTED
+		    | Spliterator.ORDERED;
+	}
+
+	@Override
+	public Comparator<Map.Entry<K, V>> getComparator() {
+	    // Adapt or create a key-based comparator
+	    if (tree.comparator != null) {
+		return Map.Entry.comparingByKey(tree.comparator);
+	    } else {
+		return (Comparator<Map.Entry<K, V>> & java.io.Serializable) (e1, e2) -> {
+		    @SuppressWarnings("unchecked")
+		    Comparable<? super K> k1 = (Comparable<? super K>) e1.getKey();
+		    return k1.compareTo(e2.getKey());
+		};
+	    }
+	}
+    }
+}
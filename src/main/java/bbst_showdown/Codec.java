@@ -0,0 +1,78 @@
+package bbst_showdown;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes and reads keys or values of one type as raw bytes, for the compact
+ * serialization of {@link AVLTreeMap#writeTo} and {@link WAVLTreeMap#writeTo}.
+ * Unlike {@link java.io.ObjectOutputStream} a codec writes no class
+ * descriptors, object headers or back references, only the value itself, so
+ * an {@code Integer} costs four bytes.
+ *
+ * @param <T> the type of objects written and read
+ */
+public interface Codec<T> {
+
+    /**
+     * Writes t to out.
+     *
+     * @throws IOException if out throws it
+     * @throws NullPointerException if t is null and the codec has no encoding
+     *         for null
+     */
+    void write(DataOutput out, T t) throws IOException;
+
+    /**
+     * Reads a value written by {@link #write}.
+     *
+     * @throws IOException if in throws it, including
+     *         {@link java.io.EOFException} at the end of the input
+     */
+    T read(DataInput in) throws IOException;
+
+    /** Four big-endian bytes per value. */
+    Codec<Integer> INT = new Codec<Integer>() {
+	public void write(DataOutput out, Integer t) throws IOException {
+	    out.writeInt(t);
+	}
+
+	public Integer read(DataInput in) throws IOException {
+	    return in.readInt();
+	}
+    };
+
+    /** Eight big-endian bytes per value. */
+    Codec<Long> LONG = new Codec<Long>() {
+	public void write(DataOutput out, Long t) throws IOException {
+	    out.writeLong(t);
+	}
+
+	public Long read(DataInput in) throws IOException {
+	    return in.readLong();
+	}
+    };
+
+    /**
+     * The UTF-8 bytes of the string after their count as an int, so unlike
+     * {@link DataOutput#writeUTF} there is no limit of 65535 bytes.
+     */
+    Codec<String> STRING = new Codec<String>() {
+	public void write(DataOutput out, String t) throws IOException {
+	    byte[] bytes = t.getBytes(StandardCharsets.UTF_8);
+	    out.writeInt(bytes.length);
+	    out.write(bytes);
+	}
+
+	public String read(DataInput in) throws IOException {
+	    int length = in.readInt();
+	    if (length < 0)
+		throw new java.io.StreamCorruptedException("negative string length " + length);
+	    byte[] bytes = new byte[length];
+	    in.readFully(bytes);
+	    return new String(bytes, StandardCharsets.UTF_8);
+	}
+    };
+}
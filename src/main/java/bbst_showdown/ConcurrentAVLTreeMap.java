@@ -0,0 +1,1875 @@
+package bbst_showdown;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent AVL tree with optimistic, lock-free reads.
+ * 
+ * <p>
+ * This follows Bronson, Casper, Chafi and Olukotun, "A Practical Concurrent
+ * Binary Search Tree" (PPoPP 2010). Searches never lock or write to shared
+ * memory. Instead every node carries a version number that a rotation bumps
+ * whenever it moves the node down and shrinks the range of keys below it. A
+ * search reads a child's version before following the child and re-checks the
+ * parent's version afterwards (hand-over-hand), and retries from the parent if
+ * the range it was relying on changed underneath it.
+ * <p>
+ * Updates lock only the nodes they change: an insert locks the parent of the new
+ * leaf, a rotation locks the parent of the rotated subtree and the two or three
+ * nodes that move. Locks are always taken parent before child.
+ * <p>
+ * Unlike {@link AVLTreeMap} the balance is relaxed. Each node records its height
+ * rather than a balance factor, because a balance factor can only be kept exact
+ * by re-tracing to the root under a lock. Heights are repaired bottom up after
+ * each update using only local information, so while updates are in flight the
+ * tree may be briefly out of balance; once they finish it is again a strict AVL
+ * tree. Removing a key with two children leaves the node in place as a
+ * <em>routing node</em> with no value, which is unlinked later once it has at
+ * most one child.
+ * <p>
+ * Like {@link java.util.concurrent.ConcurrentSkipListMap} this map is a
+ * {@link ConcurrentNavigableMap}: it does not permit {@code null} keys or
+ * values, its iterators are weakly consistent and never throw
+ * {@link java.util.ConcurrentModificationException}, and {@code size()} is only
+ * exact when no updates are in progress. Navigation in either direction walks
+ * down the tree the same optimistic way as {@code get}, and the descending and
+ * range views are thin wrappers that check their bounds and call the map.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ */
+public class ConcurrentAVLTreeMap<K, V> extends AbstractMap<K, V> implements ConcurrentNavigableMap<K, V> {
+
+    /*
+     * Version numbers. The low bit marks a node that has been unlinked from the
+     * tree, which is permanent. The next bit is set while a rotation is moving the
+     * node down; the rest counts completed shrinks.
+     */
+    static final long UNLINKED = 1L;
+    static final long SHRINKING = 2L;
+
+    static final int SPIN_COUNT = 100;
+    static final int YIELD_COUNT = 10;
+
+    /* Results of nodeCondition, any other value is the node's correct height. */
+    static final int UNLINK_REQUIRED = -1;
+    static final int REBALANCE_REQUIRED = -2;
+    static final int NOTHING_REQUIRED = -3;
+
+    /* Kinds of update, checked against the current value by shouldUpdate. */
+    static final int UPDATE_ALWAYS = 0;
+    static final int UPDATE_IF_ABSENT = 1;
+    static final int UPDATE_IF_PRESENT = 2;
+    static final int UPDATE_IF_EQ = 3;
+
+    static final char LEFT = 'L';
+    static final char RIGHT = 'R';
+
+    /** Returned up the search recursion to ask the caller to retry from its node. */
+    static final Object RETRY = new Object();
+
+    /**
+     * The actual root is the right child of this holder, which is never rotated or
+     * unlinked, so every real node has a parent to lock.
+     */
+    final Node<K, V> rootHolder = new Node<>(null, 0, null, null, 0L);
+
+    /**
+     * The comparator used to maintain order in this tree map, or null if it uses
+     * the natural ordering of its keys.
+     */
+    protected final Comparator<? super K> comparator;
+
+    private final LongAdder size = new LongAdder();
+
+    private transient EntrySet entrySet = null;
+
+    private transient KeySet<K> keySet = null;
+
+    private transient SubMap<K, V> descendingMap = null;
+
+    /**
+     * Constructs a new, empty tree map, using the natural ordering of its keys.
+     */
+    public ConcurrentAVLTreeMap() {
+	comparator = null;
+    }
+
+    /**
+     * Constructs a new, empty tree map, ordered according to the given comparator.
+     *
+     * @param comparator
+     *            the comparator that will be used to order this map. If
+     *            {@code null}, the natural ordering of the keys will be used.
+     */
+    public ConcurrentAVLTreeMap(Comparator<? super K> comparator) {
+	this.comparator = comparator;
+    }
+
+    /**
+     * Constructs a new tree map containing the same mappings as the given map,
+     * ordered according to the natural ordering of its keys.
+     *
+     * @param m
+     *            the map whose mappings are to be placed in this map
+     * @throws NullPointerException
+     *             if the specified map or any of its keys or values are null
+     */
+    public ConcurrentAVLTreeMap(Map<? extends K, ? extends V> m) {
+	comparator = null;
+	putAll(m);
+    }
+
+    static final class Node<K, V> {
+	final K key;
+	volatile int height; // 1 for a leaf, null children count as 0
+	volatile V value; // null for a routing node
+	volatile Node<K, V> parent;
+	volatile long version;
+	volatile Node<K, V> left;
+	volatile Node<K, V> right;
+
+	Node(K key, int height, V value, Node<K, V> parent, long version) {
+	    this.key = key;
+	    this.height = height;
+	    this.value = value;
+	    this.parent = parent;
+	    this.version = version;
+	}
+
+	Node<K, V> child(char dir) {
+	    return dir == LEFT ? left : right;
+	}
+
+	void setChild(char dir, Node<K, V> node) {
+	    if (dir == LEFT)
+		left = node;
+	    else
+		right = node;
+	}
+
+	/**
+	 * Waits for a rotation that started before {@code version} was read to
+	 * finish. Rotations hold the node's lock, so after spinning and yielding
+	 * for a while the wait falls back to acquiring it.
+	 */
+	void waitUntilShrinkCompleted(long version) {
+	    if (!isShrinking(version))
+		return;
+	    for (int tries = 0; tries < SPIN_COUNT; tries++)
+		if (this.version != version)
+		    return;
+	    for (int tries = 0; tries < YIELD_COUNT; tries++) {
+		Thread.yield();
+		if (this.version != version)
+		    return;
+	    }
+	    synchronized (this) {
+		// the rotation is over once we hold the lock
+	    }
+	}
+    }
+
+    static boolean isShrinking(long version) {
+	return (version & SHRINKING) != 0;
+    }
+
+    static boolean isUnlinked(long version) {
+	return (version & UNLINKED) != 0;
+    }
+
+    static boolean isShrinkingOrUnlinked(long version) {
+	return (version & (SHRINKING | UNLINKED)) != 0;
+    }
+
+    static long beginShrink(long version) {
+	return version | SHRINKING;
+    }
+
+    static long endShrink(long version) {
+	return (version | (SHRINKING | UNLINKED)) + 1;
+    }
+
+    static int height(Node<?, ?> node) {
+	return node == null ? 0 : node.height;
+    }
+
+    /**
+     * Compares two keys using the correct comparison method for this map.
+     */
+    @SuppressWarnings("unchecked")
+    final int compare(Object k1, Object k2) {
+	return comparator == null ? ((Comparable<? super K>) k1).compareTo((K) k2)
+		: comparator.compare((K) k1, (K) k2);
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map. The count is only
+     * exact if no updates are in progress.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+	long n = size.sum();
+	return n > Integer.MAX_VALUE ? Integer.MAX_VALUE : (n < 0 ? 0 : (int) n);
+    }
+
+    public boolean isEmpty() {
+	return firstNode() == null;
+    }
+
+    public int treeHeight() {
+	return height(rootHolder.right) - 1;
+    }
+
+    public String toString() {
+	return "Concurrent AVL tree of size: " + size() + ", height: " + treeHeight();
+    }
+
+    public boolean containsKey(Object key) {
+	return get(key) != null;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or {@code null} if
+     * this map contains no mapping for the key. Never blocks unless it meets a
+     * node in the middle of a rotation.
+     *
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys currently
+     *             in the map
+     * @throws NullPointerException
+     *             if the specified key is null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+	if (key == null)
+	    throw new NullPointerException();
+	while (true) {
+	    Node<K, V> right = rootHolder.right;
+	    if (right == null)
+		return null;
+	    int cmp = compare(key, right.key);
+	    if (cmp == 0)
+		return right.value;
+	    long version = right.version;
+	    if (isShrinkingOrUnlinked(version)) {
+		right.waitUntilShrinkCompleted(version);
+	    } else if (right == rootHolder.right) {
+		// the re-read of the root is the one protected by version
+		Object v = attemptGet(key, right, cmp < 0 ? LEFT : RIGHT, version);
+		if (v != RETRY)
+		    return (V) v;
+	    }
+	}
+    }
+
+    private Object attemptGet(Object key, Node<K, V> node, char dirToC, long nodeVersion) {
+	while (true) {
+	    Node<K, V> child = node.child(dirToC);
+	    if (child == null) {
+		if (node.version != nodeVersion)
+		    return RETRY;
+		// the read of child happened while node still covered the key
+		return null;
+	    }
+	    int cmp = compare(key, child.key);
+	    if (cmp == 0)
+		return child.value;
+
+	    long childVersion = child.version;
+	    if (isShrinkingOrUnlinked(childVersion)) {
+		child.waitUntilShrinkCompleted(childVersion);
+		if (node.version != nodeVersion)
+		    return RETRY;
+		// else retry from node
+	    } else if (child != node.child(dirToC)) {
+		// the re-read of the child is the one protected by childVersion
+		if (node.version != nodeVersion)
+		    return RETRY;
+	    } else {
+		if (node.version != nodeVersion)
+		    return RETRY;
+		// The path to node is still valid and childVersion now protects
+		// the path to child, so node's version no longer matters.
+		Object v = attemptGet(key, child, cmp < 0 ? LEFT : RIGHT, childVersion);
+		if (v != RETRY)
+		    return v;
+	    }
+	}
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map. If the map
+     * previously contained a mapping for the key, the old value is replaced.
+     *
+     * @return the previous value associated with {@code key}, or {@code null} if
+     *         there was no mapping for {@code key}
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys currently
+     *             in the map
+     * @throws NullPointerException
+     *             if the specified key or value is null
+     */
+    public V put(K key, V value) {
+	if (value == null)
+	    throw new NullPointerException();
+	return update(key, UPDATE_ALWAYS, null, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException
+     *             if the specified key or value is null
+     */
+    public V putIfAbsent(K key, V value) {
+	if (value == null)
+	    throw new NullPointerException();
+	return update(key, UPDATE_IF_ABSENT, null, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException
+     *             if the specified key or value is null
+     */
+    public V replace(K key, V value) {
+	if (value == null)
+	    throw new NullPointerException();
+	return update(key, UPDATE_IF_PRESENT, null, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException
+     *             if any of the arguments are null
+     */
+    public boolean replace(K key, V oldValue, V newValue) {
+	if (oldValue == null || newValue == null)
+	    throw new NullPointerException();
+	return oldValue.equals(update(key, UPDATE_IF_EQ, oldValue, newValue));
+    }
+
+    /**
+     * Removes the mapping for this key from this map if present.
+     *
+     * @return the previous value associated with {@code key}, or {@code null} if
+     *         there was no mapping for {@code key}
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys currently
+     *             in the map
+     * @throws NullPointerException
+     *             if the specified key is null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+	return update((K) key, UPDATE_ALWAYS, null, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException
+     *             if the specified key is null
+     */
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object key, Object value) {
+	if (key == null)
+	    throw new NullPointerException();
+	return value != null && value.equals(update((K) key, UPDATE_IF_EQ, value, null));
+    }
+
+    /**
+     * Removes all of the mappings from this map, one key at a time so that
+     * concurrent updates keep the size count right.
+     */
+    public void clear() {
+	Node<K, V> first;
+	while ((first = firstNode()) != null)
+	    remove(first.key);
+    }
+
+    static boolean shouldUpdate(int func, Object prev, Object expected) {
+	switch (func) {
+	case UPDATE_ALWAYS:
+	    return true;
+	case UPDATE_IF_ABSENT:
+	    return prev == null;
+	case UPDATE_IF_PRESENT:
+	    return prev != null;
+	default: // UPDATE_IF_EQ
+	    return prev != null && prev.equals(expected);
+	}
+    }
+
+    /**
+     * Common code for the updates. A {@code null} newValue removes the key.
+     * Returns the value seen before the update, whether or not {@code func}
+     * allowed it to happen.
+     */
+    @SuppressWarnings("unchecked")
+    private V update(K key, int func, Object expected, V newValue) {
+	if (key == null)
+	    throw new NullPointerException();
+	Node<K, V> holder = rootHolder;
+	while (true) {
+	    Node<K, V> right = holder.right;
+	    if (right == null) {
+		// key is not present
+		if (newValue == null || !shouldUpdate(func, null, expected))
+		    return null;
+		compare(key, key); // type check
+		synchronized (holder) {
+		    if (holder.right == null) {
+			holder.right = new Node<>(key, 1, newValue, holder, 0L);
+			size.increment();
+			return null;
+		    }
+		}
+		// else lost a race with another insert, retry
+	    } else {
+		long version = right.version;
+		if (isShrinkingOrUnlinked(version)) {
+		    right.waitUntilShrinkCompleted(version);
+		} else if (right == holder.right) {
+		    Object v = attemptUpdate(key, func, expected, newValue, holder, right, version);
+		    if (v != RETRY)
+			return (V) v;
+		}
+	    }
+	}
+    }
+
+    private Object attemptUpdate(K key, int func, Object expected, V newValue, Node<K, V> parent, Node<K, V> node,
+	    long nodeVersion) {
+	int cmp = compare(key, node.key);
+	if (cmp == 0)
+	    return attemptNodeUpdate(func, expected, newValue, parent, node);
+
+	char dirToC = cmp < 0 ? LEFT : RIGHT;
+	while (true) {
+	    Node<K, V> child = node.child(dirToC);
+	    if (node.version != nodeVersion)
+		return RETRY;
+
+	    if (child == null) {
+		// key is not present
+		if (newValue == null || !shouldUpdate(func, null, expected))
+		    return null;
+		boolean success;
+		Node<K, V> damaged;
+		synchronized (node) {
+		    // Holding the lock, no rotation can move node from here on, so
+		    // one check covers everything since nodeVersion was read.
+		    if (node.version != nodeVersion)
+			return RETRY;
+		    if (node.child(dirToC) != null) {
+			// lost a race with a concurrent insert, retry from node
+			success = false;
+			damaged = null;
+		    } else {
+			node.setChild(dirToC, new Node<>(key, 1, newValue, node, 0L));
+			size.increment();
+			success = true;
+			damaged = fixHeight(node);
+		    }
+		}
+		if (success) {
+		    fixHeightAndRebalance(node, damaged);
+		    return null;
+		}
+	    } else {
+		long childVersion = child.version;
+		if (isShrinkingOrUnlinked(childVersion)) {
+		    child.waitUntilShrinkCompleted(childVersion);
+		} else if (child != node.child(dirToC)) {
+		    // the re-read of the child is the one protected by childVersion
+		} else {
+		    if (node.version != nodeVersion)
+			return RETRY;
+		    Object v = attemptUpdate(key, func, expected, newValue, node, child, childVersion);
+		    if (v != RETRY)
+			return v;
+		}
+	    }
+	}
+    }
+
+    /**
+     * Updates the value of a node holding the key, or unlinks it if the value is
+     * being removed and the node has at most one child. {@code parent} is only
+     * used for unlinking, and is checked under its lock.
+     */
+    private Object attemptNodeUpdate(int func, Object expected, V newValue, Node<K, V> parent, Node<K, V> node) {
+	if (newValue == null && node.value == null)
+	    return null; // already removed
+
+	if (newValue == null && (node.left == null || node.right == null)) {
+	    // potential unlink, lock the parent first
+	    V prev;
+	    Node<K, V> damaged;
+	    synchronized (parent) {
+		if (isUnlinked(parent.version) || node.parent != parent)
+		    return RETRY;
+		synchronized (node) {
+		    prev = node.value;
+		    if (prev == null || !shouldUpdate(func, prev, expected))
+			return prev;
+		    if (!attemptUnlink(parent, node))
+			return RETRY;
+		}
+		size.decrement();
+		// fix the parent while we still hold its lock
+		damaged = fixHeight(parent);
+	    }
+	    fixHeightAndRebalance(parent, damaged);
+	    return prev;
+	} else {
+	    synchronized (node) {
+		if (isUnlinked(node.version))
+		    return RETRY;
+		V prev = node.value;
+		if (!shouldUpdate(func, prev, expected))
+		    return prev;
+		// a concurrent remove may have made an unlink possible
+		if (newValue == null && (node.left == null || node.right == null))
+		    return RETRY;
+		node.value = newValue;
+		if (prev == null && newValue != null)
+		    size.increment();
+		else if (prev != null && newValue == null)
+		    size.decrement();
+		return prev;
+	    }
+	}
+    }
+
+    /**
+     * Splices out a node with at most one child. Both locks must be held.
+     * Heights are left for the caller to fix.
+     */
+    private boolean attemptUnlink(Node<K, V> parent, Node<K, V> node) {
+	Node<K, V> parentL = parent.left;
+	Node<K, V> parentR = parent.right;
+	if (parentL != node && parentR != node)
+	    return false; // node is no longer a child of parent
+
+	Node<K, V> left = node.left;
+	Node<K, V> right = node.right;
+	if (left != null && right != null)
+	    return false; // splicing is no longer possible
+
+	Node<K, V> splice = left != null ? left : right;
+	if (parentL == node)
+	    parent.left = splice;
+	else
+	    parent.right = splice;
+	if (splice != null)
+	    splice.parent = parent;
+
+	node.version = UNLINKED;
+	node.value = null;
+	return true;
+    }
+
+    /**
+     * Reads a node's fields without locking and reports what, if anything, needs
+     * doing: unlinking, a rotation, a new height, or nothing. Only a hint unless
+     * the caller holds the locks.
+     */
+    private int nodeCondition(Node<K, V> node) {
+	Node<K, V> nL = node.left;
+	Node<K, V> nR = node.right;
+
+	if ((nL == null || nR == null) && node.value == null)
+	    return UNLINK_REQUIRED;
+
+	int hN = node.height;
+	int hL0 = height(nL);
+	int hR0 = height(nR);
+
+	int hNRepl = 1 + Math.max(hL0, hR0);
+	int bal = hL0 - hR0;
+
+	if (bal < -1 || bal > 1)
+	    return REBALANCE_REQUIRED;
+
+	return hN != hNRepl ? hNRepl : NOTHING_REQUIRED;
+    }
+
+    /**
+     * Fixes the height of a locked node. Returns the next node to repair: the
+     * node itself if it needs more than a height fix, its parent if the height
+     * changed, or null.
+     */
+    private Node<K, V> fixHeight(Node<K, V> node) {
+	int c = nodeCondition(node);
+	switch (c) {
+	case REBALANCE_REQUIRED:
+	case UNLINK_REQUIRED:
+	    return node;
+	case NOTHING_REQUIRED:
+	    return null;
+	default:
+	    node.height = c;
+	    return node.parent;
+	}
+    }
+
+    /**
+     * Walks up from a damaged node, taking only the locks each repair needs,
+     * until a node needs nothing. The root holder has no parent and ends the
+     * walk.
+     * <p>
+     * The decision that a node needs nothing is only taken under the node's
+     * lock. Heights are computed from the children's heights under the lock of
+     * the node being fixed, and whoever changes a child's height checks the
+     * parent afterwards under the parent's lock, so one of the two always sees
+     * the other's write and no height goes stale once the updates finish. For
+     * the same reason the walk remembers the child that sent it to a node: if a
+     * rotation or unlink has moved that child in the meantime, which happens
+     * under its old parent's lock, the walk follows the child to its new
+     * parent.
+     * <p>
+     * A rotation that leaves a node below it damaged hands back that node, and
+     * the walk up from there may stop before it reaches the rotated node or the
+     * rotated subtree's parent, whose heights may now be stale. Both are kept
+     * and re-checked, under their locks, once the deeper repair is done.
+     *
+     * @param from the child whose height changed, or null
+     * @param node the node to check
+     */
+    private void fixHeightAndRebalance(Node<K, V> from, Node<K, V> node) {
+	ArrayDeque<Node<K, V>> pending = null;
+	while (true) {
+	    if (from == node)
+		from = null;
+	    if (node == null || node.parent == null) {
+		if (pending == null || pending.isEmpty())
+		    return;
+		node = pending.pop();
+		from = null;
+		continue;
+	    }
+	    int condition = nodeCondition(node);
+
+	    if (condition != UNLINK_REQUIRED && condition != REBALANCE_REQUIRED) {
+		// a new height or nothing, decided under the lock
+		Node<K, V> next;
+		synchronized (node) {
+		    if (from != null && from.parent != node) {
+			next = from.parent; // from was moved, check its new parent
+		    } else if (isUnlinked(node.version)) {
+			next = null; // whoever unlinked it fixed its parent
+		    } else {
+			next = fixHeight(node);
+			from = node;
+		    }
+		}
+		node = next;
+	    } else {
+		Node<K, V> nParent = node.parent;
+		synchronized (nParent) {
+		    if (!isUnlinked(nParent.version) && node.parent == nParent) {
+			Node<K, V> next;
+			boolean keepParent = false;
+			synchronized (node) {
+			    if (from != null && from.parent != node) {
+				next = from.parent;
+			    } else if (isUnlinked(node.version)) {
+				next = null;
+			    } else {
+				next = rebalance(nParent, node);
+				from = next == nParent.parent ? nParent : null;
+				keepParent = next != null && next != nParent && next != nParent.parent;
+			    }
+			}
+			if (keepParent) {
+			    if (pending == null)
+				pending = new ArrayDeque<>();
+			    pending.push(nParent);
+			    // a rotation of node's child under node may have left it stale too
+			    pending.push(node);
+			}
+			node = next;
+		    } else if (isUnlinked(node.version)) {
+			node = from != null && from.parent != node ? from.parent : null;
+		    }
+		    // else retry with the new parent
+		}
+	    }
+	}
+    }
+
+    /**
+     * Unlinks, rotates or fixes the height of n. nParent and n must be locked.
+     * Returns the next damaged node, or null if there is none.
+     */
+    private Node<K, V> rebalance(Node<K, V> nParent, Node<K, V> n) {
+	Node<K, V> nL = n.left;
+	Node<K, V> nR = n.right;
+
+	if ((nL == null || nR == null) && n.value == null) {
+	    if (attemptUnlink(nParent, n)) {
+		// fix nParent's height while we still hold its lock
+		return fixHeight(nParent);
+	    } else {
+		return n; // retry n
+	    }
+	}
+
+	int hN = n.height;
+	int hL0 = height(nL);
+	int hR0 = height(nR);
+	int hNRepl = 1 + Math.max(hL0, hR0);
+	int bal = hL0 - hR0;
+
+	if (bal > 1) {
+	    return rebalanceToRight(nParent, n, nL, hR0);
+	} else if (bal < -1) {
+	    return rebalanceToLeft(nParent, n, nR, hL0);
+	} else if (hNRepl != hN) {
+	    n.height = hNRepl;
+	    return fixHeight(nParent);
+	} else {
+	    return null;
+	}
+    }
+
+    private Node<K, V> rebalanceToRight(Node<K, V> nParent, Node<K, V> n, Node<K, V> nL, int hR0) {
+	// nL is too tall, rotate right, first rotating nL left if nL.right is the
+	// taller side
+	synchronized (nL) {
+	    int hL = nL.height;
+	    if (hL - hR0 <= 1)
+		return n; // retry
+
+	    Node<K, V> nLR = nL.right;
+	    int hLL0 = height(nL.left);
+	    int hLR0 = height(nLR);
+	    if (hLL0 >= hLR0)
+		return rotateRight(nParent, n, nL, hR0, hLL0, nLR, hLR0);
+
+	    synchronized (nLR) {
+		// with the lock our snapshot of nLR's height may show that a single
+		// rotation is enough after all
+		int hLR = nLR.height;
+		if (hLL0 >= hLR)
+		    return rotateRight(nParent, n, nL, hR0, hLL0, nLR, hLR);
+
+		// Only fold nL's rotation into a double rotation if that leaves nL
+		// balanced, or leaves it a routing node with one child that the
+		// rotation unlinks. Otherwise fix nL on its own after releasing nLR
+		// so damaged nodes stay on one path.
+		int hLRL = height(nLR.left);
+		int b = hLL0 - hLRL;
+		if ((b >= -1 && b <= 1) || ((hLL0 == 0 || hLRL == 0) && nL.value == null))
+		    return rotateRightOverLeft(nParent, n, nL, hR0, hLL0, nLR, hLRL);
+	    }
+	    // focus on nL, n is rebalanced later if it needs to be
+	    return rebalanceToLeft(n, nL, nLR, hLL0);
+	}
+    }
+
+    private Node<K, V> rebalanceToLeft(Node<K, V> nParent, Node<K, V> n, Node<K, V> nR, int hL0) {
+	synchronized (nR) {
+	    int hR = nR.height;
+	    if (hL0 - hR >= -1)
+		return n; // retry
+
+	    Node<K, V> nRL = nR.left;
+	    int hRL0 = height(nRL);
+	    int hRR0 = height(nR.right);
+	    if (hRR0 >= hRL0)
+		return rotateLeft(nParent, n, hL0, nR, nRL, hRL0, hRR0);
+
+	    synchronized (nRL) {
+		int hRL = nRL.height;
+		if (hRR0 >= hRL)
+		    return rotateLeft(nParent, n, hL0, nR, nRL, hRL, hRR0);
+
+		int hRLR = height(nRL.right);
+		int b = hRR0 - hRLR;
+		if ((b >= -1 && b <= 1) || ((hRR0 == 0 || hRLR == 0) && nR.value == null))
+		    return rotateLeftOverRight(nParent, n, hL0, nR, nRL, hRR0, hRLR);
+	    }
+	    return rebalanceToRight(n, nR, nRL, hRR0);
+	}
+    }
+
+    /**
+     * n moves down so its version is bumped, nL moves up and keeps its range.
+     * Returns the deepest node left damaged, if any.
+     */
+    private Node<K, V> rotateRight(Node<K, V> nParent, Node<K, V> n, Node<K, V> nL, int hR, int hLL,
+	    Node<K, V> nLR, int hLR) {
+	long nodeVersion = n.version;
+	Node<K, V> nPL = nParent.left;
+
+	n.version = beginShrink(nodeVersion);
+
+	n.left = nLR;
+	if (nLR != null)
+	    nLR.parent = n;
+
+	nL.right = n;
+	n.parent = nL;
+
+	if (nPL == n)
+	    nParent.left = nL;
+	else
+	    nParent.right = nL;
+	nL.parent = nParent;
+
+	int hNRepl = 1 + Math.max(hLR, hR);
+	n.height = hNRepl;
+	nL.height = 1 + Math.max(hLL, hNRepl);
+
+	n.version = endShrink(nodeVersion);
+
+	// n has the right height but may still be out of balance
+	int balN = hLR - hR;
+	if (balN < -1 || balN > 1)
+	    return n;
+
+	// or be a routing node that can now be unlinked
+	if ((nLR == null || hR == 0) && n.value == null)
+	    return n;
+
+	int balL = hLL - hNRepl;
+	if (balL < -1 || balL > 1)
+	    return nL;
+
+	if (hLL == 0 && nL.value == null)
+	    return nL;
+
+	// fix the parent's height while we still hold its lock
+	return fixHeight(nParent);
+    }
+
+    private Node<K, V> rotateLeft(Node<K, V> nParent, Node<K, V> n, int hL, Node<K, V> nR, Node<K, V> nRL, int hRL,
+	    int hRR) {
+	long nodeVersion = n.version;
+	Node<K, V> nPL = nParent.left;
+
+	n.version = beginShrink(nodeVersion);
+
+	n.right = nRL;
+	if (nRL != null)
+	    nRL.parent = n;
+
+	nR.left = n;
+	n.parent = nR;
+
+	if (nPL == n)
+	    nParent.left = nR;
+	else
+	    nParent.right = nR;
+	nR.parent = nParent;
+
+	int hNRepl = 1 + Math.max(hL, hRL);
+	n.height = hNRepl;
+	nR.height = 1 + Math.max(hNRepl, hRR);
+
+	n.version = endShrink(nodeVersion);
+
+	int balN = hRL - hL;
+	if (balN < -1 || balN > 1)
+	    return n;
+
+	if ((nRL == null || hL == 0) && n.value == null)
+	    return n;
+
+	int balR = hRR - hNRepl;
+	if (balR < -1 || balR > 1)
+	    return nR;
+
+	if (hRR == 0 && nR.value == null)
+	    return nR;
+
+	return fixHeight(nParent);
+    }
+
+    /**
+     * Double rotation: both n and nL move down and have their versions bumped,
+     * nLR moves up to replace n. If nL is a routing node left with one child it
+     * is unlinked on the spot, all three locks are already held.
+     */
+    private Node<K, V> rotateRightOverLeft(Node<K, V> nParent, Node<K, V> n, Node<K, V> nL, int hR, int hLL,
+	    Node<K, V> nLR, int hLRL) {
+	long nodeVersion = n.version;
+	long leftVersion = nL.version;
+	Node<K, V> nPL = nParent.left;
+	Node<K, V> nLRL = nLR.left;
+	Node<K, V> nLRR = nLR.right;
+	int hLRR = height(nLRR);
+
+	n.version = beginShrink(nodeVersion);
+	nL.version = beginShrink(leftVersion);
+
+	// fix up n links, careful about the order!
+	n.left = nLRR;
+	if (nLRR != null)
+	    nLRR.parent = n;
+
+	nL.right = nLRL;
+	if (nLRL != null)
+	    nLRL.parent = nL;
+
+	nLR.left = nL;
+	nL.parent = nLR;
+	nLR.right = n;
+	n.parent = nLR;
+
+	if (nPL == n)
+	    nParent.left = nLR;
+	else
+	    nParent.right = nLR;
+	nLR.parent = nParent;
+
+	int hNRepl = 1 + Math.max(hLRR, hR);
+	n.height = hNRepl;
+	int hLRepl;
+	boolean unlinkL = nL.value == null && (nLRL == null || nL.left == null);
+	if (unlinkL) {
+	    attemptUnlink(nLR, nL);
+	    hLRepl = nLRL == null ? hLL : hLRL;
+	} else {
+	    hLRepl = 1 + Math.max(hLL, hLRL);
+	    nL.height = hLRepl;
+	}
+	nLR.height = 1 + Math.max(hLRepl, hNRepl);
+
+	n.version = endShrink(nodeVersion);
+	if (!unlinkL)
+	    nL.version = endShrink(leftVersion);
+
+	// nL is now balanced or gone, so only n and nLR can still be damaged
+	int balN = hLRR - hR;
+	if (balN < -1 || balN > 1)
+	    return n;
+
+	if ((nLRR == null || hR == 0) && n.value == null)
+	    return n;
+
+	int balLR = hLRepl - hNRepl;
+	if (balLR < -1 || balLR > 1)
+	    return nLR;
+
+	if (hLRepl == 0 && nLR.value == null)
+	    return nLR;
+
+	return fixHeight(nParent);
+    }
+
+    private Node<K, V> rotateLeftOverRight(Node<K, V> nParent, Node<K, V> n, int hL, Node<K, V> nR, Node<K, V> nRL,
+	    int hRR, int hRLR) {
+	long nodeVersion = n.version;
+	long rightVersion = nR.version;
+	Node<K, V> nPL = nParent.left;
+	Node<K, V> nRLL = nRL.left;
+	Node<K, V> nRLR = nRL.right;
+	int hRLL = height(nRLL);
+
+	n.version = beginShrink(nodeVersion);
+	nR.version = beginShrink(rightVersion);
+
+	n.right = nRLL;
+	if (nRLL != null)
+	    nRLL.parent = n;
+
+	nR.left = nRLR;
+	if (nRLR != null)
+	    nRLR.parent = nR;
+
+	nRL.right = nR;
+	nR.parent = nRL;
+	nRL.left = n;
+	n.parent = nRL;
+
+	if (nPL == n)
+	    nParent.left = nRL;
+	else
+	    nParent.right = nRL;
+	nRL.parent = nParent;
+
+	int hNRepl = 1 + Math.max(hL, hRLL);
+	n.height = hNRepl;
+	int hRRepl;
+	boolean unlinkR = nR.value == null && (nRLR == null || nR.right == null);
+	if (unlinkR) {
+	    attemptUnlink(nRL, nR);
+	    hRRepl = nRLR == null ? hRR : hRLR;
+	} else {
+	    hRRepl = 1 + Math.max(hRLR, hRR);
+	    nR.height = hRRepl;
+	}
+	nRL.height = 1 + Math.max(hNRepl, hRRepl);
+
+	n.version = endShrink(nodeVersion);
+	if (!unlinkR)
+	    nR.version = endShrink(rightVersion);
+
+	int balN = hRLL - hL;
+	if (balN < -1 || balN > 1)
+	    return n;
+
+	if ((nRLL == null || hL == 0) && n.value == null)
+	    return n;
+
+	int balRL = hRRepl - hNRepl;
+	if (balRL < -1 || balRL > 1)
+	    return nRL;
+
+	if (hRRepl == 0 && nRL.value == null)
+	    return nRL;
+
+	return fixHeight(nParent);
+    }
+
+    public Comparator<? super K> comparator() {
+	return comparator;
+    }
+
+    /**
+     * Returns the lowest key currently in this map.
+     *
+     * @throws NoSuchElementException
+     *             if this map is empty
+     */
+    public K firstKey() {
+	Node<K, V> p = firstNode();
+	if (p == null)
+	    throw new NoSuchElementException();
+	return p.key;
+    }
+
+    /**
+     * Returns the highest key currently in this map.
+     *
+     * @throws NoSuchElementException
+     *             if this map is empty
+     */
+    public K lastKey() {
+	Node<K, V> p = nearNode(null, false, true);
+	if (p == null)
+	    throw new NoSuchElementException();
+	return p.key;
+    }
+
+    /**
+     * Returns a snapshot of the mapping with the lowest key, or {@code null} if
+     * this map is empty. The entry does not support {@code setValue}.
+     */
+    public Map.Entry<K, V> firstEntry() {
+	return nearEntry(null, false, false);
+    }
+
+    /**
+     * Returns a snapshot of the mapping with the highest key, or {@code null} if
+     * this map is empty. The entry does not support {@code setValue}.
+     */
+    public Map.Entry<K, V> lastEntry() {
+	return nearEntry(null, false, true);
+    }
+
+    /**
+     * Removes and returns the mapping with the lowest key, or returns
+     * {@code null} if this map is empty.
+     */
+    public Map.Entry<K, V> pollFirstEntry() {
+	return pollNear(false);
+    }
+
+    /**
+     * Removes and returns the mapping with the highest key, or returns
+     * {@code null} if this map is empty.
+     */
+    public Map.Entry<K, V> pollLastEntry() {
+	return pollNear(true);
+    }
+
+    /**
+     * @throws NullPointerException
+     *             if the specified key is null
+     */
+    public Map.Entry<K, V> lowerEntry(K key) {
+	return nearEntry(checkKey(key), false, true);
+    }
+
+    /**
+     * @throws NullPointerException
+     *             if the specified key is null
+     */
+    public K lowerKey(K key) {
+	return keyOf(nearNode(checkKey(key), false, true));
+    }
+
+    /**
+     * @throws NullPointerException
+     *             if the specified key is null
+     */
+    public Map.Entry<K, V> floorEntry(K key) {
+	return nearEntry(checkKey(key), true, true);
+    }
+
+    /**
+     * @throws NullPointerException
+     *             if the specified key is null
+     */
+    public K floorKey(K key) {
+	return keyOf(nearNode(checkKey(key), true, true));
+    }
+
+    /**
+     * @throws NullPointerException
+     *             if the specified key is null
+     */
+    public Map.Entry<K, V> ceilingEntry(K key) {
+	return nearEntry(checkKey(key), true, false);
+    }
+
+    /**
+     * Returns the least key greater than or equal to the given key, or
+     * {@code null} if there is no such key.
+     *
+     * @throws NullPointerException
+     *             if the specified key is null
+     */
+    public K ceilingKey(K key) {
+	return keyOf(nearNode(checkKey(key), true, false));
+    }
+
+    /**
+     * @throws NullPointerException
+     *             if the specified key is null
+     */
+    public Map.Entry<K, V> higherEntry(K key) {
+	return nearEntry(checkKey(key), false, false);
+    }
+
+    /**
+     * Returns the least key strictly greater than the given key, or {@code null}
+     * if there is no such key.
+     *
+     * @throws NullPointerException
+     *             if the specified key is null
+     */
+    public K higherKey(K key) {
+	return keyOf(nearNode(checkKey(key), false, false));
+    }
+
+    static <K> K checkKey(K key) {
+	if (key == null)
+	    throw new NullPointerException();
+	return key;
+    }
+
+    static <K> K keyOf(Node<K, ?> p) {
+	return p == null ? null : p.key;
+    }
+
+    final Node<K, V> firstNode() {
+	return nearNode(null, false, false);
+    }
+
+    /**
+     * Returns a snapshot of the mapping nearest {@code key} on one side, as
+     * {@link #nearNode} finds it, or {@code null} if there is none. A node
+     * removed between being found and being read is looked past.
+     */
+    final Map.Entry<K, V> nearEntry(Object key, boolean inclusive, boolean below) {
+	while (true) {
+	    Node<K, V> p = nearNode(key, inclusive, below);
+	    if (p == null)
+		return null;
+	    V v = p.value;
+	    if (v != null)
+		return new AbstractMap.SimpleImmutableEntry<>(p.key, v);
+	    key = p.key;
+	    inclusive = false;
+	}
+    }
+
+    private Map.Entry<K, V> pollNear(boolean last) {
+	while (true) {
+	    Map.Entry<K, V> e = nearEntry(null, false, last);
+	    if (e == null || remove(e.getKey(), e.getValue()))
+		return e;
+	}
+    }
+
+    /**
+     * Returns the node holding a value with the least key above {@code key}, or
+     * with the greatest key below it if {@code below} is set, also accepting
+     * {@code key} itself if {@code inclusive} is set. A null {@code key} finds
+     * the lowest, or highest, node in the map. Routing nodes are skipped, so this
+     * may visit more than one path.
+     */
+    @SuppressWarnings("unchecked")
+    private Node<K, V> nearNode(Object key, boolean inclusive, boolean below) {
+	while (true) {
+	    Object p = attemptNearInChild(key, inclusive, below, rootHolder, rootHolder.version, RIGHT);
+	    if (p != RETRY)
+		return (Node<K, V>) p;
+	}
+    }
+
+    private Object attemptNear(Object key, boolean inclusive, boolean below, Node<K, V> node, long nodeVersion) {
+	// cmp < 0 when node is on the wanted side of key
+	int cmp = key == null ? -1 : (below ? compare(node.key, key) : compare(key, node.key));
+	if (cmp < 0) {
+	    // the nearer candidates are on the side of node facing key
+	    Object p = attemptNearInChild(key, inclusive, below, node, nodeVersion, below ? RIGHT : LEFT);
+	    if (p != null)
+		return p; // found, or RETRY
+	}
+	if (cmp < 0 || (cmp == 0 && inclusive)) {
+	    if (node.value != null)
+		return node.version != nodeVersion ? RETRY : node;
+	}
+	return attemptNearInChild(key, inclusive, below, node, nodeVersion, below ? LEFT : RIGHT);
+    }
+
+    private Object attemptNearInChild(Object key, boolean inclusive, boolean below, Node<K, V> node,
+	    long nodeVersion, char dirToC) {
+	while (true) {
+	    Node<K, V> child = node.child(dirToC);
+	    if (node.version != nodeVersion)
+		return RETRY;
+	    if (child == null)
+		return null;
+
+	    long childVersion = child.version;
+	    if (isShrinkingOrUnlinked(childVersion)) {
+		child.waitUntilShrinkCompleted(childVersion);
+		if (node.version != nodeVersion)
+		    return RETRY;
+	    } else if (child != node.child(dirToC)) {
+		if (node.version != nodeVersion)
+		    return RETRY;
+	    } else {
+		if (node.version != nodeVersion)
+		    return RETRY;
+		Object p = attemptNear(key, inclusive, below, child, childVersion);
+		if (p != RETRY)
+		    return p;
+	    }
+	}
+    }
+
+    /**
+     * Returns a {@link NavigableSet} view of the keys contained in this map, in
+     * ascending order, with the same weakly consistent iterator as
+     * {@link #entrySet()}.
+     */
+    public NavigableSet<K> keySet() {
+	KeySet<K> ks = keySet;
+	return (ks != null) ? ks : (keySet = new KeySet<>(this));
+    }
+
+    public NavigableSet<K> navigableKeySet() {
+	return keySet();
+    }
+
+    public NavigableSet<K> descendingKeySet() {
+	return descendingMap().navigableKeySet();
+    }
+
+    /**
+     * Returns a view of this map in descending key order.
+     */
+    public ConcurrentNavigableMap<K, V> descendingMap() {
+	SubMap<K, V> dm = descendingMap;
+	return (dm != null) ? dm : (descendingMap = new SubMap<>(this, null, false, null, false, true));
+    }
+
+    /**
+     * Returns a view of the keys from {@code fromKey} to {@code toKey}. Like all
+     * of the range views it is backed by this map, and putting a key outside of
+     * the range throws {@link IllegalArgumentException}.
+     *
+     * @throws NullPointerException
+     *             if {@code fromKey} or {@code toKey} is null
+     * @throws IllegalArgumentException
+     *             if {@code fromKey} is greater than {@code toKey}
+     */
+    public ConcurrentNavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+	return new SubMap<>(this, checkKey(fromKey), fromInclusive, checkKey(toKey), toInclusive, false);
+    }
+
+    /**
+     * @throws NullPointerException
+     *             if {@code toKey} is null
+     */
+    public ConcurrentNavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+	return new SubMap<>(this, null, false, checkKey(toKey), inclusive, false);
+    }
+
+    /**
+     * @throws NullPointerException
+     *             if {@code fromKey} is null
+     */
+    public ConcurrentNavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+	return new SubMap<>(this, checkKey(fromKey), inclusive, null, false, false);
+    }
+
+    public ConcurrentNavigableMap<K, V> subMap(K fromKey, K toKey) {
+	return subMap(fromKey, true, toKey, false);
+    }
+
+    public ConcurrentNavigableMap<K, V> headMap(K toKey) {
+	return headMap(toKey, false);
+    }
+
+    public ConcurrentNavigableMap<K, V> tailMap(K fromKey) {
+	return tailMap(fromKey, true);
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map, in
+     * ascending key order. The iterator is weakly consistent: each step finds the
+     * next higher key in the tree as it is at that moment, and the entries it
+     * returns are snapshots that do not support {@code setValue}.
+     */
+    public Set<Map.Entry<K, V>> entrySet() {
+	EntrySet es = entrySet;
+	return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+	public Iterator<Map.Entry<K, V>> iterator() {
+	    return new EntryIterator();
+	}
+
+	public boolean contains(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    V v = ConcurrentAVLTreeMap.this.get(entry.getKey());
+	    return v != null && v.equals(entry.getValue());
+	}
+
+	public boolean remove(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    return ConcurrentAVLTreeMap.this.remove(entry.getKey(), entry.getValue());
+	}
+
+	public boolean isEmpty() {
+	    return ConcurrentAVLTreeMap.this.isEmpty();
+	}
+
+	public int size() {
+	    return ConcurrentAVLTreeMap.this.size();
+	}
+
+	public void clear() {
+	    ConcurrentAVLTreeMap.this.clear();
+	}
+    }
+
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+	Map.Entry<K, V> next;
+	K lastReturned;
+
+	EntryIterator() {
+	    advance(null);
+	}
+
+	private void advance(K from) {
+	    next = nearEntry(from, false, false);
+	}
+
+	public boolean hasNext() {
+	    return next != null;
+	}
+
+	public Map.Entry<K, V> next() {
+	    Map.Entry<K, V> e = next;
+	    if (e == null)
+		throw new NoSuchElementException();
+	    lastReturned = e.getKey();
+	    advance(lastReturned);
+	    return e;
+	}
+
+	public void remove() {
+	    if (lastReturned == null)
+		throw new IllegalStateException();
+	    ConcurrentAVLTreeMap.this.remove(lastReturned);
+	    lastReturned = null;
+	}
+    }
+
+    /**
+     * The keys of a map or of one of its range views, every operation going to
+     * the map.
+     */
+    static final class KeySet<E> extends AbstractSet<E> implements NavigableSet<E> {
+	final ConcurrentNavigableMap<E, ?> m;
+
+	KeySet(ConcurrentNavigableMap<E, ?> m) {
+	    this.m = m;
+	}
+
+	public int size() {
+	    return m.size();
+	}
+
+	public boolean isEmpty() {
+	    return m.isEmpty();
+	}
+
+	public boolean contains(Object o) {
+	    return m.containsKey(o);
+	}
+
+	public boolean remove(Object o) {
+	    return m.remove(o) != null;
+	}
+
+	public void clear() {
+	    m.clear();
+	}
+
+	public E lower(E e) {
+	    return m.lowerKey(e);
+	}
+
+	public E floor(E e) {
+	    return m.floorKey(e);
+	}
+
+	public E ceiling(E e) {
+	    return m.ceilingKey(e);
+	}
+
+	public E higher(E e) {
+	    return m.higherKey(e);
+	}
+
+	public Comparator<? super E> comparator() {
+	    return m.comparator();
+	}
+
+	public E first() {
+	    return m.firstKey();
+	}
+
+	public E last() {
+	    return m.lastKey();
+	}
+
+	public E pollFirst() {
+	    Map.Entry<E, ?> e = m.pollFirstEntry();
+	    return e == null ? null : e.getKey();
+	}
+
+	public E pollLast() {
+	    Map.Entry<E, ?> e = m.pollLastEntry();
+	    return e == null ? null : e.getKey();
+	}
+
+	public Iterator<E> iterator() {
+	    Iterator<? extends Map.Entry<E, ?>> i = m.entrySet().iterator();
+	    return new Iterator<E>() {
+		public boolean hasNext() {
+		    return i.hasNext();
+		}
+
+		public E next() {
+		    return i.next().getKey();
+		}
+
+		public void remove() {
+		    i.remove();
+		}
+	    };
+	}
+
+	public NavigableSet<E> descendingSet() {
+	    return new KeySet<>(m.descendingMap());
+	}
+
+	public Iterator<E> descendingIterator() {
+	    return descendingSet().iterator();
+	}
+
+	public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+	    return new KeySet<>(m.subMap(fromElement, fromInclusive, toElement, toInclusive));
+	}
+
+	public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+	    return new KeySet<>(m.headMap(toElement, inclusive));
+	}
+
+	public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+	    return new KeySet<>(m.tailMap(fromElement, inclusive));
+	}
+
+	public NavigableSet<E> subSet(E fromElement, E toElement) {
+	    return subSet(fromElement, true, toElement, false);
+	}
+
+	public NavigableSet<E> headSet(E toElement) {
+	    return headSet(toElement, false);
+	}
+
+	public NavigableSet<E> tailSet(E fromElement) {
+	    return tailSet(fromElement, true);
+	}
+    }
+
+    /**
+     * A view of the keys of a map from {@code lo} to {@code hi}, either of which
+     * may be null for no bound, in ascending or descending order. Bounds are
+     * always in the map's own order, so a descending view swaps them when it
+     * makes a narrower view. Every operation checks the bounds and goes to the
+     * map, so views are as concurrent as the map and, like its own entry set,
+     * weakly consistent; {@code size()} counts the keys in range.
+     */
+    static final class SubMap<K, V> extends AbstractMap<K, V> implements ConcurrentNavigableMap<K, V> {
+	final ConcurrentAVLTreeMap<K, V> m;
+	final K lo, hi;
+	final boolean loInclusive, hiInclusive;
+	final boolean isDescending;
+
+	private transient KeySet<K> keySet;
+	private transient Set<Map.Entry<K, V>> entrySet;
+
+	SubMap(ConcurrentAVLTreeMap<K, V> m, K lo, boolean loInclusive, K hi, boolean hiInclusive,
+		boolean isDescending) {
+	    if (lo != null && hi != null && m.compare(lo, hi) > 0)
+		throw new IllegalArgumentException("inconsistent range");
+	    this.m = m;
+	    this.lo = lo;
+	    this.loInclusive = loInclusive;
+	    this.hi = hi;
+	    this.hiInclusive = hiInclusive;
+	    this.isDescending = isDescending;
+	}
+
+	boolean tooLow(Object key) {
+	    if (lo == null)
+		return false;
+	    int c = m.compare(key, lo);
+	    return c < 0 || (c == 0 && !loInclusive);
+	}
+
+	boolean tooHigh(Object key) {
+	    if (hi == null)
+		return false;
+	    int c = m.compare(key, hi);
+	    return c > 0 || (c == 0 && !hiInclusive);
+	}
+
+	boolean inRange(Object key) {
+	    return !tooLow(key) && !tooHigh(key);
+	}
+
+	void checkRange(K key) {
+	    if (!inRange(checkKey(key)))
+		throw new IllegalArgumentException("key out of range");
+	}
+
+	/**
+	 * The mapping in range nearest {@code key} on one side in the map's order,
+	 * starting from the bound on that side if {@code key} is null or beyond it.
+	 */
+	Map.Entry<K, V> near(K key, boolean inclusive, boolean below) {
+	    if (key == null || (below ? tooHigh(key) : tooLow(key))) {
+		key = below ? hi : lo;
+		inclusive = below ? hiInclusive : loInclusive;
+	    }
+	    Map.Entry<K, V> e = m.nearEntry(key, inclusive, below);
+	    if (e == null || (below ? tooLow(e.getKey()) : tooHigh(e.getKey())))
+		return null;
+	    return e;
+	}
+
+	static <K> K keyOrNull(Map.Entry<K, ?> e) {
+	    return e == null ? null : e.getKey();
+	}
+
+	public boolean containsKey(Object key) {
+	    return inRange(checkKey(key)) && m.containsKey(key);
+	}
+
+	public V get(Object key) {
+	    return inRange(checkKey(key)) ? m.get(key) : null;
+	}
+
+	public V put(K key, V value) {
+	    checkRange(key);
+	    return m.put(key, value);
+	}
+
+	public V putIfAbsent(K key, V value) {
+	    checkRange(key);
+	    return m.putIfAbsent(key, value);
+	}
+
+	public V replace(K key, V value) {
+	    checkRange(key);
+	    return m.replace(key, value);
+	}
+
+	public boolean replace(K key, V oldValue, V newValue) {
+	    checkRange(key);
+	    return m.replace(key, oldValue, newValue);
+	}
+
+	public V remove(Object key) {
+	    return inRange(checkKey(key)) ? m.remove(key) : null;
+	}
+
+	public boolean remove(Object key, Object value) {
+	    return inRange(checkKey(key)) && m.remove(key, value);
+	}
+
+	public int size() {
+	    int count = 0;
+	    for (Map.Entry<K, V> e = firstEntry(); e != null; e = higherEntry(e.getKey()))
+		count++;
+	    return count;
+	}
+
+	public boolean isEmpty() {
+	    return firstEntry() == null;
+	}
+
+	public void clear() {
+	    for (Map.Entry<K, V> e = firstEntry(); e != null; e = higherEntry(e.getKey()))
+		m.remove(e.getKey());
+	}
+
+	public Comparator<? super K> comparator() {
+	    Comparator<? super K> c = m.comparator;
+	    return isDescending ? Collections.reverseOrder(c) : c;
+	}
+
+	public Map.Entry<K, V> firstEntry() {
+	    return near(null, false, isDescending);
+	}
+
+	public Map.Entry<K, V> lastEntry() {
+	    return near(null, false, !isDescending);
+	}
+
+	public K firstKey() {
+	    Map.Entry<K, V> e = firstEntry();
+	    if (e == null)
+		throw new NoSuchElementException();
+	    return e.getKey();
+	}
+
+	public K lastKey() {
+	    Map.Entry<K, V> e = lastEntry();
+	    if (e == null)
+		throw new NoSuchElementException();
+	    return e.getKey();
+	}
+
+	public Map.Entry<K, V> pollFirstEntry() {
+	    while (true) {
+		Map.Entry<K, V> e = firstEntry();
+		if (e == null || m.remove(e.getKey(), e.getValue()))
+		    return e;
+	    }
+	}
+
+	public Map.Entry<K, V> pollLastEntry() {
+	    while (true) {
+		Map.Entry<K, V> e = lastEntry();
+		if (e == null || m.remove(e.getKey(), e.getValue()))
+		    return e;
+	    }
+	}
+
+	public Map.Entry<K, V> lowerEntry(K key) {
+	    return near(checkKey(key), false, !isDescending);
+	}
+
+	public K lowerKey(K key) {
+	    return keyOrNull(lowerEntry(key));
+	}
+
+	public Map.Entry<K, V> floorEntry(K key) {
+	    return near(checkKey(key), true, !isDescending);
+	}
+
+	public K floorKey(K key) {
+	    return keyOrNull(floorEntry(key));
+	}
+
+	public Map.Entry<K, V> ceilingEntry(K key) {
+	    return near(checkKey(key), true, isDescending);
+	}
+
+	public K ceilingKey(K key) {
+	    return keyOrNull(ceilingEntry(key));
+	}
+
+	public Map.Entry<K, V> higherEntry(K key) {
+	    return near(checkKey(key), false, isDescending);
+	}
+
+	public K higherKey(K key) {
+	    return keyOrNull(higherEntry(key));
+	}
+
+	/**
+	 * Returns a view of the part of this one between the given keys, in this
+	 * view's order, either of which may be null for no bound.
+	 */
+	private SubMap<K, V> newSubMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+	    if (isDescending) {
+		K k = fromKey;
+		fromKey = toKey;
+		toKey = k;
+		boolean inclusive = fromInclusive;
+		fromInclusive = toInclusive;
+		toInclusive = inclusive;
+	    }
+	    if (lo != null) {
+		if (fromKey == null) {
+		    fromKey = lo;
+		    fromInclusive = loInclusive;
+		} else {
+		    int c = m.compare(fromKey, lo);
+		    if (c < 0 || (c == 0 && !loInclusive && fromInclusive))
+			throw new IllegalArgumentException("key out of range");
+		}
+	    }
+	    if (hi != null) {
+		if (toKey == null) {
+		    toKey = hi;
+		    toInclusive = hiInclusive;
+		} else {
+		    int c = m.compare(toKey, hi);
+		    if (c > 0 || (c == 0 && !hiInclusive && toInclusive))
+			throw new IllegalArgumentException("key out of range");
+		}
+	    }
+	    return new SubMap<>(m, fromKey, fromInclusive, toKey, toInclusive, isDescending);
+	}
+
+	public ConcurrentNavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+	    return newSubMap(checkKey(fromKey), fromInclusive, checkKey(toKey), toInclusive);
+	}
+
+	public ConcurrentNavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+	    return newSubMap(null, false, checkKey(toKey), inclusive);
+	}
+
+	public ConcurrentNavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+	    return newSubMap(checkKey(fromKey), inclusive, null, false);
+	}
+
+	public ConcurrentNavigableMap<K, V> subMap(K fromKey, K toKey) {
+	    return subMap(fromKey, true, toKey, false);
+	}
+
+	public ConcurrentNavigableMap<K, V> headMap(K toKey) {
+	    return headMap(toKey, false);
+	}
+
+	public ConcurrentNavigableMap<K, V> tailMap(K fromKey) {
+	    return tailMap(fromKey, true);
+	}
+
+	public ConcurrentNavigableMap<K, V> descendingMap() {
+	    return new SubMap<>(m, lo, loInclusive, hi, hiInclusive, !isDescending);
+	}
+
+	public NavigableSet<K> keySet() {
+	    KeySet<K> ks = keySet;
+	    return (ks != null) ? ks : (keySet = new KeySet<>(this));
+	}
+
+	public NavigableSet<K> navigableKeySet() {
+	    return keySet();
+	}
+
+	public NavigableSet<K> descendingKeySet() {
+	    return descendingMap().navigableKeySet();
+	}
+
+	public Set<Map.Entry<K, V>> entrySet() {
+	    Set<Map.Entry<K, V>> es = entrySet;
+	    return (es != null) ? es : (entrySet = new AbstractSet<Map.Entry<K, V>>() {
+		public Iterator<Map.Entry<K, V>> iterator() {
+		    return new SubMapIterator();
+		}
+
+		public boolean contains(Object o) {
+		    if (!(o instanceof Map.Entry))
+			return false;
+		    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+		    V v = SubMap.this.get(entry.getKey());
+		    return v != null && v.equals(entry.getValue());
+		}
+
+		public boolean remove(Object o) {
+		    if (!(o instanceof Map.Entry))
+			return false;
+		    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+		    return SubMap.this.remove(entry.getKey(), entry.getValue());
+		}
+
+		public boolean isEmpty() {
+		    return SubMap.this.isEmpty();
+		}
+
+		public int size() {
+		    return SubMap.this.size();
+		}
+
+		public void clear() {
+		    SubMap.this.clear();
+		}
+	    });
+	}
+
+	final class SubMapIterator implements Iterator<Map.Entry<K, V>> {
+	    Map.Entry<K, V> next = firstEntry();
+	    K lastReturned;
+
+	    public boolean hasNext() {
+		return next != null;
+	    }
+
+	    public Map.Entry<K, V> next() {
+		Map.Entry<K, V> e = next;
+		if (e == null)
+		    throw new NoSuchElementException();
+		lastReturned = e.getKey();
+		next = higherEntry(lastReturned);
+		return e;
+	    }
+
+	    public void remove() {
+		if (lastReturned == null)
+		    throw new IllegalStateException();
+		m.remove(lastReturned);
+		lastReturned = null;
+	    }
+	}
+    }
+}
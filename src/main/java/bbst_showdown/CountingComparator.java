@@ -0,0 +1,57 @@
+package bbst_showdown;
+
+import java.util.Comparator;
+
+/**
+ * A comparator that counts how often it is called, for measuring the
+ * comparisons per operation of a map ordered by it.  Without a delegate it
+ * orders keys by their natural ordering, so wrapping changes nothing but
+ * the map taking the comparator path of its code.
+ *
+ * <p>Not thread-safe.
+ *
+ * @param <T> the type of objects that may be compared
+ */
+public final class CountingComparator<T> implements Comparator<T> {
+
+    private final Comparator<? super T> comparator;
+
+    private long comparisons;
+
+    /**
+     * Creates a counting comparator using the natural ordering of the keys.
+     */
+    public CountingComparator() {
+	this(null);
+    }
+
+    /**
+     * Creates a counting comparator delegating to the given comparator.
+     *
+     * @param comparator the ordering to count, or {@code null} for the
+     *        {@linkplain Comparable natural ordering}
+     */
+    public CountingComparator(Comparator<? super T> comparator) {
+	this.comparator = comparator;
+    }
+
+    @SuppressWarnings("unchecked")
+    public int compare(T o1, T o2) {
+	comparisons++;
+	return comparator == null ? ((Comparable<? super T>) o1).compareTo(o2) : comparator.compare(o1, o2);
+    }
+
+    /**
+     * Returns the number of comparisons made since creation or the last reset.
+     */
+    public long comparisons() {
+	return comparisons;
+    }
+
+    /**
+     * Sets the number of comparisons back to zero.
+     */
+    public void reset() {
+	comparisons = 0;
+    }
+}
@@ -0,0 +1,325 @@
+package bbst_showdown;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable sorted map stored as a complete binary tree in breadth first
+ * (Eytzinger) order, the layout of a binary heap.  It is built once from the
+ * sorted entries of another map, see {@link AVLTreeMap#freeze()},
+ * {@link WAVLTreeMap#freeze()} and {@link TreeMapRedBlack#freeze()}, and then
+ * only read.
+ * <p>
+ * The children of the entry at index i are at 2i and 2i+1, so there are no
+ * links to follow and the top levels of the tree share a few cache lines.  The
+ * descendants of an entry four levels down sit in one contiguous block, which
+ * the hardware prefetcher picks up since Java has no prefetch instruction.  A
+ * search always runs to the bottom of the tree and adds each comparison result
+ * to the next index instead of branching on it, which the JIT can compile to a
+ * conditional move; the answer is recovered from the bits of the final index.
+ * <p>
+ * Keys and values are still references, so every comparison loads a key
+ * object.  The map is as fast as the keys are close together in the heap.
+ * <p>
+ * The {@link Map} mutators inherited from {@link AbstractMap} throw
+ * {@code UnsupportedOperationException}.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ */
+public class EytzingerTreeMap<K, V> extends AbstractMap<K, V> {
+
+    /**
+     * Keys and values in breadth first order starting at index 1, slot 0 is
+     * unused so that the children of i are 2i and 2i+1.
+     */
+    final Object[] keys;
+    final Object[] values;
+
+    private final int size;
+
+    /**
+     * The comparator used to maintain order in this tree map, or null if it uses
+     * the natural ordering of its keys.
+     */
+    private final Comparator<? super K> comparator;
+
+    /**
+     * Lays out size entries read in ascending key order from the iterator.
+     */
+    EytzingerTreeMap(int size, Iterator<? extends Map.Entry<? extends K, ? extends V>> it,
+	    Comparator<? super K> comparator) {
+	this.size = size;
+	this.comparator = comparator;
+	keys = new Object[size + 1];
+	values = new Object[size + 1];
+	// visiting the slots in order hands them the entries in order
+	for (int i = first(); i != 0; i = next(i)) {
+	    Map.Entry<? extends K, ? extends V> e = it.next();
+	    keys[i] = e.getKey();
+	    values[i] = e.getValue();
+	}
+    }
+
+    public String toString() {
+	return "Eytzinger tree of size: " + size + ", height: " + treeHeight();
+    }
+
+    /**
+     * Returns the height of the tree, or -1 if it is empty.  The tree is complete
+     * so this is floor(log2(size)).
+     */
+    public int treeHeight() {
+	return 31 - Integer.numberOfLeadingZeros(size);
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * Returns the comparator used to order the keys in this map, or {@code null}
+     * if this map uses the natural ordering of its keys.
+     */
+    public Comparator<? super K> comparator() {
+	return comparator;
+    }
+
+    /**
+     * Returns {@code true} if this map contains a mapping for the specified key.
+     *
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public boolean containsKey(Object key) {
+	return getIndex(key) != 0;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or {@code null} if
+     * this map contains no mapping for the key.
+     *
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+	return (V) values[getIndex(key)];
+    }
+
+    /**
+     * @throws NoSuchElementException
+     *             if this map is empty
+     */
+    @SuppressWarnings("unchecked")
+    public K firstKey() {
+	if (size == 0)
+	    throw new NoSuchElementException();
+	return (K) keys[first()];
+    }
+
+    /**
+     * @throws NoSuchElementException
+     *             if this map is empty
+     */
+    @SuppressWarnings("unchecked")
+    public K lastKey() {
+	if (size == 0)
+	    throw new NoSuchElementException();
+	int i = 1;
+	while (2 * i + 1 <= size)
+	    i = 2 * i + 1;
+	return (K) keys[i];
+    }
+
+    /**
+     * Returns the greatest key less than or equal to the given key, or
+     * {@code null} if there is no such key.
+     */
+    @SuppressWarnings("unchecked")
+    public K floorKey(K key) {
+	return (K) keys[floorIndex(key)];
+    }
+
+    /**
+     * Returns the least key greater than or equal to the given key, or
+     * {@code null} if there is no such key.
+     */
+    @SuppressWarnings("unchecked")
+    public K ceilingKey(K key) {
+	return (K) keys[ceilingIndex(key)];
+    }
+
+    /**
+     * Returns the mapping for the greatest key less than or equal to the given
+     * key, or {@code null} if there is no such key.
+     */
+    public Map.Entry<K, V> floorEntry(K key) {
+	return exportEntry(floorIndex(key));
+    }
+
+    /**
+     * Returns the mapping for the least key greater than or equal to the given
+     * key, or {@code null} if there is no such key.
+     */
+    public Map.Entry<K, V> ceilingEntry(K key) {
+	return exportEntry(ceilingIndex(key));
+    }
+
+    /**
+     * Returns the mappings with keys from fromKey, inclusive, to toKey,
+     * exclusive, in ascending key order.
+     *
+     * @throws IllegalArgumentException
+     *             if fromKey is greater than toKey
+     */
+    public Iterator<Map.Entry<K, V>> entries(K fromKey, K toKey) {
+	if (compare(fromKey, toKey) > 0)
+	    throw new IllegalArgumentException("fromKey > toKey");
+	return new EntryIterator(ceilingIndex(fromKey), toKey);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map.Entry<K, V> exportEntry(int i) {
+	return (i == 0) ? null : new AbstractMap.SimpleImmutableEntry<>((K) keys[i], (V) values[i]);
+    }
+
+    /**
+     * Index of the entry for key, or 0 if there is none.
+     */
+    final int getIndex(Object key) {
+	int i = ceilingIndex(key);
+	return (i != 0 && compare(key, keys[i]) == 0) ? i : 0;
+    }
+
+    /**
+     * Index of the least key greater than or equal to key, or 0.  The search goes
+     * right past keys less than key to the bottom, so the answer is the last
+     * entry where it went left: strip the trailing right turns, the ones in the
+     * final index, and that left turn.
+     */
+    final int ceilingIndex(Object key) {
+	if (key == null && comparator == null)
+	    throw new NullPointerException();
+	Object[] k = keys;
+	int n = size, i = 1;
+	while (i <= n)
+	    i = 2 * i + (compare(k[i], key) < 0 ? 1 : 0);
+	return i >>> (Integer.numberOfTrailingZeros(~i) + 1);
+    }
+
+    /**
+     * Index of the greatest key less than or equal to key, or 0.  The search goes
+     * right past keys less than or equal to key, so the answer is the last entry
+     * where it went right: strip the trailing left turns, the zeros in the final
+     * index, and that right turn.
+     */
+    final int floorIndex(Object key) {
+	if (key == null && comparator == null)
+	    throw new NullPointerException();
+	Object[] k = keys;
+	int n = size, i = 1;
+	while (i <= n)
+	    i = 2 * i + (compare(k[i], key) <= 0 ? 1 : 0);
+	return i >>> (Integer.numberOfTrailingZeros(i) + 1);
+    }
+
+    /**
+     * Index of the first entry in key order, 0 if the map is empty.
+     */
+    private int first() {
+	if (size == 0)
+	    return 0;
+	int i = 1;
+	while (2 * i <= size)
+	    i = 2 * i;
+	return i;
+    }
+
+    /**
+     * Index of the entry after i in key order, 0 after the last one: the leftmost
+     * entry of the right subtree, or else the nearest ancestor reached from its
+     * left subtree.
+     */
+    private int next(int i) {
+	if (2 * i + 1 <= size) {
+	    i = 2 * i + 1;
+	    while (2 * i <= size)
+		i = 2 * i;
+	    return i;
+	}
+	return i >>> (Integer.numberOfTrailingZeros(~i) + 1);
+    }
+
+    /**
+     * Compares two keys using the correct comparison method for this map.
+     */
+    @SuppressWarnings("unchecked")
+    final int compare(Object k1, Object k2) {
+	return comparator == null ? ((Comparable<? super K>) k1).compareTo((K) k2)
+		: comparator.compare((K) k1, (K) k2);
+    }
+
+    // Views
+
+    private transient EntrySet entrySet = null;
+
+    public Set<Map.Entry<K, V>> entrySet() {
+	EntrySet es = entrySet;
+	return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+	public Iterator<Map.Entry<K, V>> iterator() {
+	    return new EntryIterator(first(), null);
+	}
+
+	public int size() {
+	    return size;
+	}
+    }
+
+    /**
+     * Iterates in key order from an index up to an exclusive bound, or to the end
+     * if the bound is null.
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+	private int next;
+	private final Object toKey;
+
+	EntryIterator(int first, Object toKey) {
+	    this.toKey = toKey;
+	    next = (first != 0 && toKey != null && compare(keys[first], toKey) >= 0) ? 0 : first;
+	}
+
+	public boolean hasNext() {
+	    return next != 0;
+	}
+
+	public Map.Entry<K, V> next() {
+	    if (next == 0)
+		throw new NoSuchElementException();
+	    Map.Entry<K, V> e = exportEntry(next);
+	    next = EytzingerTreeMap.this.next(next);
+	    if (next != 0 && toKey != null && compare(keys[next], toKey) >= 0)
+		next = 0;
+	    return e;
+	}
+    }
+}
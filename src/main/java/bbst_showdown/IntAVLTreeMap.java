@@ -0,0 +1,811 @@
+package bbst_showdown;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An AVL tree keyed by primitive {@code int}.
+ * 
+ * <p>
+ * Identical balancing to {@link AVLTreeMap} - one byte of balance factor per node
+ * and the same insert and delete re-tracing - but each node holds its key as an
+ * {@code int} and descents compare with {@code <} and {@code >} directly, so
+ * {@link #get(int)}, {@link #put(int, Object)}, {@link #remove(int)} and the floor
+ * and ceiling searches never box a key or dispatch through
+ * {@link Comparable#compareTo}.
+ * <p>
+ * The {@link Map} methods taking {@link Integer} keys are supported for
+ * compatibility and unbox on entry. When {@code V} is {@link Integer} a call such
+ * as {@code put(1, 2)} matches both overloads; pass a boxed value,
+ * {@code put(1, Integer.valueOf(2))}, to select the primitive one.
+ *
+ * @param <V> the type of mapped values
+ */
+public class IntAVLTreeMap<V> extends AbstractMap<Integer, V> {
+
+    protected transient Entry<V> root = null;
+
+    /**
+     * The number of entries in the tree
+     */
+    protected transient int size = 0;
+
+    /**
+     * The number of structural modifications to the tree.
+     */
+    protected transient int modCount = 0;
+
+    protected transient int rotations = 0;
+
+    /**
+     * Constructs a new, empty tree map ordered by int value.
+     */
+    public IntAVLTreeMap() {
+    }
+
+    /**
+     * Constructs a new tree map containing the same mappings as the given map.
+     *
+     * @param m
+     *            the map whose mappings are to be placed in this map
+     * @throws NullPointerException
+     *             if the specified map is null or contains a null key
+     */
+    public IntAVLTreeMap(Map<? extends Integer, ? extends V> m) {
+	putAll(m);
+    }
+
+    public int treeHeight() {
+	return treeHeight(root) - 1;
+    }
+
+    protected int treeHeight(Entry<V> node) {
+	if (node == null)
+	    return 0;
+	return (1 + Math.max(treeHeight(node.left), treeHeight(node.right)));
+    }
+
+    public int rotations() {
+	return rotations;
+    }
+
+    public String toString() {
+	return "AVL tree (int keys) of size: " + size + ", height: " + treeHeight() + ", rotations " + rotations;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or {@code null} if
+     * this map contains no mapping for the key.
+     */
+    public V get(int key) {
+	Entry<V> p = getEntry(key);
+	return (p == null ? null : p.value);
+    }
+
+    /**
+     * @throws NullPointerException
+     *             if the specified key is null
+     * @throws ClassCastException
+     *             if the specified key is not an {@link Integer}
+     */
+    public V get(Object key) {
+	return get(((Integer) key).intValue());
+    }
+
+    /**
+     * Returns {@code true} if this map contains a mapping for the specified key.
+     */
+    public boolean containsKey(int key) {
+	return getEntry(key) != null;
+    }
+
+    /**
+     * @throws NullPointerException
+     *             if the specified key is null
+     * @throws ClassCastException
+     *             if the specified key is not an {@link Integer}
+     */
+    public boolean containsKey(Object key) {
+	return getEntry(((Integer) key).intValue()) != null;
+    }
+
+    /**
+     * Node in the Tree. Doubles as a means to pass key-value pairs back to user
+     * (see Map.Entry).
+     */
+    public static final class Entry<V> implements Map.Entry<Integer, V> {
+	int key;
+	V value;
+	Entry<V> left = null;
+	Entry<V> right = null;
+	Entry<V> parent = null;
+	byte balance = 0; // Height(RightSubtree(N)) - Height(LeftSubtree(N))
+
+	Entry(int key, V value, Entry<V> parent) {
+	    this.key = key;
+	    this.value = value;
+	    this.parent = parent;
+	}
+
+	/**
+	 * Returns the key without boxing.
+	 *
+	 * @return the key
+	 */
+	public int getIntKey() {
+	    return key;
+	}
+
+	/**
+	 * Returns the key, boxed.
+	 *
+	 * @return the key
+	 */
+	public Integer getKey() {
+	    return key;
+	}
+
+	/**
+	 * Returns the value associated with the key.
+	 *
+	 * @return the value associated with the key
+	 */
+	public V getValue() {
+	    return value;
+	}
+
+	/**
+	 * Replaces the value currently associated with the key with the given value.
+	 *
+	 * @return the value associated with the key before this method was called
+	 */
+	public V setValue(V value) {
+	    V oldValue = this.value;
+	    this.value = value;
+	    return oldValue;
+	}
+
+	public boolean equals(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+
+	    return Integer.valueOf(key).equals(e.getKey()) && valEquals(value, e.getValue());
+	}
+
+	public int hashCode() {
+	    int valueHash = (value == null ? 0 : value.hashCode());
+	    return key ^ valueHash;
+	}
+
+	public String toString() {
+	    return key + "=" + value;
+	}
+    }
+
+    /**
+     * Returns this map's entry for the given key, or {@code null} if the map does
+     * not contain an entry for the key.
+     */
+    final Entry<V> getEntry(int key) {
+	Entry<V> p = root;
+	while (p != null) {
+	    if (key < p.key)
+		p = p.left;
+	    else if (key > p.key)
+		p = p.right;
+	    else
+		return p;
+	}
+	return null;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map. If the map
+     * previously contained a mapping for the key, the old value is replaced.
+     *
+     * @return the previous value associated with {@code key}, or {@code null} if
+     *         there was no mapping for {@code key}.
+     */
+    public V put(int key, V value) {
+	Entry<V> t = root;
+	if (t == null) {
+	    root = new Entry<>(key, value, null);
+	    size = 1;
+	    modCount++;
+	    return null;
+	}
+	Entry<V> parent;
+	do {
+	    parent = t;
+	    if (key < t.key)
+		t = t.left;
+	    else if (key > t.key)
+		t = t.right;
+	    else
+		return t.setValue(value);
+	} while (t != null);
+
+	Entry<V> e = new Entry<>(key, value, parent);
+	if (key < parent.key) {
+	    parent.left = e;
+	    parent.balance--;
+	} else {
+	    parent.right = e;
+	    parent.balance++;
+	}
+	fixAfterInsertion(parent);
+
+	size++;
+	modCount++;
+	return null;
+    }
+
+    /**
+     * @throws NullPointerException
+     *             if the specified key is null
+     */
+    public V put(Integer key, V value) {
+	return put(key.intValue(), value);
+    }
+
+    /**
+     * Checks the parent links, key order and balance factors of the subtree
+     * rooted at node, for tests.  Returns the height of the subtree, 0 when it
+     * is empty.
+     *
+     * @throws IllegalStateException at the first node that breaks an invariant
+     */
+    int checkInvariants(Entry<V> node) {
+	if (node == null)
+	    return 0;
+	if (node.left != null && (node.left.parent != node || node.left.key >= node.key))
+	    throw new IllegalStateException("bad left child at " + node.key);
+	if (node.right != null && (node.right.parent != node || node.right.key <= node.key))
+	    throw new IllegalStateException("bad right child at " + node.key);
+	int leftHeight = checkInvariants(node.left);
+	int rightHeight = checkInvariants(node.right);
+	if (node.balance != rightHeight - leftHeight || Math.abs(node.balance) > 1)
+	    throw new IllegalStateException("balance " + node.balance + " at " + node.key + ", heights "
+		    + leftHeight + " and " + rightHeight);
+	return 1 + Math.max(leftHeight, rightHeight);
+    }
+
+    private void fixAfterInsertion(Entry<V> x) {
+	while (x.balance != 0) {
+	    if (x.balance == 2) { // right heavy by 2?
+		if (x.right.balance == 1) {
+		    x.balance = 0;
+		    x.right.balance = 0;
+		    rotateLeft(x);
+		} else { // x.right.balance = -1
+		    int rlBalance = x.right.left.balance;
+		    x.right.left.balance = 0;
+		    x.right.balance = 0;
+		    x.balance = 0;
+		    if (rlBalance == 1)
+			x.balance = -1;
+		    else if (rlBalance == -1)
+			x.right.balance = 1;
+
+		    rotateRight(x.right);
+		    rotateLeft(x);
+		}
+		break;
+	    } else if (x.balance == -2) {
+		if (x.left.balance == -1) {
+		    x.balance = 0;
+		    x.left.balance = 0;
+		    rotateRight(x);
+		} else { // x.left.balance = 1
+		    int lrBalance = x.left.right.balance;
+		    x.left.right.balance = 0;
+		    x.left.balance = 0;
+		    x.balance = 0;
+		    if (lrBalance == 1)
+			x.left.balance = -1;
+		    else if (lrBalance == -1)
+			x.balance = 1;
+
+		    rotateLeft(x.left);
+		    rotateRight(x);
+		}
+		break;
+	    }
+
+	    if (x.parent == null)
+		break;
+	    if (x.parent.left == x)
+		x.parent.balance--;
+	    else
+		x.parent.balance++;
+
+	    x = x.parent;
+	}
+    }
+
+    /** From CLR */
+    private void rotateLeft(Entry<V> p) {
+	Entry<V> r = p.right;
+	p.right = r.left;
+	if (r.left != null)
+	    r.left.parent = p;
+	r.parent = p.parent;
+	if (p.parent == null)
+	    root = r;
+	else if (p.parent.left == p)
+	    p.parent.left = r;
+	else
+	    p.parent.right = r;
+	r.left = p;
+	p.parent = r;
+	rotations++;
+    }
+
+    /** From CLR */
+    private void rotateRight(Entry<V> p) {
+	Entry<V> l = p.left;
+	p.left = l.right;
+	if (l.right != null)
+	    l.right.parent = p;
+	l.parent = p.parent;
+	if (p.parent == null)
+	    root = l;
+	else if (p.parent.right == p)
+	    p.parent.right = l;
+	else
+	    p.parent.left = l;
+	l.right = p;
+	p.parent = l;
+	rotations++;
+    }
+
+    /**
+     * Removes the mapping for this key from this map if present.
+     *
+     * @return the previous value associated with {@code key}, or {@code null} if
+     *         there was no mapping for {@code key}.
+     */
+    public V remove(int key) {
+	Entry<V> p = getEntry(key);
+	if (p == null)
+	    return null;
+
+	V oldValue = p.value;
+	deleteEntry(p);
+	return oldValue;
+    }
+
+    /**
+     * @throws NullPointerException
+     *             if the specified key is null
+     * @throws ClassCastException
+     *             if the specified key is not an {@link Integer}
+     */
+    public V remove(Object key) {
+	return remove(((Integer) key).intValue());
+    }
+
+    private void deleteEntry(Entry<V> p) {
+	modCount++;
+	size--;
+
+	// If strictly internal, copy successor's element to p and then make p point to
+	// successor.
+	if (p.left != null && p.right != null) {
+	    Entry<V> s = successor(p);
+	    p.key = s.key;
+	    p.value = s.value;
+	    p = s;
+	} // p has 2 children
+
+	// Start fixup at replacement node, if it exists.
+	Entry<V> replacement = (p.left != null ? p.left : p.right);
+
+	if (replacement != null) {
+	    // Link replacement to parent
+	    replacement.parent = p.parent;
+	    if (p.parent == null) {
+		root = replacement;
+		return;
+	    } else if (p == p.parent.left) {
+		p.parent.left = replacement;
+		p.parent.balance++;
+		if (replacement.parent.balance == 1) {
+		    p.left = p.right = p.parent = null;
+		    return;
+		}
+	    } else {
+		p.parent.right = replacement;
+		p.parent.balance--;
+		if (replacement.parent.balance == -1) {
+		    p.left = p.right = p.parent = null;
+		    return;
+		}
+	    }
+
+	    // Null out links so they are OK to use by fixAfterDeletion.
+	    p.left = p.right = p.parent = null;
+	    fixAfterDeletion(replacement.parent);
+	} else if (p.parent == null) { // return if we are the only node.
+	    root = null;
+	} else { // No children.
+	    Entry<V> fixPoint = p.parent;
+
+	    if (p == fixPoint.left) {
+		fixPoint.left = null;
+		fixPoint.balance++;
+		p.parent = null;
+		if (fixPoint.balance == 1)
+		    return;
+	    } else {
+		fixPoint.right = null;
+		fixPoint.balance--;
+		p.parent = null;
+		if (fixPoint.balance == -1)
+		    return;
+	    }
+
+	    fixAfterDeletion(fixPoint);
+	}
+    }
+
+    private void fixAfterDeletion(Entry<V> x) {
+	while (true) {
+	    if (x.balance == 2) { // right heavy by 2?
+		if (x.right.balance == 1) {
+		    x.balance = 0;
+		    x.right.balance = 0;
+		    rotateLeft(x);
+		} else if (x.right.balance == 0) {
+		    x.balance = 1;
+		    x.right.balance = -1;
+		    rotateLeft(x);
+		    break;
+		} else { // x.right.balance = -1
+		    int rlBalance = x.right.left.balance;
+		    x.right.left.balance = 0;
+		    x.right.balance = 0;
+		    x.balance = 0;
+		    if (rlBalance == 1)
+			x.balance = -1;
+		    else if (rlBalance == -1)
+			x.right.balance = 1;
+		    rotateRight(x.right);
+		    rotateLeft(x);
+		}
+		x = x.parent;
+	    } else if (x.balance == -2) {
+		if (x.left.balance == -1) {
+		    x.balance = 0;
+		    x.left.balance = 0;
+		    rotateRight(x);
+		} else if (x.left.balance == 0) {
+		    x.balance = -1;
+		    x.left.balance = 1;
+		    rotateRight(x);
+		    break;
+		} else { // (x.left.balance == 1)
+		    int lrBalance = x.left.right.balance;
+		    x.left.right.balance = 0;
+		    x.left.balance = 0;
+		    x.balance = 0;
+		    if (lrBalance == 1)
+			x.left.balance = -1;
+		    else if (lrBalance == -1)
+			x.balance = 1;
+		    rotateLeft(x.left);
+		    rotateRight(x);
+		}
+		x = x.parent;
+	    }
+
+	    if (x.parent == null)
+		break;
+	    if (x.parent.left == x) {
+		x.parent.balance++;
+		if (x.parent.balance == 1) {
+		    break;
+		}
+	    } else {
+		x.parent.balance--;
+		if (x.parent.balance == -1) {
+		    break;
+		}
+	    }
+
+	    x = x.parent;
+	}
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map, in
+     * ascending key order. The set supports element removal but not {@code add} or
+     * {@code addAll}.
+     */
+    public Set<Map.Entry<Integer, V>> entrySet() {
+	EntrySet es = entrySet;
+	return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    private transient EntrySet entrySet = null;
+
+    class EntrySet extends AbstractSet<Map.Entry<Integer, V>> {
+	public Iterator<Map.Entry<Integer, V>> iterator() {
+	    return new EntryIterator(getFirstEntry());
+	}
+
+	public boolean contains(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    if (!(entry.getKey() instanceof Integer))
+		return false;
+	    Entry<V> p = getEntry((Integer) entry.getKey());
+	    return p != null && valEquals(p.getValue(), entry.getValue());
+	}
+
+	public boolean remove(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    if (!(entry.getKey() instanceof Integer))
+		return false;
+	    Entry<V> p = getEntry((Integer) entry.getKey());
+	    if (p != null && valEquals(p.getValue(), entry.getValue())) {
+		deleteEntry(p);
+		return true;
+	    }
+	    return false;
+	}
+
+	public int size() {
+	    return IntAVLTreeMap.this.size();
+	}
+
+	public void clear() {
+	    IntAVLTreeMap.this.clear();
+	}
+    }
+
+    final class EntryIterator implements Iterator<Map.Entry<Integer, V>> {
+	Entry<V> next;
+	Entry<V> lastReturned;
+	int expectedModCount;
+
+	EntryIterator(Entry<V> first) {
+	    expectedModCount = modCount;
+	    lastReturned = null;
+	    next = first;
+	}
+
+	public boolean hasNext() {
+	    return next != null;
+	}
+
+	public Map.Entry<Integer, V> next() {
+	    Entry<V> e = next;
+	    if (e == null)
+		throw new NoSuchElementException();
+	    if (modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    next = successor(e);
+	    lastReturned = e;
+	    return e;
+	}
+
+	public void remove() {
+	    if (lastReturned == null)
+		throw new IllegalStateException();
+	    if (modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    // deleted entries are replaced by their successors
+	    if (lastReturned.left != null && lastReturned.right != null)
+		next = lastReturned;
+	    deleteEntry(lastReturned);
+	    expectedModCount = modCount;
+	    lastReturned = null;
+	}
+    }
+
+    /**
+     * Removes all of the mappings from this map. The map will be empty after this
+     * call returns.
+     */
+    public void clear() {
+	modCount++;
+	size = 0;
+	root = null;
+	rotations = 0;
+    }
+
+    /**
+     * Test two values for equality. Differs from o1.equals(o2) only in that it
+     * copes with {@code null} o1 properly.
+     */
+    static final boolean valEquals(Object o1, Object o2) {
+	return (o1 == null ? o2 == null : o1.equals(o2));
+    }
+
+    /**
+     * Returns the first Entry in the tree (lowest key). Returns null if the tree is
+     * empty.
+     */
+    final Entry<V> getFirstEntry() {
+	Entry<V> p = root;
+	if (p != null)
+	    while (p.left != null)
+		p = p.left;
+	return p;
+    }
+
+    /**
+     * Returns the last Entry in the tree (highest key). Returns null if the tree is
+     * empty.
+     */
+    final Entry<V> getLastEntry() {
+	Entry<V> p = root;
+	if (p != null)
+	    while (p.right != null)
+		p = p.right;
+	return p;
+    }
+
+    /**
+     * Returns the successor of the specified Entry, or null if no such.
+     */
+    static <V> Entry<V> successor(Entry<V> t) {
+	if (t == null)
+	    return null;
+	else if (t.right != null) {
+	    Entry<V> p = t.right;
+	    while (p.left != null)
+		p = p.left;
+	    return p;
+	} else {
+	    Entry<V> p = t.parent;
+	    Entry<V> ch = t;
+	    while (p != null && ch == p.right) {
+		ch = p;
+		p = p.parent;
+	    }
+	    return p;
+	}
+    }
+
+    /**
+     * Returns the predecessor of the specified Entry, or null if no such.
+     */
+    static <V> Entry<V> predecessor(Entry<V> t) {
+	if (t == null)
+	    return null;
+	else if (t.left != null) {
+	    Entry<V> p = t.left;
+	    while (p.right != null)
+		p = p.right;
+	    return p;
+	} else {
+	    Entry<V> p = t.parent;
+	    Entry<V> ch = t;
+	    while (p != null && ch == p.left) {
+		ch = p;
+		p = p.parent;
+	    }
+	    return p;
+	}
+    }
+
+    /**
+     * Returns the lowest key currently in this map.
+     *
+     * @throws NoSuchElementException
+     *             if this map is empty
+     */
+    public int firstKey() {
+	Entry<V> p = getFirstEntry();
+	if (p == null)
+	    throw new NoSuchElementException();
+	return p.key;
+    }
+
+    /**
+     * Returns the highest key currently in this map.
+     *
+     * @throws NoSuchElementException
+     *             if this map is empty
+     */
+    public int lastKey() {
+	Entry<V> p = getLastEntry();
+	if (p == null)
+	    throw new NoSuchElementException();
+	return p.key;
+    }
+
+    /*
+     * The navigation methods below return the tree's own nodes rather than
+     * immutable snapshots so a lookup allocates nothing.  A returned entry is only
+     * valid until the next structural modification of the map.
+     */
+
+    /**
+     * Returns the entry for the least key greater than or equal to the given key,
+     * or {@code null} if there is no such key.
+     */
+    public Entry<V> ceilingEntry(int key) {
+	Entry<V> p = root, best = null;
+	while (p != null) {
+	    if (key < p.key) {
+		best = p;
+		p = p.left;
+	    } else if (key > p.key)
+		p = p.right;
+	    else
+		return p;
+	}
+	return best;
+    }
+
+    /**
+     * Returns the entry for the greatest key less than or equal to the given key,
+     * or {@code null} if there is no such key.
+     */
+    public Entry<V> floorEntry(int key) {
+	Entry<V> p = root, best = null;
+	while (p != null) {
+	    if (key > p.key) {
+		best = p;
+		p = p.right;
+	    } else if (key < p.key)
+		p = p.left;
+	    else
+		return p;
+	}
+	return best;
+    }
+
+    /**
+     * Returns the entry for the least key strictly greater than the given key, or
+     * {@code null} if there is no such key.
+     */
+    public Entry<V> higherEntry(int key) {
+	Entry<V> p = root, best = null;
+	while (p != null) {
+	    if (key < p.key) {
+		best = p;
+		p = p.left;
+	    } else
+		p = p.right;
+	}
+	return best;
+    }
+
+    /**
+     * Returns the entry for the greatest key strictly less than the given key, or
+     * {@code null} if there is no such key.
+     */
+    public Entry<V> lowerEntry(int key) {
+	Entry<V> p = root, best = null;
+	while (p != null) {
+	    if (key > p.key) {
+		best = p;
+		p = p.right;
+	    } else
+		p = p.left;
+	}
+	return best;
+    }
+}
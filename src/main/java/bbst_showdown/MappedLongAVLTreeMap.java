@@ -0,0 +1,413 @@
+package bbst_showdown;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * An {@link OffHeapLongAVLTreeMap} whose slabs are mapped from a file, so a map
+ * written by one process can be reopened by the next without reading or
+ * re-inserting its entries.
+ *
+ * <p>
+ * The file starts with a header page followed by the slabs back to back, each
+ * node at the same offset within its slab as in memory:
+ *
+ * <pre>
+ *  0  long magic
+ *  8  int  version
+ * 12  int  1 if the nodes are little endian, 0 if big endian
+ * 16  int  nodes per slab
+ * 20  int  size
+ * 24  int  root node
+ * 28  int  nodes handed out
+ * 32  int  free list head
+ * 36  int  rotations
+ * 40  long commit number
+ * 48  long CRC32 of bytes 0 to 47
+ * </pre>
+ *
+ * Opening maps the slabs and reads the header, the cost does not depend on
+ * the size of the map beyond one mapping per slab.  Each slab keeps its
+ * mapping until the map is closed, so a map of n nodes needs n / slabNodes
+ * mappings, which must stay well below the operating system's limit
+ * ({@code vm.max_map_count}, 65530 by default on Linux).  With the default
+ * slab of 2^16 nodes even 2^31 nodes take 32768 mappings; very small slabs
+ * are only for tests.
+ * <p>
+ * The slabs are mapped {@link FileChannel.MapMode#PRIVATE copy on write}, so
+ * updates only change memory and the file always holds the last committed
+ * tree no matter when the operating system writes pages back. A page written
+ * once stays a private copy in memory, it is not remapped from the file after
+ * a commit. Every 4KB page written since the last commit is marked dirty.
+ * {@link #commit()} makes the updates durable in three forced steps:
+ * <ol>
+ * <li>the dirty pages and the new header are appended to a redo log next to
+ * the file, followed by a CRC32 of the whole log, and the log is forced - once
+ * this returns the commit has happened;
+ * <li>the same pages and header are written into the file, which is forced;
+ * <li>the log is truncated and forced.
+ * </ol>
+ * Opening a file whose log is complete replays the log, a log that is missing
+ * its trailer or fails its checksum is from a commit that never happened and
+ * is discarded. Either way the map opens on the last committed state.
+ * Updates not committed before {@link #close()} are lost.
+ * <p>
+ * The nodes are stored in native byte order, a file can only be reopened on a
+ * machine with the same order.
+ */
+public class MappedLongAVLTreeMap extends OffHeapLongAVLTreeMap implements Closeable {
+
+    static final long MAGIC = 0x6262_7374_6176_6c31L; // "bbstavl1"
+
+    static final int VERSION = 1;
+
+    /**
+     * Bytes before the first slab, one page so slabs stay page aligned.
+     */
+    static final int HEADER_BYTES = 4096;
+
+    /**
+     * Bytes of the header covered by the checksum.
+     */
+    static final int HEADER_CHECKED = 48;
+
+    static final int HEADER_LENGTH = HEADER_CHECKED + 8;
+
+    /**
+     * 4KB, 128 nodes, the unit of dirty tracking.
+     */
+    private static final int PAGE_SHIFT = 12 - NODE_SHIFT;
+
+    /**
+     * Marks the end of the log records, followed by the checksum.
+     */
+    private static final long END_OF_LOG = -1L;
+
+    private final Path path;
+
+    private final FileChannel file;
+
+    private final FileChannel log;
+
+    /**
+     * Nodes per dirty tracking page as a shift, a full page or the whole slab
+     * when slabs are smaller.
+     */
+    private final int pageShift;
+
+    /**
+     * One bit per page written since the last commit.
+     */
+    private long[] dirty = new long[1];
+
+    private long commits;
+
+    private MappedLongAVLTreeMap(Path path, FileChannel file, FileChannel log, ByteBuffer header) {
+	super(header.getInt(16));
+	this.path = path;
+	this.file = file;
+	this.log = log;
+	pageShift = Math.min(PAGE_SHIFT, slabShift);
+	size = header.getInt(20);
+	root = header.getInt(24);
+	used = header.getInt(28);
+	free = header.getInt(32);
+	rotations = header.getInt(36);
+	commits = header.getLong(40);
+	int count = (int) (((long) used + slabMask) >>> slabShift);
+	slabs = new ByteBuffer[Math.max(count, 8)];
+	for (slabCount = 0; slabCount < count; slabCount++)
+	    slabs[slabCount] = newSlab(slabCount);
+    }
+
+    /**
+     * Opens the map stored in the given file, creating an empty one with the
+     * default slab size if the file does not exist.
+     *
+     * @throws IOException
+     *             if the file cannot be read or its header is corrupt
+     */
+    public static MappedLongAVLTreeMap open(Path path) throws IOException {
+	return open(path, DEFAULT_SLAB_NODES);
+    }
+
+    /**
+     * Opens the map stored in the given file, creating an empty one that maps
+     * {@code slabNodes} nodes at a time if the file does not exist. An existing
+     * file keeps the slab size it was created with.
+     *
+     * @param slabNodes
+     *            the number of nodes per slab, a power of two up to 2^25
+     * @throws IllegalArgumentException
+     *             if slabNodes is not a power of two or is too large
+     * @throws IOException
+     *             if the file cannot be read or its header is corrupt
+     */
+    public static MappedLongAVLTreeMap open(Path path, int slabNodes) throws IOException {
+	if (slabNodes <= 0 || slabNodes > MAX_SLAB_NODES || Integer.bitCount(slabNodes) != 1)
+	    throw new IllegalArgumentException("Illegal slab size: " + slabNodes);
+	FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+		StandardOpenOption.WRITE);
+	FileChannel log = null;
+	try {
+	    log = FileChannel.open(logPath(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+		    StandardOpenOption.WRITE);
+	    if (replay(log, null)) {
+		replay(log, file);
+		file.force(true);
+	    }
+	    log.truncate(0);
+	    log.force(true);
+
+	    ByteBuffer header;
+	    if (file.size() == 0) {
+		header = header(slabNodes, 0, NIL, 0, NIL, 0, 0);
+		file.write(header, 0);
+		file.force(true);
+	    } else {
+		header = ByteBuffer.allocate(HEADER_LENGTH);
+		while (header.hasRemaining())
+		    if (file.read(header, header.position()) < 0)
+			throw new IOException(path + " is too short for a header");
+		checkHeader(path, header);
+	    }
+	    return new MappedLongAVLTreeMap(path, file, log, header);
+	} catch (IOException | RuntimeException e) {
+	    file.close();
+	    if (log != null)
+		log.close();
+	    throw e;
+	}
+    }
+
+    static Path logPath(Path path) {
+	return path.resolveSibling(path.getFileName() + ".log");
+    }
+
+    private static ByteBuffer header(int slabNodes, int size, int root, int used, int free, int rotations,
+	    long commits) {
+	ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+	header.putLong(0, MAGIC);
+	header.putInt(8, VERSION);
+	header.putInt(12, ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0);
+	header.putInt(16, slabNodes);
+	header.putInt(20, size);
+	header.putInt(24, root);
+	header.putInt(28, used);
+	header.putInt(32, free);
+	header.putInt(36, rotations);
+	header.putLong(40, commits);
+	header.putLong(HEADER_CHECKED, checksum(header));
+	return header;
+    }
+
+    private static long checksum(ByteBuffer header) {
+	CRC32 crc = new CRC32();
+	crc.update(header.array(), 0, HEADER_CHECKED);
+	return crc.getValue();
+    }
+
+    private static void checkHeader(Path path, ByteBuffer header) throws IOException {
+	if (header.getLong(0) != MAGIC || header.getInt(8) != VERSION)
+	    throw new IOException(path + " is not a tree file");
+	if (header.getLong(HEADER_CHECKED) != checksum(header))
+	    throw new IOException(path + " has a corrupt header");
+	if (header.getInt(12) != (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0))
+	    throw new IOException(path + " was written with a different byte order");
+	int slabNodes = header.getInt(16);
+	if (slabNodes <= 0 || slabNodes > MAX_SLAB_NODES || Integer.bitCount(slabNodes) != 1)
+	    throw new IOException(path + " has an illegal slab size: " + slabNodes);
+    }
+
+    /**
+     * Reads the log through to its trailer, writing each record to the file if
+     * it is not null.
+     *
+     * @return {@code true} if the log is complete and its checksum matches
+     */
+    private static boolean replay(FileChannel log, FileChannel file) throws IOException {
+	if (log.size() == 0)
+	    return false;
+	CheckedInputStream checked = new CheckedInputStream(
+		new BufferedInputStream(Channels.newInputStream(log.position(0))), new CRC32());
+	DataInputStream in = new DataInputStream(checked);
+	try {
+	    byte[] page = new byte[HEADER_BYTES];
+	    for (long position; (position = in.readLong()) != END_OF_LOG;) {
+		int length = in.readInt();
+		if (position < 0 || length < 0 || length > page.length)
+		    return false;
+		in.readFully(page, 0, length);
+		if (file != null) {
+		    ByteBuffer src = ByteBuffer.wrap(page, 0, length);
+		    while (src.hasRemaining())
+			file.write(src, position + src.position());
+		}
+	    }
+	    long crc = checked.getChecksum().getValue();
+	    return in.readLong() == crc;
+	} catch (EOFException e) {
+	    return false;
+	}
+    }
+
+    /**
+     * Maps slab i from the file, growing the file to hold it.
+     */
+    @Override
+    ByteBuffer newSlab(int i) {
+	int slabBytes = (slabMask + 1) << NODE_SHIFT;
+	long position = HEADER_BYTES + (long) i * slabBytes;
+	int words = (int) ((((long) i + 1) << (slabShift - pageShift)) + 63 >>> 6);
+	if (dirty.length < words)
+	    dirty = Arrays.copyOf(dirty, Math.max(words, 2 * dirty.length));
+	try {
+	    if (file.size() < position + slabBytes)
+		file.write(ByteBuffer.allocate(1), position + slabBytes - 1);
+	    return file.map(FileChannel.MapMode.PRIVATE, position, slabBytes).order(ByteOrder.nativeOrder());
+	} catch (IOException e) {
+	    throw new UncheckedIOException(e);
+	}
+    }
+
+    @Override
+    void modified(int n) {
+	int page = n >>> pageShift;
+	dirty[page >>> 6] |= 1L << page;
+    }
+
+    /**
+     * Makes all updates since the last commit durable. If the process or the
+     * machine fails before this returns the file reopens either on the previous
+     * commit or on this one.
+     *
+     * @throws IOException
+     *             if the log or the file cannot be written, the map then holds
+     *             updates that are not committed
+     */
+    public void commit() throws IOException {
+	writeLog();
+	applyLog();
+    }
+
+    /**
+     * Step 1 of a commit, after this returns the commit has happened.
+     */
+    void writeLog() throws IOException {
+	ByteBuffer header = header(slabMask + 1, size, root, used, free, rotations, commits + 1);
+	log.truncate(0);
+	CheckedOutputStream checked = new CheckedOutputStream(
+		new BufferedOutputStream(Channels.newOutputStream(log.position(0)), 1 << 16), new CRC32());
+	DataOutputStream out = new DataOutputStream(checked);
+	byte[] page = new byte[1 << (pageShift + NODE_SHIFT)];
+	for (int p = nextDirty(0); p >= 0; p = nextDirty(p + 1)) {
+	    out.writeLong(pagePosition(p));
+	    out.writeInt(page.length);
+	    out.write(readPage(p, page));
+	}
+	out.writeLong(0);
+	out.writeInt(HEADER_LENGTH);
+	out.write(header.array());
+	out.writeLong(END_OF_LOG);
+	out.writeLong(checked.getChecksum().getValue());
+	out.flush();
+	log.force(true);
+	commits++;
+    }
+
+    /**
+     * Steps 2 and 3 of a commit, copy the pages into the file and retire the log.
+     */
+    void applyLog() throws IOException {
+	byte[] page = new byte[1 << (pageShift + NODE_SHIFT)];
+	for (int p = nextDirty(0); p >= 0; p = nextDirty(p + 1)) {
+	    ByteBuffer src = ByteBuffer.wrap(readPage(p, page));
+	    while (src.hasRemaining())
+		file.write(src, pagePosition(p) + src.position());
+	}
+	ByteBuffer header = header(slabMask + 1, size, root, used, free, rotations, commits);
+	while (header.hasRemaining())
+	    file.write(header, header.position());
+	file.force(true);
+	log.truncate(0);
+	log.force(true);
+	// the file now matches memory, the private copies stay mapped as they are
+	Arrays.fill(dirty, 0);
+    }
+
+    private long pagePosition(int page) {
+	return HEADER_BYTES + ((long) page << (pageShift + NODE_SHIFT));
+    }
+
+    private byte[] readPage(int page, byte[] bytes) {
+	int node = page << pageShift;
+	ByteBuffer src = slabs[node >>> slabShift].duplicate();
+	src.position((node & slabMask) << NODE_SHIFT);
+	src.get(bytes);
+	return bytes;
+    }
+
+    /**
+     * Returns the first dirty page at or after from, or -1.
+     */
+    private int nextDirty(int from) {
+	int i = from >>> 6;
+	if (i >= dirty.length)
+	    return -1;
+	long word = dirty[i] & (-1L << from);
+	while (word == 0) {
+	    if (++i == dirty.length)
+		return -1;
+	    word = dirty[i];
+	}
+	return (i << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Returns the number of commits made to the file since it was created.
+     */
+    public long commits() {
+	return commits;
+    }
+
+    /**
+     * Removes all of the mappings from this map, the file keeps its committed
+     * contents until the next commit.
+     */
+    public void clear() {
+	super.clear();
+	Arrays.fill(dirty, 0);
+    }
+
+    public String toString() {
+	return "Mapped AVL tree (long keys) " + path + " of size: " + size + ", height: " + treeHeight()
+		+ ", rotations " + rotations;
+    }
+
+    /**
+     * Closes the file and its log. Updates since the last commit are lost.
+     */
+    public void close() throws IOException {
+	try {
+	    file.close();
+	} finally {
+	    log.close();
+	}
+    }
+}
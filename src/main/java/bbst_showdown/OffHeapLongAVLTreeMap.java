@@ -0,0 +1,827 @@
+package bbst_showdown;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An AVL tree from primitive {@code long} keys to {@code long} values whose
+ * nodes live outside the Java heap.
+ *
+ * <p>
+ * A node is an int index into an arena of direct {@link ByteBuffer} slabs, each
+ * holding a fixed power of two number of 32 byte nodes:
+ *
+ * <pre>
+ *  0  long key
+ *  8  long value
+ * 16  int  left
+ * 20  int  right
+ * 24  int  parent
+ * 28  byte balance, Height(RightSubtree(N)) - Height(LeftSubtree(N))
+ * </pre>
+ *
+ * The arena grows by one slab at a time and existing slabs never move, so
+ * growing costs no copying. Nodes freed by {@link #remove(long)} are chained
+ * through their left link and handed out again before a new slab is added.
+ * Whatever the size of the map the collector sees this object, the slab array
+ * and one {@code ByteBuffer} per slab - a few thousand objects for 200M
+ * entries with the default slab size - and never has to trace or copy a node.
+ * <p>
+ * Insert and delete re-tracing follow {@link AVLTreeMap} rule for rule, a tree
+ * built from the same sequence of operations has the same shape and the same
+ * rotation count.
+ * <p>
+ * The {@link Map} methods taking {@link Long} keys and values are supported for
+ * compatibility and box on every call, entries handed out by the entry set
+ * iterator are snapshots. Off-heap memory is returned when the map and its
+ * slabs are garbage collected, {@link #clear()} drops the slabs.
+ */
+public class OffHeapLongAVLTreeMap extends AbstractMap<Long, Long> {
+
+    /**
+     * Index standing in for a null link.
+     */
+    static final int NIL = -1;
+
+    /*
+     * Byte offsets of the fields within a node.
+     */
+    static final int KEY = 0;
+    static final int VALUE = 8;
+    static final int LEFT = 16;
+    static final int RIGHT = 20;
+    static final int PARENT = 24;
+    static final int BALANCE = 28;
+
+    static final int NODE_SHIFT = 5;
+
+    static final int NODE_BYTES = 1 << NODE_SHIFT;
+
+    /**
+     * 64k nodes, a 2MB slab.
+     */
+    static final int DEFAULT_SLAB_NODES = 1 << 16;
+
+    /**
+     * 32M nodes, the largest slab a ByteBuffer can address.
+     */
+    static final int MAX_SLAB_NODES = 1 << 25;
+
+    protected transient int root = NIL;
+
+    /**
+     * The number of entries in the tree
+     */
+    protected transient int size = 0;
+
+    /**
+     * The number of structural modifications to the tree.
+     */
+    protected transient int modCount = 0;
+
+    protected transient int rotations = 0;
+
+    /**
+     * Node storage, slab i holds nodes i << slabShift up to but not including
+     * (i + 1) << slabShift.
+     */
+    transient ByteBuffer[] slabs = new ByteBuffer[8];
+
+    transient int slabCount = 0;
+
+    final int slabShift;
+
+    final int slabMask;
+
+    /**
+     * Number of nodes handed out so far, nodes at and above this index have never
+     * been used.
+     */
+    transient int used = 0;
+
+    /**
+     * Head of the list of freed nodes, linked through their left links.
+     */
+    transient int free = NIL;
+
+    /**
+     * Constructs a new, empty tree map ordered by long value.
+     */
+    public OffHeapLongAVLTreeMap() {
+	this(DEFAULT_SLAB_NODES);
+    }
+
+    /**
+     * Constructs a new, empty tree map that allocates off-heap memory
+     * {@code slabNodes} nodes at a time.
+     *
+     * @param slabNodes
+     *            the number of nodes per slab, a power of two up to 2^25
+     * @throws IllegalArgumentException
+     *             if slabNodes is not a power of two or is too large
+     */
+    public OffHeapLongAVLTreeMap(int slabNodes) {
+	if (slabNodes <= 0 || slabNodes > MAX_SLAB_NODES || Integer.bitCount(slabNodes) != 1)
+	    throw new IllegalArgumentException("Illegal slab size: " + slabNodes);
+	slabShift = Integer.numberOfTrailingZeros(slabNodes);
+	slabMask = slabNodes - 1;
+    }
+
+    /**
+     * Constructs a new tree map containing the same mappings as the given map.
+     *
+     * @param m
+     *            the map whose mappings are to be placed in this map
+     * @throws NullPointerException
+     *             if the specified map is null or contains a null key or value
+     */
+    public OffHeapLongAVLTreeMap(Map<? extends Long, ? extends Long> m) {
+	this(DEFAULT_SLAB_NODES);
+	putAll(m);
+    }
+
+    /*
+     * Node field access, absolute and in native byte order.
+     */
+
+    final long key(int n) {
+	return slabs[n >>> slabShift].getLong(((n & slabMask) << NODE_SHIFT) + KEY);
+    }
+
+    final long value(int n) {
+	return slabs[n >>> slabShift].getLong(((n & slabMask) << NODE_SHIFT) + VALUE);
+    }
+
+    final int left(int n) {
+	return slabs[n >>> slabShift].getInt(((n & slabMask) << NODE_SHIFT) + LEFT);
+    }
+
+    final int right(int n) {
+	return slabs[n >>> slabShift].getInt(((n & slabMask) << NODE_SHIFT) + RIGHT);
+    }
+
+    final int parent(int n) {
+	return slabs[n >>> slabShift].getInt(((n & slabMask) << NODE_SHIFT) + PARENT);
+    }
+
+    final byte balance(int n) {
+	return slabs[n >>> slabShift].get(((n & slabMask) << NODE_SHIFT) + BALANCE);
+    }
+
+    private void setKey(int n, long key) {
+	modified(n);
+	slabs[n >>> slabShift].putLong(((n & slabMask) << NODE_SHIFT) + KEY, key);
+    }
+
+    private void setValue(int n, long value) {
+	modified(n);
+	slabs[n >>> slabShift].putLong(((n & slabMask) << NODE_SHIFT) + VALUE, value);
+    }
+
+    private void setLeft(int n, int left) {
+	modified(n);
+	slabs[n >>> slabShift].putInt(((n & slabMask) << NODE_SHIFT) + LEFT, left);
+    }
+
+    private void setRight(int n, int right) {
+	modified(n);
+	slabs[n >>> slabShift].putInt(((n & slabMask) << NODE_SHIFT) + RIGHT, right);
+    }
+
+    private void setParent(int n, int parent) {
+	modified(n);
+	slabs[n >>> slabShift].putInt(((n & slabMask) << NODE_SHIFT) + PARENT, parent);
+    }
+
+    private void setBalance(int n, int balance) {
+	modified(n);
+	slabs[n >>> slabShift].put(((n & slabMask) << NODE_SHIFT) + BALANCE, (byte) balance);
+    }
+
+    private void addSlab() {
+	if (used == Integer.MAX_VALUE)
+	    throw new OutOfMemoryError("OffHeapLongAVLTreeMap is full");
+	if (slabCount == slabs.length)
+	    slabs = Arrays.copyOf(slabs, slabs.length * 2);
+	slabs[slabCount] = newSlab(slabCount);
+	slabCount++;
+    }
+
+    /**
+     * Allocates the storage for slab i, a direct buffer in native byte order.
+     */
+    ByteBuffer newSlab(int i) {
+	return ByteBuffer.allocateDirect((slabMask + 1) << NODE_SHIFT).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Called before any field of node n is written.
+     */
+    void modified(int n) {
+    }
+
+    /**
+     * Takes a node from the free list, or the next never used node, and
+     * initialises it as a leaf.
+     */
+    private int newNode(long key, long value, int parent) {
+	int n = free;
+	if (n != NIL) {
+	    free = left(n);
+	} else {
+	    if ((used >>> slabShift) == slabCount)
+		addSlab();
+	    n = used++;
+	}
+	setKey(n, key);
+	setValue(n, value);
+	setLeft(n, NIL);
+	setRight(n, NIL);
+	setParent(n, parent);
+	setBalance(n, 0);
+	return n;
+    }
+
+    /**
+     * Pushes a node on the free list.
+     */
+    private void release(int n) {
+	setParent(n, NIL);
+	setRight(n, NIL);
+	setLeft(n, free);
+	free = n;
+    }
+
+    /**
+     * Returns the number of bytes of off-heap memory held by the slabs.
+     */
+    public long offHeapBytes() {
+	return (long) slabCount * (slabMask + 1) * NODE_BYTES;
+    }
+
+    public int treeHeight() {
+	return treeHeight(root) - 1;
+    }
+
+    protected int treeHeight(int node) {
+	if (node == NIL)
+	    return 0;
+	return (1 + Math.max(treeHeight(left(node)), treeHeight(right(node))));
+    }
+
+    public int rotations() {
+	return rotations;
+    }
+
+    public String toString() {
+	return "Off-heap AVL tree (long keys) of size: " + size + ", height: " + treeHeight() + ", rotations "
+		+ rotations;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code defaultValue} if this map contains no mapping for the key.
+     */
+    public long get(long key, long defaultValue) {
+	int p = getNode(key);
+	return (p == NIL ? defaultValue : value(p));
+    }
+
+    /**
+     * @throws NullPointerException
+     *             if the specified key is null
+     * @throws ClassCastException
+     *             if the specified key is not a {@link Long}
+     */
+    public Long get(Object key) {
+	int p = getNode(((Long) key).longValue());
+	return (p == NIL ? null : value(p));
+    }
+
+    /**
+     * Returns {@code true} if this map contains a mapping for the specified key.
+     */
+    public boolean containsKey(long key) {
+	return getNode(key) != NIL;
+    }
+
+    /**
+     * @throws NullPointerException
+     *             if the specified key is null
+     * @throws ClassCastException
+     *             if the specified key is not a {@link Long}
+     */
+    public boolean containsKey(Object key) {
+	return getNode(((Long) key).longValue()) != NIL;
+    }
+
+    /**
+     * Returns this map's node for the given key, or {@code NIL} if the map does
+     * not contain an entry for the key.
+     */
+    final int getNode(long key) {
+	int p = root;
+	while (p != NIL) {
+	    long k = key(p);
+	    if (key < k)
+		p = left(p);
+	    else if (key > k)
+		p = right(p);
+	    else
+		return p;
+	}
+	return NIL;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map. If the
+     * map previously contained a mapping for the key, the old value is replaced.
+     *
+     * @return {@code true} if there was no mapping for {@code key}
+     */
+    public boolean put(long key, long value) {
+	int t = root;
+	if (t == NIL) {
+	    root = newNode(key, value, NIL);
+	    size = 1;
+	    modCount++;
+	    return true;
+	}
+	int parent;
+	long k;
+	do {
+	    parent = t;
+	    k = key(t);
+	    if (key < k)
+		t = left(t);
+	    else if (key > k)
+		t = right(t);
+	    else {
+		setValue(t, value);
+		return false;
+	    }
+	} while (t != NIL);
+
+	int e = newNode(key, value, parent);
+	if (key < k) {
+	    setLeft(parent, e);
+	    setBalance(parent, balance(parent) - 1);
+	} else {
+	    setRight(parent, e);
+	    setBalance(parent, balance(parent) + 1);
+	}
+	fixAfterInsertion(parent);
+
+	size++;
+	modCount++;
+	return true;
+    }
+
+    /**
+     * @throws NullPointerException
+     *             if the specified key or value is null
+     */
+    public Long put(Long key, Long value) {
+	long v = value.longValue();
+	int p = getNode(key.longValue());
+	if (p != NIL) {
+	    long oldValue = value(p);
+	    setValue(p, v);
+	    return oldValue;
+	}
+	put(key.longValue(), v);
+	return null;
+    }
+
+    private void fixAfterInsertion(int x) {
+	int b;
+	while ((b = balance(x)) != 0) {
+	    if (b == 2) { // right heavy by 2?
+		int r = right(x);
+		if (balance(r) == 1) {
+		    setBalance(x, 0);
+		    setBalance(r, 0);
+		    rotateLeft(x);
+		} else { // x.right.balance = -1
+		    int rl = left(r);
+		    int rlBalance = balance(rl);
+		    setBalance(rl, 0);
+		    setBalance(r, rlBalance == -1 ? 1 : 0);
+		    setBalance(x, rlBalance == 1 ? -1 : 0);
+		    rotateRight(r);
+		    rotateLeft(x);
+		}
+		break;
+	    } else if (b == -2) {
+		int l = left(x);
+		if (balance(l) == -1) {
+		    setBalance(x, 0);
+		    setBalance(l, 0);
+		    rotateRight(x);
+		} else { // x.left.balance = 1
+		    int lr = right(l);
+		    int lrBalance = balance(lr);
+		    setBalance(lr, 0);
+		    setBalance(l, lrBalance == 1 ? -1 : 0);
+		    setBalance(x, lrBalance == -1 ? 1 : 0);
+		    rotateLeft(l);
+		    rotateRight(x);
+		}
+		break;
+	    }
+
+	    int p = parent(x);
+	    if (p == NIL)
+		break;
+	    if (left(p) == x)
+		setBalance(p, balance(p) - 1);
+	    else
+		setBalance(p, balance(p) + 1);
+
+	    x = p;
+	}
+    }
+
+    /** From CLR */
+    private void rotateLeft(int p) {
+	int r = right(p);
+	int rl = left(r);
+	setRight(p, rl);
+	if (rl != NIL)
+	    setParent(rl, p);
+	int pp = parent(p);
+	setParent(r, pp);
+	if (pp == NIL)
+	    root = r;
+	else if (left(pp) == p)
+	    setLeft(pp, r);
+	else
+	    setRight(pp, r);
+	setLeft(r, p);
+	setParent(p, r);
+	rotations++;
+    }
+
+    /** From CLR */
+    private void rotateRight(int p) {
+	int l = left(p);
+	int lr = right(l);
+	setLeft(p, lr);
+	if (lr != NIL)
+	    setParent(lr, p);
+	int pp = parent(p);
+	setParent(l, pp);
+	if (pp == NIL)
+	    root = l;
+	else if (right(pp) == p)
+	    setRight(pp, l);
+	else
+	    setLeft(pp, l);
+	setRight(l, p);
+	setParent(p, l);
+	rotations++;
+    }
+
+    /**
+     * Removes the mapping for this key from this map if present.
+     *
+     * @return {@code true} if there was a mapping for {@code key}
+     */
+    public boolean remove(long key) {
+	int p = getNode(key);
+	if (p == NIL)
+	    return false;
+	deleteNode(p);
+	return true;
+    }
+
+    /**
+     * @throws NullPointerException
+     *             if the specified key is null
+     * @throws ClassCastException
+     *             if the specified key is not a {@link Long}
+     */
+    public Long remove(Object key) {
+	int p = getNode(((Long) key).longValue());
+	if (p == NIL)
+	    return null;
+	long oldValue = value(p);
+	deleteNode(p);
+	return oldValue;
+    }
+
+    private void deleteNode(int p) {
+	modCount++;
+	size--;
+
+	// If strictly internal, copy successor's element to p and then make p point to
+	// successor.
+	if (left(p) != NIL && right(p) != NIL) {
+	    int s = successor(p);
+	    setKey(p, key(s));
+	    setValue(p, value(s));
+	    p = s;
+	} // p has 2 children
+
+	// Start fixup at replacement node, if it exists.
+	int replacement = (left(p) != NIL ? left(p) : right(p));
+	int parent = parent(p);
+
+	if (replacement != NIL) {
+	    // Link replacement to parent
+	    setParent(replacement, parent);
+	    release(p);
+	    if (parent == NIL) {
+		root = replacement;
+		return;
+	    } else if (p == left(parent)) {
+		setLeft(parent, replacement);
+		setBalance(parent, balance(parent) + 1);
+		if (balance(parent) == 1)
+		    return;
+	    } else {
+		setRight(parent, replacement);
+		setBalance(parent, balance(parent) - 1);
+		if (balance(parent) == -1)
+		    return;
+	    }
+	    fixAfterDeletion(parent);
+	} else if (parent == NIL) { // return if we are the only node.
+	    release(p);
+	    root = NIL;
+	} else { // No children.
+	    release(p);
+	    if (p == left(parent)) {
+		setLeft(parent, NIL);
+		setBalance(parent, balance(parent) + 1);
+		if (balance(parent) == 1)
+		    return;
+	    } else {
+		setRight(parent, NIL);
+		setBalance(parent, balance(parent) - 1);
+		if (balance(parent) == -1)
+		    return;
+	    }
+	    fixAfterDeletion(parent);
+	}
+    }
+
+    private void fixAfterDeletion(int x) {
+	while (true) {
+	    int b = balance(x);
+	    if (b == 2) { // right heavy by 2?
+		int r = right(x);
+		int rBalance = balance(r);
+		if (rBalance == 1) {
+		    setBalance(x, 0);
+		    setBalance(r, 0);
+		    rotateLeft(x);
+		} else if (rBalance == 0) {
+		    setBalance(x, 1);
+		    setBalance(r, -1);
+		    rotateLeft(x);
+		    break;
+		} else { // x.right.balance = -1
+		    int rl = left(r);
+		    int rlBalance = balance(rl);
+		    setBalance(rl, 0);
+		    setBalance(r, rlBalance == -1 ? 1 : 0);
+		    setBalance(x, rlBalance == 1 ? -1 : 0);
+		    rotateRight(r);
+		    rotateLeft(x);
+		}
+		x = parent(x);
+	    } else if (b == -2) {
+		int l = left(x);
+		int lBalance = balance(l);
+		if (lBalance == -1) {
+		    setBalance(x, 0);
+		    setBalance(l, 0);
+		    rotateRight(x);
+		} else if (lBalance == 0) {
+		    setBalance(x, -1);
+		    setBalance(l, 1);
+		    rotateRight(x);
+		    break;
+		} else { // (x.left.balance == 1)
+		    int lr = right(l);
+		    int lrBalance = balance(lr);
+		    setBalance(lr, 0);
+		    setBalance(l, lrBalance == 1 ? -1 : 0);
+		    setBalance(x, lrBalance == -1 ? 1 : 0);
+		    rotateLeft(l);
+		    rotateRight(x);
+		}
+		x = parent(x);
+	    }
+
+	    int p = parent(x);
+	    if (p == NIL)
+		break;
+	    if (left(p) == x) {
+		setBalance(p, balance(p) + 1);
+		if (balance(p) == 1)
+		    break;
+	    } else {
+		setBalance(p, balance(p) - 1);
+		if (balance(p) == -1)
+		    break;
+	    }
+
+	    x = p;
+	}
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map, in
+     * ascending key order. The set supports element removal but not {@code add} or
+     * {@code addAll}.
+     */
+    public Set<Map.Entry<Long, Long>> entrySet() {
+	EntrySet es = entrySet;
+	return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    private transient EntrySet entrySet = null;
+
+    class EntrySet extends AbstractSet<Map.Entry<Long, Long>> {
+	public Iterator<Map.Entry<Long, Long>> iterator() {
+	    return new EntryIterator(getFirstNode());
+	}
+
+	public boolean contains(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    if (!(entry.getKey() instanceof Long) || !(entry.getValue() instanceof Long))
+		return false;
+	    int p = getNode((Long) entry.getKey());
+	    return p != NIL && value(p) == (Long) entry.getValue();
+	}
+
+	public boolean remove(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    if (!(entry.getKey() instanceof Long) || !(entry.getValue() instanceof Long))
+		return false;
+	    int p = getNode((Long) entry.getKey());
+	    if (p != NIL && value(p) == (Long) entry.getValue()) {
+		deleteNode(p);
+		return true;
+	    }
+	    return false;
+	}
+
+	public int size() {
+	    return OffHeapLongAVLTreeMap.this.size();
+	}
+
+	public void clear() {
+	    OffHeapLongAVLTreeMap.this.clear();
+	}
+    }
+
+    final class EntryIterator implements Iterator<Map.Entry<Long, Long>> {
+	int next;
+	int lastReturned;
+	int expectedModCount;
+
+	EntryIterator(int first) {
+	    expectedModCount = modCount;
+	    lastReturned = NIL;
+	    next = first;
+	}
+
+	public boolean hasNext() {
+	    return next != NIL;
+	}
+
+	public Map.Entry<Long, Long> next() {
+	    int e = next;
+	    if (e == NIL)
+		throw new NoSuchElementException();
+	    if (modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    next = successor(e);
+	    lastReturned = e;
+	    return new AbstractMap.SimpleImmutableEntry<>(key(e), value(e));
+	}
+
+	public void remove() {
+	    if (lastReturned == NIL)
+		throw new IllegalStateException();
+	    if (modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    // deleted entries are replaced by their successors
+	    if (left(lastReturned) != NIL && right(lastReturned) != NIL)
+		next = lastReturned;
+	    deleteNode(lastReturned);
+	    expectedModCount = modCount;
+	    lastReturned = NIL;
+	}
+    }
+
+    /**
+     * Removes all of the mappings from this map and lets go of the slabs. The map
+     * will be empty after this call returns.
+     */
+    public void clear() {
+	modCount++;
+	size = 0;
+	root = NIL;
+	rotations = 0;
+	slabs = new ByteBuffer[8];
+	slabCount = 0;
+	used = 0;
+	free = NIL;
+    }
+
+    /**
+     * Returns the first node in the tree (lowest key), or NIL if the tree is
+     * empty.
+     */
+    final int getFirstNode() {
+	int p = root;
+	if (p != NIL)
+	    for (int l; (l = left(p)) != NIL;)
+		p = l;
+	return p;
+    }
+
+    /**
+     * Returns the last node in the tree (highest key), or NIL if the tree is
+     * empty.
+     */
+    final int getLastNode() {
+	int p = root;
+	if (p != NIL)
+	    for (int r; (r = right(p)) != NIL;)
+		p = r;
+	return p;
+    }
+
+    /**
+     * Returns the successor of the specified node, or NIL if no such.
+     */
+    final int successor(int t) {
+	int r = right(t);
+	if (r != NIL) {
+	    int p = r;
+	    for (int l; (l = left(p)) != NIL;)
+		p = l;
+	    return p;
+	} else {
+	    int p = parent(t);
+	    int ch = t;
+	    while (p != NIL && ch == right(p)) {
+		ch = p;
+		p = parent(p);
+	    }
+	    return p;
+	}
+    }
+
+    /**
+     * Returns the lowest key currently in this map.
+     *
+     * @throws NoSuchElementException
+     *             if this map is empty
+     */
+    public long firstKey() {
+	int p = getFirstNode();
+	if (p == NIL)
+	    throw new NoSuchElementException();
+	return key(p);
+    }
+
+    /**
+     * Returns the highest key currently in this map.
+     *
+     * @throws NoSuchElementException
+     *             if this map is empty
+     */
+    public long lastKey() {
+	int p = getLastNode();
+	if (p == NIL)
+	    throw new NoSuchElementException();
+	return key(p);
+    }
+}
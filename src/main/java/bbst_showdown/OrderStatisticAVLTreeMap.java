@@ -0,0 +1,828 @@
+package bbst_showdown;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An AVL tree that also answers order-statistic queries.
+ * 
+ * <p>
+ * Balancing is identical to {@link AVLTreeMap}. In addition every node records
+ * the number of entries in its subtree, which lets {@link #select(int)},
+ * {@link #rank(Object)} and {@link #countInRange(Object, Object)} run in log(n)
+ * time instead of iterating over the map.
+ * <p>
+ * The counts cost an extra int per node and an extra walk from the inserted (or
+ * unlinked) node to the root on every {@code put} that adds a key and every
+ * {@code remove}. Rotations recompute the two counts they disturb in constant
+ * time.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ */
+public class OrderStatisticAVLTreeMap<K, V> extends AbstractMap<K, V> {
+
+    protected transient Entry<K, V> root = null;
+
+    /**
+     * The number of entries in the tree
+     */
+    protected transient int size = 0;
+
+    /**
+     * The comparator used to maintain order in this tree map, or null if it uses
+     * the natural ordering of its keys.
+     */
+    protected final Comparator<? super K> comparator;
+
+    /**
+     * The number of structural modifications to the tree.
+     */
+    protected transient int modCount = 0;
+
+    protected transient int rotations = 0;
+
+    /**
+     * Constructs a new, empty tree map, using the natural ordering of its keys.
+     */
+    public OrderStatisticAVLTreeMap() {
+	comparator = null;
+    }
+
+    /**
+     * Constructs a new, empty tree map, ordered according to the given comparator.
+     *
+     * @param comparator
+     *            the comparator that will be used to order this map. If
+     *            {@code null}, the natural ordering of the keys will be used.
+     */
+    public OrderStatisticAVLTreeMap(Comparator<? super K> comparator) {
+	this.comparator = comparator;
+    }
+
+    /**
+     * Constructs a new tree map containing the same mappings as the given map,
+     * ordered according to the natural ordering of its keys.
+     *
+     * @param m
+     *            the map whose mappings are to be placed in this map
+     * @throws ClassCastException
+     *             if the keys in m are not {@link Comparable}, or are not mutually
+     *             comparable
+     * @throws NullPointerException
+     *             if the specified map is null
+     */
+    public OrderStatisticAVLTreeMap(Map<? extends K, ? extends V> m) {
+	comparator = null;
+	putAll(m);
+    }
+
+    public int treeHeight() {
+	return treeHeight(root) - 1;
+    }
+
+    protected int treeHeight(Entry<K, V> node) {
+	if (node == null)
+	    return 0;
+	return (1 + Math.max(treeHeight(node.left), treeHeight(node.right)));
+    }
+
+    public int rotations() {
+	return rotations;
+    }
+
+    public String toString() {
+	return "Order statistic AVL tree of size: " + size + ", height: " + treeHeight() + ", rotations "
+		+ rotations;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * Returns {@code true} if this map contains a mapping for the specified key.
+     *
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys currently
+     *             in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public boolean containsKey(Object key) {
+	return getEntry(key) != null;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or {@code null} if
+     * this map contains no mapping for the key.
+     *
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys currently
+     *             in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public V get(Object key) {
+	Entry<K, V> p = getEntry(key);
+	return (p == null ? null : p.value);
+    }
+
+    /**
+     * Node in the Tree. Doubles as a means to pass key-value pairs back to user
+     * (see Map.Entry).
+     */
+    public static final class Entry<K, V> implements Map.Entry<K, V> {
+	K key;
+	V value;
+	Entry<K, V> left = null;
+	Entry<K, V> right = null;
+	Entry<K, V> parent = null;
+	int size = 1; // number of entries in the subtree rooted here
+	byte balance = 0; // Height(RightSubtree(N)) - Height(LeftSubtree(N))
+
+	Entry(K key, V value, Entry<K, V> parent) {
+	    this.key = key;
+	    this.value = value;
+	    this.parent = parent;
+	}
+
+	/**
+	 * Returns the key.
+	 *
+	 * @return the key
+	 */
+	public K getKey() {
+	    return key;
+	}
+
+	/**
+	 * Returns the value associated with the key.
+	 *
+	 * @return the value associated with the key
+	 */
+	public V getValue() {
+	    return value;
+	}
+
+	/**
+	 * Replaces the value currently associated with the key with the given value.
+	 *
+	 * @return the value associated with the key before this method was called
+	 */
+	public V setValue(V value) {
+	    V oldValue = this.value;
+	    this.value = value;
+	    return oldValue;
+	}
+
+	public boolean equals(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+
+	    return valEquals(key, e.getKey()) && valEquals(value, e.getValue());
+	}
+
+	public int hashCode() {
+	    int keyHash = (key == null ? 0 : key.hashCode());
+	    int valueHash = (value == null ? 0 : value.hashCode());
+	    return keyHash ^ valueHash;
+	}
+
+	public String toString() {
+	    return key + "=" + value;
+	}
+    }
+
+    private static int sizeOf(Entry<?, ?> p) {
+	return p == null ? 0 : p.size;
+    }
+
+    /**
+     * Compares two keys using the correct comparison method for this map.
+     */
+    @SuppressWarnings("unchecked")
+    final int compare(Object k1, Object k2) {
+	return comparator == null ? ((Comparable<? super K>) k1).compareTo((K) k2)
+		: comparator.compare((K) k1, (K) k2);
+    }
+
+    /**
+     * Returns this map's entry for the given key, or {@code null} if the map does
+     * not contain an entry for the key.
+     */
+    final Entry<K, V> getEntry(Object key) {
+	if (key == null && comparator == null)
+	    throw new NullPointerException();
+	Entry<K, V> p = root;
+	while (p != null) {
+	    int cmp = compare(key, p.key);
+	    if (cmp < 0)
+		p = p.left;
+	    else if (cmp > 0)
+		p = p.right;
+	    else
+		return p;
+	}
+	return null;
+    }
+
+    /**
+     * Returns the entry holding the {@code index}-th smallest key, counting from
+     * zero. The returned entry is the tree's own node and is only valid until the
+     * next structural modification of the map.
+     *
+     * @param index
+     *            the zero-based position of the entry in key order
+     * @return the entry at that position
+     * @throws IndexOutOfBoundsException
+     *             if {@code index < 0 || index >= size()}
+     */
+    public Entry<K, V> selectEntry(int index) {
+	if (index < 0 || index >= size)
+	    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+	Entry<K, V> p = root;
+	while (true) {
+	    int leftSize = sizeOf(p.left);
+	    if (index < leftSize) {
+		p = p.left;
+	    } else if (index > leftSize) {
+		index -= leftSize + 1;
+		p = p.right;
+	    } else {
+		return p;
+	    }
+	}
+    }
+
+    /**
+     * Returns the {@code index}-th smallest key, counting from zero. For example
+     * {@code select(size() / 2)} is the upper median.
+     *
+     * @param index
+     *            the zero-based position of the key in key order
+     * @return the key at that position
+     * @throws IndexOutOfBoundsException
+     *             if {@code index < 0 || index >= size()}
+     */
+    public K select(int index) {
+	return selectEntry(index).key;
+    }
+
+    /**
+     * Returns the number of keys in this map strictly less than the given key.
+     * The key need not be present; when it is, this is its zero-based position
+     * and {@code select(rank(key))} returns it.
+     *
+     * @param key
+     *            the key to rank
+     * @return the number of keys less than {@code key}
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys currently
+     *             in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public int rank(Object key) {
+	return countBelow(key, false);
+    }
+
+    /**
+     * Returns the number of keys in the range {@code [fromKey, toKey)}, the size
+     * {@link java.util.NavigableMap#subMap(Object, Object)} would report.
+     *
+     * @throws IllegalArgumentException
+     *             if {@code fromKey} is greater than {@code toKey}
+     * @throws ClassCastException
+     *             if either key cannot be compared with the keys currently in the
+     *             map
+     * @throws NullPointerException
+     *             if either key is null and this map uses natural ordering, or its
+     *             comparator does not permit null keys
+     */
+    public int countInRange(K fromKey, K toKey) {
+	return countInRange(fromKey, true, toKey, false);
+    }
+
+    /**
+     * Returns the number of keys between {@code fromKey} and {@code toKey}, each
+     * end included or not as requested.
+     *
+     * @throws IllegalArgumentException
+     *             if {@code fromKey} is greater than {@code toKey}
+     * @throws ClassCastException
+     *             if either key cannot be compared with the keys currently in the
+     *             map
+     * @throws NullPointerException
+     *             if either key is null and this map uses natural ordering, or its
+     *             comparator does not permit null keys
+     */
+    public int countInRange(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+	if (compare(fromKey, toKey) > 0)
+	    throw new IllegalArgumentException("fromKey > toKey");
+	int count = countBelow(toKey, toInclusive) - countBelow(fromKey, !fromInclusive);
+	return count < 0 ? 0 : count;
+    }
+
+    /**
+     * Returns the number of keys less than {@code key}, or less than or equal to
+     * it when {@code inclusive}.
+     */
+    private int countBelow(Object key, boolean inclusive) {
+	if (key == null && comparator == null)
+	    throw new NullPointerException();
+	int count = 0;
+	Entry<K, V> p = root;
+	while (p != null) {
+	    int cmp = compare(key, p.key);
+	    if (cmp < 0) {
+		p = p.left;
+	    } else if (cmp > 0) {
+		count += sizeOf(p.left) + 1;
+		p = p.right;
+	    } else {
+		return count + sizeOf(p.left) + (inclusive ? 1 : 0);
+	    }
+	}
+	return count;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map. If the map
+     * previously contained a mapping for the key, the old value is replaced.
+     *
+     * @return the previous value associated with {@code key}, or {@code null} if
+     *         there was no mapping for {@code key}.
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys currently
+     *             in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public V put(K key, V value) {
+	Entry<K, V> t = root;
+	if (t == null) {
+	    compare(key, key); // type (and possibly null) check
+
+	    root = new Entry<>(key, value, null);
+	    size = 1;
+	    modCount++;
+	    return null;
+	}
+	int cmp;
+	Entry<K, V> parent;
+	// split comparator and comparable paths
+	Comparator<? super K> cpr = comparator;
+	if (cpr != null) {
+	    do {
+		parent = t;
+		cmp = cpr.compare(key, t.key);
+		if (cmp < 0)
+		    t = t.left;
+		else if (cmp > 0)
+		    t = t.right;
+		else
+		    return t.setValue(value);
+	    } while (t != null);
+	} else {
+	    if (key == null)
+		throw new NullPointerException();
+	    @SuppressWarnings("unchecked")
+	    Comparable<? super K> k = (Comparable<? super K>) key;
+	    do {
+		parent = t;
+		cmp = k.compareTo(t.key);
+		if (cmp < 0)
+		    t = t.left;
+		else if (cmp > 0)
+		    t = t.right;
+		else
+		    return t.setValue(value);
+	    } while (t != null);
+	}
+
+	Entry<K, V> e = new Entry<>(key, value, parent);
+	if (cmp < 0) {
+	    parent.left = e;
+	    parent.balance--;
+	} else {
+	    parent.right = e;
+	    parent.balance++;
+	}
+	// the key was new, so count it on the whole path before any rotation
+	for (Entry<K, V> p = parent; p != null; p = p.parent)
+	    p.size++;
+	fixAfterInsertion(parent);
+
+	size++;
+	modCount++;
+	return null;
+    }
+
+    private void fixAfterInsertion(Entry<K, V> x) {
+	while (x.balance != 0) {
+	    if (x.balance == 2) { // right heavy by 2?
+		if (x.right.balance == 1) {
+		    x.balance = 0;
+		    x.right.balance = 0;
+		    rotateLeft(x);
+		} else { // x.right.balance = -1
+		    int rlBalance = x.right.left.balance;
+		    x.right.left.balance = 0;
+		    x.right.balance = 0;
+		    x.balance = 0;
+		    if (rlBalance == 1)
+			x.balance = -1;
+		    else if (rlBalance == -1)
+			x.right.balance = 1;
+
+		    rotateRight(x.right);
+		    rotateLeft(x);
+		}
+		break;
+	    } else if (x.balance == -2) {
+		if (x.left.balance == -1) {
+		    x.balance = 0;
+		    x.left.balance = 0;
+		    rotateRight(x);
+		} else { // x.left.balance = 1
+		    int lrBalance = x.left.right.balance;
+		    x.left.right.balance = 0;
+		    x.left.balance = 0;
+		    x.balance = 0;
+		    if (lrBalance == 1)
+			x.left.balance = -1;
+		    else if (lrBalance == -1)
+			x.balance = 1;
+
+		    rotateLeft(x.left);
+		    rotateRight(x);
+		}
+		break;
+	    }
+
+	    if (x.parent == null)
+		break;
+	    if (x.parent.left == x)
+		x.parent.balance--;
+	    else
+		x.parent.balance++;
+
+	    x = x.parent;
+	}
+    }
+
+    /** From CLR, plus the subtree counts of the two nodes that move */
+    private void rotateLeft(Entry<K, V> p) {
+	Entry<K, V> r = p.right;
+	p.right = r.left;
+	if (r.left != null)
+	    r.left.parent = p;
+	r.parent = p.parent;
+	if (p.parent == null)
+	    root = r;
+	else if (p.parent.left == p)
+	    p.parent.left = r;
+	else
+	    p.parent.right = r;
+	r.left = p;
+	p.parent = r;
+	r.size = p.size;
+	p.size = sizeOf(p.left) + sizeOf(p.right) + 1;
+	rotations++;
+    }
+
+    /** From CLR, plus the subtree counts of the two nodes that move */
+    private void rotateRight(Entry<K, V> p) {
+	Entry<K, V> l = p.left;
+	p.left = l.right;
+	if (l.right != null)
+	    l.right.parent = p;
+	l.parent = p.parent;
+	if (p.parent == null)
+	    root = l;
+	else if (p.parent.right == p)
+	    p.parent.right = l;
+	else
+	    p.parent.left = l;
+	l.right = p;
+	p.parent = l;
+	l.size = p.size;
+	p.size = sizeOf(p.left) + sizeOf(p.right) + 1;
+	rotations++;
+    }
+
+    /**
+     * Removes the mapping for this key from this map if present.
+     *
+     * @return the previous value associated with {@code key}, or {@code null} if
+     *         there was no mapping for {@code key}.
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys currently
+     *             in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public V remove(Object key) {
+	Entry<K, V> p = getEntry(key);
+	if (p == null)
+	    return null;
+
+	V oldValue = p.value;
+	deleteEntry(p);
+	return oldValue;
+    }
+
+    private void deleteEntry(Entry<K, V> p) {
+	modCount++;
+	size--;
+
+	// If strictly internal, copy successor's element to p and then make p point to
+	// successor.
+	if (p.left != null && p.right != null) {
+	    Entry<K, V> s = successor(p);
+	    p.key = s.key;
+	    p.value = s.value;
+	    p = s;
+	} // p has 2 children
+
+	// p is the node leaving the tree, uncount it on the whole path before any
+	// rotation
+	for (Entry<K, V> q = p.parent; q != null; q = q.parent)
+	    q.size--;
+
+	// Start fixup at replacement node, if it exists.
+	Entry<K, V> replacement = (p.left != null ? p.left : p.right);
+
+	if (replacement != null) {
+	    // Link replacement to parent
+	    replacement.parent = p.parent;
+	    if (p.parent == null) {
+		root = replacement;
+		return;
+	    } else if (p == p.parent.left) {
+		p.parent.left = replacement;
+		p.parent.balance++;
+		if (replacement.parent.balance == 1) {
+		    p.left = p.right = p.parent = null;
+		    return;
+		}
+	    } else {
+		p.parent.right = replacement;
+		p.parent.balance--;
+		if (replacement.parent.balance == -1) {
+		    p.left = p.right = p.parent = null;
+		    return;
+		}
+	    }
+
+	    // Null out links so they are OK to use by fixAfterDeletion.
+	    p.left = p.right = p.parent = null;
+	    fixAfterDeletion(replacement.parent);
+	} else if (p.parent == null) { // return if we are the only node.
+	    root = null;
+	} else { // No children.
+	    Entry<K, V> fixPoint = p.parent;
+
+	    if (p == fixPoint.left) {
+		fixPoint.left = null;
+		fixPoint.balance++;
+		p.parent = null;
+		if (fixPoint.balance == 1)
+		    return;
+	    } else {
+		fixPoint.right = null;
+		fixPoint.balance--;
+		p.parent = null;
+		if (fixPoint.balance == -1)
+		    return;
+	    }
+
+	    fixAfterDeletion(fixPoint);
+	}
+    }
+
+    private void fixAfterDeletion(Entry<K, V> x) {
+	while (true) {
+	    if (x.balance == 2) { // right heavy by 2?
+		if (x.right.balance == 1) {
+		    x.balance = 0;
+		    x.right.balance = 0;
+		    rotateLeft(x);
+		} else if (x.right.balance == 0) {
+		    x.balance = 1;
+		    x.right.balance = -1;
+		    rotateLeft(x);
+		    break;
+		} else { // x.right.balance = -1
+		    int rlBalance = x.right.left.balance;
+		    x.right.left.balance = 0;
+		    x.right.balance = 0;
+		    x.balance = 0;
+		    if (rlBalance == 1)
+			x.balance = -1;
+		    else if (rlBalance == -1)
+			x.right.balance = 1;
+		    rotateRight(x.right);
+		    rotateLeft(x);
+		}
+		x = x.parent;
+	    } else if (x.balance == -2) {
+		if (x.left.balance == -1) {
+		    x.balance = 0;
+		    x.left.balance = 0;
+		    rotateRight(x);
+		} else if (x.left.balance == 0) {
+		    x.balance = -1;
+		    x.left.balance = 1;
+		    rotateRight(x);
+		    break;
+		} else { // (x.left.balance == 1)
+		    int lrBalance = x.left.right.balance;
+		    x.left.right.balance = 0;
+		    x.left.balance = 0;
+		    x.balance = 0;
+		    if (lrBalance == 1)
+			x.left.balance = -1;
+		    else if (lrBalance == -1)
+			x.balance = 1;
+		    rotateLeft(x.left);
+		    rotateRight(x);
+		}
+		x = x.parent;
+	    }
+
+	    if (x.parent == null)
+		break;
+	    if (x.parent.left == x) {
+		x.parent.balance++;
+		if (x.parent.balance == 1) {
+		    break;
+		}
+	    } else {
+		x.parent.balance--;
+		if (x.parent.balance == -1) {
+		    break;
+		}
+	    }
+
+	    x = x.parent;
+	}
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map, in
+     * ascending key order. The set supports element removal but not {@code add} or
+     * {@code addAll}.
+     */
+    public Set<Map.Entry<K, V>> entrySet() {
+	EntrySet es = entrySet;
+	return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    private transient EntrySet entrySet = null;
+
+    class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+	public Iterator<Map.Entry<K, V>> iterator() {
+	    return new EntryIterator(getFirstEntry());
+	}
+
+	public boolean contains(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    Entry<K, V> p = getEntry(entry.getKey());
+	    return p != null && valEquals(p.getValue(), entry.getValue());
+	}
+
+	public boolean remove(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    Entry<K, V> p = getEntry(entry.getKey());
+	    if (p != null && valEquals(p.getValue(), entry.getValue())) {
+		deleteEntry(p);
+		return true;
+	    }
+	    return false;
+	}
+
+	public int size() {
+	    return OrderStatisticAVLTreeMap.this.size();
+	}
+
+	public void clear() {
+	    OrderStatisticAVLTreeMap.this.clear();
+	}
+    }
+
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+	Entry<K, V> next;
+	Entry<K, V> lastReturned;
+	int expectedModCount;
+
+	EntryIterator(Entry<K, V> first) {
+	    expectedModCount = modCount;
+	    lastReturned = null;
+	    next = first;
+	}
+
+	public boolean hasNext() {
+	    return next != null;
+	}
+
+	public Map.Entry<K, V> next() {
+	    Entry<K, V> e = next;
+	    if (e == null)
+		throw new NoSuchElementException();
+	    if (modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    next = successor(e);
+	    lastReturned = e;
+	    return e;
+	}
+
+	public void remove() {
+	    if (lastReturned == null)
+		throw new IllegalStateException();
+	    if (modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    // deleted entries are replaced by their successors
+	    if (lastReturned.left != null && lastReturned.right != null)
+		next = lastReturned;
+	    deleteEntry(lastReturned);
+	    expectedModCount = modCount;
+	    lastReturned = null;
+	}
+    }
+
+    /**
+     * Removes all of the mappings from this map. The map will be empty after this
+     * call returns.
+     */
+    public void clear() {
+	modCount++;
+	size = 0;
+	root = null;
+	rotations = 0;
+    }
+
+    /**
+     * Test two values for equality. Differs from o1.equals(o2) only in that it
+     * copes with {@code null} o1 properly.
+     */
+    static final boolean valEquals(Object o1, Object o2) {
+	return (o1 == null ? o2 == null : o1.equals(o2));
+    }
+
+    /**
+     * Returns the first Entry in the tree (lowest key). Returns null if the tree is
+     * empty.
+     */
+    final Entry<K, V> getFirstEntry() {
+	Entry<K, V> p = root;
+	if (p != null)
+	    while (p.left != null)
+		p = p.left;
+	return p;
+    }
+
+    /**
+     * Returns the successor of the specified Entry, or null if no such.
+     */
+    static <K, V> Entry<K, V> successor(Entry<K, V> t) {
+	if (t == null)
+	    return null;
+	else if (t.right != null) {
+	    Entry<K, V> p = t.right;
+	    while (p.left != null)
+		p = p.left;
+	    return p;
+	} else {
+	    Entry<K, V> p = t.parent;
+	    Entry<K, V> ch = t;
+	    while (p != null && ch == p.right) {
+		ch = p;
+		p = p.parent;
+	    }
+	    return p;
+	}
+    }
+}
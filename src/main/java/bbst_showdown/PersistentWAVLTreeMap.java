@@ -0,0 +1,486 @@
+package bbst_showdown;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable WAVL tree map.  {@link #plus(Object, Object)} and
+ * {@link #minus(Object)} leave the map they are called on untouched and return
+ * a new version that shares every subtree off the search path, so an update
+ * allocates O(log n) entries and a snapshot is simply a reference to the
+ * current version.  Writers can publish each version through a volatile field
+ * while readers keep working on the version they picked up.
+ * <p>
+ * Balancing follows the rank rules of {@link WAVLTreeMap} with WAVL deletes:
+ * rank differences are 1 or 2, leaves have rank 0, inserts promote and rotate
+ * like an AVL tree and deletes demote and rotate at most twice.  Entries have no
+ * parent pointers, which path copying rules out, so updates re-balance on the
+ * way back up the recursion.
+ * <p>
+ * The {@link Map} mutators inherited from {@link AbstractMap} throw
+ * {@code UnsupportedOperationException}.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ */
+public class PersistentWAVLTreeMap<K, V> extends AbstractMap<K, V> {
+
+    final Entry<K, V> root;
+
+    /**
+     * The number of entries in the tree
+     */
+    private final int size;
+
+    /**
+     * The comparator used to maintain order in this tree map, or null if it uses
+     * the natural ordering of its keys.
+     */
+    private final Comparator<? super K> comparator;
+
+    /**
+     * Constructs a new, empty tree map, using the natural ordering of its keys.
+     */
+    public PersistentWAVLTreeMap() {
+	this(null, 0, null);
+    }
+
+    /**
+     * Constructs a new, empty tree map, ordered according to the given comparator.
+     *
+     * @param comparator
+     *            the comparator that will be used to order this map. If
+     *            {@code null}, the natural ordering of the keys will be used.
+     */
+    public PersistentWAVLTreeMap(Comparator<? super K> comparator) {
+	this(null, 0, comparator);
+    }
+
+    /**
+     * Constructs a new tree map containing the same mappings as the given map,
+     * ordered according to the natural ordering of its keys.
+     *
+     * @param m
+     *            the map whose mappings are to be placed in this map
+     * @throws ClassCastException
+     *             if the keys in m are not {@link Comparable}, or are not mutually
+     *             comparable
+     * @throws NullPointerException
+     *             if the specified map is null
+     */
+    public PersistentWAVLTreeMap(Map<? extends K, ? extends V> m) {
+	PersistentWAVLTreeMap<K, V> t = new PersistentWAVLTreeMap<>();
+	for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+	    t = t.plus(e.getKey(), e.getValue());
+	this.root = t.root;
+	this.size = t.size;
+	this.comparator = null;
+    }
+
+    private PersistentWAVLTreeMap(Entry<K, V> root, int size, Comparator<? super K> comparator) {
+	this.root = root;
+	this.size = size;
+	this.comparator = comparator;
+    }
+
+    public int treeHeight() {
+	return treeHeight(root) - 1;
+    }
+
+    protected int treeHeight(Entry<K, V> node) {
+	if (node == null)
+	    return 0;
+	return (1 + Math.max(treeHeight(node.left), treeHeight(node.right)));
+    }
+
+    public String toString() {
+	return "Persistent WAVL tree of size: " + size + ", height: " + treeHeight();
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * Returns the comparator used to order the keys in this map, or {@code null}
+     * if this map uses the natural ordering of its keys.
+     */
+    public Comparator<? super K> comparator() {
+	return comparator;
+    }
+
+    /**
+     * Returns {@code true} if this map contains a mapping for the specified key.
+     *
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys currently
+     *             in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public boolean containsKey(Object key) {
+	return getEntry(key) != null;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or {@code null} if
+     * this map contains no mapping for the key.
+     *
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys currently
+     *             in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public V get(Object key) {
+	Entry<K, V> p = getEntry(key);
+	return (p == null ? null : p.value);
+    }
+
+    /**
+     * Node in the Tree. Immutable, so it may be shared by any number of versions
+     * of the map.
+     */
+    static final class Entry<K, V> implements Map.Entry<K, V> {
+	final K key;
+	final V value;
+	final Entry<K, V> left;
+	final Entry<K, V> right;
+	final byte rank;
+
+	Entry(K key, V value, Entry<K, V> left, Entry<K, V> right, int rank) {
+	    this.key = key;
+	    this.value = value;
+	    this.left = left;
+	    this.right = right;
+	    this.rank = (byte) rank;
+	}
+
+	public K getKey() {
+	    return key;
+	}
+
+	public V getValue() {
+	    return value;
+	}
+
+	/**
+	 * Entries are shared between versions of the map and can not be changed.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	public V setValue(V value) {
+	    throw new UnsupportedOperationException();
+	}
+
+	public boolean equals(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+
+	    return valEquals(key, e.getKey()) && valEquals(value, e.getValue());
+	}
+
+	public int hashCode() {
+	    int keyHash = (key == null ? 0 : key.hashCode());
+	    int valueHash = (value == null ? 0 : value.hashCode());
+	    return keyHash ^ valueHash;
+	}
+
+	public String toString() {
+	    return key + "=" + value;
+	}
+    }
+
+    final Entry<K, V> getEntry(Object key) {
+	if (key == null && comparator == null)
+	    throw new NullPointerException();
+	Entry<K, V> p = root;
+	while (p != null) {
+	    int cmp = compare(key, p.key);
+	    if (cmp < 0)
+		p = p.left;
+	    else if (cmp > 0)
+		p = p.right;
+	    else
+		return p;
+	}
+	return null;
+    }
+
+    /**
+     * Returns a map with the mappings of this map and the given mapping,
+     * replacing any mapping for the key.  This map is unchanged.
+     *
+     * @param key
+     *            key with which the specified value is to be associated
+     * @param value
+     *            value to be associated with the specified key
+     * @return the new version of the map, or this map if it already maps the key
+     *         to the very same value
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys currently
+     *             in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public PersistentWAVLTreeMap<K, V> plus(K key, V value) {
+	if (root == null) {
+	    compare(key, key); // type (and possibly null) check
+	    return new PersistentWAVLTreeMap<>(new Entry<>(key, value, null, null, 0), 1, comparator);
+	}
+	Entry<K, V> p = getEntry(key);
+	if (p == null)
+	    return new PersistentWAVLTreeMap<>(insert(root, key, value), size + 1, comparator);
+	if (p.value == value)
+	    return this;
+	return new PersistentWAVLTreeMap<>(replace(root, key, value), size, comparator);
+    }
+
+    /**
+     * Returns a map with the mappings of this map except the one for the given
+     * key.  This map is unchanged.
+     *
+     * @param key
+     *            key for which mapping should be removed
+     * @return the new version of the map, or this map if it has no mapping for
+     *         the key
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys currently
+     *             in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public PersistentWAVLTreeMap<K, V> minus(Object key) {
+	if (getEntry(key) == null)
+	    return this;
+	return new PersistentWAVLTreeMap<>(delete(root, key), size - 1, comparator);
+    }
+
+    /**
+     * Copies the path to the entry for key, which must be present, with the
+     * entry's value replaced.  Ranks are unchanged.
+     */
+    private Entry<K, V> replace(Entry<K, V> t, K key, V value) {
+	int cmp = compare(key, t.key);
+	if (cmp < 0)
+	    return new Entry<>(t.key, t.value, replace(t.left, key, value), t.right, t.rank);
+	else if (cmp > 0)
+	    return new Entry<>(t.key, t.value, t.left, replace(t.right, key, value), t.rank);
+	return new Entry<>(t.key, value, t.left, t.right, t.rank);
+    }
+
+    /**
+     * Returns a copy of subtree t with a new leaf for key, which must be absent.
+     */
+    private Entry<K, V> insert(Entry<K, V> t, K key, V value) {
+	if (t == null)
+	    return new Entry<>(key, value, null, null, 0);
+	if (compare(key, t.key) < 0)
+	    return fixAfterInsert(t, insert(t.left, key, value), t.right, true);
+	else
+	    return fixAfterInsert(t, t.left, insert(t.right, key, value), false);
+    }
+
+    /**
+     * Rebuilds t with the given children, one of which may have been promoted to
+     * t's rank by an insert.  Promotes t if its other child has rank difference
+     * one, otherwise rotates, which ends the re-balancing.
+     */
+    private Entry<K, V> fixAfterInsert(Entry<K, V> t, Entry<K, V> left, Entry<K, V> right, boolean grewLeft) {
+	Entry<K, V> x = grewLeft ? left : right;
+	if (x.rank != t.rank)
+	    return new Entry<>(t.key, t.value, left, right, t.rank);
+	Entry<K, V> sibling = grewLeft ? right : left;
+	if (t.rank - rank(sibling) == 1) // promote and continue
+	    return new Entry<>(t.key, t.value, left, right, t.rank + 1);
+
+	// sibling has rank difference 2 so rotate, x is 1,2
+	if (grewLeft) {
+	    Entry<K, V> inner = x.right;
+	    if (x.rank - rank(inner) == 2) { // single rotation
+		Entry<K, V> z = new Entry<>(t.key, t.value, inner, sibling, t.rank - 1);
+		return new Entry<>(x.key, x.value, x.left, z, x.rank);
+	    } else { // double rotation
+		Entry<K, V> z = new Entry<>(t.key, t.value, inner.right, sibling, t.rank - 1);
+		Entry<K, V> y = new Entry<>(x.key, x.value, x.left, inner.left, x.rank - 1);
+		return new Entry<>(inner.key, inner.value, y, z, inner.rank + 1);
+	    }
+	} else {
+	    Entry<K, V> inner = x.left;
+	    if (x.rank - rank(inner) == 2) {
+		Entry<K, V> z = new Entry<>(t.key, t.value, sibling, inner, t.rank - 1);
+		return new Entry<>(x.key, x.value, z, x.right, x.rank);
+	    } else {
+		Entry<K, V> z = new Entry<>(t.key, t.value, sibling, inner.left, t.rank - 1);
+		Entry<K, V> y = new Entry<>(x.key, x.value, inner.right, x.right, x.rank - 1);
+		return new Entry<>(inner.key, inner.value, z, y, inner.rank + 1);
+	    }
+	}
+    }
+
+    /**
+     * Returns a copy of subtree t without the entry for key, which must be
+     * present.
+     */
+    private Entry<K, V> delete(Entry<K, V> t, Object key) {
+	int cmp = compare(key, t.key);
+	if (cmp < 0)
+	    return fixAfterDelete(t.key, t.value, t.rank, delete(t.left, key), t.right, true);
+	else if (cmp > 0)
+	    return fixAfterDelete(t.key, t.value, t.rank, t.left, delete(t.right, key), false);
+
+	// a leaf or unary node is replaced by its child, leaving the parent to
+	// re-balance, otherwise the successor takes its place
+	if (t.left == null)
+	    return t.right;
+	if (t.right == null)
+	    return t.left;
+	Entry<K, V> s = t.right;
+	while (s.left != null)
+	    s = s.left;
+	return fixAfterDelete(s.key, s.value, t.rank, t.left, deleteFirst(t.right), false);
+    }
+
+    private Entry<K, V> deleteFirst(Entry<K, V> t) {
+	if (t.left == null)
+	    return t.right;
+	return fixAfterDelete(t.key, t.value, t.rank, deleteFirst(t.left), t.right, true);
+    }
+
+    /**
+     * Builds an entry of the given rank and children, one of which may have lost
+     * a rank in a delete.  Demotes a 2,2 leaf and, when the child is now three
+     * ranks down, demotes the entry, demotes it together with the sibling or
+     * rotates, which ends the re-balancing.
+     */
+    private Entry<K, V> fixAfterDelete(K key, V value, int rank, Entry<K, V> left, Entry<K, V> right,
+	    boolean shrankLeft) {
+	if (left == null && right == null)
+	    return new Entry<>(key, value, null, null, 0); // leaves have rank 0
+	Entry<K, V> x = shrankLeft ? left : right;
+	if (rank - rank(x) < 3)
+	    return new Entry<>(key, value, left, right, rank);
+	Entry<K, V> sibling = shrankLeft ? right : left;
+	if (rank - sibling.rank == 2) // demote and continue
+	    return new Entry<>(key, value, left, right, rank - 1);
+	if (sibling.rank - rank(sibling.left) == 2 && sibling.rank - rank(sibling.right) == 2) {
+	    // "double demote": both the entry and its sibling drop a rank
+	    Entry<K, V> y = new Entry<>(sibling.key, sibling.value, sibling.left, sibling.right, sibling.rank - 1);
+	    return shrankLeft ? new Entry<>(key, value, x, y, rank - 1) : new Entry<>(key, value, y, x, rank - 1);
+	}
+
+	if (shrankLeft) {
+	    Entry<K, V> inner = sibling.left, outer = sibling.right;
+	    if (sibling.rank - rank(outer) == 1) { // single rotation
+		int zRank = (x == null && inner == null) ? 0 : rank - 1;
+		Entry<K, V> z = new Entry<>(key, value, x, inner, zRank);
+		return new Entry<>(sibling.key, sibling.value, z, outer, sibling.rank + 1);
+	    } else { // double rotation
+		Entry<K, V> z = new Entry<>(key, value, x, inner.left, rank - 2);
+		Entry<K, V> y = new Entry<>(sibling.key, sibling.value, inner.right, outer, sibling.rank - 1);
+		return new Entry<>(inner.key, inner.value, z, y, inner.rank + 2);
+	    }
+	} else {
+	    Entry<K, V> inner = sibling.right, outer = sibling.left;
+	    if (sibling.rank - rank(outer) == 1) {
+		int zRank = (x == null && inner == null) ? 0 : rank - 1;
+		Entry<K, V> z = new Entry<>(key, value, inner, x, zRank);
+		return new Entry<>(sibling.key, sibling.value, outer, z, sibling.rank + 1);
+	    } else {
+		Entry<K, V> z = new Entry<>(key, value, inner.right, x, rank - 2);
+		Entry<K, V> y = new Entry<>(sibling.key, sibling.value, outer, inner.left, sibling.rank - 1);
+		return new Entry<>(inner.key, inner.value, y, z, inner.rank + 2);
+	    }
+	}
+    }
+
+    private static int rank(Entry<?, ?> node) {
+	return (node == null) ? -1 : node.rank;
+    }
+
+    /**
+     * Test two values for equality. Differs from o1.equals(o2) only in that it
+     * copes with {@code null} o1 properly.
+     */
+    static final boolean valEquals(Object o1, Object o2) {
+	return (o1 == null ? o2 == null : o1.equals(o2));
+    }
+
+    /**
+     * Compares two keys using the correct comparison method for this map.
+     */
+    @SuppressWarnings("unchecked")
+    final int compare(Object k1, Object k2) {
+	return comparator == null ? ((Comparable<? super K>) k1).compareTo((K) k2)
+		: comparator.compare((K) k1, (K) k2);
+    }
+
+    // Views
+
+    private transient EntrySet entrySet = null;
+
+    public Set<Map.Entry<K, V>> entrySet() {
+	EntrySet es = entrySet;
+	return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+	public Iterator<Map.Entry<K, V>> iterator() {
+	    return new EntryIterator<>(root);
+	}
+
+	public int size() {
+	    return size;
+	}
+    }
+
+    /**
+     * In-order iterator over a version of the map.  Without parent pointers the
+     * path to the next entry is kept on a stack, which the root's rank bounds
+     * since ranks are at least the heights of their subtrees.
+     */
+    static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+	private final Entry<?, ?>[] stack;
+	private int depth = 0;
+
+	EntryIterator(Entry<K, V> root) {
+	    stack = new Entry<?, ?>[rank(root) + 1];
+	    pushLeft(root);
+	}
+
+	private void pushLeft(Entry<K, V> p) {
+	    for (; p != null; p = p.left)
+		stack[depth++] = p;
+	}
+
+	public boolean hasNext() {
+	    return depth > 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public Map.Entry<K, V> next() {
+	    if (depth == 0)
+		throw new NoSuchElementException();
+	    Entry<K, V> e = (Entry<K, V>) stack[--depth];
+	    stack[depth] = null;
+	    pushLeft(e.right);
+	    return e;
+	}
+    }
+}
@@ -0,0 +1,82 @@
+package bbst_showdown;
+
+/**
+ * Counts the work a tree does, so implementations can be compared by more
+ * than running time: key searches and the entries they visit, steps taken
+ * re-tracing towards the root after an insert or delete, and rotations.
+ * A map only counts once it is handed an instance through its
+ * {@code setCounters} method; until then the cost is one null check per
+ * search, re-tracing step and rotation.  Comparisons, including those made
+ * outside of searches, are counted by ordering the map with a
+ * {@link CountingComparator}.
+ *
+ * <p>Like the maps that update them, counters are not thread-safe.
+ */
+public final class TreeCounters {
+
+    long searches;
+
+    long nodesVisited;
+
+    long retraceSteps;
+
+    long rotations;
+
+    /**
+     * Records a key search by get, containsKey, put or remove that compared
+     * the key with the given number of entries.
+     */
+    void searched(int visited) {
+	searches++;
+	nodesVisited += visited;
+    }
+
+    /**
+     * Returns the number of key searches.
+     */
+    public long searches() {
+	return searches;
+    }
+
+    /**
+     * Returns the number of entries visited by all key searches.
+     */
+    public long nodesVisited() {
+	return nodesVisited;
+    }
+
+    /**
+     * Returns the number of entries visited per search, the average depth of
+     * the searched for keys plus one, or 0 if there have been no searches.
+     */
+    public double averagePathLength() {
+	return searches == 0 ? 0 : (double) nodesVisited / searches;
+    }
+
+    /**
+     * Returns the number of steps taken re-tracing towards the root after
+     * inserts and deletes.
+     */
+    public long retraceSteps() {
+	return retraceSteps;
+    }
+
+    /**
+     * Returns the number of single rotations, a double rotation counting as two.
+     */
+    public long rotations() {
+	return rotations;
+    }
+
+    /**
+     * Sets every count back to zero.
+     */
+    public void reset() {
+	searches = nodesVisited = retraceSteps = rotations = 0;
+    }
+
+    public String toString() {
+	return "searches: " + searches + ", nodes visited: " + nodesVisited + ", retrace steps: " + retraceSteps
+		+ ", rotations: " + rotations;
+    }
+}
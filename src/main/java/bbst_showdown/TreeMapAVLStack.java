@@ -1,17 +1,30 @@
 package bbst_showdown;
 
+import java.util.AbstractCollection;
 import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 
 
 /**
  * An AVL tree {@link NavigableMap} implementation without parent pointers, 
  * balance factors & non-recursive insert and delete.  Re-tracing after update
- * operations is done via a stack.  This version is incomplete, performance did not appear promising.
+ * operations is done via a stack, see {@link Path}.  This version is incomplete, performance did not appear promising.
+ * Insert, lookup, delete, iteration and the collection views work; the navigation
+ * methods of {@link NavigableMap} beyond first, last and poll do not yet.
+ * <p>
+ * Iterators and spliterators find their way back up the tree on a stack of
+ * their own, sized once from the AVL height bound, see {@link PrivateEntryIterator}.
  * 
  * @author David McManamon
  *
@@ -41,6 +54,17 @@ public class TreeMapAVLStack<K,V> extends AbstractMap<K,V> {
     protected transient int modCount = 0;
     
     protected transient int rotations = 0;
+
+    /**
+     * The scratch stack updates are re-traced on, possibly shared with
+     * other maps.  The stack and direction arrays below are this map's
+     * cached view of it, refreshed by preparePath before every update.
+     */
+    private final Path path;
+
+    private Entry<K,V>[] stack;
+
+    private byte[] direction;
     
     /**
      * Constructs a new, empty tree map, using the natural ordering of its
@@ -56,6 +80,43 @@ public class TreeMapAVLStack<K,V> extends AbstractMap<K,V> {
      */
     public TreeMapAVLStack() {
 	comparator = null;
+	path = new Path();
+    }
+
+    /**
+     * Constructs a new, empty tree map, ordered according to the given
+     * comparator.  All keys inserted into the map must be <em>mutually
+     * comparable</em> by the given comparator: {@code comparator.compare(k1,
+     * k2)} must not throw a {@code ClassCastException} for any keys
+     * {@code k1} and {@code k2} in the map.
+     *
+     * @param comparator the comparator that will be used to order this map.
+     *        If {@code null}, the {@linkplain Comparable natural
+     *        ordering} of the keys will be used.
+     */
+    public TreeMapAVLStack(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+        this.path = new Path();
+    }
+
+    /**
+     * Constructs a new, empty tree map, ordered according to the given
+     * comparator, which re-traces updates on the given path stack instead
+     * of one of its own.  The path may be shared by any number of maps as
+     * long as they are all used from the same thread and none of them is
+     * updated from within a comparator or key method of another.
+     *
+     * @param comparator the comparator that will be used to order this map.
+     *        If {@code null}, the {@linkplain Comparable natural
+     *        ordering} of the keys will be used.
+     * @param path the scratch stack used to re-trace updates
+     * @throws NullPointerException if the specified path is null
+     */
+    public TreeMapAVLStack(Comparator<? super K> comparator, Path path) {
+        if (path == null)
+            throw new NullPointerException();
+        this.comparator = comparator;
+        this.path = path;
     }
     
     /**
@@ -74,6 +135,7 @@ public class TreeMapAVLStack<K,V> extends AbstractMap<K,V> {
      */
     public TreeMapAVLStack(Map<? extends K, ? extends V> m) {
         comparator = null;
+        path = new Path();
         putAll(m);
     }
     
@@ -131,6 +193,20 @@ public class TreeMapAVLStack<K,V> extends AbstractMap<K,V> {
         Entry<K,V> p = getEntry(key);
         return (p==null ? null : p.value);
     }
+
+    /**
+     * Returns {@code true} if this map contains a mapping for the specified
+     * key.
+     *
+     * @throws ClassCastException if the specified key cannot be compared
+     *         with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    public boolean containsKey(Object key) {
+        return getEntry(key) != null;
+    }
 	
     /**
      * Node in the Tree.  
@@ -279,14 +355,10 @@ public class TreeMapAVLStack<K,V> extends AbstractMap<K,V> {
      *         and this map uses natural ordering, or its comparator
      *         does not permit null keys
      */
-    // TODO
-    private byte[] direction = new byte[100];
-    @SuppressWarnings("unchecked")
-    private Entry<K,V> [] stack = new Entry[100];
-    
     public V put(K key, V value) {
     	//System.out.println("Inserting:" + key);
         Entry<K,V> t = root;
+        preparePath(size + 1);
         if (t == null) {
             compare(key, key); // type (and possibly null) check
 
@@ -305,11 +377,14 @@ public class TreeMapAVLStack<K,V> extends AbstractMap<K,V> {
                 parent = t;
                 cmp = cpr.compare(key, t.key);
                 if (cmp < 0) {
+                    stack[treeDepth] = parent;
+                    direction[treeDepth++] = -1;
                     t = t.left;
-                    // TODO
                 } else if (cmp > 0) {
+                    stack[treeDepth] = parent;
+                    direction[treeDepth++] = +1;
                     t = t.right;
-                }else {
+                } else {
                     return t.setValue(value);
                 }
             } while (t != null);
@@ -424,6 +499,115 @@ public class TreeMapAVLStack<K,V> extends AbstractMap<K,V> {
 	return l;
     }
 
+    /**
+     * Makes the cached stack and direction arrays deep enough to re-trace
+     * an update on a tree of n entries.  Another map sharing the path may
+     * have grown it since this map last used it, so the arrays are
+     * re-read whenever they differ.
+     */
+    @SuppressWarnings("unchecked")
+    private void preparePath(int n) {
+	Path p = path;
+	if (n >= p.limit)
+	    p.grow(n);
+	if (stack != p.stack) {
+	    stack = (Entry<K, V>[]) p.stack;
+	    direction = p.direction;
+	}
+    }
+
+    /**
+     * The stack of entries and directions taken from the root that insert
+     * and delete re-trace.  It is sized from the AVL height bound, about
+     * 1.44*log2(n+2), and only grows when a tree outgrows it, so updates
+     * allocate nothing for it.
+     *
+     * <p>A path is not thread-safe.  It may be handed to several maps that
+     * are only used by one thread, for example one per worker thread, so
+     * they all share a single scratch buffer; see
+     * {@link TreeMapAVLStack#TreeMapAVLStack(Comparator, Path)}.  The
+     * stack holds on to the entries of the last update re-traced on it.
+     */
+    public static final class Path {
+	/**
+	 * Extra levels allocated when growing, so that a growing tree
+	 * reallocates only every few doublings of its size.
+	 */
+	private static final int SLACK = 4;
+
+	Entry<?, ?>[] stack;
+	byte[] direction;
+
+	/**
+	 * The smallest tree size whose height the arrays cannot cover.
+	 */
+	int limit;
+
+	/**
+	 * Creates a path deep enough for trees of a few thousand entries.
+	 */
+	public Path() {
+	    this(4096);
+	}
+
+	/**
+	 * Creates a path deep enough to re-trace updates on trees of up to
+	 * the given number of entries without growing.
+	 *
+	 * @param expectedSize the number of entries the trees are expected to hold
+	 * @throws IllegalArgumentException if expectedSize is negative
+	 */
+	public Path(int expectedSize) {
+	    if (expectedSize < 0)
+		throw new IllegalArgumentException("Illegal expected size: " + expectedSize);
+	    resize(maxHeight(expectedSize));
+	}
+
+	/**
+	 * Returns the depth of the stack, the height of the tallest
+	 * tree updates can be re-traced on.
+	 */
+	public int capacity() {
+	    return stack.length;
+	}
+
+	void grow(int n) {
+	    resize(maxHeight(n) + SLACK);
+	}
+
+	private void resize(int height) {
+	    stack = new Entry<?, ?>[height];
+	    direction = new byte[height];
+	    limit = (int) Math.min(minSize(height + 1), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the height of the tallest AVL tree with n entries.
+	 */
+	static int maxHeight(int n) {
+	    int h = 0;
+	    while (minSize(h + 1) <= n)
+		h++;
+	    return h;
+	}
+
+	/**
+	 * Returns the number of entries in the sparsest AVL tree of the
+	 * given height, N(h) = N(h-1) + N(h-2) + 1.
+	 */
+	static long minSize(int height) {
+	    if (height == 0)
+		return 0;
+	    long a = 0, b = 1; // N(0), N(1)
+	    for (int h = 1; h < height; h++) {
+		long c = a + b + 1;
+		a = b;
+		b = c;
+	    }
+	    return b;
+	}
+    }
+
     public void inOrderTraversal(Entry<K, V> x) {
 	if (x == null)
 	    return;
@@ -447,19 +631,177 @@ public class TreeMapAVLStack<K,V> extends AbstractMap<K,V> {
      *         does not permit null keys
      */
     public V remove(Object key) {
-        Entry<K,V> p = getEntry(key);
-        if (p == null)
+        preparePath(size);
+        int treeDepth = pathTo(key);
+        if (treeDepth < 0)
             return null;
 
-        V oldValue = p.value;
-        deleteEntry(p);
+        V oldValue = stack[treeDepth].value;
+        deleteEntry(treeDepth);
         return oldValue;
     }
 
-    private void deleteEntry(Entry<K, V> p) {
+    /**
+     * Records the path from the root to the entry for the given key on the
+     * stack, the entry itself last.
+     *
+     * @return the depth of the entry, or -1 if the map does not contain the key
+     */
+    private int pathTo(Object key) {
+	int treeDepth = 0;
+	Entry<K, V> p = root;
+	// split comparator and comparable paths
+	Comparator<? super K> cpr = comparator;
+	if (cpr != null) {
+	    @SuppressWarnings("unchecked")
+	    K k = (K) key;
+	    while (p != null) {
+		int cmp = cpr.compare(k, p.key);
+		if (cmp == 0) {
+		    stack[treeDepth] = p;
+		    return treeDepth;
+		}
+		stack[treeDepth] = p;
+		direction[treeDepth++] = (byte) (cmp < 0 ? -1 : +1);
+		p = cmp < 0 ? p.left : p.right;
+	    }
+	} else {
+	    if (key == null)
+		throw new NullPointerException();
+	    @SuppressWarnings("unchecked")
+	    Comparable<? super K> k = (Comparable<? super K>) key;
+	    while (p != null) {
+		int cmp = k.compareTo(p.key);
+		if (cmp == 0) {
+		    stack[treeDepth] = p;
+		    return treeDepth;
+		}
+		stack[treeDepth] = p;
+		direction[treeDepth++] = (byte) (cmp < 0 ? -1 : +1);
+		p = cmp < 0 ? p.left : p.right;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Deletes the entry at stack[treeDepth], stack[0..treeDepth-1] and direction
+     * holding the path to it from the root.
+     */
+    private void deleteEntry(int treeDepth) {
 	modCount++;
 	size--;
-	// TODO
+
+	Entry<K, V> p = stack[treeDepth];
+	// If strictly internal, copy successor's element to p and then make p
+	// point to successor, extending the path down to it.
+	if (p.left != null && p.right != null) {
+	    direction[treeDepth++] = +1;
+	    Entry<K, V> s = p.right;
+	    while (s.left != null) {
+		stack[treeDepth] = s;
+		direction[treeDepth++] = -1;
+		s = s.left;
+	    }
+	    p.key = s.key;
+	    p.value = s.value;
+	    p = s;
+	} // p has 2 children
+
+	Entry<K, V> replacement = (p.left != null ? p.left : p.right);
+	if (treeDepth == 0) {
+	    root = replacement;
+	    return;
+	}
+	treeDepth--;
+	if (direction[treeDepth] < 0)
+	    stack[treeDepth].left = replacement;
+	else
+	    stack[treeDepth].right = replacement;
+	p.left = p.right = null;
+	fixAfterDeletion(treeDepth);
+    }
+
+    /**
+     * Re-traces from stack[treeDepth], whose subtree in direction[treeDepth] just
+     * lost one level of height, towards the root until a subtree's height is
+     * unchanged.
+     */
+    private void fixAfterDeletion(int treeDepth) {
+	while (true) {
+	    Entry<K, V> x = stack[treeDepth];
+	    x.balance -= direction[treeDepth];
+	    Entry<K, V> top = x;
+	    boolean shorter;
+	    if (x.balance == 1 || x.balance == -1) {
+		return; // height unchanged
+	    } else if (x.balance == 0) {
+		shorter = true;
+	    } else if (x.balance == 2) { // right heavy by 2?
+		Entry<K, V> r = x.right;
+		if (r.balance == 1) {
+		    x.balance = 0;
+		    r.balance = 0;
+		    top = rotateLeft(x);
+		    shorter = true;
+		} else if (r.balance == 0) {
+		    x.balance = 1;
+		    r.balance = -1;
+		    top = rotateLeft(x);
+		    shorter = false;
+		} else { // r.balance = -1
+		    int rlBalance = r.left.balance;
+		    r.left.balance = 0;
+		    r.balance = 0;
+		    x.balance = 0;
+		    if (rlBalance == 1)
+			x.balance = -1;
+		    else if (rlBalance == -1)
+			r.balance = 1;
+		    x.right = rotateRight(r);
+		    top = rotateLeft(x);
+		    shorter = true;
+		}
+	    } else { // x.balance == -2
+		Entry<K, V> l = x.left;
+		if (l.balance == -1) {
+		    x.balance = 0;
+		    l.balance = 0;
+		    top = rotateRight(x);
+		    shorter = true;
+		} else if (l.balance == 0) {
+		    x.balance = -1;
+		    l.balance = 1;
+		    top = rotateRight(x);
+		    shorter = false;
+		} else { // l.balance = 1
+		    int lrBalance = l.right.balance;
+		    l.right.balance = 0;
+		    l.balance = 0;
+		    x.balance = 0;
+		    if (lrBalance == 1)
+			l.balance = -1;
+		    else if (lrBalance == -1)
+			x.balance = 1;
+		    x.left = rotateLeft(l);
+		    top = rotateRight(x);
+		    shorter = true;
+		}
+	    }
+
+	    // set parent reference if a rotation replaced x
+	    if (top != x) {
+		if (treeDepth == 0)
+		    root = top;
+		else if (direction[treeDepth - 1] == 1)
+		    stack[treeDepth - 1].right = top;
+		else
+		    stack[treeDepth - 1].left = top;
+	    }
+	    if (!shorter || treeDepth == 0)
+		return;
+	    treeDepth--;
+	}
     }
    
     /**
@@ -525,54 +867,54 @@ public class TreeMapAVLStack<K,V> extends AbstractMap<K,V> {
     
     /**
      * Returns the successor of the specified Entry, or null if no such.
+     * Entries have no parent link, so unless t has a right subtree this
+     * searches from the root; iterators keep the path on a stack instead.
      */
-    static <K,V> Entry<K,V> successor(Entry<K,V> t) {
-        if (t == null)
-            return null;
-        else if (t.right != null) {
-            Entry<K,V> p = t.right;
-            while (p.left != null)
-                p = p.left;
-            return p;
-        } else {
-        	// TODO
-        	/*
-            Entry<K,V> p = t.parent;
-            Entry<K,V> ch = t;
-            while (p != null && ch == p.right) {
-                ch = p;
-                p = p.parent;
-            }
-            return p;
-            */
-        	return null;	
-        }
+    final Entry<K,V> successor(Entry<K,V> t) {
+	if (t == null)
+	    return null;
+	Entry<K,V> p = t.right;
+	if (p != null) {
+	    while (p.left != null)
+		p = p.left;
+	    return p;
+	}
+	Entry<K,V> higher = null;
+	for (p = root; p != null;) {
+	    if (compare(t.key, p.key) < 0) {
+		higher = p;
+		p = p.left;
+	    } else {
+		p = p.right;
+	    }
+	}
+	return higher;
     }
 
     /**
      * Returns the predecessor of the specified Entry, or null if no such.
+     * Entries have no parent link, so unless t has a left subtree this
+     * searches from the root.
      */
-    static <K,V> Entry<K,V> predecessor(Entry<K,V> t) {
-        if (t == null)
-            return null;
-        else if (t.left != null) {
-            Entry<K,V> p = t.left;
-            while (p.right != null)
-                p = p.right;
-            return p;
-        } else {
-        	// TODO
-        	/*
-            Entry<K,V> p = t.parent;
-            Entry<K,V> ch = t;
-            while (p != null && ch == p.left) {
-                ch = p;
-                p = p.parent;
-            }
-            return p;
-            */
-        	return null;
-        }
+    final Entry<K,V> predecessor(Entry<K,V> t) {
+	if (t == null)
+	    return null;
+	Entry<K,V> p = t.left;
+	if (p != null) {
+	    while (p.right != null)
+		p = p.right;
+	    return p;
+	}
+	Entry<K,V> lower = null;
+	for (p = root; p != null;) {
+	    if (compare(t.key, p.key) > 0) {
+		lower = p;
+		p = p.right;
+	    } else {
+		p = p.left;
+	    }
+	}
+	return lower;
     }
 
     /**
@@ -610,10 +952,19 @@ public class TreeMapAVLStack<K,V> extends AbstractMap<K,V> {
      * @since 1.6
      */
     public Map.Entry<K,V> pollFirstEntry() {
-        Entry<K,V> p = getFirstEntry();
+        Entry<K,V> p = root;
+        if (p == null)
+            return null;
+        preparePath(size);
+        int treeDepth = 0;
+        while (p.left != null) {
+            stack[treeDepth] = p;
+            direction[treeDepth++] = -1;
+            p = p.left;
+        }
+        stack[treeDepth] = p;
         Map.Entry<K,V> result = exportEntry(p);
-        if (p != null)
-            deleteEntry(p);
+        deleteEntry(treeDepth);
         return result;
     }
 
@@ -621,16 +972,485 @@ public class TreeMapAVLStack<K,V> extends AbstractMap<K,V> {
      * @since 1.6
      */
     public Map.Entry<K,V> pollLastEntry() {
-        Entry<K,V> p = getLastEntry();
+        Entry<K,V> p = root;
+        if (p == null)
+            return null;
+        preparePath(size);
+        int treeDepth = 0;
+        while (p.right != null) {
+            stack[treeDepth] = p;
+            direction[treeDepth++] = +1;
+            p = p.right;
+        }
+        stack[treeDepth] = p;
         Map.Entry<K,V> result = exportEntry(p);
-        if (p != null)
-            deleteEntry(p);
+        deleteEntry(treeDepth);
         return result;
     }
 
-    @Override
-    public Set<java.util.Map.Entry<K, V>> entrySet() {
-	// TODO Auto-generated method stub
-	return null;
+    // Views
+
+    private transient EntrySet entrySet = null;
+    private transient KeySet keySet = null;
+    private transient Values values = null;
+
+    /**
+     * Returns a {@link Set} view of the keys contained in this map, in
+     * ascending order.  The set is backed by the map and supports element
+     * removal but not {@code add} or {@code addAll}.
+     */
+    public Set<K> keySet() {
+	KeySet ks = keySet;
+	return (ks != null) ? ks : (keySet = new KeySet());
+    }
+
+    /**
+     * Returns a {@link Collection} view of the values contained in this map,
+     * in ascending order of the corresponding keys.  The collection is backed
+     * by the map and supports element removal but not {@code add} or
+     * {@code addAll}.
+     */
+    public Collection<V> values() {
+	Values vs = values;
+	return (vs != null) ? vs : (values = new Values());
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map, in
+     * ascending key order.  The set's spliterator is late-binding, fail-fast,
+     * and additionally reports {@link Spliterator#SORTED} and
+     * {@link Spliterator#ORDERED}.  The set is backed by the map and supports
+     * element removal but not {@code add} or {@code addAll}.
+     */
+    public Set<Map.Entry<K, V>> entrySet() {
+	EntrySet es = entrySet;
+	return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    /**
+     * Returns the mappings with keys from fromKey, inclusive, to toKey,
+     * exclusive, in ascending key order.  Finding fromKey costs one descent
+     * and each entry after that an amortized constant number of steps.
+     *
+     * @throws IllegalArgumentException
+     *             if fromKey is greater than toKey
+     */
+    public Iterator<Map.Entry<K, V>> entries(K fromKey, K toKey) {
+	if (compare(fromKey, toKey) > 0)
+	    throw new IllegalArgumentException("fromKey > toKey");
+	return new EntryIterator(fromKey, toKey);
+    }
+
+    class KeySet extends AbstractSet<K> {
+	public Iterator<K> iterator() {
+	    return new KeyIterator();
+	}
+
+	public int size() {
+	    return TreeMapAVLStack.this.size();
+	}
+
+	public boolean contains(Object o) {
+	    return containsKey(o);
+	}
+
+	public boolean remove(Object o) {
+	    int oldSize = size;
+	    TreeMapAVLStack.this.remove(o);
+	    return size != oldSize;
+	}
+
+	public void clear() {
+	    TreeMapAVLStack.this.clear();
+	}
+
+	public Spliterator<K> spliterator() {
+	    return new KeySpliterator<>(TreeMapAVLStack.this);
+	}
+    }
+
+    class Values extends AbstractCollection<V> {
+	public Iterator<V> iterator() {
+	    return new ValueIterator();
+	}
+
+	public int size() {
+	    return TreeMapAVLStack.this.size();
+	}
+
+	public boolean contains(Object o) {
+	    return TreeMapAVLStack.this.containsValue(o);
+	}
+
+	public void clear() {
+	    TreeMapAVLStack.this.clear();
+	}
+
+	public Spliterator<V> spliterator() {
+	    return new ValueSpliterator<>(TreeMapAVLStack.this);
+	}
+    }
+
+    class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+	public Iterator<Map.Entry<K, V>> iterator() {
+	    return new EntryIterator(null, null);
+	}
+
+	public boolean contains(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    Entry<K, V> p = getEntry(entry.getKey());
+	    return p != null && valEquals(p.getValue(), entry.getValue());
+	}
+
+	public boolean remove(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    Entry<K, V> p = getEntry(entry.getKey());
+	    if (p != null && valEquals(p.getValue(), entry.getValue())) {
+		TreeMapAVLStack.this.remove(entry.getKey());
+		return true;
+	    }
+	    return false;
+	}
+
+	public int size() {
+	    return TreeMapAVLStack.this.size();
+	}
+
+	public void clear() {
+	    TreeMapAVLStack.this.clear();
+	}
+
+	public Spliterator<Map.Entry<K, V>> spliterator() {
+	    return new EntrySpliterator<>(TreeMapAVLStack.this);
+	}
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> Entry<K, V>[] newStack(int size) {
+	return (Entry<K, V>[]) new Entry<?, ?>[Path.maxHeight(size)];
+    }
+
+    /**
+     * Base class for iterators.  The stack holds the entries still to be
+     * returned whose left subtrees are done, next entry on top, so a step pops
+     * one entry and pushes the left spine of its right subtree.  It is sized
+     * once from the AVL height bound for the size of the map when the iterator
+     * is created and reused by every step; removal through the iterator only
+     * makes the tree shorter.
+     */
+    abstract class PrivateEntryIterator<T> implements Iterator<T> {
+	final Entry<K, V>[] stack;
+	int depth;
+	final Object toKey; // exclusive upper bound, or null for none
+	Entry<K, V> lastReturned;
+	int expectedModCount;
+
+	PrivateEntryIterator(Object fromKey, Object toKey) {
+	    expectedModCount = modCount;
+	    stack = newStack(size);
+	    this.toKey = toKey;
+	    if (fromKey == null)
+		pushLeft(root);
+	    else
+		seek(fromKey, true);
+	    bound();
+	}
+
+	private void pushLeft(Entry<K, V> p) {
+	    for (; p != null; p = p.left)
+		stack[depth++] = p;
+	}
+
+	/**
+	 * Rebuilds the stack for the entries after key, or from key on if
+	 * inclusive: the entries where a search for key turns left.
+	 */
+	private void seek(Object key, boolean inclusive) {
+	    depth = 0;
+	    for (Entry<K, V> p = root; p != null;) {
+		int cmp = compare(key, p.key);
+		if (cmp < 0) {
+		    stack[depth++] = p;
+		    p = p.left;
+		} else if (cmp > 0 || !inclusive) {
+		    p = p.right;
+		} else {
+		    stack[depth++] = p;
+		    break;
+		}
+	    }
+	}
+
+	private void bound() {
+	    if (toKey != null && depth > 0 && compare(stack[depth - 1].key, toKey) >= 0)
+		depth = 0;
+	}
+
+	public final boolean hasNext() {
+	    return depth > 0;
+	}
+
+	final Entry<K, V> nextEntry() {
+	    if (depth == 0)
+		throw new NoSuchElementException();
+	    if (modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    Entry<K, V> e = stack[--depth];
+	    pushLeft(e.right);
+	    bound();
+	    lastReturned = e;
+	    return e;
+	}
+
+	public void remove() {
+	    if (lastReturned == null)
+		throw new IllegalStateException();
+	    if (modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    K key = lastReturned.key;
+	    TreeMapAVLStack.this.remove(key);
+	    expectedModCount = modCount;
+	    lastReturned = null;
+	    // rotations may have moved the entries on the stack
+	    if (depth > 0) {
+		seek(key, false);
+		bound();
+	    }
+	}
+    }
+
+    final class EntryIterator extends PrivateEntryIterator<Map.Entry<K, V>> {
+	EntryIterator(Object fromKey, Object toKey) {
+	    super(fromKey, toKey);
+	}
+
+	public Map.Entry<K, V> next() {
+	    return nextEntry();
+	}
+    }
+
+    final class ValueIterator extends PrivateEntryIterator<V> {
+	ValueIterator() {
+	    super(null, null);
+	}
+
+	public V next() {
+	    return nextEntry().value;
+	}
+    }
+
+    final class KeyIterator extends PrivateEntryIterator<K> {
+	KeyIterator() {
+	    super(null, null);
+	}
+
+	public K next() {
+	    return nextEntry().key;
+	}
+    }
+
+    /**
+     * Base class for spliterators, traversing with the same stack as the
+     * iterators.  The entry at the bottom of the stack comes after everything
+     * above it and their right subtrees, so a split hands the entries above
+     * it to the new spliterator, about the left half of what remains, and
+     * keeps the bottom entry with its right subtree.  With a single entry left
+     * on the stack the split hands off that entry and keeps its right subtree,
+     * whose first entry becomes the fence of the new spliterator.
+     * <p>
+     * The estimate is exact only at top-level, which is the only spliterator
+     * reporting SIZED.  The stack is allocated on first use so the spliterator
+     * is late-binding.
+     */
+    abstract static class TreeMapSpliterator<K, V, T> implements Spliterator<T> {
+	final TreeMapAVLStack<K, V> tree;
+	Entry<K, V>[] stack;
+	int depth;
+	Entry<K, V> fence; // first entry not covered, or null
+	boolean top;
+	int est; // size estimate, -1 until initialized
+	int expectedModCount;
+
+	TreeMapSpliterator(TreeMapAVLStack<K, V> tree) {
+	    this.tree = tree;
+	    this.top = true;
+	    this.est = -1;
+	}
+
+	TreeMapSpliterator(TreeMapSpliterator<K, V, T> parent, Entry<K, V>[] stack, int depth, Entry<K, V> fence,
+		int est) {
+	    this.tree = parent.tree;
+	    this.stack = stack;
+	    this.depth = depth;
+	    this.fence = fence;
+	    this.est = est;
+	    this.expectedModCount = parent.expectedModCount;
+	}
+
+	abstract T element(Entry<K, V> e);
+
+	abstract TreeMapSpliterator<K, V, T> split(Entry<K, V>[] stack, int depth, Entry<K, V> fence, int est);
+
+	final void init() {
+	    if (est < 0) {
+		stack = newStack(tree.size);
+		depth = 0;
+		for (Entry<K, V> p = tree.root; p != null; p = p.left)
+		    stack[depth++] = p;
+		est = tree.size;
+		expectedModCount = tree.modCount;
+	    }
+	}
+
+	public final long estimateSize() {
+	    init();
+	    return est;
+	}
+
+	public final TreeMapSpliterator<K, V, T> trySplit() {
+	    init();
+	    if (depth == 0 || stack[depth - 1] == fence)
+		return null;
+	    Entry<K, V>[] s = stack;
+	    Entry<K, V>[] prefix = Arrays.copyOf(s, s.length);
+	    if (depth > 1) {
+		// everything above the bottom entry
+		System.arraycopy(s, 1, prefix, 0, depth - 1);
+		TreeMapSpliterator<K, V, T> left = split(prefix, depth - 1, null, est >>>= 1);
+		depth = 1;
+		top = false;
+		return left;
+	    }
+	    Entry<K, V> e = s[0], first = e.right;
+	    if (first == null)
+		return null;
+	    while (first.left != null)
+		first = first.left;
+	    if (first == fence)
+		return null;
+	    depth = 0;
+	    for (Entry<K, V> p = e.right; p != null; p = p.left)
+		s[depth++] = p;
+	    top = false;
+	    if (est > 1)
+		est--;
+	    return split(prefix, 1, first, 1);
+	}
+
+	public final void forEachRemaining(Consumer<? super T> action) {
+	    if (action == null)
+		throw new NullPointerException();
+	    init();
+	    Entry<K, V>[] s = stack;
+	    Entry<K, V> f = fence;
+	    int d = depth;
+	    depth = 0; // exhaust
+	    while (d > 0) {
+		Entry<K, V> e = s[--d];
+		if (e == f)
+		    break;
+		action.accept(element(e));
+		for (Entry<K, V> p = e.right; p != null; p = p.left)
+		    s[d++] = p;
+	    }
+	    if (tree.modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	}
+
+	public final boolean tryAdvance(Consumer<? super T> action) {
+	    if (action == null)
+		throw new NullPointerException();
+	    init();
+	    if (depth == 0 || stack[depth - 1] == fence)
+		return false;
+	    Entry<K, V> e = stack[--depth];
+	    for (Entry<K, V> p = e.right; p != null; p = p.left)
+		stack[depth++] = p;
+	    action.accept(element(e));
+	    if (tree.modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    return true;
+	}
+
+	public int characteristics() {
+	    return (top ? Spliterator.SIZED : 0) | Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.ORDERED;
+	}
+    }
+
+    static final class KeySpliterator<K, V> extends TreeMapSpliterator<K, V, K> {
+	KeySpliterator(TreeMapAVLStack<K, V> tree) {
+	    super(tree);
+	}
+
+	KeySpliterator(KeySpliterator<K, V> parent, Entry<K, V>[] stack, int depth, Entry<K, V> fence, int est) {
+	    super(parent, stack, depth, fence, est);
+	}
+
+	K element(Entry<K, V> e) {
+	    return e.key;
+	}
+
+	KeySpliterator<K, V> split(Entry<K, V>[] stack, int depth, Entry<K, V> fence, int est) {
+	    return new KeySpliterator<>(this, stack, depth, fence, est);
+	}
+
+	public Comparator<? super K> getComparator() {
+	    return tree.comparator;
+	}
+    }
+
+    static final class ValueSpliterator<K, V> extends TreeMapSpliterator<K, V, V> {
+	ValueSpliterator(TreeMapAVLStack<K, V> tree) {
+	    super(tree);
+	}
+
+	ValueSpliterator(ValueSpliterator<K, V> parent, Entry<K, V>[] stack, int depth, Entry<K, V> fence, int est) {
+	    super(parent, stack, depth, fence, est);
+	}
+
+	V element(Entry<K, V> e) {
+	    return e.value;
+	}
+
+	ValueSpliterator<K, V> split(Entry<K, V>[] stack, int depth, Entry<K, V> fence, int est) {
+	    return new ValueSpliterator<>(this, stack, depth, fence, est);
+	}
+
+	public int characteristics() {
+	    return (top ? Spliterator.SIZED : 0) | Spliterator.ORDERED;
+	}
+    }
+
+    static final class EntrySpliterator<K, V> extends TreeMapSpliterator<K, V, Map.Entry<K, V>> {
+	EntrySpliterator(TreeMapAVLStack<K, V> tree) {
+	    super(tree);
+	}
+
+	EntrySpliterator(EntrySpliterator<K, V> parent, Entry<K, V>[] stack, int depth, Entry<K, V> fence, int est) {
+	    super(parent, stack, depth, fence, est);
+	}
+
+	Map.Entry<K, V> element(Entry<K, V> e) {
+	    return e;
+	}
+
+	EntrySpliterator<K, V> split(Entry<K, V>[] stack, int depth, Entry<K, V> fence, int est) {
+	    return new EntrySpliterator<>(this, stack, depth, fence, est);
+	}
+
+	public Comparator<Map.Entry<K, V>> getComparator() {
+	    // Adapt or create a key-based comparator
+	    if (tree.comparator != null)
+		return Map.Entry.comparingByKey(tree.comparator);
+	    return (Comparator<Map.Entry<K, V>> & java.io.Serializable) (e1, e2) -> {
+		@SuppressWarnings("unchecked")
+		Comparable<? super K> k1 = (Comparable<? super K>) e1.getKey();
+		return k1.compareTo(e2.getKey());
+	    };
+	}
     }
-}
\ No newline at end of file
+}
@@ -48,6 +48,11 @@ private transient int modCount = 0;
 
 private transient int rotations = 0;
 
+/**
+ * Counts searches, re-tracing steps and rotations when not null.
+ */
+private transient TreeCounters counters;
+
 /**
  * Constructs a new, empty tree map, using the natural ordering of its
  * keys.  All keys inserted into the map must implement the {@link
@@ -120,8 +125,12 @@ public TreeMapBST(SortedMap<K, ? extends V> m) {
 }
 
 
+/**
+ * Returns the number of entries on the longest path from the root, walking
+ * the tree without recursion since it may be a single long chain.
+ */
 public int treeHeight() {
-	return treeHeight(root);
+	return statistics().height() + 1;
 }
 
 public int treeHeight(Entry<K,V> node){
@@ -130,10 +139,33 @@ if (node == null)
 return (1 + Math.max(treeHeight(node.left), treeHeight(node.right)));
 }
 
+/**
+ * Returns the height, average depth and depth histogram of the tree,
+ * walking every entry without recursion.
+ */
+public TreeStatistics statistics() {
+	return TreeStatistics.of(root, e -> e.left, e -> e.right, e -> e.parent);
+}
+
 public int rotations() {
 	return rotations;
 }
 
+/**
+ * Returns the counters this map updates, or null if it is not counting.
+ */
+public TreeCounters counters() {
+    return counters;
+}
+
+/**
+ * Starts counting searches, re-tracing steps and rotations into the given
+ * counters, or stops counting if null.
+ */
+public void setCounters(TreeCounters counters) {
+    this.counters = counters;
+}
+
 public String toString() {
 	return "BST          of size: " + size + ", height: " + treeHeight() + ", rotations " + rotations;
 }
@@ -273,6 +305,8 @@ public void putAll(Map<? extends K, ? extends V> map) {
  *         does not permit null keys
  */
 final Entry<K,V> getEntry(Object key) {
+    if (counters != null)
+        return getEntryCounting(key);
     // Offload comparator-based version for sake of performance
     if (comparator != null)
         return getEntryUsingComparator(key);
@@ -318,6 +352,39 @@ final Entry<K,V> getEntryUsingComparator(Object key) {
     return null;
 }
 
+/**
+ * Version of getEntry that counts the entries visited.  Split off from
+ * getEntry so searches only pay for counting when it is switched on.
+ */
+final Entry<K,V> getEntryCounting(Object key) {
+    if (key == null && comparator == null)
+        throw new NullPointerException();
+    Entry<K,V> p = root;
+    int visited = 0;
+    while (p != null) {
+        visited++;
+        int cmp = compare(key, p.key);
+        if (cmp < 0)
+            p = p.left;
+        else if (cmp > 0)
+            p = p.right;
+        else
+            break;
+    }
+    counters.searched(visited);
+    return p;
+}
+
+/**
+ * Counts a search that visited e and all of its ancestors.
+ */
+private void searched(Entry<K,V> e) {
+    int visited = 0;
+    for (; e != null; e = e.parent)
+        visited++;
+    counters.searched(visited);
+}
+
 /**
  * Gets the entry corresponding to the specified key; if no such entry
  * exists, returns the entry for the least key greater than the specified
@@ -487,8 +554,11 @@ public V put(K key, V value) {
                 t = t.left;
             else if (cmp > 0)
                 t = t.right;
-            else
+            else {
+                if (counters != null)
+                    searched(t);
                 return t.setValue(value);
+            }
         } while (t != null);
     }
     else {
@@ -503,11 +573,16 @@ public V put(K key, V value) {
                 t = t.left;
             else if (cmp > 0)
                 t = t.right;
-            else
+            else {
+                if (counters != null)
+                    searched(t);
                 return t.setValue(value);
+            }
         } while (t != null);
     }
     Entry<K,V> e = new Entry<>(key, value, parent);
+    if (counters != null)
+        searched(parent);
     if (cmp < 0)
         parent.left = e;
     else
@@ -2164,6 +2239,8 @@ private void rotateLeft(Entry<K,V> p) {
         r.left = p;
         p.parent = r;
         rotations++;
+        if (counters != null)
+            counters.rotations++;
     }
 }
 
@@ -2182,6 +2259,8 @@ private void rotateRight(Entry<K,V> p) {
         l.right = p;
         p.parent = l;
         rotations++;
+        if (counters != null)
+            counters.rotations++;
     }
 }
 
@@ -2190,6 +2269,8 @@ private void fixAfterInsertion(Entry<K,V> x) {
     x.color = RED;
 
     while (x != null && x != root && x.parent.color == RED) {
+        if (counters != null)
+            counters.retraceSteps++;
         if (parentOf(x) == leftOf(parentOf(parentOf(x)))) {
             Entry<K,V> y = rightOf(parentOf(parentOf(x)));
             if (colorOf(y) == RED) {
@@ -2281,6 +2362,8 @@ private void deleteEntry(Entry<K,V> p) {
 /** From CLR */
 private void fixAfterDeletion(Entry<K,V> x) {
     while (x != root && colorOf(x) == BLACK) {
+        if (counters != null)
+            counters.retraceSteps++;
         if (x == leftOf(parentOf(x))) {
             Entry<K,V> sib = rightOf(parentOf(x));
 
@@ -51,6 +51,11 @@ private transient int modCount = 0;
 
 private transient int rotations = 0;
 
+/**
+ * Counts searches, re-tracing steps and rotations when not null.
+ */
+private transient TreeCounters counters;
+
 /**
  * Constructs a new, empty tree map, using the natural ordering of its
  * keys.  All keys inserted into the map must implement the {@link
@@ -123,8 +128,12 @@ public TreeMapRedBlack(SortedMap<K, ? extends V> m) {
 }
 
 
+    /**
+     * Returns the height of the tree, or -1 if it is empty.  Colors do not
+     * determine the height, so this walks every entry.
+     */
     public int treeHeight() {
-	return treeHeight(root) - 1;
+	return statistics().height();
     }
 
     protected int treeHeight(Entry<K, V> node) {
@@ -133,10 +142,41 @@ public TreeMapRedBlack(SortedMap<K, ? extends V> m) {
 	return (1 + Math.max(treeHeight(node.left), treeHeight(node.right)));
     }
 
+    /**
+     * Returns the height, average depth and depth histogram of the tree,
+     * walking every entry without recursion.
+     */
+    public TreeStatistics statistics() {
+	return TreeStatistics.of(root, e -> e.left, e -> e.right, e -> e.parent);
+    }
+
     public int rotations() {
 	return rotations;
     }
 
+    /**
+     * Returns the counters this map updates, or null if it is not counting.
+     */
+    public TreeCounters counters() {
+	return counters;
+    }
+
+    /**
+     * Starts counting searches, re-tracing steps and rotations into the given
+     * counters, or stops counting if null.
+     */
+    public void setCounters(TreeCounters counters) {
+	this.counters = counters;
+    }
+
+    /**
+     * Returns an immutable copy of this map laid out in breadth first order for
+     * fast lookups, for maps that are built once and then only read.
+     */
+    public EytzingerTreeMap<K, V> freeze() {
+	return new EytzingerTreeMap<>(size, entrySet().iterator(), comparator);
+    }
+
     public String toString() {
 	return "Red-black tree of size: " + size + ", height: " + treeHeight() + ", rotations " + rotations;
     }
@@ -276,6 +316,8 @@ public void putAll(Map<? extends K, ? extends V> map) {
  *         does not permit null keys
  */
 final Entry<K,V> getEntry(Object key) {
+    if (counters != null)
+        return getEntryCounting(key);
     // Offload comparator-based version for sake of performance
     if (comparator != null)
         return getEntryUsingComparator(key);
@@ -321,6 +363,39 @@ final Entry<K,V> getEntryUsingComparator(Object key) {
     return null;
 }
 
+/**
+ * Version of getEntry that counts the entries visited.  Split off from
+ * getEntry so searches only pay for counting when it is switched on.
+ */
+final Entry<K,V> getEntryCounting(Object key) {
+    if (key == null && comparator == null)
+        throw new NullPointerException();
+    Entry<K,V> p = root;
+    int visited = 0;
+    while (p != null) {
+        visited++;
+        int cmp = compare(key, p.key);
+        if (cmp < 0)
+            p = p.left;
+        else if (cmp > 0)
+            p = p.right;
+        else
+            break;
+    }
+    counters.searched(visited);
+    return p;
+}
+
+/**
+ * Counts a search that visited e and all of its ancestors.
+ */
+private void searched(Entry<K,V> e) {
+    int visited = 0;
+    for (; e != null; e = e.parent)
+        visited++;
+    counters.searched(visited);
+}
+
 /**
  * Gets the entry corresponding to the specified key; if no such entry
  * exists, returns the entry for the least key greater than the specified
@@ -490,8 +565,11 @@ public V put(K key, V value) {
                 t = t.left;
             else if (cmp > 0)
                 t = t.right;
-            else
+            else {
+                if (counters != null)
+                    searched(t);
                 return t.setValue(value);
+            }
         } while (t != null);
     }
     else {
@@ -506,11 +584,16 @@ public V put(K key, V value) {
                 t = t.left;
             else if (cmp > 0)
                 t = t.right;
-            else
+            else {
+                if (counters != null)
+                    searched(t);
                 return t.setValue(value);
+            }
         } while (t != null);
     }
     Entry<K,V> e = new Entry<>(key, value, parent);
+    if (counters != null)
+        searched(parent);
     if (cmp < 0)
         parent.left = e;
     else
@@ -558,36 +641,60 @@ public void clear() {
 
 /**
  * Returns a shallow copy of this {@code TreeMap} instance. (The keys and
- * values themselves are not cloned.)
+ * values themselves are not cloned.) Nodes are copied with their colors, so
+ * the copy has the same shape and is built in linear time without comparing
+ * keys.
  *
  * @return a shallow copy of this map
  */
+@SuppressWarnings("unchecked")
 public Object clone() {
-    TreeMapRedBlack<?,?> clone;
+    TreeMapRedBlack<K,V> clone;
     try {
-        clone = (TreeMapRedBlack<?,?>) super.clone();
+        clone = (TreeMapRedBlack<K,V>) super.clone();
     } catch (CloneNotSupportedException e) {
         throw new InternalError(e);
     }
 
-    // Put clone into "virgin" state (except for comparator)
-    clone.root = null;
-    clone.size = 0;
+    // Give the clone its own copy of our nodes and fresh views
+    clone.root = copyTree(root);
     clone.modCount = 0;
+    clone.counters = null;
     clone.entrySet = null;
     clone.navigableKeySet = null;
     clone.descendingMap = null;
 
-    // Initialize clone with our mappings
-//    try {
-//        clone.buildFromSorted(size, entrySet().iterator(), null, null);
-//    } catch (java.io.IOException cannotHappen) {
-//    } catch (ClassNotFoundException cannotHappen) {
-//    }
-
     return clone;
 }
 
+/**
+ * Copies the tree rooted at {@code root} node for node, walking down the
+ * links not yet copied and back up through the parents.
+ */
+static <K,V> Entry<K,V> copyTree(Entry<K,V> root) {
+    if (root == null)
+        return null;
+    Entry<K,V> copy = new Entry<>(root.key, root.value, null);
+    copy.color = root.color;
+    Entry<K,V> p = root, q = copy;
+    for (;;) {
+        if (p.left != null && q.left == null) {
+            p = p.left;
+            q = q.left = new Entry<>(p.key, p.value, q);
+            q.color = p.color;
+        } else if (p.right != null && q.right == null) {
+            p = p.right;
+            q = q.right = new Entry<>(p.key, p.value, q);
+            q.color = p.color;
+        } else if (p == root) {
+            return copy;
+        } else {
+            p = p.parent;
+            q = q.parent;
+        }
+    }
+}
+
 // NavigableMap API methods
 
 /**
@@ -2167,6 +2274,8 @@ private void rotateLeft(Entry<K,V> p) {
         r.left = p;
         p.parent = r;
         rotations++;
+        if (counters != null)
+            counters.rotations++;
     }
 }
 
@@ -2185,6 +2294,8 @@ private void rotateRight(Entry<K,V> p) {
         l.right = p;
         p.parent = l;
         rotations++;
+        if (counters != null)
+            counters.rotations++;
     }
 }
 
@@ -2193,6 +2304,8 @@ private void fixAfterInsertion(Entry<K,V> x) {
     x.color = RED;
 
     while (x != null && x != root && x.parent.color == RED) {
+        if (counters != null)
+            counters.retraceSteps++;
         if (parentOf(x) == leftOf(parentOf(parentOf(x)))) {
             Entry<K,V> y = rightOf(parentOf(parentOf(x)));
             if (colorOf(y) == RED) {
@@ -2284,6 +2397,8 @@ private void deleteEntry(Entry<K,V> p) {
 /** From CLR */
 private void fixAfterDeletion(Entry<K,V> x) {
     while (x != root && colorOf(x) == BLACK) {
+        if (counters != null)
+            counters.retraceSteps++;
         if (x == leftOf(parentOf(x))) {
             Entry<K,V> sib = rightOf(parentOf(x));
 
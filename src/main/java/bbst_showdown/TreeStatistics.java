@@ -0,0 +1,111 @@
+package bbst_showdown;
+
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+/**
+ * The shape of a tree at one point in time: its height, the average depth of
+ * its entries and how many entries sit at each depth.  Searches visit one
+ * more entry than the depth of the key they find, so the average depth
+ * predicts lookup cost better than the height does, and a histogram with a
+ * long tail past log2(n) shows a workload degrading a tree.
+ */
+public final class TreeStatistics {
+
+    private final int size;
+
+    private final long totalDepth;
+
+    /**
+     * The number of entries at each depth, the root at depth 0.
+     */
+    private final long[] depths;
+
+    private TreeStatistics(int size, long totalDepth, long[] depths) {
+	this.size = size;
+	this.totalDepth = totalDepth;
+	this.depths = depths;
+    }
+
+    /**
+     * Collects the statistics of the tree below root.  The tree is walked
+     * along its parent pointers, so neither recursion nor a stack is needed
+     * however unbalanced it is, and the only allocation is the histogram.
+     */
+    static <E> TreeStatistics of(E root, UnaryOperator<E> left, UnaryOperator<E> right, UnaryOperator<E> parent) {
+	long[] depths = new long[32];
+	int size = 0, depth = 0;
+	long totalDepth = 0;
+	E p = root;
+	while (p != null) {
+	    if (depth == depths.length)
+		depths = Arrays.copyOf(depths, depth * 2);
+	    depths[depth]++;
+	    totalDepth += depth;
+	    size++;
+
+	    // pre-order: left child, else right child, else the right child of
+	    // the nearest ancestor that was entered from the left
+	    if (left.apply(p) != null) {
+		p = left.apply(p);
+		depth++;
+	    } else if (right.apply(p) != null) {
+		p = right.apply(p);
+		depth++;
+	    } else {
+		E ch = p;
+		p = parent.apply(p);
+		depth--;
+		while (p != null && (right.apply(p) == ch || right.apply(p) == null)) {
+		    ch = p;
+		    p = parent.apply(p);
+		    depth--;
+		}
+		if (p != null) {
+		    p = right.apply(p);
+		    depth++;
+		}
+	    }
+	}
+	int height = depths.length - 1;
+	while (height >= 0 && depths[height] == 0)
+	    height--;
+	return new TreeStatistics(size, totalDepth, Arrays.copyOf(depths, height + 1));
+    }
+
+    /**
+     * Returns the number of entries in the tree.
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * Returns the height of the tree, the depth of its deepest entry, or -1
+     * if the tree is empty.
+     */
+    public int height() {
+	return depths.length - 1;
+    }
+
+    /**
+     * Returns the average depth of the entries, the root at depth 0, or 0 if
+     * the tree is empty.
+     */
+    public double averageDepth() {
+	return size == 0 ? 0 : (double) totalDepth / size;
+    }
+
+    /**
+     * Returns the number of entries at each depth, indexed by depth from 0
+     * to the height of the tree.
+     */
+    public long[] depthHistogram() {
+	return depths.clone();
+    }
+
+    public String toString() {
+	return "size: " + size + ", height: " + height() + ", average depth: " + String.format("%.2f", averageDepth())
+		+ ", entries by depth: " + Arrays.toString(depths);
+    }
+}
@@ -0,0 +1,293 @@
+package bbst_showdown;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable sorted map stored as a complete binary tree in van Emde Boas
+ * order, built by {@link WAVLTreeMap#freezeVanEmdeBoas()}.
+ * <p>
+ * The tree is cut at half its height into a top tree and the bottom trees
+ * hanging off it, the top tree is laid out first and each bottom tree follows
+ * in one contiguous block, recursively.  Whatever the size of a cache line, a
+ * page or a cache level, a search then crosses about log(n)/log(B) blocks of B
+ * entries, so the layout stays fast from L1 out to the TLB without tuning for
+ * any of them.  {@link EytzingerTreeMap} only keeps the top of the tree
+ * together and relies on the prefetcher below that.
+ * <p>
+ * Nodes are slots in the arrays, the root is slot 0 and the slots of the two
+ * children of slot i are at 2i and 2i+1 of an int array, -1 where there is no
+ * child, so both links are in the same cache line.
+ * <p>
+ * The {@link Map} mutators inherited from {@link AbstractMap} throw
+ * {@code UnsupportedOperationException}.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ */
+public class VanEmdeBoasTreeMap<K, V> extends AbstractMap<K, V> {
+
+    /**
+     * Slot standing in for a missing child.
+     */
+    static final int NIL = -1;
+
+    final Object[] keys;
+    final Object[] values;
+
+    /**
+     * The left and right child slots of slot i at 2i and 2i+1.
+     */
+    final int[] children;
+
+    private final int size;
+
+    private final int height;
+
+    /**
+     * The comparator used to maintain order in this tree map, or null if it uses
+     * the natural ordering of its keys.
+     */
+    private final Comparator<? super K> comparator;
+
+    /**
+     * Lays out size entries read in ascending key order from the iterator.  The
+     * shape is the complete tree that a breadth first numbering 1..size gives,
+     * slots are assigned to those numbers in van Emde Boas order and the entries
+     * are then stored by an in-order walk of the numbering.
+     */
+    VanEmdeBoasTreeMap(int size, Iterator<? extends Map.Entry<? extends K, ? extends V>> it,
+	    Comparator<? super K> comparator) {
+	this.size = size;
+	this.comparator = comparator;
+	height = 32 - Integer.numberOfLeadingZeros(size); // levels of the complete tree
+	keys = new Object[size];
+	values = new Object[size];
+	children = new int[2 * size];
+
+	int[] slot = new int[size + 1];
+	if (size > 0)
+	    layout(1, height, slot, 0);
+	for (int bfs = 1; bfs <= size; bfs++) {
+	    int s = slot[bfs];
+	    children[2 * s] = (2 * bfs <= size) ? slot[2 * bfs] : NIL;
+	    children[2 * s + 1] = (2 * bfs + 1 <= size) ? slot[2 * bfs + 1] : NIL;
+	}
+
+	// in-order walk of the breadth first numbering
+	int bfs = (size == 0) ? 0 : 1;
+	while (bfs != 0 && 2 * bfs <= size)
+	    bfs = 2 * bfs;
+	for (; bfs != 0; bfs = nextInOrder(bfs, size)) {
+	    Map.Entry<? extends K, ? extends V> e = it.next();
+	    keys[slot[bfs]] = e.getKey();
+	    values[slot[bfs]] = e.getValue();
+	}
+    }
+
+    /**
+     * Assigns consecutive slots from next on to the subtree of the given number of
+     * levels under the breadth first number bfs, and returns the next free slot:
+     * the top half of the levels first, then each bottom tree in turn.
+     */
+    private int layout(int bfs, int levels, int[] slot, int next) {
+	if (levels == 1) {
+	    slot[bfs] = next;
+	    return next + 1;
+	}
+	int top = levels >>> 1, bottom = levels - top;
+	next = layout(bfs, top, slot, next);
+	int first = bfs << top;
+	for (int b = first; b < first + (1 << top) && b <= size; b++)
+	    next = layout(b, bottom, slot, next);
+	return next;
+    }
+
+    private static int nextInOrder(int i, int size) {
+	if (2 * i + 1 <= size) {
+	    i = 2 * i + 1;
+	    while (2 * i <= size)
+		i = 2 * i;
+	    return i;
+	}
+	return i >>> (Integer.numberOfTrailingZeros(~i) + 1);
+    }
+
+    public String toString() {
+	return "van Emde Boas tree of size: " + size + ", height: " + treeHeight();
+    }
+
+    /**
+     * Returns the height of the tree, or -1 if it is empty.
+     */
+    public int treeHeight() {
+	return height - 1;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * Returns the comparator used to order the keys in this map, or {@code null}
+     * if this map uses the natural ordering of its keys.
+     */
+    public Comparator<? super K> comparator() {
+	return comparator;
+    }
+
+    /**
+     * Returns {@code true} if this map contains a mapping for the specified key.
+     *
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public boolean containsKey(Object key) {
+	return getSlot(key) != NIL;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or {@code null} if
+     * this map contains no mapping for the key.
+     *
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+	int s = getSlot(key);
+	return (s == NIL) ? null : (V) values[s];
+    }
+
+    /**
+     * Returns the greatest key less than or equal to the given key, or
+     * {@code null} if there is no such key.
+     */
+    @SuppressWarnings("unchecked")
+    public K floorKey(K key) {
+	if (key == null && comparator == null)
+	    throw new NullPointerException();
+	int floor = NIL;
+	for (int s = (size == 0) ? NIL : 0; s != NIL;) {
+	    int cmp = compare(key, keys[s]);
+	    if (cmp == 0)
+		return (K) keys[s];
+	    if (cmp > 0)
+		floor = s;
+	    s = children[2 * s + (cmp > 0 ? 1 : 0)];
+	}
+	return (floor == NIL) ? null : (K) keys[floor];
+    }
+
+    /**
+     * Returns the least key greater than or equal to the given key, or
+     * {@code null} if there is no such key.
+     */
+    @SuppressWarnings("unchecked")
+    public K ceilingKey(K key) {
+	if (key == null && comparator == null)
+	    throw new NullPointerException();
+	int ceiling = NIL;
+	for (int s = (size == 0) ? NIL : 0; s != NIL;) {
+	    int cmp = compare(key, keys[s]);
+	    if (cmp == 0)
+		return (K) keys[s];
+	    if (cmp < 0)
+		ceiling = s;
+	    s = children[2 * s + (cmp > 0 ? 1 : 0)];
+	}
+	return (ceiling == NIL) ? null : (K) keys[ceiling];
+    }
+
+    /**
+     * Slot of the entry for key, or NIL if there is none.
+     */
+    final int getSlot(Object key) {
+	if (key == null && comparator == null)
+	    throw new NullPointerException();
+	Object[] k = keys;
+	int[] c = children;
+	for (int s = (size == 0) ? NIL : 0; s != NIL;) {
+	    int cmp = compare(key, k[s]);
+	    if (cmp == 0)
+		return s;
+	    s = c[2 * s + (cmp > 0 ? 1 : 0)];
+	}
+	return NIL;
+    }
+
+    /**
+     * Compares two keys using the correct comparison method for this map.
+     */
+    @SuppressWarnings("unchecked")
+    final int compare(Object k1, Object k2) {
+	return comparator == null ? ((Comparable<? super K>) k1).compareTo((K) k2)
+		: comparator.compare((K) k1, (K) k2);
+    }
+
+    // Views
+
+    private transient EntrySet entrySet = null;
+
+    public Set<Map.Entry<K, V>> entrySet() {
+	EntrySet es = entrySet;
+	return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+	public Iterator<Map.Entry<K, V>> iterator() {
+	    return new EntryIterator();
+	}
+
+	public int size() {
+	    return size;
+	}
+    }
+
+    /**
+     * In-order iterator keeping the path to the next entry on a stack, which the
+     * height of the complete tree bounds.
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+	private final int[] stack = new int[height];
+	private int depth = 0;
+
+	EntryIterator() {
+	    pushLeft((size == 0) ? NIL : 0);
+	}
+
+	private void pushLeft(int s) {
+	    for (; s != NIL; s = children[2 * s])
+		stack[depth++] = s;
+	}
+
+	public boolean hasNext() {
+	    return depth > 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public Map.Entry<K, V> next() {
+	    if (depth == 0)
+		throw new NoSuchElementException();
+	    int s = stack[--depth];
+	    pushLeft(children[2 * s + 1]);
+	    return new AbstractMap.SimpleImmutableEntry<>((K) keys[s], (V) values[s]);
+	}
+    }
+}
@@ -0,0 +1,929 @@
+package bbst_showdown;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A WAVL tree whose nodes live in parallel arrays instead of separate objects.
+ * 
+ * <p>
+ * A node is an int index: its key and value are slots in two {@code Object[]}
+ * arrays, its links are slots in three {@code int[]} arrays and its rank is a slot
+ * in a {@code byte[]}. There is no per node object header or reference to the
+ * parent map, neighbouring indices are usually allocated close together, and the
+ * collector sees six arrays rather than one object per entry. Slots freed by
+ * {@link #remove} are chained through the {@code lefts} array and handed out
+ * again by the next insert before the arrays are grown.
+ * <p>
+ * Insert and both flavours of delete re-tracing follow {@link WAVLTreeMap}
+ * rule for rule, a tree built from the same sequence of operations has the same
+ * shape and the same rotation count.
+ * <p>
+ * Entries handed out by the entry set iterator read through to the arrays, they
+ * are only valid until the next structural modification of the map.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ */
+public class WAVLArrayTreeMap<K, V> extends AbstractMap<K, V> {
+
+    /**
+     * Index standing in for a null link.
+     */
+    static final int NIL = -1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    protected transient int root = NIL;
+
+    /**
+     * The number of entries in the tree
+     */
+    protected transient int size = 0;
+
+    /**
+     * The comparator used to maintain order in this tree map, or
+     * null if it uses the natural ordering of its keys.
+     *
+     * @serial
+     */
+    protected final Comparator<? super K> comparator;
+
+    /**
+     * The number of structural modifications to the tree.
+     */
+    protected transient int modCount = 0;
+
+    protected transient int rotations = 0;
+
+    protected boolean deleteWAVL = false;
+
+    /*
+     * Node storage, one slot per node.
+     */
+    transient Object[] keys;
+    transient Object[] values;
+    transient int[] lefts;
+    transient int[] rights;
+    transient int[] parents;
+    transient byte[] ranks;
+
+    /**
+     * Number of slots handed out so far, slots at and above this index have never
+     * been used.
+     */
+    transient int used = 0;
+
+    /**
+     * Head of the list of freed slots, linked through {@code lefts}.
+     */
+    transient int free = NIL;
+
+    public WAVLArrayTreeMap() {
+	this(DEFAULT_CAPACITY, false);
+    }
+
+    /**
+     * Constructs a new, empty tree map, using the natural ordering of its keys.
+     *
+     * @param deleteWAVL
+     *            {@code true} to re-balance after delete using the WAVL rank
+     *            rules, {@code false} to use AVL re-tracing
+     */
+    public WAVLArrayTreeMap(boolean deleteWAVL) {
+	this(DEFAULT_CAPACITY, deleteWAVL);
+    }
+
+    /**
+     * Constructs a new, empty tree map with room for {@code initialCapacity}
+     * entries before the node arrays are grown, using the natural ordering of its
+     * keys.
+     *
+     * @param initialCapacity
+     *            the number of entries to allocate storage for
+     * @param deleteWAVL
+     *            {@code true} to re-balance after delete using the WAVL rank
+     *            rules, {@code false} to use AVL re-tracing
+     * @throws IllegalArgumentException
+     *             if the initial capacity is negative
+     */
+    public WAVLArrayTreeMap(int initialCapacity, boolean deleteWAVL) {
+	if (initialCapacity < 0)
+	    throw new IllegalArgumentException("Illegal capacity: " + initialCapacity);
+	this.deleteWAVL = deleteWAVL;
+	this.comparator = null;
+	allocate(initialCapacity);
+    }
+
+    /**
+     * Constructs a new tree map containing the same mappings as the given
+     * map, ordered according to the <em>natural ordering</em> of its keys.
+     * This method runs in n*log(n) time.
+     *
+     * @param  m the map whose mappings are to be placed in this map
+     * @throws ClassCastException if the keys in m are not {@link Comparable},
+     *         or are not mutually comparable
+     * @throws NullPointerException if the specified map is null
+     */
+    public WAVLArrayTreeMap(Map<? extends K, ? extends V> m) {
+	this(Math.max(m.size(), DEFAULT_CAPACITY), false);
+	putAll(m);
+    }
+
+    private void allocate(int capacity) {
+	keys = new Object[capacity];
+	values = new Object[capacity];
+	lefts = new int[capacity];
+	rights = new int[capacity];
+	parents = new int[capacity];
+	ranks = new byte[capacity];
+    }
+
+    private void grow() {
+	int oldCapacity = keys.length;
+	if (oldCapacity == MAX_CAPACITY)
+	    throw new OutOfMemoryError("WAVLArrayTreeMap is full");
+	int newCapacity = oldCapacity + Math.max(oldCapacity >> 1, DEFAULT_CAPACITY);
+	if (newCapacity < 0 || newCapacity > MAX_CAPACITY)
+	    newCapacity = MAX_CAPACITY;
+	keys = Arrays.copyOf(keys, newCapacity);
+	values = Arrays.copyOf(values, newCapacity);
+	lefts = Arrays.copyOf(lefts, newCapacity);
+	rights = Arrays.copyOf(rights, newCapacity);
+	parents = Arrays.copyOf(parents, newCapacity);
+	ranks = Arrays.copyOf(ranks, newCapacity);
+    }
+
+    /**
+     * Takes a slot from the free list, or the next never used slot, and
+     * initialises it as a leaf.
+     */
+    private int newNode(K key, V value, int parent) {
+	int n = free;
+	if (n != NIL) {
+	    free = lefts[n];
+	} else {
+	    if (used == keys.length)
+		grow();
+	    n = used++;
+	}
+	keys[n] = key;
+	values[n] = value;
+	lefts[n] = NIL;
+	rights[n] = NIL;
+	parents[n] = parent;
+	ranks[n] = 0;
+	return n;
+    }
+
+    /**
+     * Clears a slot so its key and value can be collected and pushes it on the
+     * free list.
+     */
+    private void release(int n) {
+	keys[n] = null;
+	values[n] = null;
+	parents[n] = NIL;
+	rights[n] = NIL;
+	lefts[n] = free;
+	free = n;
+    }
+
+    public int treeHeight() {
+	return treeHeight(root) - 1;
+    }
+
+    protected int treeHeight(int node) {
+	if (node == NIL)
+	    return 0;
+	return (1 + Math.max(treeHeight(lefts[node]), treeHeight(rights[node])));
+    }
+
+    public int rotations() {
+	return rotations;
+    }
+
+    public String toString() {
+	return "WAVL array tree of size: " + size + ", height: " + treeHeight() + ", rotations " + rotations + " WAVL deletes: " + deleteWAVL;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or {@code null} if this map contains no mapping for the key.
+     *
+     * @throws ClassCastException if the specified key cannot be compared
+     *         with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+	int p = getEntry(key);
+	return (p == NIL ? null : (V) values[p]);
+    }
+
+    /**
+     * Returns {@code true} if this map contains a mapping for the specified
+     * key.
+     *
+     * @throws ClassCastException if the specified key cannot be compared
+     *         with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    public boolean containsKey(Object key) {
+	return getEntry(key) != NIL;
+    }
+
+    /**
+     * Returns the index of this map's entry for the given key, or {@link #NIL}
+     * if the map does not contain an entry for the key.
+     *
+     * @throws ClassCastException if the specified key cannot be compared
+     *         with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    final int getEntry(Object key) {
+	// Offload comparator-based version for sake of performance
+	if (comparator != null)
+	    return getEntryUsingComparator(key);
+	if (key == null)
+	    throw new NullPointerException();
+	@SuppressWarnings("unchecked")
+	Comparable<? super K> k = (Comparable<? super K>) key;
+	Object[] keys = this.keys;
+	int p = root;
+	while (p != NIL) {
+	    @SuppressWarnings("unchecked")
+	    int cmp = k.compareTo((K) keys[p]);
+	    if (cmp < 0)
+		p = lefts[p];
+	    else if (cmp > 0)
+		p = rights[p];
+	    else
+		return p;
+	}
+	return NIL;
+    }
+
+    /**
+     * Version of getEntry using comparator. Split off from getEntry
+     * for performance.
+     */
+    @SuppressWarnings("unchecked")
+    final int getEntryUsingComparator(Object key) {
+	K k = (K) key;
+	Comparator<? super K> cpr = comparator;
+	Object[] keys = this.keys;
+	int p = root;
+	while (p != NIL) {
+	    int cmp = cpr.compare(k, (K) keys[p]);
+	    if (cmp < 0)
+		p = lefts[p];
+	    else if (cmp > 0)
+		p = rights[p];
+	    else
+		return p;
+	}
+	return NIL;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     *
+     * @return the previous value associated with {@code key}, or
+     *         {@code null} if there was no mapping for {@code key}.
+     *         (A {@code null} return can also indicate that the map
+     *         previously associated {@code null} with {@code key}.)
+     * @throws ClassCastException if the specified key cannot be compared
+     *         with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+	int t = root;
+	if (t == NIL) {
+	    compare(key, key); // type (and possibly null) check
+
+	    root = newNode(key, value, NIL);
+	    size = 1;
+	    modCount++;
+	    return null;
+	}
+	int cmp;
+	int parent;
+	Object[] keys = this.keys;
+	// split comparator and comparable paths
+	Comparator<? super K> cpr = comparator;
+	if (cpr != null) {
+	    do {
+		parent = t;
+		cmp = cpr.compare(key, (K) keys[t]);
+		if (cmp < 0)
+		    t = lefts[t];
+		else if (cmp > 0)
+		    t = rights[t];
+		else
+		    return setValue(t, value);
+	    } while (t != NIL);
+	} else {
+	    if (key == null)
+		throw new NullPointerException();
+	    Comparable<? super K> k = (Comparable<? super K>) key;
+	    do {
+		parent = t;
+		cmp = k.compareTo((K) keys[t]);
+		if (cmp < 0)
+		    t = lefts[t];
+		else if (cmp > 0)
+		    t = rights[t];
+		else
+		    return setValue(t, value);
+	    } while (t != NIL);
+	}
+
+	int e = newNode(key, value, parent); // may grow the arrays
+	if (cmp < 0) {
+	    lefts[parent] = e;
+	} else {
+	    rights[parent] = e;
+	}
+
+	if (ranks[parent] == 0) {
+	    ranks[parent]++;
+	    fixAfterInsert(parent);
+	}
+
+	size++;
+	modCount++;
+	return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V setValue(int p, V value) {
+	V oldValue = (V) values[p];
+	values[p] = value;
+	return oldValue;
+    }
+
+    /**
+     * Same rules as {@link WAVLTreeMap}: promote up the tree and stop at the
+     * root, at a parent whose rank difference was two, or after the rotations
+     * required when the sibling is a 2-child.
+     */
+    private void fixAfterInsert(int x) {
+	for (int parent = parents[x];
+		parent != NIL && ranks[x] + 1 != ranks[parent]; ranks[x]++) {
+	    if (lefts[parent] == x) { // new node was added on the left
+		if (needToRotateRight(parent)) {
+		    if (lefts[x] == NIL || ranks[x] >= ranks[lefts[x]] + 2) {
+			ranks[x]--;
+			ranks[rights[x]]++;
+			rotateLeft(x);
+		    }
+		    ranks[parent]--;
+		    rotateRight(parent);
+		    break;
+		}
+	    } else {
+		if (needToRotateLeft(parent)) {
+		    if (rights[x] == NIL || ranks[x] >= ranks[rights[x]] + 2) {
+			ranks[x]--;
+			ranks[lefts[x]]++;
+			rotateRight(x);
+		    }
+		    ranks[parent]--;
+		    rotateLeft(parent);
+		    break;
+		}
+	    }
+	    x = parent;
+	    parent = parents[x];
+	}
+    }
+
+    // check if sibling node has a rank difference of 2
+    private boolean needToRotateLeft(int p) {
+	if (lefts[p] == NIL) // rank of sibling is -1
+	    return ranks[p] == 1;
+	return ranks[p] >= ranks[lefts[p]] + 2;
+    }
+
+    // check if sibling node has a rank difference of 2
+    private boolean needToRotateRight(int p) {
+	if (rights[p] == NIL) // rank of sibling is -1
+	    return ranks[p] == 1;
+	return ranks[p] >= ranks[rights[p]] + 2;
+    }
+
+    /** From CLR */
+    private void rotateLeft(int p) {
+	int r = rights[p];
+	int rl = lefts[r];
+	int pp = parents[p];
+	rights[p] = rl;
+	if (rl != NIL)
+	    parents[rl] = p;
+	parents[r] = pp;
+	if (pp == NIL)
+	    root = r;
+	else if (lefts[pp] == p)
+	    lefts[pp] = r;
+	else
+	    rights[pp] = r;
+	lefts[r] = p;
+	parents[p] = r;
+	rotations++;
+    }
+
+    /** From CLR */
+    private void rotateRight(int p) {
+	int l = lefts[p];
+	int lr = rights[l];
+	int pp = parents[p];
+	lefts[p] = lr;
+	if (lr != NIL)
+	    parents[lr] = p;
+	parents[l] = pp;
+	if (pp == NIL)
+	    root = l;
+	else if (rights[pp] == p)
+	    rights[pp] = l;
+	else
+	    lefts[pp] = l;
+	rights[l] = p;
+	parents[p] = l;
+	rotations++;
+    }
+
+    /**
+     * Removes the mapping for this key from this TreeMap if present.
+     *
+     * @param  key key for which mapping should be removed
+     * @return the previous value associated with {@code key}, or
+     *         {@code null} if there was no mapping for {@code key}.
+     *         (A {@code null} return can also indicate that the map
+     *         previously associated {@code null} with {@code key}.)
+     * @throws ClassCastException if the specified key cannot be compared
+     *         with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+	int p = getEntry(key);
+	if (p == NIL)
+	    return null;
+
+	V oldValue = (V) values[p];
+	deleteEntry(p);
+	return oldValue;
+    }
+
+    /**
+     * Delete node p, rebalance the tree and put p's slot, or that of the
+     * predecessor moved into it, on the free list.
+     */
+    private void deleteEntry(int p) {
+	modCount++;
+	size--;
+
+	// If strictly internal, copy predecessor's element to p and then make p
+	// point to predecessor.
+	if (lefts[p] != NIL && rights[p] != NIL) {
+	    int s = predecessor(p);
+	    keys[p] = keys[s];
+	    values[p] = values[s];
+	    p = s;
+	} // p has 2 children
+
+	int replacement = (lefts[p] != NIL ? lefts[p] : rights[p]);
+	int parent = parents[p];
+	if (replacement != NIL) {
+	    // Link replacement to parent
+	    parents[replacement] = parent;
+	    int sibling;
+	    if (parent == NIL) {
+		root = replacement;
+		release(p);
+		return;
+	    } else if (p == lefts[parent]) {
+		lefts[parent] = replacement;
+		sibling = rights[parent];
+	    } else {
+		rights[parent] = replacement;
+		sibling = lefts[parent];
+	    }
+
+	    release(p);
+	    if (deleteWAVL)
+		fixAfterDeleteWAVL(parent, sibling, replacement);
+	    else
+		fixAfterDeleteAVL(parent, sibling, replacement);
+	} else if (parent == NIL) { // return if we are the only node.
+	    root = NIL;
+	    release(p);
+	} else { // No children. Use self as phantom replacement and unlink.
+	    int sibling;
+	    if (p == lefts[parent]) {
+		lefts[parent] = NIL;
+		sibling = rights[parent];
+	    } else {
+		rights[parent] = NIL;
+		sibling = lefts[parent];
+	    }
+	    ranks[p]--;
+	    if (deleteWAVL)
+		fixAfterDeleteWAVL(parent, sibling, p);
+	    else
+		fixAfterDeleteAVL(parent, sibling, p);
+	    release(p);
+	}
+    }
+
+    private int rank(int node) {
+	return (node == NIL) ? -1 : ranks[node];
+    }
+
+    private boolean nodeIsTwoTwo(int node) {
+	if (node == NIL || ranks[node] == 0)
+	    return false;
+	if (ranks[node] == 1)
+	    return lefts[node] == NIL && rights[node] == NIL;
+	int leftRank = rank(lefts[node]);
+	return leftRank == rank(rights[node]) && leftRank + 2 == ranks[node];
+    }
+
+    private void fixAfterDeleteWAVL(int parent, int sibling, int node) {
+	int deltaRank = ranks[parent] - ranks[node];
+	while (deltaRank == 3 || ranks[parent] == 1 && nodeIsTwoTwo(parent)) {
+	    int deltaRankSibling = (sibling == NIL) ? ranks[parent] + 1 : ranks[parent] - ranks[sibling];
+	    if (deltaRankSibling == 2) {
+		ranks[parent]--; // demote and continue loop
+	    } else {
+		int deltaRankSiblingL = ranks[sibling] - rank(lefts[sibling]);
+		int deltaRankSiblingR = ranks[sibling] - rank(rights[sibling]);
+
+		if (deltaRankSiblingL == 2 && deltaRankSiblingR == 2) {
+		    // "double demote" in the orig. paper since both parent & sibling demote
+		    ranks[parent]--;
+		    ranks[sibling]--;
+		} else if (rights[parent] == sibling) { // delete was on the left
+		    if (deltaRankSiblingR == 1) { // single rotation
+			ranks[sibling]++;
+			ranks[parent]--;
+			if (lefts[sibling] == NIL)
+			    ranks[parent]--; // demote parent again
+			rotateLeft(parent);
+		    } else { // double rotation
+			ranks[parent] -= 2;
+			ranks[sibling]--;
+			ranks[lefts[sibling]] += 2;
+			rotateRight(sibling);
+			rotateLeft(parent);
+		    }
+		    break;
+		} else { // delete was on the right
+		    if (deltaRankSiblingL == 1) { // single rotation
+			ranks[sibling]++;
+			ranks[parent]--;
+			if (rights[sibling] == NIL)
+			    ranks[parent]--; // demote parent again
+			rotateRight(parent);
+		    } else { // double rotation
+			ranks[parent] -= 2;
+			ranks[sibling]--;
+			ranks[rights[sibling]] += 2;
+			rotateLeft(sibling);
+			rotateRight(parent);
+		    }
+		    break;
+		}
+	    }
+
+	    if (parents[parent] == NIL)
+		return;
+	    node = parent;
+	    parent = parents[parent];
+	    sibling = (lefts[parent] == node) ? rights[parent] : lefts[parent];
+	    deltaRank = ranks[parent] - ranks[node];
+	}
+    }
+
+    /*
+     * delete re-tracing via balance factor
+     */
+    private void fixAfterDeleteAVL(int parent, int sibling, int node) {
+	int balance = rank(sibling) - ranks[node];
+
+	while (balance != 1) { // balance == 1 means prior to delete parent was balanced, break;
+	    if (balance == 0) {// side of delete was taller, decrement and continue
+		ranks[parent]--;
+	    } else if (lefts[parent] == sibling) {
+		ranks[parent] -= 2;
+		int siblingBalance = rank(rights[sibling]) - rank(lefts[sibling]);
+		if (siblingBalance == 0) { // parent height unchanged after rotate so break
+		    ranks[sibling]++;
+		    ranks[parent]++;
+		    rotateRight(parent);
+		    break;
+		} else if (siblingBalance > 0) {
+		    ranks[rights[sibling]]++;
+		    ranks[sibling]--;
+		    rotateLeft(sibling);
+		}
+		rotateRight(parent);
+		parent = parents[parent];
+	    } else { // delete on left
+		ranks[parent] -= 2;
+		int siblingBalance = rank(rights[sibling]) - rank(lefts[sibling]);
+		if (siblingBalance == 0) { // parent height unchanged after rotate so break
+		    ranks[sibling]++;
+		    ranks[parent]++;
+		    rotateLeft(parent);
+		    break;
+		} else if (siblingBalance < 0) {
+		    ranks[lefts[sibling]]++;
+		    ranks[sibling]--;
+		    rotateRight(sibling);
+		}
+		rotateLeft(parent);
+		parent = parents[parent];
+	    }
+
+	    if (parents[parent] == NIL)
+		return;
+	    node = parent;
+	    parent = parents[parent];
+	    sibling = (lefts[parent] == node) ? rights[parent] : lefts[parent];
+	    balance = rank(sibling) - ranks[node];
+	}
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     * The map will be empty after this call returns, the node arrays keep their
+     * capacity.
+     */
+    public void clear() {
+	modCount++;
+	Arrays.fill(keys, 0, used, null);
+	Arrays.fill(values, 0, used, null);
+	used = 0;
+	free = NIL;
+	size = 0;
+	root = NIL;
+	rotations = 0;
+    }
+
+    /**
+     * Test two values for equality.  Differs from o1.equals(o2) only in
+     * that it copes with {@code null} o1 properly.
+     */
+    static final boolean valEquals(Object o1, Object o2) {
+	return (o1 == null ? o2 == null : o1.equals(o2));
+    }
+
+    /**
+     * Compares two keys using the correct comparison method for this TreeMap.
+     */
+    @SuppressWarnings("unchecked")
+    final int compare(Object k1, Object k2) {
+	return comparator == null ? ((Comparable<? super K>) k1).compareTo((K) k2) : comparator.compare((K) k1, (K) k2);
+    }
+
+    /**
+     * Returns the index of the first entry in the tree, or {@link #NIL} if the
+     * tree is empty.
+     */
+    final int getFirstEntry() {
+	int p = root;
+	if (p != NIL)
+	    while (lefts[p] != NIL)
+		p = lefts[p];
+	return p;
+    }
+
+    /**
+     * Returns the index of the last entry in the tree, or {@link #NIL} if the
+     * tree is empty.
+     */
+    final int getLastEntry() {
+	int p = root;
+	if (p != NIL)
+	    while (rights[p] != NIL)
+		p = rights[p];
+	return p;
+    }
+
+    /**
+     * Returns the successor of the specified entry, or {@link #NIL} if no such.
+     */
+    final int successor(int t) {
+	if (t == NIL)
+	    return NIL;
+	else if (rights[t] != NIL) {
+	    int p = rights[t];
+	    while (lefts[p] != NIL)
+		p = lefts[p];
+	    return p;
+	} else {
+	    int p = parents[t];
+	    int ch = t;
+	    while (p != NIL && ch == rights[p]) {
+		ch = p;
+		p = parents[p];
+	    }
+	    return p;
+	}
+    }
+
+    /**
+     * Returns the predecessor of the specified entry, or {@link #NIL} if no such.
+     */
+    final int predecessor(int t) {
+	if (t == NIL)
+	    return NIL;
+	else if (lefts[t] != NIL) {
+	    int p = lefts[t];
+	    while (rights[p] != NIL)
+		p = rights[p];
+	    return p;
+	} else {
+	    int p = parents[t];
+	    int ch = t;
+	    while (p != NIL && ch == lefts[p]) {
+		ch = p;
+		p = parents[p];
+	    }
+	    return p;
+	}
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map.
+     *
+     * <p>
+     * The set's iterator returns the entries in ascending key order. The set is
+     * backed by the map, so changes to the map are reflected in the set, and
+     * vice-versa. The set supports element removal, which removes the
+     * corresponding mapping from the map, via the {@code Iterator.remove},
+     * {@code Set.remove}, {@code removeAll}, {@code retainAll} and {@code clear}
+     * operations. It does not support the {@code add} or {@code addAll}
+     * operations.
+     */
+    public Set<Map.Entry<K, V>> entrySet() {
+	EntrySet es = entrySet;
+	return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    private transient EntrySet entrySet = null;
+
+    class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+	public Iterator<Map.Entry<K, V>> iterator() {
+	    return new EntryIterator(getFirstEntry());
+	}
+
+	public boolean contains(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    Object value = entry.getValue();
+	    int p = getEntry(entry.getKey());
+	    return p != NIL && valEquals(values[p], value);
+	}
+
+	public boolean remove(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    Object value = entry.getValue();
+	    int p = getEntry(entry.getKey());
+	    if (p != NIL && valEquals(values[p], value)) {
+		deleteEntry(p);
+		return true;
+	    }
+	    return false;
+	}
+
+	public int size() {
+	    return WAVLArrayTreeMap.this.size();
+	}
+
+	public void clear() {
+	    WAVLArrayTreeMap.this.clear();
+	}
+    }
+
+    /**
+     * A view of one slot of the node arrays.
+     */
+    final class Entry implements Map.Entry<K, V> {
+	final int index;
+
+	Entry(int index) {
+	    this.index = index;
+	}
+
+	@SuppressWarnings("unchecked")
+	public K getKey() {
+	    return (K) keys[index];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V getValue() {
+	    return (V) values[index];
+	}
+
+	public V setValue(V value) {
+	    return WAVLArrayTreeMap.this.setValue(index, value);
+	}
+
+	public boolean equals(Object o) {
+	    if (!(o instanceof Map.Entry))
+		return false;
+	    Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+
+	    return valEquals(getKey(), e.getKey()) && valEquals(getValue(), e.getValue());
+	}
+
+	public int hashCode() {
+	    Object key = keys[index];
+	    Object value = values[index];
+	    return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+	}
+
+	public String toString() {
+	    return keys[index] + "=" + values[index];
+	}
+    }
+
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+	int next;
+	int lastReturned;
+	int expectedModCount;
+
+	EntryIterator(int first) {
+	    expectedModCount = modCount;
+	    lastReturned = NIL;
+	    next = first;
+	}
+
+	public boolean hasNext() {
+	    return next != NIL;
+	}
+
+	public Map.Entry<K, V> next() {
+	    int e = next;
+	    if (e == NIL)
+		throw new NoSuchElementException();
+	    if (modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    next = successor(e);
+	    lastReturned = e;
+	    return new Entry(e);
+	}
+
+	public void remove() {
+	    if (lastReturned == NIL)
+		throw new IllegalStateException();
+	    if (modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    // deleted entries are replaced by their predecessors, which have
+	    // already been returned, so next stays where it is
+	    deleteEntry(lastReturned);
+	    expectedModCount = modCount;
+	    lastReturned = NIL;
+	}
+    }
+}
@@ -8,7 +8,13 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
  * The WAVL tree combines elements of AVL & Red-black trees.
@@ -23,7 +29,7 @@ import java.util.Spliterator;
  * @param <K> the type of keys maintained by this map
  * @param <V> the type of mapped values
  */
-public class WAVLTreeMap<K, V> extends AbstractMap<K, V> {
+public class WAVLTreeMap<K, V> extends AbstractMap<K, V> implements Cloneable {
     
     protected transient Entry<K, V> root = null;
 
@@ -46,6 +52,11 @@ public class WAVLTreeMap<K, V> extends AbstractMap<K, V> {
     protected transient int modCount = 0;
     
     protected transient int rotations = 0;
+
+    /**
+     * Counts searches, re-tracing steps and rotations when not null.
+     */
+    protected transient TreeCounters counters;
     
     protected boolean deleteWAVL = false;
     
@@ -69,6 +80,21 @@ public class WAVLTreeMap<K, V> extends AbstractMap<K, V> {
 	this.deleteWAVL = deleteWAVL;
 	this.comparator = null;
     }
+
+    /**
+     * Constructs a new, empty tree map, ordered according to the given
+     * comparator.  All keys inserted into the map must be <em>mutually
+     * comparable</em> by the given comparator: {@code comparator.compare(k1,
+     * k2)} must not throw a {@code ClassCastException} for any keys
+     * {@code k1} and {@code k2} in the map.
+     *
+     * @param comparator the comparator that will be used to order this map.
+     *        If {@code null}, the {@linkplain Comparable natural
+     *        ordering} of the keys will be used.
+     */
+    public WAVLTreeMap(Comparator<? super K> comparator) {
+	this.comparator = comparator;
+    }
     
     /**
      * Constructs a new tree map containing the same mappings as the given
@@ -88,9 +114,31 @@ public class WAVLTreeMap<K, V> extends AbstractMap<K, V> {
         comparator = null;
         putAll(m);
     }
+
+    /**
+     * Constructs a new tree map containing the same mappings and using the same
+     * ordering as the specified sorted map. This method runs in linear time.
+     *
+     * @param m
+     *            the sorted map whose mappings are to be placed in this map, and
+     *            whose comparator is to be used to sort this map
+     * @throws NullPointerException
+     *             if the specified map is null
+     */
+    public WAVLTreeMap(SortedMap<K, ? extends V> m) {
+	comparator = m.comparator();
+	buildFromSorted(m.size(), m.entrySet().iterator());
+    }
     
+    /**
+     * Returns the height of the tree, or -1 if it is empty.  Without WAVL
+     * deletes every rank is the height of its subtree, so the root's rank is
+     * the answer, otherwise ranks only bound heights and the tree is walked.
+     */
     public int treeHeight() {
-	return treeHeight(root) - 1;
+	if (root == null)
+	    return -1;
+	return deleteWAVL ? statistics().height() : root.rank;
     }
 
     protected int treeHeight(Entry<K, V> node) {
@@ -99,10 +147,49 @@ public class WAVLTreeMap<K, V> extends AbstractMap<K, V> {
 	return (1 + Math.max(treeHeight(node.left), treeHeight(node.right)));
     }
     
+    /**
+     * Returns the height, average depth and depth histogram of the tree,
+     * walking every entry without recursion.
+     */
+    public TreeStatistics statistics() {
+	return TreeStatistics.of(root, e -> e.left, e -> e.right, e -> e.parent);
+    }
+
     public int rotations() {
 	return rotations;
     }
 
+    /**
+     * Returns the counters this map updates, or null if it is not counting.
+     */
+    public TreeCounters counters() {
+	return counters;
+    }
+
+    /**
+     * Starts counting searches, re-tracing steps and rotations into the given
+     * counters, or stops counting if null.
+     */
+    public void setCounters(TreeCounters counters) {
+	this.counters = counters;
+    }
+
+    /**
+     * Returns an immutable copy of this map laid out in breadth first order for
+     * fast lookups, for maps that are built once and then only read.
+     */
+    public EytzingerTreeMap<K, V> freeze() {
+	return new EytzingerTreeMap<>(size, entrySet().iterator(), comparator);
+    }
+
+    /**
+     * Returns an immutable copy of this map laid out in van Emde Boas order, for
+     * read only phases whose working set is larger than the caches.
+     */
+    public VanEmdeBoasTreeMap<K, V> freezeVanEmdeBoas() {
+	return new VanEmdeBoasTreeMap<>(size, entrySet().iterator(), comparator);
+    }
+
     public String toString() {
 	return "WAVL tree of size: " + size + ", height: " + treeHeight() + ", rotations " + rotations + " WAVL deletes: " + deleteWAVL + " root:" + root;
     }
@@ -142,6 +229,34 @@ public class WAVLTreeMap<K, V> extends AbstractMap<K, V> {
         Entry<K,V> p = getEntry(key);
         return (p==null ? null : p.value);
     }
+
+    /**
+     * Copies all of the mappings from the specified map to this map. These
+     * mappings replace any mappings that this map had for any of the keys currently
+     * in the specified map. When this map is empty and the specified map is a
+     * {@link SortedMap} with the same ordering the tree is built in linear time.
+     *
+     * @param map
+     *            mappings to be stored in this map
+     * @throws ClassCastException
+     *             if the class of a key or value in the specified map prevents it
+     *             from being stored in this map
+     * @throws NullPointerException
+     *             if the specified map is null or the specified map contains a null
+     *             key and this map does not permit null keys
+     */
+    public void putAll(Map<? extends K, ? extends V> map) {
+	int mapSize = map.size();
+	if (size == 0 && mapSize != 0 && map instanceof SortedMap) {
+	    Comparator<?> c = ((SortedMap<?, ?>) map).comparator();
+	    if (c == comparator || (c != null && c.equals(comparator))) {
+		++modCount;
+		buildFromSorted(mapSize, map.entrySet().iterator());
+		return;
+	    }
+	}
+	super.putAll(map);
+    }
 	
 	/**
      * Node in the Tree.  
@@ -233,6 +348,8 @@ public class WAVLTreeMap<K, V> extends AbstractMap<K, V> {
      *         does not permit null keys
      */
     final Entry<K,V> getEntry(Object key) {
+	if (counters != null)
+	    return getEntryCounting(key);
     		// Offload comparator-based version for sake of performance
         if (comparator != null)
             return getEntryUsingComparator(key);
@@ -277,6 +394,39 @@ public class WAVLTreeMap<K, V> extends AbstractMap<K, V> {
         }
         return null;
     }
+
+    /**
+     * Version of getEntry that counts the entries visited.  Split off from
+     * getEntry so searches only pay for counting when it is switched on.
+     */
+    final Entry<K, V> getEntryCounting(Object key) {
+	if (key == null && comparator == null)
+	    throw new NullPointerException();
+	Entry<K, V> p = root;
+	int visited = 0;
+	while (p != null) {
+	    visited++;
+	    int cmp = compare(key, p.key);
+	    if (cmp < 0)
+		p = p.left;
+	    else if (cmp > 0)
+		p = p.right;
+	    else
+		break;
+	}
+	counters.searched(visited);
+	return p;
+    }
+
+    /**
+     * Counts a search that visited e and all of its ancestors.
+     */
+    private void searched(Entry<K, V> e) {
+	int visited = 0;
+	for (; e != null; e = e.parent)
+	    visited++;
+	counters.searched(visited);
+    }
     
     /**
      * Associates the specified value with the specified key in this map.
@@ -318,8 +468,11 @@ public class WAVLTreeMap<K, V> extends AbstractMap<K, V> {
 		    t = t.left;
 		else if (cmp > 0)
 		    t = t.right;
-		else
+		else {
+		    if (counters != null)
+			searched(t);
 		    return t.setValue(value);
+		}
 	    } while (t != null);
 	} else {
 	    if (key == null)
@@ -333,12 +486,17 @@ public class WAVLTreeMap<K, V> extends AbstractMap<K, V> {
 		    t = t.left;
 		else if (cmp > 0)
 		    t = t.right;
-		else
+		else {
+		    if (counters != null)
+			searched(t);
 		    return t.setValue(value);
+		}
 	    } while (t != null);
 	}
 
 	Entry<K, V> e = new Entry<>(key, value, parent);
+	if (counters != null)
+	    searched(parent);
 	if (cmp < 0) {
 	    parent.left = e;
 	} else {
@@ -376,6 +534,8 @@ check these three cases stopping after any rotations, reaching the root or when
     private void fixAfterInsert(Entry<K, V> x) {
 	for (Entry<K, V> parent = x.parent; 
 		parent != null && x.rank + 1 != parent.rank; x.rank++) {
+	    if (counters != null)
+		counters.retraceSteps++;
 	    if (parent.left == x) { // new node was added on the left
 		if (needToRotateRight(parent)) {
 		    if (x.left == null || x.rank >= x.left.rank + 2) {
@@ -442,6 +602,8 @@ check these three cases stopping after any rotations, reaching the root or when
 	r.left = p;
 	p.parent = r;
 	rotations++;
+	if (counters != null)
+	    counters.rotations++;
     }
 
     /** From CLR */
@@ -460,6 +622,8 @@ check these three cases stopping after any rotations, reaching the root or when
 	l.right = p;
 	p.parent = l;
 	rotations++;
+	if (counters != null)
+	    counters.rotations++;
     }
 
     /**
@@ -565,6 +729,8 @@ check these three cases stopping after any rotations, reaching the root or when
     private void fixAfterDeleteWAVL(Entry<K, V> parent, Entry<K, V> sibling, Entry<K, V> node) {
 	int deltaRank = parent.rank - node.rank;
 	while (deltaRank == 3 || parent.rank == 1 && nodeIsTwoTwo(parent)) {
+	    if (counters != null)
+		counters.retraceSteps++;
 	    int deltaRankSibling = (sibling == null) ? parent.rank + 1 : parent.rank - sibling.rank;
 	    if (deltaRankSibling == 2) {
 		parent.rank--; // demote and continue loop
@@ -632,6 +798,8 @@ check these three cases stopping after any rotations, reaching the root or when
 	    if (balance == 0) {// side of delete was taller, decrement and continue
 		parent.rank--;
 	    } else if (parent.left == sibling) {
+	    if (counters != null)
+		counters.retraceSteps++;
 		parent.rank -= 2;
 		int siblingBalance = rank(sibling.right) - rank(sibling.left);
 		if (siblingBalance == 0) { // parent height unchanged after rotate so break
@@ -682,6 +850,57 @@ check these three cases stopping after any rotations, reaching the root or when
         root = null;
         rotations = 0;
     }
+
+    /**
+     * Returns a shallow copy of this {@code WAVLTreeMap} instance. (The keys and
+     * values themselves are not cloned.) Every node keeps its rank, so the copy
+     * is the same tree, built in linear time without comparing keys. The copy
+     * does not share this map's counters.
+     *
+     * @return a shallow copy of this map
+     */
+    @SuppressWarnings("unchecked")
+    public WAVLTreeMap<K, V> clone() {
+	WAVLTreeMap<K, V> clone;
+	try {
+	    clone = (WAVLTreeMap<K, V>) super.clone();
+	} catch (CloneNotSupportedException e) {
+	    throw new InternalError(e);
+	}
+	clone.root = copyTree(root);
+	clone.modCount = 0;
+	clone.counters = null;
+	clone.entrySet = null;
+	return clone;
+    }
+
+    /**
+     * Copies the tree rooted at {@code root} node for node, walking down the
+     * links not yet copied and back up through the parents.
+     */
+    static <K, V> Entry<K, V> copyTree(Entry<K, V> root) {
+	if (root == null)
+	    return null;
+	Entry<K, V> copy = new Entry<>(root.key, root.value, null);
+	copy.rank = root.rank;
+	Entry<K, V> p = root, q = copy;
+	for (;;) {
+	    if (p.left != null && q.left == null) {
+		p = p.left;
+		q = q.left = new Entry<>(p.key, p.value, q);
+		q.rank = p.rank;
+	    } else if (p.right != null && q.right == null) {
+		p = p.right;
+		q = q.right = new Entry<>(p.key, p.value, q);
+		q.rank = p.rank;
+	    } else if (p == root) {
+		return copy;
+	    } else {
+		p = p.parent;
+		q = q.parent;
+	    }
+	}
+    }
     
     /**
      * Test two values for equality.  Differs from o1.equals(o2) only in
@@ -779,6 +998,577 @@ check these three cases stopping after any rotations, reaching the root or when
         }
     }
 
+    /**
+     * Linear time tree building algorithm from the entries of a sorted map in
+     * ascending key order, for the SortedMap constructor and for putAll into an
+     * empty map.  The comparator of the map must already be set.
+     *
+     * @param size
+     *            the number of entries to be read from the iterator
+     * @param it
+     *            the entries, whose keys and values new entries are created
+     *            from
+     */
+    private void buildFromSorted(int size, Iterator<? extends Map.Entry<? extends K, ? extends V>> it) {
+	try {
+	    root = buildFromSorted(0, size - 1, it, null, null, null);
+	} catch (java.io.IOException cannotHappen) {
+	    throw new AssertionError(cannotHappen); // only codecs read from a stream
+	}
+	this.size = size;
+    }
+
+    /**
+     * Recursive "helper method" that does the real work of the previous method.
+     * The root of each subtree is the middle element, so the two subtrees of a
+     * node differ in size by at most one and their heights by at most one. The
+     * height of a subtree built this way from n elements is floor(log2(n)), which
+     * gives the rank of every node, rank being equal to height in such a tree,
+     * without visiting its children again.
+     *
+     * @param lo
+     *            the first element index of this subtree. Initial should be 0.
+     * @param hi
+     *            the last element index of this subtree. Initial should be size-1.
+     * @param it
+     *            if non-null, new entries are created from the entries it
+     *            returns and str, keys and values should be null.
+     * @param str
+     *            otherwise keys and values are read from str by the codecs keys
+     *            and values.
+     */
+    private final Entry<K, V> buildFromSorted(int lo, int hi,
+	    Iterator<? extends Map.Entry<? extends K, ? extends V>> it, java.io.DataInput str, Codec<? extends K> keys,
+	    Codec<? extends V> values) throws java.io.IOException {
+	if (hi < lo)
+	    return null;
+
+	int mid = (lo + hi) >>> 1;
+
+	Entry<K, V> left = null;
+	if (lo < mid)
+	    left = buildFromSorted(lo, mid - 1, it, str, keys, values);
+
+	// extract key and value from iterator or stream
+	K key;
+	V value;
+	if (it != null) {
+	    Map.Entry<? extends K, ? extends V> entry = it.next();
+	    key = entry.getKey();
+	    value = entry.getValue();
+	} else {
+	    key = keys.read(str);
+	    value = values.read(str);
+	}
+
+	Entry<K, V> middle = new Entry<>(key, value, null);
+	middle.rank = (byte) sortedTreeHeight(hi - lo + 1);
+
+	if (left != null) {
+	    middle.left = left;
+	    left.parent = middle;
+	}
+
+	if (mid < hi) {
+	    Entry<K, V> right = buildFromSorted(mid + 1, hi, it, str, keys, values);
+	    middle.right = right;
+	    right.parent = middle;
+	}
+
+	return middle;
+    }
+
+    /**
+     * Writes the number of mappings in this map followed by each key and value
+     * in ascending key order, each by its codec and with no other framing.
+     * {@link #readFrom} rebuilds a map from them in linear time.
+     *
+     * @param out
+     *            where to write the mappings
+     * @param keys
+     *            the codec for the keys
+     * @param values
+     *            the codec for the values
+     * @throws java.io.IOException
+     *             if out or a codec throws it
+     */
+    public void writeTo(java.io.DataOutput out, Codec<? super K> keys, Codec<? super V> values)
+	    throws java.io.IOException {
+	out.writeInt(size);
+	for (Entry<K, V> e = getFirstEntry(); e != null; e = successor(e)) {
+	    keys.write(out, e.key);
+	    values.write(out, e.value);
+	}
+    }
+
+    /**
+     * Replaces the mappings of this map with mappings written by
+     * {@link #writeTo}.  The keys are not compared: the tree is built in linear
+     * time with the middle key of each range at its root, which fixes every
+     * node's rank, so the keys must have been written in the order of this
+     * map's comparator, as they are by a map with the same comparator.  If
+     * reading fails this map is left empty.
+     *
+     * @param in
+     *            where to read the mappings
+     * @param keys
+     *            the codec the keys were written with
+     * @param values
+     *            the codec the values were written with
+     * @throws java.io.IOException
+     *             if in or a codec throws it, or the count of mappings is
+     *             negative
+     */
+    public void readFrom(java.io.DataInput in, Codec<? extends K> keys, Codec<? extends V> values)
+	    throws java.io.IOException {
+	clear();
+	int n = in.readInt();
+	if (n < 0)
+	    throw new java.io.StreamCorruptedException("negative size " + n);
+	root = buildFromSorted(0, n - 1, null, in, keys, values);
+	size = n;
+    }
+
+    /**
+     * Height of a subtree built by buildFromSorted from n elements, -1 for an
+     * empty subtree.
+     */
+    private static int sortedTreeHeight(int n) {
+	return 31 - Integer.numberOfLeadingZeros(n);
+    }
+
+    // Join, split and set operations
+
+    /**
+     * Rank of a tree below which the set operations stop forking, about four
+     * thousand entries.
+     */
+    private static final int PARALLEL_RANK = 12;
+
+    /**
+     * Moves the mappings of {@code right} into this map and maps key to value,
+     * where every key in this map is less than key and key is less than every key
+     * in {@code right}.  The spine of the higher ranked tree is walked down to the
+     * rank of the other and key's entry is linked in there, so the cost is
+     * proportional to the difference in ranks.  {@code right} is left empty.
+     *
+     * @throws IllegalArgumentException
+     *             if the keys are not in that order, or the maps are ordered or
+     *             balanced differently
+     */
+    public void join(K key, V value, WAVLTreeMap<K, V> right) {
+	checkJoinable(right);
+	if ((root != null && compare(getLastEntry().key, key) >= 0)
+		|| (right.root != null && compare(key, right.getFirstEntry().key) >= 0))
+	    throw new IllegalArgumentException("keys out of order");
+	if (root == null && right.root == null)
+	    compare(key, key); // type (and possibly null) check
+	root = join(root, new Entry<>(key, value, null), right.root);
+	size += right.size + 1;
+	modCount++;
+	right.moved();
+    }
+
+    /**
+     * Removes the mappings with keys greater than or equal to key from this map
+     * and returns them in a new map with the same ordering.  The search path is
+     * cut at key and the pieces on either side are joined back together, which
+     * takes O(log n) time plus counting the smaller of the two maps.
+     *
+     * @throws ClassCastException
+     *             if the specified key cannot be compared with the keys currently
+     *             in the map
+     * @throws NullPointerException
+     *             if the specified key is null and this map uses natural ordering,
+     *             or its comparator does not permit null keys
+     */
+    public WAVLTreeMap<K, V> split(K key) {
+	WAVLTreeMap<K, V> tail = new WAVLTreeMap<>(comparator);
+	tail.deleteWAVL = deleteWAVL;
+	if (root == null) {
+	    compare(key, key); // type (and possibly null) check
+	    return tail;
+	}
+	Split<K, V> s = split(root, key);
+	root = s.left;
+	tail.root = (s.found == null) ? s.right : join(null, s.found, s.right);
+	int headSize = countSmaller(root, tail.root, size);
+	tail.size = size - headSize;
+	size = headSize;
+	modCount++;
+	return tail;
+    }
+
+    /**
+     * Adds the mappings of {@code other} to this map, replacing the values of
+     * keys that are in both.  Instead of a put() per mapping, this map is split
+     * at the root key of {@code other} and the halves are combined recursively,
+     * which takes O(m log(n/m + 1)) time for maps of sizes m &lt;= n.  Large maps
+     * are combined in parallel on the common fork/join pool.  The entries of
+     * {@code other} are moved, so it is left empty.
+     *
+     * @throws IllegalArgumentException
+     *             if the maps are ordered or balanced differently
+     */
+    public void union(WAVLTreeMap<K, V> other) {
+	checkJoinable(other);
+	LongAdder shared = new LongAdder();
+	Entry<K, V> a = root, b = other.root;
+	root = invoke(() -> union(a, b, shared), a, b);
+	size += other.size - shared.intValue();
+	modCount++;
+	other.moved();
+    }
+
+    /**
+     * Retains only the mappings of this map whose keys are in {@code other},
+     * in O(m log(n/m + 1)) time like {@link #union(WAVLTreeMap)}.  {@code other}
+     * is left empty.
+     *
+     * @throws IllegalArgumentException
+     *             if the maps are ordered or balanced differently
+     */
+    public void intersection(WAVLTreeMap<K, V> other) {
+	checkJoinable(other);
+	LongAdder shared = new LongAdder();
+	Entry<K, V> a = root, b = other.root;
+	root = invoke(() -> intersection(a, b, shared), a, b);
+	size = shared.intValue();
+	modCount++;
+	other.moved();
+    }
+
+    /**
+     * Removes the mappings of this map whose keys are in {@code other}, in
+     * O(m log(n/m + 1)) time like {@link #union(WAVLTreeMap)}.  {@code other} is
+     * left empty.
+     *
+     * @throws IllegalArgumentException
+     *             if the maps are ordered or balanced differently
+     */
+    public void difference(WAVLTreeMap<K, V> other) {
+	checkJoinable(other);
+	LongAdder shared = new LongAdder();
+	Entry<K, V> a = root, b = other.root;
+	root = invoke(() -> difference(a, b, shared), a, b);
+	size -= shared.intValue();
+	modCount++;
+	other.moved();
+    }
+
+    /**
+     * Ranks are heights without WAVL deletes, which the AVL delete re-tracing
+     * relies on, so such a map can not take in entries ranked by WAVL deletes.
+     */
+    private void checkJoinable(WAVLTreeMap<K, V> other) {
+	if (other == this)
+	    throw new IllegalArgumentException("map combined with itself");
+	Comparator<?> c = other.comparator;
+	if (!(c == comparator || (c != null && c.equals(comparator))))
+	    throw new IllegalArgumentException("maps are ordered differently");
+	if (other.deleteWAVL && !deleteWAVL)
+	    throw new IllegalArgumentException("map with WAVL deletes combined into one without");
+    }
+
+    /**
+     * Empties a map whose entries were moved into another.
+     */
+    private void moved() {
+	root = null;
+	size = 0;
+	modCount++;
+    }
+
+    /**
+     * The subtrees with keys less and greater than a key, and the entry for the
+     * key if there was one.
+     */
+    static final class Split<K, V> {
+	Entry<K, V> left;
+	Entry<K, V> found;
+	Entry<K, V> right;
+
+	Split(Entry<K, V> left, Entry<K, V> found, Entry<K, V> right) {
+	    this.left = left;
+	    this.found = found;
+	    this.right = right;
+	}
+    }
+
+    /**
+     * Runs a set operation on the common pool if both trees are ranked high
+     * enough to fork, otherwise in this thread.
+     */
+    private Entry<K, V> invoke(Callable<Entry<K, V>> op, Entry<K, V> a, Entry<K, V> b) {
+	try {
+	    if (Math.min(rank(a), rank(b)) >= PARALLEL_RANK)
+		return ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(op));
+	    return op.call();
+	} catch (RuntimeException e) {
+	    throw e;
+	} catch (Exception cannotHappen) {
+	    throw new IllegalStateException(cannotHappen);
+	}
+    }
+
+    private static <K, V> Entry<K, V> detachLeft(Entry<K, V> t) {
+	Entry<K, V> l = t.left;
+	if (l != null)
+	    l.parent = null;
+	t.left = null;
+	return l;
+    }
+
+    private static <K, V> Entry<K, V> detachRight(Entry<K, V> t) {
+	Entry<K, V> r = t.right;
+	if (r != null)
+	    r.parent = null;
+	t.right = null;
+	return r;
+    }
+
+    private static <K, V> void link(Entry<K, V> k, Entry<K, V> left, Entry<K, V> right) {
+	k.left = left;
+	if (left != null)
+	    left.parent = k;
+	k.right = right;
+	if (right != null)
+	    right.parent = k;
+    }
+
+    /**
+     * Joins the subtrees l and r, whose keys are less and greater than k's, with
+     * k and returns the root.  When the ranks differ by more than one, k is
+     * linked in on the spine of the higher ranked tree one rank above the subtree
+     * it replaces and re-balanced like an insert.  Ranks stay heights in trees
+     * whose ranks were heights.
+     */
+    final Entry<K, V> join(Entry<K, V> l, Entry<K, V> k, Entry<K, V> r) {
+	int lRank = rank(l), rRank = rank(r);
+	if (lRank > rRank + 1) {
+	    Entry<K, V> p = l, g = null;
+	    while (rank(p) > rRank + 1) {
+		g = p;
+		p = p.right;
+	    }
+	    link(k, p, r);
+	    k.rank = (byte) (rank(p) + 1);
+	    k.parent = g;
+	    g.right = k;
+	    fixAfterJoin(k);
+	    return (l.parent == null) ? l : l.parent; // l.parent is set by a rotation at the root
+	} else if (rRank > lRank + 1) {
+	    Entry<K, V> p = r, g = null;
+	    while (rank(p) > lRank + 1) {
+		g = p;
+		p = p.left;
+	    }
+	    link(k, l, p);
+	    k.rank = (byte) (rank(p) + 1);
+	    k.parent = g;
+	    g.left = k;
+	    fixAfterJoin(k);
+	    return (r.parent == null) ? r : r.parent;
+	}
+	link(k, l, r);
+	k.parent = null;
+	k.rank = (byte) (Math.max(lRank, rRank) + 1);
+	return k;
+    }
+
+    /**
+     * The insert re-balancing of fixAfterInsert for an entry linked in by join:
+     * promote while x is a 0-child with a 1-child sibling, otherwise rotate and
+     * stop.  The joined entry is at most a 1,2 node so the usual single and
+     * double rotations apply.
+     */
+    private void fixAfterJoin(Entry<K, V> x) {
+	for (Entry<K, V> parent = x.parent; parent != null && parent.rank == x.rank; x = parent, parent = x.parent) {
+	    Entry<K, V> sibling = (parent.left == x) ? parent.right : parent.left;
+	    if (parent.rank - rank(sibling) == 1) {
+		parent.rank++;
+		continue;
+	    }
+	    if (parent.right == x) {
+		if (x.rank - rank(x.right) == 1) {
+		    parent.rank--;
+		    lift(x);
+		} else {
+		    Entry<K, V> y = x.left;
+		    x.rank--;
+		    parent.rank--;
+		    y.rank++;
+		    lift(y);
+		    lift(y);
+		}
+	    } else {
+		if (x.rank - rank(x.left) == 1) {
+		    parent.rank--;
+		    lift(x);
+		} else {
+		    Entry<K, V> y = x.right;
+		    x.rank--;
+		    parent.rank--;
+		    y.rank++;
+		    lift(y);
+		    lift(y);
+		}
+	    }
+	    break;
+	}
+    }
+
+    /**
+     * Rotates x above its parent.  Unlike rotateLeft and rotateRight it leaves
+     * the map's root and rotation count alone, so it works on detached subtrees
+     * from any thread.
+     */
+    private static <K, V> void lift(Entry<K, V> x) {
+	Entry<K, V> p = x.parent, g = p.parent;
+	if (p.left == x) {
+	    p.left = x.right;
+	    if (x.right != null)
+		x.right.parent = p;
+	    x.right = p;
+	} else {
+	    p.right = x.left;
+	    if (x.left != null)
+		x.left.parent = p;
+	    x.left = p;
+	}
+	p.parent = x;
+	x.parent = g;
+	if (g != null) {
+	    if (g.left == p)
+		g.left = x;
+	    else
+		g.right = x;
+	}
+    }
+
+    /**
+     * Joins l and r without a middle entry by splitting off the last entry of l.
+     */
+    private Entry<K, V> join(Entry<K, V> l, Entry<K, V> r) {
+	if (l == null)
+	    return r;
+	if (r == null)
+	    return l;
+	Entry<K, V> last = l;
+	while (last.right != null)
+	    last = last.right;
+	Split<K, V> s = split(l, last.key);
+	return join(s.left, s.found, r);
+    }
+
+    /**
+     * Splits the subtree t around key, taking t apart along the search path and
+     * joining the pieces on either side.
+     */
+    final Split<K, V> split(Entry<K, V> t, Object key) {
+	if (t == null)
+	    return new Split<>(null, null, null);
+	Entry<K, V> l = detachLeft(t), r = detachRight(t);
+	int cmp = compare(key, t.key);
+	if (cmp == 0)
+	    return new Split<>(l, t, r);
+	if (cmp < 0) {
+	    Split<K, V> s = split(l, key);
+	    s.right = join(s.right, t, r);
+	    return s;
+	} else {
+	    Split<K, V> s = split(r, key);
+	    s.left = join(l, t, s.left);
+	    return s;
+	}
+    }
+
+    private Entry<K, V> union(Entry<K, V> a, Entry<K, V> b, LongAdder shared) {
+	if (a == null)
+	    return b;
+	if (b == null)
+	    return a;
+	boolean fork = Math.min(a.rank, b.rank) >= PARALLEL_RANK;
+	Entry<K, V> al = detachLeft(a), ar = detachRight(a);
+	Split<K, V> s = split(b, a.key);
+	if (s.found != null) {
+	    a.value = s.found.value;
+	    shared.increment();
+	}
+	Entry<K, V> left, right;
+	if (fork) {
+	    ForkJoinTask<Entry<K, V>> task = ForkJoinTask.adapt(() -> union(al, s.left, shared)).fork();
+	    right = union(ar, s.right, shared);
+	    left = task.join();
+	} else {
+	    left = union(al, s.left, shared);
+	    right = union(ar, s.right, shared);
+	}
+	return join(left, a, right);
+    }
+
+    private Entry<K, V> intersection(Entry<K, V> a, Entry<K, V> b, LongAdder shared) {
+	if (a == null || b == null)
+	    return null;
+	boolean fork = Math.min(a.rank, b.rank) >= PARALLEL_RANK;
+	Entry<K, V> al = detachLeft(a), ar = detachRight(a);
+	Split<K, V> s = split(b, a.key);
+	Entry<K, V> left, right;
+	if (fork) {
+	    ForkJoinTask<Entry<K, V>> task = ForkJoinTask.adapt(() -> intersection(al, s.left, shared)).fork();
+	    right = intersection(ar, s.right, shared);
+	    left = task.join();
+	} else {
+	    left = intersection(al, s.left, shared);
+	    right = intersection(ar, s.right, shared);
+	}
+	if (s.found == null)
+	    return join(left, right);
+	shared.increment();
+	return join(left, a, right);
+    }
+
+    private Entry<K, V> difference(Entry<K, V> a, Entry<K, V> b, LongAdder shared) {
+	if (a == null || b == null)
+	    return a;
+	boolean fork = Math.min(a.rank, b.rank) >= PARALLEL_RANK;
+	Entry<K, V> bl = detachLeft(b), br = detachRight(b);
+	Split<K, V> s = split(a, b.key);
+	Entry<K, V> left, right;
+	if (fork) {
+	    ForkJoinTask<Entry<K, V>> task = ForkJoinTask.adapt(() -> difference(s.left, bl, shared)).fork();
+	    right = difference(s.right, br, shared);
+	    left = task.join();
+	} else {
+	    left = difference(s.left, bl, shared);
+	    right = difference(s.right, br, shared);
+	}
+	if (s.found != null)
+	    shared.increment();
+	return join(left, right);
+    }
+
+    /**
+     * Returns the size of the tree rooted at head, given the combined size of
+     * the trees at head and tail, by walking both in step until one runs out.
+     */
+    static <K, V> int countSmaller(Entry<K, V> head, Entry<K, V> tail, int total) {
+	Entry<K, V> h = head, t = tail;
+	if (h != null)
+	    while (h.left != null)
+		h = h.left;
+	if (t != null)
+	    while (t.left != null)
+		t = t.left;
+	int count = 0;
+	while (h != null && t != null) {
+	    h = successor(h);
+	    t = successor(t);
+	    count++;
+	}
+	return (h == null) ? count : total - count;
+    }
+
     /**
      * Returns a {@link Set} view of the mappings contained in this map.
      *
@@ -843,7 +1633,7 @@ check these three cases stopping after any rotations, reaching the root or when
 	}
 
 	public Spliterator<Map.Entry<K, V>> spliterator() {
-	    return null;
+	    return new EntrySpliterator<>(WAVLTreeMap.this, null, null, 0, -1, 0);
 	}
     }
 
@@ -910,4 +1700,138 @@ check these three cases stopping after any rotations, reaching the root or when
 	    return nextEntry();
 	}
     }
+
+    /**
+     * Base class for spliterators. Iteration starts at a given origin and continues
+     * up to but not including a given fence (or null for end). At top-level, for
+     * ascending cases, the first split uses the root as left-fence/right-origin.
+     * From there, right-hand splits replace the current fence with its left child,
+     * also serving as origin for the split-off spliterator. Left-hands are
+     * symmetric.
+     * <p>
+     * Splits and size estimates work as in {@code AVLTreeMap.TreeMapSpliterator},
+     * except that sibling subtrees of a WAVL tree differ in rank by up to two
+     * rather than in height by one, so the halved estimates are rougher.
+     * <p>
+     * To boostrap initialization, external constructors use a negative size
+     * estimate of -1.
+     */
+    static class TreeMapSpliterator<K, V> {
+	final WAVLTreeMap<K, V> tree;
+	WAVLTreeMap.Entry<K, V> current; // traverser; initially first node in range
+	WAVLTreeMap.Entry<K, V> fence; // one past last, or null
+	int side; // 0: top, -1: is a left split, +1: right
+	int est; // size estimate (exact only for top-level)
+	int expectedModCount; // for CME checks
+
+	TreeMapSpliterator(WAVLTreeMap<K, V> tree, WAVLTreeMap.Entry<K, V> origin, WAVLTreeMap.Entry<K, V> fence, int side, int est,
+		int expectedModCount) {
+	    this.tree = tree;
+	    this.current = origin;
+	    this.fence = fence;
+	    this.side = side;
+	    this.est = est;
+	    this.expectedModCount = expectedModCount;
+	}
+
+	final int getEstimate() { // force initialization
+	    int s;
+	    WAVLTreeMap<K, V> t;
+	    if ((s = est) < 0) {
+		if ((t = tree) != null) {
+		    current = (s == -1) ? t.getFirstEntry() : t.getLastEntry();
+		    s = est = t.size;
+		    expectedModCount = t.modCount;
+		} else
+		    s = est = 0;
+	    }
+	    return s;
+	}
+
+	public final long estimateSize() {
+	    return (long) getEstimate();
+	}
+    }
+
+    static final class EntrySpliterator<K, V> extends TreeMapSpliterator<K, V>
+	    implements Spliterator<Map.Entry<K, V>> {
+	EntrySpliterator(WAVLTreeMap<K, V> tree, WAVLTreeMap.Entry<K, V> origin, WAVLTreeMap.Entry<K, V> fence, int side, int est,
+		int expectedModCount) {
+	    super(tree, origin, fence, side, est, expectedModCount);
+	}
+
+	public EntrySpliterator<K, V> trySplit() {
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    int d = side;
+	    WAVLTreeMap.Entry<K, V> e = current, f = fence;
+	    WAVLTreeMap.Entry<K, V> s = ((e == null || e == f) ? null // empty
+		    : (d == 0) ? tree.root // was top
+		    : (d > 0) ? e.right // was right
+		    : (d < 0 && f != null) ? f.left // was left
+		    : null);
+	    if (s != null && s != e && s != f && tree.compare(e.key, s.key) < 0) { // e not already past s
+		side = 1;
+		return new EntrySpliterator<>(tree, e, current = s, -1, est >>>= 1, expectedModCount);
+	    }
+	    return null;
+	}
+
+	public void forEachRemaining(Consumer<? super Map.Entry<K, V>> action) {
+	    if (action == null)
+		throw new NullPointerException();
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    WAVLTreeMap.Entry<K, V> f = fence, e, p, pl;
+	    if ((e = current) != null && e != f) {
+		current = f; // exhaust
+		do {
+		    action.accept(e);
+		    if ((p = e.right) != null) {
+			while ((pl = p.left) != null)
+			    p = pl;
+		    } else {
+			while ((p = e.parent) != null && e == p.right)
+			    e = p;
+		    }
+		} while ((e = p) != null && e != f);
+		if (tree.modCount != expectedModCount)
+		    throw new ConcurrentModificationException();
+	    }
+	}
+
+	public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+	    WAVLTreeMap.Entry<K, V> e;
+	    if (action == null)
+		throw new NullPointerException();
+	    if (est < 0)
+		getEstimate(); // force initialization
+	    if ((e = current) == null || e == fence)
+		return false;
+	    current = successor(e);
+	    action.accept(e);
+	    if (tree.modCount != expectedModCount)
+		throw new ConcurrentModificationException();
+	    return true;
+	}
+
+	public int characteristics() {
+	    return (side == 0 ? Spliterator.SIZED : 0) | Spliterator.DISTINCT | Spliterator.SORTED
+		    | Spliterator.ORDERED;
+	}
+
+	@Override
+	public Comparator<Map.Entry<K, V>> getComparator() {
+	    // Adapt or create a key-based comparator
+	    if (tree.comparator != null) {
+		return Map.Entry.comparingByKey(tree.comparator);
+	    } else {
+		return (Comparator<Map.Entry<K, V>> & java.io.Serializable) (e1, e2) -> {
+		    @SuppressWarnings("unchecked")
+		    Comparable<? super K> k1 = (Comparable<? super K>) e1.getKey();
+		    return k1.compareTo(e2.getKey());
+		};
+	    }
+	}
+    }
 }
\ No newline at end of file
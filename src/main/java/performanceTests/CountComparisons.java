@@ -0,0 +1,79 @@
+package performanceTests;
+
+import java.util.Map;
+
+import bbst_showdown.AVLTreeMap;
+import bbst_showdown.CountingComparator;
+import bbst_showdown.TreeCounters;
+import bbst_showdown.TreeMapBST;
+import bbst_showdown.TreeMapRedBlack;
+import bbst_showdown.WAVLTreeMap;
+
+/**
+ * Prints comparisons, search path length, re-tracing steps and rotations per
+ * operation for the AVL, WAVL, red-black and unbalanced trees side by side,
+ * the machine independent numbers behind the timings of {@link Standoff}.
+ */
+public class CountComparisons {
+
+    public static void main(String[] args) {
+	int n = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+	Integer[] random = Workload.boxed(new Workload(42).uniform(n));
+	Integer[] sequential = Workload.boxed(Workload.sequential(n));
+
+	System.out.println("Random keys, n=" + n);
+	compare(random);
+	// the unbalanced tree is quadratic on sorted input
+	System.out.println("Sequential keys, n=" + Math.min(n, 10000));
+	compare(java.util.Arrays.copyOf(sequential, Math.min(n, 10000)));
+    }
+
+    private static void compare(Integer[] keys) {
+	CountingComparator<Integer> comparator = new CountingComparator<>();
+	TreeCounters counters = new TreeCounters();
+
+	AVLTreeMap<Integer, Integer> avl = new AVLTreeMap<>(comparator);
+	avl.setCounters(counters);
+	run("AVLTreeMap", avl, keys, comparator, counters);
+
+	WAVLTreeMap<Integer, Integer> wavl = new WAVLTreeMap<>(comparator);
+	wavl.setCounters(counters);
+	run("WAVLTreeMap", wavl, keys, comparator, counters);
+
+	TreeMapRedBlack<Integer, Integer> redBlack = new TreeMapRedBlack<>(comparator);
+	redBlack.setCounters(counters);
+	run("TreeMapRedBlack", redBlack, keys, comparator, counters);
+
+	TreeMapBST<Integer, Integer> bst = new TreeMapBST<>(comparator);
+	bst.setCounters(counters);
+	run("TreeMapBST", bst, keys, comparator, counters);
+    }
+
+    private static void run(String name, Map<Integer, Integer> tree, Integer[] keys,
+	    CountingComparator<Integer> comparator, TreeCounters counters) {
+	comparator.reset();
+	counters.reset();
+	for (Integer k : keys)
+	    tree.put(k, k);
+	print(name, "put", keys.length, comparator, counters);
+
+	comparator.reset();
+	counters.reset();
+	for (Integer k : keys)
+	    tree.get(k);
+	print(name, "get", keys.length, comparator, counters);
+
+	comparator.reset();
+	counters.reset();
+	for (Integer k : keys)
+	    tree.remove(k);
+	print(name, "remove", keys.length, comparator, counters);
+    }
+
+    private static void print(String name, String op, int ops, CountingComparator<Integer> comparator,
+	    TreeCounters counters) {
+	System.out.println(String.format("  %-16s %-6s comparisons/op: %6.2f, path length: %6.2f, retrace steps/op: %5.2f, rotations/op: %5.2f",
+		name, op, (double) comparator.comparisons() / ops, counters.averagePathLength(),
+		(double) counters.retraceSteps() / ops, (double) counters.rotations() / ops));
+    }
+}
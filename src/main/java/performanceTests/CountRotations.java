@@ -8,16 +8,10 @@ import bbst_showdown.WAVLTreeMap;
 
 public class CountRotations {
     public static void main(String [] args) {
-	java.util.Random r = new java.util.Random();
-	Integer[] groupedRandomNumbers = new Integer [300000];
-	for (int i = 0; i < groupedRandomNumbers.length;) {
-	    Integer nextRand = r.nextInt(Integer.MAX_VALUE - 16);
-	    for (int j=0; j < 16; j++) {
-		groupedRandomNumbers[i++] = nextRand + j;
-	    }
-	}
+	int runLength = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+	Integer[] groupedRandomNumbers = Workload.boxed(new Workload().clustered(300000, runLength));
 	
-	System.out.println("Results for inserting integer clusters in sequences of 16 and total size: " + groupedRandomNumbers.length + " -");
+	System.out.println("Results for inserting integer clusters in sequences of " + runLength + " and total size: " + groupedRandomNumbers.length + " -");
 	
 	WAVLTreeMap<Integer, Integer> ravl = new WAVLTreeMap<>();
 	AVLTreeMap<Integer, Integer> avl = new AVLTreeMap<>();
@@ -1,6 +1,5 @@
 package performanceTests;
 
-import java.io.FileNotFoundException;
 import java.util.*;
 
 import bbst_showdown.AVLTreeMap;
@@ -14,17 +13,20 @@ import bbst_showdown.WAVLTreeMap;
 /**
  * Prints a comparison of tree performance. 
  * 
+ * For numbers that are stable across runs use the JMH harnesses in the benchmarks module,
+ * this class is a quick single JVM smoke test.
+ * 
  * @author David McManamon
  */
 public class Standoff {
 
-    public static void main(String[] args) throws FileNotFoundException {
+    public static void main(String[] args) {
 	Map<Integer, Integer> redBlack = new TreeMapRedBlack<>();
 	Map<Integer, Integer> avl = new AVLTreeMap<>();
 	Map<Integer, Integer> avlRB = new AVLTreeMapRB<>();
 	Map<Integer, Integer> wavl = new WAVLTreeMap<>(false);
 	Map<Integer, Integer> bst = new TreeMapBST<>();
-//	Map<Integer, Integer> avlNoParent = new TreeMapAVLStack<>();
+	Map<Integer, Integer> avlNoParent = new TreeMapAVLStack<>();
 //	Map<Integer, Integer> avlRec = new TreeMapAVLRec<>();
 
 	List<Map<Integer, Integer>> maps = new ArrayList<Map<Integer, Integer>>();
@@ -33,42 +35,38 @@ public class Standoff {
 	maps.add(avlRB);    // 2=avl rb
 	maps.add(wavl);	    // 3=wavl
 	maps.add(bst);      // 4-bst (no rotations)
+	maps.add(avlNoParent); // 5=avl without parent pointers
 	
-	// TODO update the integer to choose a different tree implementation
-	Map<Integer, Integer> treeMap = maps.get(3);
+	// pass the indexes of the trees to run, by default every balanced tree
+	// runs; the bst degenerates into a list on the sequential insert
+	int[] chosen = { 0, 1, 2, 3, 5 };
+	if (args.length > 0) {
+	    chosen = new int[args.length];
+	    for (int i = 0; i < args.length; i++)
+		chosen[i] = Integer.parseInt(args[i]);
+	}
 	
 	int mean;
-	Integer [] randomInts = readRandomInts();
-	
-	mean = delete(treeMap, randomInts);
-	System.out.println("Delete time: " + mean + "ms, " + treeMap);
-	
-	mean = insert(treeMap, randomInts);
-	System.out.println("Random insert time: " + mean + "ms, " + treeMap);
+	Integer [] randomInts = Workload.boxed(new Workload().uniform(1000000));
 	
-	mean = insertInOrder(treeMap, 100000);
-	System.out.println("Sequential insert time: " + mean + "ms, " + treeMap);
-    }
+	for (int index : chosen) {
+	    Map<Integer, Integer> treeMap = maps.get(index);
 
-    private static Integer[] readRandomInts() throws FileNotFoundException {
-	Integer[] v = new Integer[1000000];
-	String fileName = "randomInts.txt";
-	java.io.File file = new java.io.File(fileName);
+	    mean = delete(treeMap, randomInts);
+	    System.out.println("Delete time: " + mean + "ms, " + treeMap);
 
-	java.util.Scanner inputStream = new java.util.Scanner(file);
-	inputStream.nextLine();
-	while (inputStream.hasNext()) {
-	    String data = inputStream.next();
-	    String[] values = data.split(",");
+	    mean = insert(treeMap, randomInts);
+	    System.out.println("Random insert time: " + mean + "ms, " + treeMap);
 
-	    for (int i = 0; i < 1000000; i++) {
-		v[i] = Integer.parseInt(values[i]);
-	    }
+	    mean = insertInOrder(treeMap, 100000);
+	    System.out.println("Sequential insert time: " + mean + "ms, " + treeMap);
 	}
-	inputStream.close();
-	return v;
+
+	AVLTreeMap<Integer, Integer> batched = new AVLTreeMap<>();
+	mean = insertInOrderBatched(batched, 100000, 1000);
+	System.out.println("Sequential insert time in sorted batches of 1000: " + mean + "ms, " + batched);
     }
-    
+
     private static int insertInOrder(Map<Integer, Integer> tree, int nElements) {
 	int[] times = new int[5];
 	for (int j = 0; j < 5; j++) {
@@ -86,6 +84,31 @@ public class Standoff {
 	return (times[1] + times[2] + times[3]) / 3;
     }
     
+    /**
+     * The same keys as insertInOrder, passed to putAllSorted in batches.
+     */
+    private static int insertInOrderBatched(AVLTreeMap<Integer, Integer> tree, int nElements, int batchSize) {
+	Integer[][] batches = new Integer[(nElements + batchSize - 1) / batchSize][];
+	for (int b = 0; b < batches.length; b++) {
+	    batches[b] = new Integer[Math.min(batchSize, nElements - b * batchSize)];
+	    for (int i = 0; i < batches[b].length; i++)
+		batches[b][i] = b * batchSize + i;
+	}
+	int[] times = new int[5];
+	for (int j = 0; j < 5; j++) {
+	    long start = System.currentTimeMillis();
+	    tree.clear();
+	    for (Integer[] batch : batches)
+		tree.putAllSorted(batch, batch);
+	    long stop = System.currentTimeMillis();
+	    times[j] = (int) (stop - start);
+	}
+
+	Arrays.sort(times);
+
+	return (times[1] + times[2] + times[3]) / 3;
+    }
+    
     private static int delete(Map<Integer, Integer> tree, Integer[] rands) {
 	for (int i = 0; i < 100000; i++) {
 	    tree.put(rands[i], rands[i]);
@@ -118,21 +141,15 @@ public class Standoff {
     }
 
     public static long insertDeleteLookup(Map<Integer, Integer> x) {
+	int[] keys = new Workload().uniform(1000000);
+	System.arraycopy(Workload.sequential(20000), 0, keys, 0, 20000);
+	Integer[] inserted = Workload.boxed(keys);
+
 	long start = System.currentTimeMillis();
-	java.util.Random r = new java.util.Random();
-	Integer[] inserted = new Integer[1000000];
-	for (Integer i = 0; i < 1000000; i++) {
-	    if (i < 20000) {
-		inserted[i] = i;
-		x.put(i, i);
-	    } else {
-		Integer next = r.nextInt();
-		inserted[i] = next;
-		x.put(next, next);
-	    }
-	}
+	for (int i = 0; i < inserted.length; i++)
+	    x.put(inserted[i], inserted[i]);
 
-	for (Integer i = 0; i < 500000; i++) {
+	for (int i = 0; i < 500000; i++) {
 	    if (i % 2 == 0)
 		x.remove(inserted[i]);
 	    else
@@ -142,4 +159,4 @@ public class Standoff {
 	long stop = System.currentTimeMillis();
 	return stop - start;
     }
-}
\ No newline at end of file
+}
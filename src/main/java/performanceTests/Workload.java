@@ -0,0 +1,257 @@
+package performanceTests;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Seeded generator of the key streams and operation sequences the performance
+ * tests and the JMH benchmarks run on.  Everything is generated up front into
+ * primitive arrays, so generating costs nothing on the timing path, no input
+ * is read from disk, and two runs with the same seed, or two trees in the same
+ * run, see exactly the same input.  Each method starts its own
+ * {@link Random} from the seed, so a stream does not depend on which streams
+ * were generated before it.
+ *
+ * <p>{@link #uniform(int)} with {@link #SEED} is the key sequence the JMH
+ * benchmarks have always used.
+ */
+public final class Workload {
+    public static final long SEED = 0x5eed_b57L;
+
+    /** Operation codes of {@link Operations}. */
+    public static final byte GET = 0, PUT = 1, REMOVE = 2;
+
+    private final long seed;
+
+    /**
+     * A generator seeded with {@link #SEED}.
+     */
+    public Workload() {
+	this(SEED);
+    }
+
+    public Workload(long seed) {
+	this.seed = seed;
+    }
+
+    public long seed() {
+	return seed;
+    }
+
+    /**
+     * n keys drawn uniformly from all ints, with the repeats that implies
+     * for large n.
+     */
+    public int[] uniform(int n) {
+	Random r = new Random(seed);
+	int[] keys = new int[n];
+	for (int i = 0; i < n; i++)
+	    keys[i] = r.nextInt();
+	return keys;
+    }
+
+    /**
+     * n keys drawn uniformly from 0 (inclusive) to bound (exclusive).
+     */
+    public int[] uniform(int n, int bound) {
+	if (bound < 1)
+	    throw new IllegalArgumentException("bound " + bound);
+	Random r = new Random(seed);
+	int[] keys = new int[n];
+	for (int i = 0; i < n; i++)
+	    keys[i] = r.nextInt(bound);
+	return keys;
+    }
+
+    /**
+     * The keys 0 to n-1 in ascending order.
+     */
+    public static int[] sequential(int n) {
+	int[] keys = new int[n];
+	for (int i = 0; i < n; i++)
+	    keys[i] = i;
+	return keys;
+    }
+
+    /**
+     * The keys n-1 down to 0.
+     */
+    public static int[] reverse(int n) {
+	int[] keys = new int[n];
+	for (int i = 0; i < n; i++)
+	    keys[i] = n - 1 - i;
+	return keys;
+    }
+
+    /**
+     * n distinct keys in ascending runs of toothLength, each run starting
+     * back near the bottom of the key range: with t = ceil(n / toothLength)
+     * teeth, run j is j, j + t, j + 2t, and so on.  Every run climbs the
+     * whole tree, so the inserts of each run land between the keys of the
+     * runs before it.
+     */
+    public static int[] sawtooth(int n, int toothLength) {
+	if (toothLength < 1)
+	    throw new IllegalArgumentException("tooth length " + toothLength);
+	int teeth = (int) (((long) n + toothLength - 1) / toothLength);
+	int[] keys = new int[n];
+	for (int i = 0; i < n; i++)
+	    keys[i] = (i % toothLength) * teeth + i / toothLength;
+	return keys;
+    }
+
+    /**
+     * n keys drawn from 0 to items-1 with a Zipfian distribution: key k is
+     * drawn with probability proportional to 1 / (k + 1)^exponent, so the
+     * popular keys are the smallest ones and sit together in the tree.  An
+     * exponent of 0.99 is the usual skew of the YCSB benchmarks.
+     */
+    public int[] zipfian(int n, int items, double exponent) {
+	if (items < 1)
+	    throw new IllegalArgumentException("items " + items);
+	double[] cdf = new double[items];
+	double sum = 0;
+	for (int k = 0; k < items; k++)
+	    cdf[k] = sum += Math.pow(k + 1, -exponent);
+	for (int k = 0; k < items; k++)
+	    cdf[k] /= sum;
+	Random r = new Random(seed);
+	int[] keys = new int[n];
+	for (int i = 0; i < n; i++) {
+	    int k = Arrays.binarySearch(cdf, r.nextDouble());
+	    keys[i] = Math.min(k >= 0 ? k : -k - 1, items - 1);
+	}
+	return keys;
+    }
+
+    /**
+     * n keys in runs of runLength consecutive ints, each run starting at a
+     * uniformly drawn non-negative int: the clustered inserts of
+     * {@link CountRotations}.  A run must fit below Integer.MAX_VALUE.
+     */
+    public int[] clustered(int n, int runLength) {
+	if (runLength < 1 || runLength == Integer.MAX_VALUE)
+	    throw new IllegalArgumentException("run length " + runLength);
+	Random r = new Random(seed);
+	int[] keys = new int[n];
+	for (int i = 0; i < n;) {
+	    int start = r.nextInt(Integer.MAX_VALUE - runLength);
+	    for (int j = 0; j < runLength && i < n; j++)
+		keys[i++] = start + j;
+	}
+	return keys;
+    }
+
+    /**
+     * n operations on a map holding the keys present: getPercent percent
+     * are lookups and removePercent percent are removals of keys drawn
+     * uniformly from present, the rest are puts of keys drawn uniformly from
+     * all ints.  Lookups and removals may repeat a key, so later ones can
+     * miss.
+     */
+    public Operations mixed(int n, int[] present, int getPercent, int removePercent) {
+	if (getPercent < 0 || removePercent < 0 || getPercent + removePercent > 100)
+	    throw new IllegalArgumentException(getPercent + "% gets and " + removePercent + "% removes");
+	if (present.length == 0 && getPercent + removePercent > 0)
+	    throw new IllegalArgumentException("gets and removes need present keys");
+	Random r = new Random(seed);
+	byte[] ops = new byte[n];
+	int[] keys = new int[n];
+	for (int i = 0; i < n; i++) {
+	    int dice = r.nextInt(100);
+	    if (dice < getPercent) {
+		ops[i] = GET;
+		keys[i] = present[r.nextInt(present.length)];
+	    } else if (dice < getPercent + removePercent) {
+		ops[i] = REMOVE;
+		keys[i] = present[r.nextInt(present.length)];
+	    } else {
+		ops[i] = PUT;
+		keys[i] = r.nextInt();
+	    }
+	}
+	return new Operations(ops, keys);
+    }
+
+    /**
+     * n operations on keys drawn uniformly from 0 (inclusive) to bound
+     * (exclusive): getPercent percent are lookups, removePercent percent are
+     * removals and the rest are puts.  With as many puts as removes a map of
+     * keys from the range settles at about half full, so the operations can be
+     * cycled through for as long as a benchmark runs.
+     */
+    public Operations mixed(int n, int bound, int getPercent, int removePercent) {
+	if (getPercent < 0 || removePercent < 0 || getPercent + removePercent > 100)
+	    throw new IllegalArgumentException(getPercent + "% gets and " + removePercent + "% removes");
+	if (bound < 1)
+	    throw new IllegalArgumentException("bound " + bound);
+	Random r = new Random(seed);
+	byte[] ops = new byte[n];
+	int[] keys = new int[n];
+	for (int i = 0; i < n; i++) {
+	    int dice = r.nextInt(100);
+	    ops[i] = dice < getPercent ? GET : dice < getPercent + removePercent ? REMOVE : PUT;
+	    keys[i] = r.nextInt(bound);
+	}
+	return new Operations(ops, keys);
+    }
+
+    /**
+     * n lookup keys: hitPercent percent are drawn uniformly from present, the
+     * rest uniformly from all ints, which for a sparse map are nearly all
+     * misses.
+     */
+    public int[] lookups(int n, int[] present, int hitPercent) {
+	if (hitPercent < 0 || hitPercent > 100)
+	    throw new IllegalArgumentException(hitPercent + "% hits");
+	if (present.length == 0 && hitPercent > 0)
+	    throw new IllegalArgumentException("hits need present keys");
+	Random r = new Random(seed);
+	int[] keys = new int[n];
+	for (int i = 0; i < n; i++)
+	    keys[i] = r.nextInt(100) < hitPercent ? present[r.nextInt(present.length)] : r.nextInt();
+	return keys;
+    }
+
+    /**
+     * Boxes keys once, ahead of a measured loop over a map of Integers.
+     */
+    public static Integer[] boxed(int[] keys) {
+	Integer[] boxed = new Integer[keys.length];
+	for (int i = 0; i < keys.length; i++)
+	    boxed[i] = keys[i];
+	return boxed;
+    }
+
+    /**
+     * A sequence of operations: ops()[i] is {@link #GET}, {@link #PUT} or
+     * {@link #REMOVE}, applied to keys()[i].
+     */
+    public static final class Operations {
+	private final byte[] ops;
+	private final int[] keys;
+
+	Operations(byte[] ops, int[] keys) {
+	    this.ops = ops;
+	    this.keys = keys;
+	}
+
+	public int size() {
+	    return ops.length;
+	}
+
+	/**
+	 * The operation codes, shared rather than copied.
+	 */
+	public byte[] ops() {
+	    return ops;
+	}
+
+	/**
+	 * The keys, shared rather than copied.
+	 */
+	public int[] keys() {
+	    return keys;
+	}
+    }
+}
@@ -1,8 +1,17 @@
 package bbst_showdown;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -240,4 +249,207 @@ public class AVLTreeMapRBTest {
 	assertEquals(1193, (int) x.root.value);
 	
     }
-}
\ No newline at end of file
+    
+    @Test
+    public void testDeleteLeafDemotes() {
+	x.put(2, 2);
+	x.put(1, 1);
+	x.put(3, 3);
+	x.put(4, 4);
+	assertEquals(Integer.valueOf(4), x.remove(4));
+	assertEquals(0, x.rotations);
+	assertEquals(AVLTreeMapRB.ONE, x.root.left.deltaR);
+	assertEquals(AVLTreeMapRB.ONE, x.root.right.deltaR);
+	assertNull(x.remove(4));
+	checkRanks(x.root);
+    }
+    
+    @Test
+    public void testDeleteSingleRotation() {
+	x.put(2, 2);
+	x.put(1, 1);
+	x.put(3, 3);
+	x.put(4, 4);
+	x.remove(1); // 3 rotates up over the leaves 2 and 4
+	assertEquals(1, x.rotations);
+	assertEquals(3, (int) x.root.value);
+	assertEquals(AVLTreeMapRB.ONE, x.root.left.deltaR);
+	assertEquals(AVLTreeMapRB.ONE, x.root.right.deltaR);
+	checkRanks(x.root);
+    }
+    
+    @Test
+    public void testDeleteDoubleRotation() {
+	x.put(2, 2);
+	x.put(1, 1);
+	x.put(4, 4);
+	x.put(3, 3);
+	x.remove(1);
+	assertEquals(2, x.rotations);
+	assertEquals(3, (int) x.root.value);
+	assertEquals(2, (int) x.root.left.value);
+	assertEquals(4, (int) x.root.right.value);
+	checkRanks(x.root);
+    }
+    
+    @Test
+    public void testDeleteMany() {
+	Integer [] a = {1493,477,1193,2130,398,1393,946,422,1381,1767,830,570,1085,741,598,1658,1801,487,1921,
+		1918,258,135,975,1870,1655,1585,1935,271,1969,1313,1290,162,1485,26,86,244,1140};
+	for (int i=0; i < a.length; i++)
+	    x.put(a[i], a[i]);
+	for (int i=0; i < a.length; i++) {
+	    assertEquals(a[i], x.remove(a[i]));
+	    assertNull(x.get(a[i]));
+	    checkRanks(x.root);
+	    assertEquals(a.length - i - 1, x.size());
+	}
+	assertNull(x.root);
+    }
+    
+    @Test
+    public void testRandomOpsMatchTreeMap() {
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	Random r = new Random(7);
+	for (int i=0; i < 50000; i++) {
+	    int k = r.nextInt(3000);
+	    if (r.nextBoolean())
+		assertEquals(expected.remove(k), x.remove(k));
+	    else
+		assertEquals(expected.put(k, i), x.put(k, i));
+	    if (i % 1000 == 0)
+		checkRanks(x.root);
+	}
+	checkRanks(x.root);
+	assertEquals(expected.size(), x.size());
+	for (int k=0; k < 3000; k++)
+	    assertEquals(expected.get(k), x.get(k));
+	// sequential removal from either end exercises the mirror cases
+	for (int i=0; i < 1000; i++)
+	    x.put(i, i);
+	for (int i=0; i < 1000; i++)
+	    x.remove(i);
+	checkRanks(x.root);
+	for (int i=0; i < 1000; i++)
+	    x.put(i, i);
+	for (int i=999; i >= 0; i--)
+	    x.remove(i);
+	checkRanks(x.root);
+    }
+    
+    @Test
+    public void testViewsMatchTreeMap() {
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	Random r = new Random(5);
+	for (int i=0; i < 2000; i++) {
+	    int key = r.nextInt(5000);
+	    x.put(key, i);
+	    expected.put(key, i);
+	}
+	assertEquals(expected, x);
+	assertEquals(x, expected);
+	assertEquals(expected.hashCode(), x.hashCode());
+	assertEquals(expected.entrySet(), x.entrySet());
+	assertEquals(expected.keySet(), x.keySet());
+	assertEquals(expected.values().stream().collect(Collectors.toList()), x.values().stream().collect(Collectors.toList()));
+	assertEquals(new TreeMap<>(x), expected);
+	assertTrue(x.keySet().contains(expected.firstKey()));
+	assertTrue(x.entrySet().contains(expected.lastEntry()));
+    }
+
+    @Test
+    public void testNavigation() {
+	for (int i=0; i < 100; i += 10)
+	    x.put(i, -i);
+	assertEquals(Integer.valueOf(0), x.firstKey());
+	assertEquals(Integer.valueOf(90), x.lastKey());
+	assertEquals(Integer.valueOf(20), x.floorKey(25));
+	assertEquals(Integer.valueOf(20), x.floorKey(20));
+	assertEquals(Integer.valueOf(30), x.ceilingKey(25));
+	assertEquals(Integer.valueOf(20), x.ceilingKey(20));
+	assertEquals(Integer.valueOf(30), x.higherKey(20));
+	assertEquals(Integer.valueOf(10), x.lowerKey(20));
+	assertNull(x.lowerKey(0));
+	assertNull(x.higherKey(90));
+	assertNull(x.floorKey(-1));
+	assertNull(x.ceilingKey(91));
+	assertEquals(Integer.valueOf(-50), x.floorEntry(55).getValue());
+	Map.Entry<Integer, Integer> first = x.pollFirstEntry();
+	assertEquals(Integer.valueOf(0), first.getKey());
+	assertEquals(Integer.valueOf(90), x.pollLastEntry().getKey());
+	assertEquals(8, x.size());
+	assertEquals(Integer.valueOf(10), x.firstEntry().getKey());
+	checkRanks(x.root);
+    }
+
+    @Test
+    public void testIteratorRemove() {
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	for (int i=0; i < 1000; i++) {
+	    x.put(i * 7 % 1000, i);
+	    expected.put(i * 7 % 1000, i);
+	}
+	Iterator<Map.Entry<Integer, Integer>> it = x.entrySet().iterator();
+	while (it.hasNext()) {
+	    Map.Entry<Integer, Integer> e = it.next();
+	    if (e.getKey() % 3 != 0)
+		it.remove();
+	}
+	expected.keySet().removeIf(k -> k % 3 != 0);
+	assertEquals(expected, x);
+	assertEquals(expected.size(), x.size());
+	checkRanks(x.root);
+	x.values().removeIf(v -> v % 2 == 0);
+	expected.values().removeIf(v -> v % 2 == 0);
+	assertEquals(expected, x);
+	checkRanks(x.root);
+    }
+
+    @Test
+    public void testSpliterator() {
+	long expected = 0;
+	for (int i=0; i < 10000; i++) {
+	    x.put(i, i);
+	    expected += i;
+	}
+	Spliterator<Integer> s = x.keySet().spliterator();
+	assertTrue(s.hasCharacteristics(Spliterator.SORTED | Spliterator.ORDERED | Spliterator.DISTINCT));
+	Spliterator<Integer> prefix = s.trySplit();
+	int[] last = { -1 };
+	int[] count = { 0 };
+	prefix.forEachRemaining(k -> { assertTrue(k > last[0]); last[0] = k; count[0]++; });
+	int boundary = last[0];
+	s.forEachRemaining(k -> { assertTrue(k > boundary); count[0]++; });
+	assertEquals(10000, count[0]);
+	assertEquals(expected, x.values().parallelStream().mapToLong(Integer::longValue).sum());
+	assertEquals(expected, StreamSupport.stream(x.entrySet().spliterator(), true).mapToLong(Map.Entry::getKey).sum());
+    }
+    
+    // returns the rank of the subtree, checking every rank difference is 1 or 2 and no node is 2,2
+    private int checkRanks(AVLTreeMapRB.Entry<Integer, Integer> node) {
+	if (node == null)
+	    return -1;
+	if (node.parent == null)
+	    assertTrue(node == x.root);
+	int leftRank = checkRanks(node.left);
+	int rightRank = checkRanks(node.right);
+	if (node.left != null)
+	    assertTrue(node.left.parent == node);
+	if (node.right != null)
+	    assertTrue(node.right.parent == node);
+	int rank = node.left != null ? leftRank + delta(node.left) : rightRank + (node.right != null ? delta(node.right) : 1);
+	int leftDelta = rank - leftRank, rightDelta = rank - rightRank;
+	assertTrue(leftDelta == 1 || leftDelta == 2);
+	assertTrue(rightDelta == 1 || rightDelta == 2);
+	assertTrue(leftDelta == 1 || rightDelta == 1);
+	if (node.left != null)
+	    assertEquals(leftDelta, delta(node.left));
+	if (node.right != null)
+	    assertEquals(rightDelta, delta(node.right));
+	return rank;
+    }
+    
+    private static int delta(AVLTreeMapRB.Entry<Integer, Integer> node) {
+	return node.deltaR == AVLTreeMapRB.ONE ? 1 : 2;
+    }
+}
@@ -1,8 +1,29 @@
 package bbst_showdown;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -132,4 +153,393 @@ public class AVLTreeMapTest {
 	assertEquals(9, (int) x.root.value);
 	assertEquals(2, x.rotations);
     }
-}
\ No newline at end of file
+    
+    @Test
+    public void testBuildFromSorted() {
+	for (int n=0; n < 300; n++) {
+	    TreeMap<Integer, Integer> sorted = new TreeMap<>();
+	    for (int i=0; i < n; i++)
+		sorted.put(i * 2, i);
+	    x = new AVLTreeMap<>(sorted);
+	    assertEquals(n, x.size());
+	    assertEquals(sorted, x);
+	    checkBalance(x.root);
+	    assertEquals(0, x.rotations);
+	    x.put(-1, -1);
+	    x.remove(n);
+	    checkBalance(x.root);
+	}
+    }
+    
+    @Test
+    public void testPutAllSortedMap() {
+	TreeMap<Integer, Integer> sorted = new TreeMap<>();
+	for (int i=0; i < 1000; i++)
+	    sorted.put(i, i);
+	x.putAll(sorted);
+	assertEquals(sorted, x);
+	assertEquals(0, x.rotations);
+	checkBalance(x.root);
+	
+	// not empty, falls back to put()
+	TreeMap<Integer, Integer> more = new TreeMap<>();
+	for (int i=1000; i < 1100; i++)
+	    more.put(i, i);
+	x.putAll(more);
+	assertEquals(1100, x.size());
+	checkBalance(x.root);
+    }
+    
+    @Test
+    public void testPutAllSorted() {
+	Random r = new Random(3);
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	for (int i=0; i < 2000; i++) {
+	    int key = r.nextInt(100000);
+	    x.put(key, key);
+	    expected.put(key, key);
+	}
+	for (int batch=0; batch < 20; batch++) {
+	    TreeMap<Integer, Integer> sorted = new TreeMap<>();
+	    for (int i=0; i < 500; i++)
+		sorted.put(r.nextInt(100000), -batch);
+	    if (batch % 2 == 0) {
+		x.putAllSorted(sorted.entrySet().iterator());
+	    } else {
+		Integer[] keys = sorted.keySet().toArray(new Integer[0]);
+		Integer[] values = sorted.values().toArray(new Integer[0]);
+		x.putAllSorted(keys, values);
+	    }
+	    expected.putAll(sorted);
+	    assertEquals(expected.size(), x.size());
+	    checkBalance(x.root);
+	}
+	assertEquals(expected, x);
+    }
+
+    @Test
+    public void testPutAllSortedOutOfOrder() {
+	Integer[] keys = {5, 9, 2, 7, 7, 1, 8};
+	Integer[] values = {50, 90, 20, 70, 71, 10, 80};
+	x.putAllSorted(keys, values);
+	assertEquals(6, x.size());
+	assertEquals((Integer) 71, x.get(7));
+	assertEquals("[1, 2, 5, 7, 8, 9]", x.keySet().toString());
+	checkBalance(x.root);
+    }
+    
+    @Test
+    public void testJoin() {
+	AVLTreeMap<Integer, Integer> right = new AVLTreeMap<>();
+	for (int i=0; i < 1000; i++)
+	    x.put(i, i);
+	for (int i=1001; i < 1010; i++)
+	    right.put(i, i);
+	x.join(1000, 1000, right);
+	assertEquals(1010, x.size());
+	assertEquals(0, right.size());
+	assertNull(x.root.parent);
+	checkBalance(x.root);
+	for (int i=0; i < 1010; i++)
+	    assertEquals((Integer) i, x.get(i));
+	try {
+	    x.join(5, 5, right);
+	    fail();
+	} catch (IllegalArgumentException expected) {
+	}
+    }
+
+    @Test
+    public void testSplit() {
+	Random r = new Random(11);
+	for (int round=0; round < 50; round++) {
+	    x.clear();
+	    TreeMap<Integer, Integer> expected = new TreeMap<>();
+	    int n = r.nextInt(300);
+	    for (int i=0; i < n; i++) {
+		int key = r.nextInt(1000);
+		x.put(key, i);
+		expected.put(key, i);
+	    }
+	    int cut = r.nextInt(1000);
+	    AVLTreeMap<Integer, Integer> tail = x.split(cut);
+	    checkBalance(x.root);
+	    checkBalance(tail.root);
+	    assertEquals(expected.headMap(cut), x);
+	    assertEquals(expected.tailMap(cut), tail);
+	    assertEquals(expected.headMap(cut).size(), x.size());
+	    assertEquals(expected.tailMap(cut).size(), tail.size());
+	}
+    }
+
+    @Test
+    public void testSetOperationsMatchTreeMap() {
+	Random r = new Random(5);
+	int[][] sizes = { { 0, 10 }, { 10, 0 }, { 100, 100 }, { 10, 5000 }, { 5000, 10 }, { 20000, 30000 } };
+	for (int[] size : sizes) {
+	    for (int op=0; op < 3; op++) {
+		TreeMap<Integer, Integer> a = new TreeMap<>(), b = new TreeMap<>();
+		for (int i=0; i < size[0]; i++)
+		    a.put(r.nextInt(4 * size[0] + 4 * size[1]), 1);
+		for (int i=0; i < size[1]; i++)
+		    b.put(r.nextInt(4 * size[0] + 4 * size[1]), 2);
+		x.clear();
+		x.putAll(a);
+		AVLTreeMap<Integer, Integer> y = new AVLTreeMap<>(b);
+		if (op == 0) {
+		    x.union(y);
+		    a.putAll(b);
+		} else if (op == 1) {
+		    x.intersection(y);
+		    a.keySet().retainAll(b.keySet());
+		} else {
+		    x.difference(y);
+		    a.keySet().removeAll(b.keySet());
+		}
+		assertEquals(0, y.size());
+		assertEquals(a.size(), x.size());
+		assertEquals(a, x);
+		checkBalance(x.root);
+		if (x.root != null)
+		    assertNull(x.root.parent);
+	    }
+	}
+    }
+    
+    // returns the height of the subtree
+    private int checkBalance(AVLTreeMap.Entry<Integer, Integer> node) {
+	if (node == null)
+	    return -1;
+	if (node.left != null)
+	    assertTrue(node.left.parent == node);
+	if (node.right != null)
+	    assertTrue(node.right.parent == node);
+	int leftHeight = checkBalance(node.left);
+	int rightHeight = checkBalance(node.right);
+	assertEquals(rightHeight - leftHeight, node.balance);
+	assertTrue(Math.abs(node.balance) <= 1);
+	return 1 + Math.max(leftHeight, rightHeight);
+    }
+    
+    @Test
+    public void testNavigableViewsMatchTreeMap() {
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	Random r = new Random(3);
+	for (int i=0; i < 500; i++) {
+	    int key = r.nextInt(1000);
+	    x.put(key, i);
+	    expected.put(key, i);
+	}
+	assertEquals(expected.firstKey(), x.firstKey());
+	assertEquals(expected.lastKey(), x.lastKey());
+	assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(x.keySet()));
+	assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(x.values()));
+	assertEquals(new ArrayList<>(expected.descendingKeySet()), new ArrayList<>(x.descendingKeySet()));
+	for (int i=0; i < 200; i++) {
+	    int lo = r.nextInt(1100) - 50;
+	    int hi = lo + r.nextInt(300);
+	    boolean loInclusive = r.nextBoolean(), hiInclusive = r.nextBoolean();
+	    assertSameView(expected.subMap(lo, loInclusive, hi, hiInclusive), x.subMap(lo, loInclusive, hi, hiInclusive));
+	    assertSameView(expected.headMap(hi, hiInclusive), x.headMap(hi, hiInclusive));
+	    assertSameView(expected.tailMap(lo, loInclusive), x.tailMap(lo, loInclusive));
+	    assertSameView(expected.descendingMap().subMap(hi, hiInclusive, lo, loInclusive),
+		    x.descendingMap().subMap(hi, hiInclusive, lo, loInclusive));
+	}
+    }
+    
+    @Test
+    public void testSubMapWritesThrough() {
+	for (int i=0; i < 100; i++)
+	    x.put(i, i);
+	NavigableMap<Integer, Integer> sub = x.subMap(20, true, 40, false);
+	assertEquals(20, sub.size());
+	for (Iterator<Integer> it = sub.keySet().iterator(); it.hasNext();)
+	    if (it.next() % 2 == 0)
+		it.remove();
+	assertEquals(10, sub.size());
+	assertEquals(90, x.size());
+	assertFalse(x.containsKey(20));
+	assertTrue(x.containsKey(21));
+	
+	for (Iterator<Integer> it = sub.descendingKeySet().iterator(); it.hasNext();)
+	    if (it.next() > 30)
+		it.remove();
+	assertEquals(Integer.valueOf(29), sub.lastKey());
+	
+	assertEquals(Integer.valueOf(21), sub.pollFirstEntry().getKey());
+	assertEquals(Integer.valueOf(29), sub.pollLastEntry().getKey());
+	sub.put(22, -22);
+	assertEquals(Integer.valueOf(-22), x.get(22));
+	try {
+	    sub.put(40, 40);
+	    fail();
+	} catch (IllegalArgumentException expected) {
+	}
+	sub.clear();
+	assertTrue(sub.isEmpty());
+	assertEquals(Integer.valueOf(19), x.lowerKey(40));
+	checkBalance(x.root);
+    }
+    
+    @Test
+    public void testSpliteratorSplitsInOrder() {
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	Random r = new Random(7);
+	for (int i=0; i < 1000; i++) {
+	    int k = r.nextInt(5000);
+	    expected.put(k, -k);
+	    x.put(k, -k);
+	}
+	Spliterator<Map.Entry<Integer, Integer>> s = x.entrySet().spliterator();
+	assertTrue(s.hasCharacteristics(Spliterator.SIZED | Spliterator.SORTED | Spliterator.DISTINCT));
+	assertEquals(expected.size(), s.getExactSizeIfKnown());
+	Spliterator<Map.Entry<Integer, Integer>> prefix = s.trySplit();
+	assertNotNull(prefix);
+	assertFalse(prefix.hasCharacteristics(Spliterator.SIZED));
+	assertFalse(s.hasCharacteristics(Spliterator.SIZED));
+	
+	List<Map.Entry<Integer, Integer>> entries = new ArrayList<>();
+	splitAndCollect(prefix, entries);
+	splitAndCollect(s, entries);
+	assertEquals(new ArrayList<>(expected.entrySet()), entries);
+	
+	List<Integer> keys = new ArrayList<>();
+	splitAndCollect(x.keySet().spliterator(), keys);
+	assertEquals(new ArrayList<>(expected.keySet()), keys);
+	keys.clear();
+	splitAndCollect(x.descendingKeySet().spliterator(), keys);
+	assertEquals(new ArrayList<>(expected.descendingKeySet()), keys);
+	List<Integer> values = new ArrayList<>();
+	splitAndCollect(x.values().spliterator(), values);
+	assertEquals(new ArrayList<>(expected.values()), values);
+	keys.clear();
+	splitAndCollect(x.subMap(1000, 2000).keySet().spliterator(), keys);
+	assertEquals(new ArrayList<>(expected.subMap(1000, 2000).keySet()), keys);
+    }
+    
+    @Test
+    public void testParallelStreams() {
+	long sum = 0;
+	for (int i=0; i < 100000; i++) {
+	    x.put(i, i);
+	    sum += i;
+	}
+	assertEquals(sum, x.entrySet().parallelStream().mapToLong(Map.Entry::getValue).sum());
+	assertEquals(sum, x.keySet().parallelStream().mapToLong(Integer::longValue).sum());
+	assertEquals(sum, x.values().parallelStream().mapToLong(Integer::longValue).sum());
+	assertEquals(50000, x.keySet().parallelStream().filter(k -> k % 2 == 0).count());
+	assertEquals(new ArrayList<>(x.keySet()), x.keySet().parallelStream().collect(Collectors.toList()));
+    }
+    
+    private static <T> void splitAndCollect(Spliterator<T> s, List<T> out) {
+	Spliterator<T> prefix = s.trySplit();
+	if (prefix != null)
+	    splitAndCollect(prefix, out);
+	if (s.tryAdvance(out::add))
+	    s.forEachRemaining(out::add);
+	assertFalse(s.tryAdvance(out::add));
+    }
+    
+    private static void assertSameView(NavigableMap<Integer, Integer> expected, NavigableMap<Integer, Integer> actual) {
+	assertEquals(expected.size(), actual.size());
+	assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(actual.entrySet()));
+	assertEquals(new ArrayList<>(expected.descendingKeySet()), new ArrayList<>(actual.descendingKeySet()));
+	if (expected.isEmpty()) {
+	    assertTrue(actual.isEmpty());
+	    assertNull(actual.firstEntry());
+	    return;
+	}
+	assertEquals(expected.firstKey(), actual.firstKey());
+	assertEquals(expected.lastKey(), actual.lastKey());
+	int mid = (expected.firstKey() + expected.lastKey()) / 2;
+	assertEquals(expected.floorKey(mid), actual.floorKey(mid));
+	assertEquals(expected.ceilingKey(mid), actual.ceilingKey(mid));
+	assertEquals(expected.lowerKey(mid), actual.lowerKey(mid));
+	assertEquals(expected.higherKey(mid), actual.higherKey(mid));
+	assertEquals(expected.containsKey(mid), actual.containsKey(mid));
+    }
+
+    @Test
+    public void testCloneKeepsShape() {
+	Random r = new Random(17);
+	for (int i=0; i < 5000; i++)
+	    x.put(r.nextInt(10000), i);
+	for (int i=0; i < 2000; i++)
+	    x.remove(r.nextInt(10000));
+	AVLTreeMap<Integer, Integer> y = x.clone();
+	assertSameTree(x.root, y.root, null);
+	assertEquals(x.size(), y.size());
+	assertEquals(x, y);
+	TreeMap<Integer, Integer> before = new TreeMap<>(x);
+	for (int i=0; i < 1000; i++) {
+	    y.remove(r.nextInt(10000));
+	    y.put(r.nextInt(10000), -i);
+	}
+	assertEquals(before, x);
+	assertTrue(new AVLTreeMap<Integer, Integer>().clone().isEmpty());
+    }
+
+    private static void assertSameTree(AVLTreeMap.Entry<Integer, Integer> a, AVLTreeMap.Entry<Integer, Integer> b, AVLTreeMap.Entry<Integer, Integer> parent) {
+	if (a == null) {
+	    assertNull(b);
+	    return;
+	}
+	assertTrue(a != b);
+	assertEquals(a.key, b.key);
+	assertEquals(a.value, b.value);
+	assertEquals(a.balance, b.balance);
+	assertTrue(b.parent == parent);
+	assertSameTree(a.left, b.left, b);
+	assertSameTree(a.right, b.right, b);
+    }
+
+    @Test
+    public void testWriteToReadFrom() throws IOException {
+	Random r = new Random(23);
+	for (int i=0; i < 3000; i++)
+	    x.put(r.nextInt(), i);
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	x.writeTo(new DataOutputStream(bytes), Codec.INT, Codec.INT);
+	assertEquals(4 + 8 * x.size(), bytes.size());
+	CountingComparator<Integer> comparisons = new CountingComparator<>();
+	AVLTreeMap<Integer, Integer> y = new AVLTreeMap<>(comparisons);
+	y.put(1, 1);
+	y.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), Codec.INT, Codec.INT);
+	assertEquals(1, comparisons.comparisons());
+	assertEquals(x, y);
+	checkBalance(y.root);
+	assertEquals(31 - Integer.numberOfLeadingZeros(y.size()), y.treeHeight());
+    }
+
+    @Test
+    public void testWriteToReadFromStrings() throws IOException {
+	AVLTreeMap<String, Long> a = new AVLTreeMap<>(Comparator.reverseOrder());
+	for (long i=0; i < 1000; i++)
+	    a.put(Long.toString(i * 7919 % 1000, 36) + "\u00e9\u4e2d", i);
+	a.put("", -1L);
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	a.writeTo(new DataOutputStream(bytes), Codec.STRING, Codec.LONG);
+	AVLTreeMap<String, Long> b = new AVLTreeMap<>(Comparator.reverseOrder());
+	b.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), Codec.STRING, Codec.LONG);
+	assertEquals(a, b);
+	assertEquals(new ArrayList<>(a.keySet()), new ArrayList<>(b.keySet()));
+    }
+
+    @Test
+    public void testReadFromTruncatedLeavesMapEmpty() throws IOException {
+	for (int i=0; i < 100; i++)
+	    x.put(i, i);
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	x.writeTo(new DataOutputStream(bytes), Codec.INT, Codec.INT);
+	byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 1);
+	try {
+	    x.readFrom(new DataInputStream(new ByteArrayInputStream(truncated)), Codec.INT, Codec.INT);
+	    fail();
+	} catch (EOFException e) {
+	}
+	assertTrue(x.isEmpty());
+	assertNull(x.root);
+	x.put(5, 5);
+	assertEquals(1, x.size());
+    }
+}
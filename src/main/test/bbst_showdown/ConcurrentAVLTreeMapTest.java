@@ -0,0 +1,297 @@
+package bbst_showdown;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrentAVLTreeMapTest {
+
+    ConcurrentAVLTreeMap<Integer, Integer> x = new ConcurrentAVLTreeMap<>();
+    
+    @Before
+    public void setup(){
+	x.clear();
+    }
+    
+    @Test
+    public void testRandomOpsMatchTreeMap() {
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	Random r = new Random(11);
+	for (int i=0; i < 20000; i++) {
+	    int k = r.nextInt(2000);
+	    if (r.nextInt(3) == 0)
+		assertEquals(expected.remove(k), x.remove(k));
+	    else
+		assertEquals(expected.put(k, i), x.put(k, i));
+	    if (i % 1000 == 0)
+		checkTree(x.rootHolder.right, x.rootHolder);
+	}
+	assertEquals(expected.size(), x.size());
+	assertEquals(expected, x);
+	assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(x.entrySet()));
+	assertEquals(expected.firstKey(), x.firstKey());
+	assertEquals(expected.ceilingKey(1000), x.ceilingKey(1000));
+	assertEquals(expected.higherKey(1000), x.higherKey(1000));
+	checkTree(x.rootHolder.right, x.rootHolder);
+	
+	x.clear();
+	assertTrue(x.isEmpty());
+	assertEquals(0, x.size());
+	assertNull(x.rootHolder.right);
+    }
+    
+    @Test
+    public void testNavigationMatchesSkipList() {
+	ConcurrentSkipListMap<Integer, Integer> expected = new ConcurrentSkipListMap<>();
+	Random r = new Random(12);
+	for (int i=0; i < 5000; i++) {
+	    int k = r.nextInt(1000);
+	    // removes leave routing nodes for the navigation to skip
+	    if (r.nextInt(3) == 0)
+		assertEquals(expected.remove(k), x.remove(k));
+	    else
+		assertEquals(expected.put(k, i), x.put(k, i));
+	}
+	checkNavigation(expected, x, r);
+	checkNavigation(expected.descendingMap(), x.descendingMap(), r);
+	for (int i=0; i < 50; i++) {
+	    int from = r.nextInt(1100) - 50, to = from + r.nextInt(300);
+	    boolean fromInclusive = r.nextBoolean(), toInclusive = r.nextBoolean();
+	    checkNavigation(expected.subMap(from, fromInclusive, to, toInclusive),
+		    x.subMap(from, fromInclusive, to, toInclusive), r);
+	    checkNavigation(expected.headMap(to, toInclusive), x.headMap(to, toInclusive), r);
+	    checkNavigation(expected.tailMap(from, fromInclusive), x.tailMap(from, fromInclusive), r);
+	    checkNavigation(expected.descendingMap().headMap(from, fromInclusive),
+		    x.descendingMap().headMap(from, fromInclusive), r);
+	    checkNavigation(expected.descendingMap().subMap(to, toInclusive, from, fromInclusive).tailMap(to - (to - from) / 2),
+		    x.descendingMap().subMap(to, toInclusive, from, fromInclusive).tailMap(to - (to - from) / 2), r);
+	}
+	checkTree(x.rootHolder.right, x.rootHolder);
+    }
+    
+    @Test
+    public void testViewsWriteThrough() {
+	for (int i=0; i < 100; i++)
+	    x.put(i, i);
+	ConcurrentNavigableMap<Integer, Integer> sub = x.subMap(10, 20);
+	assertEquals(10, sub.size());
+	assertEquals(Integer.valueOf(15), sub.put(15, 150));
+	assertEquals(Integer.valueOf(150), x.get(15));
+	try {
+	    sub.put(20, 20);
+	    fail();
+	} catch (IllegalArgumentException expected) {
+	}
+	try {
+	    sub.subMap(5, 15);
+	    fail();
+	} catch (IllegalArgumentException expected) {
+	}
+	assertNull(sub.get(50));
+	assertNull(sub.remove(50));
+	assertEquals(Integer.valueOf(50), x.get(50));
+	assertEquals(Integer.valueOf(10), sub.pollFirstEntry().getKey());
+	assertEquals(Integer.valueOf(19), sub.descendingMap().pollFirstEntry().getKey());
+	assertFalse(x.containsKey(10));
+	assertFalse(x.containsKey(19));
+	sub.keySet().remove(12);
+	assertFalse(x.containsKey(12));
+	sub.clear();
+	assertTrue(sub.isEmpty());
+	assertEquals(100 - 10, x.size());
+	assertEquals(Integer.valueOf(9), x.lowerKey(20));
+	assertEquals(Integer.valueOf(0), x.pollFirstEntry().getKey());
+	assertEquals(Integer.valueOf(99), x.pollLastEntry().getKey());
+	assertEquals(Integer.valueOf(98), x.lastKey());
+	assertEquals(Integer.valueOf(98), x.descendingKeySet().first());
+	assertEquals(Collections.reverseOrder(), x.descendingMap().comparator());
+    }
+    
+    private void checkNavigation(NavigableMap<Integer, Integer> expected, NavigableMap<Integer, Integer> actual,
+	    Random r) {
+	assertEquals(expected, actual);
+	assertEquals(expected.size(), actual.size());
+	assertEquals(expected.isEmpty(), actual.isEmpty());
+	assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+	assertEquals(new ArrayList<>(expected.descendingKeySet()), new ArrayList<>(actual.descendingKeySet()));
+	assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(actual.values()));
+	assertEquals(expected.firstEntry(), actual.firstEntry());
+	assertEquals(expected.lastEntry(), actual.lastEntry());
+	if (!expected.isEmpty()) {
+	    assertEquals(expected.firstKey(), actual.firstKey());
+	    assertEquals(expected.lastKey(), actual.lastKey());
+	}
+	for (int i=0; i < 200; i++) {
+	    int k = r.nextInt(1200) - 100;
+	    assertEquals(expected.lowerEntry(k), actual.lowerEntry(k));
+	    assertEquals(expected.floorEntry(k), actual.floorEntry(k));
+	    assertEquals(expected.ceilingEntry(k), actual.ceilingEntry(k));
+	    assertEquals(expected.higherEntry(k), actual.higherEntry(k));
+	    assertEquals(expected.lowerKey(k), actual.lowerKey(k));
+	    assertEquals(expected.floorKey(k), actual.floorKey(k));
+	    assertEquals(expected.ceilingKey(k), actual.ceilingKey(k));
+	    assertEquals(expected.higherKey(k), actual.higherKey(k));
+	    assertEquals(expected.get(k), actual.get(k));
+	    assertEquals(expected.navigableKeySet().ceiling(k), actual.navigableKeySet().ceiling(k));
+	}
+    }
+    
+    @Test
+    public void testConditionalUpdates() {
+	assertNull(x.putIfAbsent(1, 10));
+	assertEquals(Integer.valueOf(10), x.putIfAbsent(1, 11));
+	assertNull(x.replace(2, 20));
+	assertFalse(x.containsKey(2));
+	assertEquals(Integer.valueOf(10), x.replace(1, 12));
+	assertFalse(x.replace(1, 10, 13));
+	assertTrue(x.replace(1, 12, 13));
+	assertFalse(x.remove(1, 12));
+	assertTrue(x.remove(1, 13));
+	assertTrue(x.isEmpty());
+    }
+    
+    @Test
+    public void testRoutingNodesAreUnlinked() {
+	for (int i=0; i < 100; i++)
+	    x.put(i, i);
+	// removing inner nodes leaves routing nodes behind until their subtrees
+	// shrink, then the tree must be a plain AVL tree again
+	for (int i=0; i < 100; i += 3)
+	    x.remove(i);
+	checkTree(x.rootHolder.right, x.rootHolder);
+	for (int i=1; i < 100; i += 3)
+	    x.remove(i);
+	checkTree(x.rootHolder.right, x.rootHolder);
+	assertEquals(33, x.size());
+	for (Map.Entry<Integer, Integer> e : x.entrySet())
+	    assertEquals(2, e.getKey() % 3);
+    }
+    
+    @Test
+    public void testConcurrentUpdatesAndReads() throws InterruptedException {
+	final int threads = 4, perThread = 20000;
+	final AtomicReference<Throwable> failure = new AtomicReference<>();
+	List<Thread> workers = new ArrayList<>();
+	for (int t=0; t < threads; t++) {
+	    final int id = t;
+	    workers.add(new Thread(() -> {
+		try {
+		    Random r = new Random(id);
+		    // each writer owns the keys congruent to its id, so the
+		    // expected contents are known without coordination
+		    for (int i=0; i < perThread; i++) {
+			int k = r.nextInt(perThread) * threads + id;
+			x.put(k, k);
+			int gone = r.nextInt(perThread) * threads + id;
+			if ((i & 1) == 0)
+			    x.remove(gone);
+		    }
+		    for (int k=id; k < perThread * threads; k += threads * 2)
+			x.remove(k);
+		} catch (Throwable e) {
+		    failure.compareAndSet(null, e);
+		}
+	    }));
+	    workers.add(new Thread(() -> {
+		try {
+		    Random r = new Random(-id);
+		    for (int i=0; i < perThread * 4; i++) {
+			int k = r.nextInt(perThread * threads);
+			Integer v = x.get(k);
+			if (v != null)
+			    assertEquals(k, v.intValue());
+		    }
+		} catch (Throwable e) {
+		    failure.compareAndSet(null, e);
+		}
+	    }));
+	}
+	for (Thread w : workers)
+	    w.start();
+	for (Thread w : workers)
+	    w.join();
+	if (failure.get() != null)
+	    throw new AssertionError(failure.get());
+	
+	checkTree(x.rootHolder.right, x.rootHolder);
+	int count = 0;
+	Integer previous = null;
+	for (Integer k : x.keySet()) {
+	    if (previous != null)
+		assertTrue(previous < k);
+	    // each writer finished by removing its keys below threads mod 2 * threads
+	    assertTrue(k % (threads * 2) >= threads);
+	    previous = k;
+	    count++;
+	}
+	assertEquals(count, x.size());
+    }
+    
+    @Test
+    public void testBalancedOnceWritersJoin() throws InterruptedException {
+	// contended put/remove on a small key range, then every node's height and
+	// balance is checked with no update in flight
+	final int threads = 8, keys = 512, perThread = 5000;
+	final AtomicReference<Throwable> failure = new AtomicReference<>();
+	for (int round=0; round < 100; round++) {
+	    x.clear();
+	    List<Thread> writers = new ArrayList<>();
+	    for (int t=0; t < threads; t++) {
+		final long seed = round * threads + t;
+		writers.add(new Thread(() -> {
+		    try {
+			Random r = new Random(seed);
+			for (int i=0; i < perThread; i++) {
+			    int k = r.nextInt(keys);
+			    if (r.nextBoolean())
+				x.put(k, k);
+			    else
+				x.remove(k);
+			}
+		    } catch (Throwable e) {
+			failure.compareAndSet(null, e);
+		    }
+		}));
+	    }
+	    for (Thread w : writers)
+		w.start();
+	    for (Thread w : writers)
+		w.join();
+	    if (failure.get() != null)
+		throw new AssertionError(failure.get());
+	    checkTree(x.rootHolder.right, x.rootHolder);
+	}
+    }
+    
+    // returns the height of the subtree
+    private int checkTree(ConcurrentAVLTreeMap.Node<Integer, Integer> node,
+	    ConcurrentAVLTreeMap.Node<Integer, Integer> parent) {
+	if (node == null)
+	    return 0;
+	assertTrue(node.parent == parent);
+	assertFalse(ConcurrentAVLTreeMap.isShrinkingOrUnlinked(node.version));
+	if (node.value == null) // routing nodes only survive with two children
+	    assertTrue(node.left != null && node.right != null);
+	int leftHeight = checkTree(node.left, node);
+	int rightHeight = checkTree(node.right, node);
+	assertTrue(Math.abs(leftHeight - rightHeight) <= 1);
+	assertEquals(1 + Math.max(leftHeight, rightHeight), node.height);
+	return node.height;
+    }
+}
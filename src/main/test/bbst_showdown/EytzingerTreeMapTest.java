@@ -0,0 +1,95 @@
+package bbst_showdown;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class EytzingerTreeMapTest {
+
+    @Test
+    public void testBreadthFirstLayout() {
+	AVLTreeMap<Integer, Integer> x = new AVLTreeMap<>();
+	for (int i=1; i <= 6; i++)
+	    x.put(i, i);
+	EytzingerTreeMap<Integer, Integer> f = x.freeze();
+	// complete tree of 6: 4 / 2 6 / 1 3 5
+	assertArrayEquals(new Object[] { null, 4, 2, 6, 1, 3, 5 }, f.keys);
+	assertEquals(2, f.treeHeight());
+    }
+
+    @Test
+    public void testEmpty() {
+	EytzingerTreeMap<Integer, Integer> f = new WAVLTreeMap<Integer, Integer>().freeze();
+	assertEquals(0, f.size());
+	assertNull(f.get(1));
+	assertNull(f.floorKey(1));
+	assertNull(f.ceilingKey(1));
+	assertFalse(f.entrySet().iterator().hasNext());
+    }
+
+    @Test
+    public void testLookupsMatchTreeMap() {
+	Random r = new Random(9);
+	for (int n=0; n < 130; n++) {
+	    TreeMap<Integer, Integer> expected = new TreeMap<>();
+	    TreeMapRedBlack<Integer, Integer> x = new TreeMapRedBlack<>();
+	    for (int i=0; i < n; i++) {
+		int key = 2 * r.nextInt(500);
+		expected.put(key, i);
+		x.put(key, i);
+	    }
+	    EytzingerTreeMap<Integer, Integer> f = x.freeze();
+	    assertEquals(expected, f);
+	    assertEquals(new ArrayList<>(expected.entrySet()), toList(f.entrySet().iterator()));
+	    for (int key=-1; key <= 1001; key++) {
+		assertEquals(expected.get(key), f.get(key));
+		assertEquals(expected.floorKey(key), f.floorKey(key));
+		assertEquals(expected.ceilingKey(key), f.ceilingKey(key));
+		assertEquals(expected.floorEntry(key), f.floorEntry(key));
+		assertEquals(expected.ceilingEntry(key), f.ceilingEntry(key));
+	    }
+	    if (n > 0) {
+		assertEquals(expected.firstKey(), f.firstKey());
+		assertEquals(expected.lastKey(), f.lastKey());
+	    }
+	}
+    }
+
+    @Test
+    public void testRangeIteration() {
+	AVLTreeMap<Integer, Integer> x = new AVLTreeMap<>();
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	for (int i=0; i < 1000; i += 3) {
+	    x.put(i, i);
+	    expected.put(i, i);
+	}
+	EytzingerTreeMap<Integer, Integer> f = x.freeze();
+	Random r = new Random(4);
+	for (int i=0; i < 200; i++) {
+	    int from = r.nextInt(1100) - 50, to = from + r.nextInt(200);
+	    assertEquals(new ArrayList<>(expected.subMap(from, to).entrySet()), toList(f.entries(from, to)));
+	}
+	assertEquals(Collections.emptyList(), toList(f.entries(5, 5)));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+	AVLTreeMap<Integer, Integer> x = new AVLTreeMap<>();
+	x.put(1, 1);
+	x.freeze().put(2, 2);
+    }
+
+    private static <T> List<T> toList(Iterator<T> it) {
+	List<T> list = new ArrayList<>();
+	while (it.hasNext())
+	    list.add(it.next());
+	return list;
+    }
+}
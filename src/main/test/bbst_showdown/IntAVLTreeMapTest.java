@@ -0,0 +1,114 @@
+package bbst_showdown;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class IntAVLTreeMapTest {
+
+    IntAVLTreeMap<Integer> x = new IntAVLTreeMap<>();
+    
+    @Before
+    public void setup(){
+	x.clear();
+    }
+    
+    @Test
+    public void testSameShapeAsAVLTreeMap() {
+	AVLTreeMap<Integer, Integer> y = new AVLTreeMap<>();
+	Integer [] a = {477,1193,2130,398,1393,946,422,1381,1767,830,570,1085,741,598,1658,1801,487,1921,1918,258,135,975,1870};
+	for (int i=0; i < a.length; i++) {
+	    x.put(a[i].intValue(), a[i]);
+	    y.put(a[i], a[i]);
+	}
+	assertEquals(y.rotations, x.rotations);
+	assertEquals(1193, x.root.key);
+	assertEquals(1767, x.root.right.key);
+	assertEquals(1393, x.root.right.left.key);
+	assertEquals(1921, x.root.right.right.key);
+	assertEquals(1870, x.root.right.right.left.key);
+	assertEquals(1801, x.root.right.right.left.left.key);
+	assertEquals(2130, x.root.right.right.right.key);
+    }
+    
+    @Test
+    public void testDeleteMany() {
+	Integer [] a = {477,1193,2130,398,1393,946,422,1381,1767,830,570,1085,741,598,1658,1801,487,1921,1918,258,135,975,1870};
+	for (int i=0; i < a.length; i++)
+	    x.put(a[i].intValue(), a[i]);
+	for (int i=a.length-1; i > 0; i--) {
+	    assertEquals(a[i], x.remove(a[i].intValue()));
+	    if (a[i] == 830)
+		assertEquals(-1, x.root.left.balance);
+	    x.checkInvariants(x.root);
+	}
+	assertEquals(477, x.root.key);
+	assertEquals(0, x.root.balance);
+	assertNull(x.root.left);
+	assertNull(x.root.right);
+    }
+    
+    @Test
+    public void testRandomOpsMatchTreeMap() {
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	Random r = new Random(11);
+	for (int i=0; i < 20000; i++) {
+	    int key = r.nextInt(2000);
+	    if (r.nextBoolean())
+		assertEquals(expected.put(key, i), x.put(key, Integer.valueOf(i)));
+	    else
+		assertEquals(expected.remove(key), x.remove(key));
+	    if (i % 1000 == 0)
+		x.checkInvariants(x.root);
+	}
+	assertNull(x.root == null ? null : x.root.parent);
+	assertEquals(x.treeHeight() + 1, x.checkInvariants(x.root));
+	assertEquals(expected.size(), x.size());
+	assertEquals(expected, x);
+	assertTrue(x.treeHeight() <= 1.45 * Math.log(x.size() + 2) / Math.log(2));
+	assertEquals(expected.firstKey().intValue(), x.firstKey());
+	assertEquals(expected.lastKey().intValue(), x.lastKey());
+	for (int key=-1; key <= 2001; key++) {
+	    assertEquals(expected.floorKey(key), keyOrNull(x.floorEntry(key)));
+	    assertEquals(expected.ceilingKey(key), keyOrNull(x.ceilingEntry(key)));
+	    assertEquals(expected.lowerKey(key), keyOrNull(x.lowerEntry(key)));
+	    assertEquals(expected.higherKey(key), keyOrNull(x.higherEntry(key)));
+	}
+    }
+    
+    @Test
+    public void testIteratorRemove() {
+	for (int i=0; i < 100; i++)
+	    x.put(i, Integer.valueOf(i));
+	for (java.util.Iterator<Map.Entry<Integer, Integer>> it = x.entrySet().iterator(); it.hasNext();)
+	    if (it.next().getKey() % 2 == 0)
+		it.remove();
+	assertEquals(50, x.size());
+	int expected = 1;
+	for (Map.Entry<Integer, Integer> e : x.entrySet()) {
+	    assertEquals(expected, (int) e.getKey());
+	    expected += 2;
+	}
+    }
+    
+    @Test
+    public void testBoxedMapMethods() {
+	Map<Integer, String> m = new IntAVLTreeMap<>();
+	m.put(5, "five");
+	assertTrue(m.containsKey(5));
+	assertEquals("five", m.get(5));
+	assertEquals("five", m.remove(5));
+	assertTrue(m.isEmpty());
+    }
+    
+    private static Integer keyOrNull(IntAVLTreeMap.Entry<?> e) {
+	return e == null ? null : e.getKey();
+    }
+}
@@ -0,0 +1,166 @@
+package bbst_showdown;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedLongAVLTreeMapTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    Path path;
+
+    @Before
+    public void setup() {
+	path = folder.getRoot().toPath().resolve("tree");
+    }
+
+    @Test
+    public void testReopenCommitted() throws IOException {
+	TreeMap<Long, Long> expected = new TreeMap<>();
+	Random r = new Random(3);
+	try (MappedLongAVLTreeMap x = MappedLongAVLTreeMap.open(path, 256)) {
+	    for (int i=0; i < 5000; i++) {
+		long key = r.nextInt(3000);
+		if (r.nextInt(3) > 0) {
+		    x.put(key, i);
+		    expected.put(key, (long) i);
+		} else {
+		    x.remove(key);
+		    expected.remove(key);
+		}
+		if (i % 1000 == 999)
+		    x.commit();
+	    }
+	    assertEquals(5, x.commits());
+	}
+	try (MappedLongAVLTreeMap x = MappedLongAVLTreeMap.open(path, 16)) {
+	    assertEquals(255, x.slabMask);
+	    assertEquals(expected, x);
+	    assertTrue(x.treeHeight() <= 1.45 * Math.log(x.size() + 2) / Math.log(2));
+	    // the free list survives too
+	    for (int i=0; i < 100; i++)
+		x.put(10000 + i, i);
+	    assertEquals(expected.size() + 100, x.size());
+	}
+    }
+
+    @Test
+    public void testCommitKeepsMappings() throws IOException {
+	TreeMap<Long, Long> expected = new TreeMap<>();
+	Random r = new Random(4);
+	try (MappedLongAVLTreeMap x = MappedLongAVLTreeMap.open(path, 16)) {
+	    for (long i=0; i < 200; i++) {
+		x.put(i, i);
+		expected.put(i, i);
+	    }
+	    x.commit();
+	    ByteBuffer[] mapped = x.slabs.clone();
+	    // every commit writes into the same slabs, none is mapped again
+	    for (int i=0; i < 2000; i++) {
+		long key = r.nextInt(200);
+		x.put(key, i);
+		expected.put(key, (long) i);
+		x.commit();
+	    }
+	    for (int i=0; i < x.slabCount; i++)
+		assertSame(mapped[i], x.slabs[i]);
+	    assertEquals(expected, x);
+	}
+	try (MappedLongAVLTreeMap x = MappedLongAVLTreeMap.open(path)) {
+	    assertEquals(expected, x);
+	}
+    }
+
+    @Test
+    public void testUncommittedUpdatesAreLost() throws IOException {
+	try (MappedLongAVLTreeMap x = MappedLongAVLTreeMap.open(path, 16)) {
+	    for (long i=0; i < 100; i++)
+		x.put(i, i);
+	    x.commit();
+	    for (long i=0; i < 50; i++)
+		x.remove(i);
+	    x.put(7, 70);
+	    x.put(1000, 1000);
+	}
+	try (MappedLongAVLTreeMap x = MappedLongAVLTreeMap.open(path)) {
+	    assertEquals(100, x.size());
+	    assertEquals(7, x.get(7, -1));
+	    assertFalse(x.containsKey(1000));
+	    assertEquals(1, x.commits());
+	}
+    }
+
+    @Test
+    public void testCrashAfterLogIsReplayed() throws IOException {
+	try (MappedLongAVLTreeMap x = MappedLongAVLTreeMap.open(path, 16)) {
+	    for (long i=0; i < 100; i++)
+		x.put(i, i);
+	    x.commit();
+	    for (long i=100; i < 300; i++)
+		x.put(i, -i);
+	    x.writeLog(); // the process dies before the file is written
+	}
+	assertTrue(Files.size(MappedLongAVLTreeMap.logPath(path)) > 0);
+	try (MappedLongAVLTreeMap x = MappedLongAVLTreeMap.open(path)) {
+	    assertEquals(300, x.size());
+	    assertEquals(-299, x.get(299, 0));
+	    assertEquals(2, x.commits());
+	}
+	assertEquals(0, Files.size(MappedLongAVLTreeMap.logPath(path)));
+    }
+
+    @Test
+    public void testTornLogIsDiscarded() throws IOException {
+	try (MappedLongAVLTreeMap x = MappedLongAVLTreeMap.open(path, 16)) {
+	    for (long i=0; i < 100; i++)
+		x.put(i, i);
+	    x.commit();
+	    for (long i=0; i < 100; i++)
+		x.remove(i);
+	    x.writeLog();
+	}
+	Path log = MappedLongAVLTreeMap.logPath(path);
+	try (FileChannel ch = FileChannel.open(log, StandardOpenOption.WRITE)) {
+	    ch.truncate(ch.size() - 3); // the crash came before the trailer reached the disk
+	}
+	try (MappedLongAVLTreeMap x = MappedLongAVLTreeMap.open(path)) {
+	    assertEquals(100, x.size());
+	    assertEquals(1, x.commits());
+	}
+    }
+
+    @Test
+    public void testCorruptHeaderIsRejected() throws IOException {
+	try (MappedLongAVLTreeMap x = MappedLongAVLTreeMap.open(path)) {
+	    x.put(1, 1);
+	    x.commit();
+	}
+	try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+	    ch.write(ByteBuffer.wrap(new byte[] { 9 }), 21);
+	}
+	try {
+	    MappedLongAVLTreeMap.open(path).close();
+	    fail();
+	} catch (IOException e) {
+	    assertTrue(e.getMessage().contains("corrupt"));
+	}
+    }
+}
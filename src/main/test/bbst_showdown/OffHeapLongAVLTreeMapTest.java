@@ -0,0 +1,132 @@
+package bbst_showdown;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapLongAVLTreeMapTest {
+
+    OffHeapLongAVLTreeMap x = new OffHeapLongAVLTreeMap(16);
+
+    @Before
+    public void setup(){
+	x.clear();
+    }
+
+    @Test
+    public void testSameShapeAsAVLTreeMap() {
+	AVLTreeMap<Long, Long> y = new AVLTreeMap<>();
+	long [] a = {477,1193,2130,398,1393,946,422,1381,1767,830,570,1085,741,598,1658,1801,487,1921,1918,258,135,975,1870};
+	for (int i=0; i < a.length; i++) {
+	    x.put(a[i], a[i]);
+	    y.put(a[i], a[i]);
+	}
+	assertEquals(y.rotations, x.rotations);
+	assertEquals(1193, x.key(x.root));
+	assertEquals(1767, x.key(x.right(x.root)));
+	assertEquals(1393, x.key(x.left(x.right(x.root))));
+	assertEquals(1921, x.key(x.right(x.right(x.root))));
+	assertEquals(1870, x.key(x.left(x.right(x.right(x.root)))));
+	assertEquals(1801, x.key(x.left(x.left(x.right(x.right(x.root))))));
+	assertEquals(2130, x.key(x.right(x.right(x.right(x.root)))));
+    }
+
+    @Test
+    public void testDeleteMany() {
+	long [] a = {477,1193,2130,398,1393,946,422,1381,1767,830,570,1085,741,598,1658,1801,487,1921,1918,258,135,975,1870};
+	for (int i=0; i < a.length; i++)
+	    x.put(a[i], a[i]);
+	for (int i=a.length-1; i > 0; i--) {
+	    assertEquals(a[i], x.get(a[i], -1));
+	    assertTrue(x.remove(a[i]));
+	    if (a[i] == 830)
+		assertEquals(-1, x.balance(x.left(x.root)));
+	}
+	assertEquals(477, x.key(x.root));
+	assertEquals(0, x.balance(x.root));
+	assertEquals(OffHeapLongAVLTreeMap.NIL, x.left(x.root));
+	assertEquals(OffHeapLongAVLTreeMap.NIL, x.right(x.root));
+    }
+
+    @Test
+    public void testRandomOpsMatchTreeMap() {
+	TreeMap<Long, Long> expected = new TreeMap<>();
+	Random r = new Random(11);
+	for (int i=0; i < 20000; i++) {
+	    long key = r.nextInt(2000) - 1000L * Integer.MAX_VALUE;
+	    if (r.nextBoolean())
+		assertEquals(expected.put(key, (long) i), x.put(Long.valueOf(key), Long.valueOf(i)));
+	    else
+		assertEquals(expected.remove(key) != null, x.remove(key));
+	}
+	assertEquals(expected.size(), x.size());
+	assertEquals(expected, x);
+	assertEquals(expected.entrySet(), x.entrySet());
+	assertTrue(x.treeHeight() <= 1.45 * Math.log(x.size() + 2) / Math.log(2));
+	assertEquals(expected.firstKey().longValue(), x.firstKey());
+	assertEquals(expected.lastKey().longValue(), x.lastKey());
+    }
+
+    @Test
+    public void testFreedNodesAreReused() {
+	for (long i=0; i < 100; i++)
+	    x.put(i, -i);
+	assertEquals(100, x.used);
+	assertEquals(7 * 16 * OffHeapLongAVLTreeMap.NODE_BYTES, x.offHeapBytes());
+	for (long i=0; i < 100; i += 2)
+	    assertTrue(x.remove(i));
+	for (long i=1000; i < 1050; i++)
+	    assertTrue(x.put(i, i));
+	assertEquals(100, x.used);
+	assertEquals(OffHeapLongAVLTreeMap.NIL, x.free);
+	assertEquals(100, x.size());
+	assertEquals(-99, x.get(99, 0));
+	assertEquals(-7, x.get(7, 0));
+	assertFalse(x.containsKey(98));
+    }
+
+    @Test
+    public void testPrimitiveAndBoxedMethods() {
+	assertTrue(x.put(5, 50));
+	assertFalse(x.put(5, 51));
+	assertEquals(Long.valueOf(51), x.put(Long.valueOf(5), Long.valueOf(52)));
+	assertEquals(Long.valueOf(52), x.get(Long.valueOf(5)));
+	assertNull(x.get(Long.valueOf(6)));
+	assertEquals(-1, x.get(6, -1));
+	assertTrue(x.containsKey(Long.valueOf(5)));
+	assertEquals(Long.valueOf(52), x.remove(Long.valueOf(5)));
+	assertFalse(x.remove(5));
+	assertEquals(0, x.size());
+    }
+
+    @Test
+    public void testIteratorRemove() {
+	TreeMap<Long, Long> expected = new TreeMap<>();
+	for (long i=0; i < 200; i++) {
+	    x.put(i * 7 % 200, i);
+	    expected.put(i * 7 % 200, i);
+	}
+	Iterator<Map.Entry<Long, Long>> it = x.entrySet().iterator();
+	while (it.hasNext()) {
+	    Map.Entry<Long, Long> e = it.next();
+	    if (e.getKey() % 3 != 0)
+		it.remove();
+	}
+	expected.keySet().removeIf(k -> k % 3 != 0);
+	assertEquals(expected, x);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSlabSizeMustBePowerOfTwo() {
+	new OffHeapLongAVLTreeMap(100);
+    }
+}
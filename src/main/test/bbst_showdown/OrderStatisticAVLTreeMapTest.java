@@ -0,0 +1,130 @@
+package bbst_showdown;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OrderStatisticAVLTreeMapTest {
+
+    OrderStatisticAVLTreeMap<Integer, Integer> x = new OrderStatisticAVLTreeMap<>();
+    
+    @Before
+    public void setup(){
+	x.clear();
+    }
+    
+    @Test
+    public void testSameShapeAsAVLTreeMap() {
+	AVLTreeMap<Integer, Integer> y = new AVLTreeMap<>();
+	Integer [] a = {477,1193,2130,398,1393,946,422,1381,1767,830,570,1085,741,598,1658,1801,487,1921,1918,258,135,975,1870};
+	for (int i=0; i < a.length; i++) {
+	    x.put(a[i], a[i]);
+	    y.put(a[i], a[i]);
+	}
+	assertEquals(y.rotations, x.rotations);
+	assertEquals(Integer.valueOf(1193), x.root.key);
+	assertEquals(Integer.valueOf(1767), x.root.right.key);
+	assertEquals(a.length, x.root.size);
+	checkSizes(x.root);
+    }
+    
+    @Test
+    public void testSelectAndRank() {
+	Integer [] a = {477,1193,2130,398,1393,946,422,1381,1767,830,570,1085,741,598,1658,1801,487,1921,1918,258,135,975,1870};
+	for (int i=0; i < a.length; i++)
+	    x.put(a[i], a[i]);
+	List<Integer> sorted = new ArrayList<>(new TreeMap<>(x).keySet());
+	for (int i=0; i < sorted.size(); i++) {
+	    assertEquals(sorted.get(i), x.select(i));
+	    assertEquals(i, x.rank(sorted.get(i)));
+	    // absent keys rank between their neighbours
+	    assertEquals(i, x.rank(sorted.get(i) - 1));
+	    assertEquals(i + 1, x.rank(sorted.get(i) + 1));
+	}
+	assertEquals(0, x.rank(0));
+	assertEquals(a.length, x.rank(5000));
+	try {
+	    x.select(a.length);
+	    fail();
+	} catch (IndexOutOfBoundsException expected) {
+	}
+	try {
+	    x.select(-1);
+	    fail();
+	} catch (IndexOutOfBoundsException expected) {
+	}
+    }
+    
+    @Test
+    public void testCountInRange() {
+	for (int i=0; i < 100; i += 2)
+	    x.put(i, i);
+	assertEquals(5, x.countInRange(10, 20));
+	assertEquals(6, x.countInRange(10, true, 20, true));
+	assertEquals(4, x.countInRange(10, false, 20, false));
+	assertEquals(5, x.countInRange(9, 19));
+	assertEquals(0, x.countInRange(11, 11));
+	assertEquals(0, x.countInRange(10, false, 10, true));
+	assertEquals(50, x.countInRange(-100, 1000));
+	try {
+	    x.countInRange(20, 10);
+	    fail();
+	} catch (IllegalArgumentException expected) {
+	}
+    }
+    
+    @Test
+    public void testRandomOpsMatchTreeMap() {
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	Random r = new Random(11);
+	for (int i=0; i < 20000; i++) {
+	    int k = r.nextInt(2000);
+	    if (r.nextInt(3) == 0)
+		assertEquals(expected.remove(k), x.remove(k));
+	    else
+		assertEquals(expected.put(k, i), x.put(k, i));
+	    if (i % 500 == 0) {
+		checkSizes(x.root);
+		int lo = r.nextInt(2000), hi = lo + r.nextInt(500);
+		assertEquals(expected.subMap(lo, hi).size(), x.countInRange(lo, hi));
+		assertEquals(expected.headMap(lo).size(), x.rank(lo));
+	    }
+	}
+	assertEquals(expected, x);
+	checkSizes(x.root);
+	
+	int i = 0;
+	for (Iterator<Integer> it = x.keySet().iterator(); it.hasNext(); i++) {
+	    Integer k = it.next();
+	    assertEquals(k, x.select(i));
+	    if (k % 3 == 0) {
+		it.remove();
+		i--;
+	    }
+	}
+	checkSizes(x.root);
+	assertEquals(i, x.size());
+    }
+    
+    // returns the subtree size after checking it matches the recorded one
+    private int checkSizes(OrderStatisticAVLTreeMap.Entry<Integer, Integer> node) {
+	if (node == null)
+	    return 0;
+	if (node.left != null)
+	    assertTrue(node.left.parent == node);
+	if (node.right != null)
+	    assertTrue(node.right.parent == node);
+	int size = 1 + checkSizes(node.left) + checkSizes(node.right);
+	assertEquals(size, node.size);
+	return size;
+    }
+}
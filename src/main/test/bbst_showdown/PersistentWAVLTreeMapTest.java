@@ -0,0 +1,130 @@
+package bbst_showdown;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class PersistentWAVLTreeMapTest {
+
+    PersistentWAVLTreeMap<Integer, Integer> x = new PersistentWAVLTreeMap<>();
+
+    @Test
+    public void testTreeHeight() {
+	x = x.plus(2, 2);
+	assertEquals(0, x.treeHeight());
+	x = x.plus(3, 3);
+	assertEquals(1, x.treeHeight());
+	x = x.plus(1, 1).plus(0, 0);
+	assertEquals(2, x.treeHeight());
+    }
+
+    @Test
+    public void testSameShapeAsWAVLTreeMap() {
+	WAVLTreeMap<Integer, Integer> y = new WAVLTreeMap<>(true);
+	Integer [] a = {477, 1193, 2130,398,1393,946,422,1381,1767,830,570,1085,741,598,1658,1801,487,1921,1918,258,135,975,1870};
+	for (int i=0; i < a.length; i++) {
+	    x = x.plus(a[i], a[i]);
+	    y.put(a[i], a[i]);
+	}
+	assertEquals(y.root.key, x.root.key);
+	assertEquals(y.root.rank, x.root.rank);
+	assertEquals(y.root.right.key, x.root.right.key);
+	assertEquals(y.root.left.key, x.root.left.key);
+    }
+
+    @Test
+    public void testOldVersionsUnchanged() {
+	List<PersistentWAVLTreeMap<Integer, Integer>> versions = new ArrayList<>();
+	for (int i=0; i < 100; i++) {
+	    versions.add(x);
+	    x = x.plus(i, i);
+	}
+	for (int i=0; i < 100; i += 3) {
+	    versions.add(x);
+	    x = x.minus(i);
+	}
+	for (int v=0; v < 100; v++) {
+	    assertEquals(v, versions.get(v).size());
+	    for (int i=0; i < 100; i++)
+		assertEquals(i < v ? (Integer) i : null, versions.get(v).get(i));
+	}
+	assertEquals(66, x.size());
+	assertNull(x.get(99));
+	assertEquals((Integer) 98, x.get(98));
+    }
+
+    @Test
+    public void testUpdatesShareUnchangedSubtrees() {
+	for (int i=0; i < 1023; i++)
+	    x = x.plus(i, i);
+	PersistentWAVLTreeMap<Integer, Integer> y = x.plus(0, -1);
+	assertSame(x.root.right, y.root.right);
+	assertNotSame(x.root.left, y.root.left);
+	assertEquals((Integer) 0, x.get(0));
+	assertEquals((Integer) (-1), y.get(0));
+	assertSame(x, x.plus(5, x.get(5)));
+	assertSame(x, x.minus(5000));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testMapMutatorsUnsupported() {
+	x = x.plus(1, 1);
+	x.put(2, 2);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testEntriesImmutable() {
+	x = x.plus(1, 1);
+	x.entrySet().iterator().next().setValue(2);
+    }
+
+    @Test
+    public void testRandomOps() {
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	Random r = new Random(7);
+	for (int i=0; i < 20000; i++) {
+	    Integer key = r.nextInt(2000);
+	    if (r.nextInt(3) == 0) {
+		x = x.minus(key);
+		expected.remove(key);
+	    } else {
+		x = x.plus(key, i);
+		expected.put(key, i);
+	    }
+	    if (i % 1000 == 0)
+		checkRanks(x.root);
+	}
+	checkRanks(x.root);
+	assertEquals(expected.size(), x.size());
+	assertEquals(expected, x);
+	Iterator<Map.Entry<Integer, Integer>> it = x.entrySet().iterator();
+	for (Map.Entry<Integer, Integer> e : expected.entrySet())
+	    assertEquals(e, it.next());
+	assertFalse(it.hasNext());
+    }
+
+    /**
+     * Checks the WAVL rank rules and returns the rank of the subtree.
+     */
+    private int checkRanks(PersistentWAVLTreeMap.Entry<Integer, Integer> e) {
+	if (e == null)
+	    return -1;
+	int left = checkRanks(e.left), right = checkRanks(e.right);
+	if (e.left != null)
+	    assertTrue(e.left.key < e.key);
+	if (e.right != null)
+	    assertTrue(e.right.key > e.key);
+	assertTrue(e.rank - left == 1 || e.rank - left == 2);
+	assertTrue(e.rank - right == 1 || e.rank - right == 2);
+	if (e.left == null && e.right == null)
+	    assertEquals(0, e.rank);
+	return e.rank;
+    }
+}
@@ -0,0 +1,133 @@
+package bbst_showdown;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TreeCountersTest {
+
+    CountingComparator<Integer> comparator;
+    TreeCounters counters;
+    
+    @Before
+    public void setup(){
+	comparator = new CountingComparator<>();
+	counters = new TreeCounters();
+    }
+    
+    @Test
+    public void testAVLTreeMap() {
+	AVLTreeMap<Integer, Integer> x = new AVLTreeMap<>(comparator);
+	x.setCounters(counters);
+	check(x);
+	assertEquals(x.rotations(), counters.rotations());
+	x.setCounters(null);
+	assertNull(x.counters());
+	long searches = counters.searches();
+	x.get(1);
+	assertEquals(searches, counters.searches());
+    }
+    
+    @Test
+    public void testAVLTreeMapPutAllSorted() {
+	AVLTreeMap<Integer, Integer> x = new AVLTreeMap<>(comparator);
+	x.setCounters(counters);
+	Random r = new Random(7);
+	for (int batch = 0; batch < 50; batch++) {
+	    Integer[] keys = new Integer[200];
+	    for (int i = 0; i < keys.length; i++)
+		keys[i] = r.nextInt(20000);
+	    java.util.Arrays.sort(keys);
+	    boolean wasEmpty = x.isEmpty();
+	    long before = comparator.comparisons(), visited = counters.nodesVisited(), searches = counters.searches();
+	    x.putAllSorted(keys, keys);
+	    // one search per key, except the root of an empty tree
+	    assertEquals(searches + keys.length - (wasEmpty ? 1 : 0), counters.searches());
+	    assertEquals(comparator.comparisons() - before - (wasEmpty ? 1 : 0), counters.nodesVisited() - visited);
+	}
+	assertEquals(x.rotations(), counters.rotations());
+	assertTrue(counters.rotations() > 0);
+	assertTrue(counters.retraceSteps() > 0);
+    }
+    
+    @Test
+    public void testWAVLTreeMap() {
+	WAVLTreeMap<Integer, Integer> x = new WAVLTreeMap<>(comparator);
+	x.setCounters(counters);
+	check(x);
+	assertEquals(x.rotations(), counters.rotations());
+    }
+    
+    @Test
+    public void testTreeMapRedBlack() {
+	TreeMapRedBlack<Integer, Integer> x = new TreeMapRedBlack<>(comparator);
+	x.setCounters(counters);
+	check(x);
+	assertEquals(x.rotations(), counters.rotations());
+    }
+    
+    @Test
+    public void testTreeMapBST() {
+	TreeMapBST<Integer, Integer> x = new TreeMapBST<>(comparator);
+	x.setCounters(counters);
+	for (int i=0; i < 100; i++)
+	    x.put(i, i);
+	// every insert into a chain compares with all the keys before it, the
+	// first one only type checks its key
+	assertEquals(99 * 100 / 2 + 1, comparator.comparisons());
+	assertEquals(99 * 100 / 2, counters.nodesVisited());
+	assertEquals(0, counters.rotations());
+	assertEquals(0, counters.retraceSteps());
+    }
+    
+    @Test
+    public void testNaturalOrdering() {
+	AVLTreeMap<Integer, Integer> x = new AVLTreeMap<>();
+	x.setCounters(counters);
+	x.put(2, 2);
+	x.put(1, 1);
+	x.put(3, 3);
+	assertEquals(Integer.valueOf(3), x.get(3));
+	assertNull(x.get(4));
+	assertEquals(4, counters.searches()); // the first put has nothing to search
+	assertEquals(1 + 1 + 2 + 2, counters.nodesVisited());
+	counters.reset();
+	assertEquals(0, counters.searches());
+	assertEquals(0, counters.averagePathLength(), 0);
+    }
+    
+    // every entry visited by a search is compared with the key exactly once
+    private void check(Map<Integer, Integer> x) {
+	Random r = new Random(5);
+	for (int i=0; i < 10000; i++) {
+	    int k = r.nextInt(2000);
+	    long before = comparator.comparisons(), visited = counters.nodesVisited(), searches = counters.searches();
+	    int op = r.nextInt(3);
+	    boolean wasEmpty = x.isEmpty();
+	    switch (op) {
+	    case 0:
+		x.put(k, k);
+		break;
+	    case 1:
+		x.get(k);
+		break;
+	    default:
+		x.remove(k);
+	    }
+	    if (!(op == 0 && wasEmpty)) { // nothing to search in an empty tree
+		assertEquals(searches + 1, counters.searches());
+		assertEquals(comparator.comparisons() - before, counters.nodesVisited() - visited);
+	    }
+	}
+	assertTrue(counters.retraceSteps() > 0);
+	assertTrue(counters.averagePathLength() > 1);
+	assertTrue(counters.averagePathLength() < 2 * Math.log(x.size()) / Math.log(2));
+    }
+}
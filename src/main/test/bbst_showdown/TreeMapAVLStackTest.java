@@ -0,0 +1,238 @@
+package bbst_showdown;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TreeMapAVLStackTest {
+
+    TreeMapAVLStack<Integer, Integer> x = new TreeMapAVLStack<>();
+    
+    @Before
+    public void setup(){
+	x.clear();
+    }
+    
+    @Test
+    public void testDeleteMany() {
+	Integer [] a = {477,1193,2130,398,1393,946,422,1381,1767,830,570,1085,741,598,1658,1801,487,1921,1918,258,135,975,1870};
+	for (int i=0; i < a.length; i++)
+	    x.put(a[i], a[i]);
+	for (int i=a.length-1; i > 0; i--) {
+	    assertEquals(a[i], x.remove(a[i]));
+	    assertNull(x.get(a[i]));
+	    checkBalance(x.root);
+	}
+	assertEquals(1, x.size());
+	assertEquals(Integer.valueOf(477), x.root.key);
+	assertEquals(0, x.root.balance);
+	assertNull(x.root.left);
+	assertNull(x.root.right);
+	assertNull(x.remove(1));
+    }
+    
+    @Test
+    public void testRandomOpsMatchTreeMap() {
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	Random r = new Random(11);
+	for (int i=0; i < 20000; i++) {
+	    int k = r.nextInt(2000);
+	    if (r.nextInt(3) == 0)
+		assertEquals(expected.remove(k), x.remove(k));
+	    else
+		assertEquals(expected.put(k, i), x.put(k, i));
+	    if (i % 500 == 0)
+		checkBalance(x.root);
+	}
+	assertEquals(expected.size(), x.size());
+	for (int k=0; k < 2000; k++)
+	    assertEquals(expected.get(k), x.get(k));
+	checkBalance(x.root);
+	
+	while (!expected.isEmpty()) {
+	    assertEquals(expected.pollFirstEntry(), x.pollFirstEntry());
+	    assertEquals(expected.pollLastEntry(), x.pollLastEntry());
+	}
+	assertEquals(0, x.size());
+	assertNull(x.root);
+	assertNull(x.pollFirstEntry());
+    }
+    
+    @Test
+    public void testComparator() {
+	x = new TreeMapAVLStack<>(Collections.reverseOrder());
+	for (int i=0; i < 1000; i++)
+	    x.put(i, i);
+	checkBalance(x.root);
+	// sequential inserts must have been rebalanced along the recorded path
+	assertTrue(x.treeHeight() <= 11);
+	assertEquals(Integer.valueOf(999), x.pollFirstEntry().getKey());
+	for (int i=0; i < 1000; i += 2)
+	    x.remove(i);
+	checkBalance(x.root);
+	assertEquals(499, x.size());
+	assertEquals(Integer.valueOf(1), x.pollLastEntry().getKey());
+    }
+    
+    @Test
+    public void testSharedPathGrows() {
+	TreeMapAVLStack.Path path = new TreeMapAVLStack.Path(0);
+	assertEquals(0, path.capacity());
+	TreeMapAVLStack<Integer, Integer> a = new TreeMapAVLStack<>(null, path);
+	TreeMapAVLStack<Integer, Integer> b = new TreeMapAVLStack<>(Collections.reverseOrder(), path);
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	Random r = new Random(3);
+	// b's sequential inserts grow the path under a, which must re-read it
+	for (int i=0; i < 50000; i++) {
+	    int k = r.nextInt(100000);
+	    assertEquals(expected.put(k, i), a.put(k, i));
+	    b.put(i, i);
+	    if (r.nextInt(4) == 0)
+		assertEquals(expected.remove(k), a.remove(k));
+	}
+	checkBalance(a.root);
+	checkBalance(b.root);
+	assertTrue(path.capacity() >= b.treeHeight());
+	assertEquals(expected.size(), a.size());
+	for (Integer k : expected.keySet())
+	    assertEquals(expected.get(k), a.get(k));
+	for (int i=0; i < 50000; i += 2)
+	    assertEquals(Integer.valueOf(i), b.remove(i));
+	checkBalance(b.root);
+	assertEquals(25000, b.size());
+    }
+    
+    @Test
+    public void testPathHeightBound() {
+	// sizes of the sparsest AVL trees, Fibonacci numbers minus one
+	int [] minSizes = {0, 1, 2, 4, 7, 12, 20, 33, 54};
+	for (int h=0; h < minSizes.length; h++)
+	    assertEquals(minSizes[h], TreeMapAVLStack.Path.minSize(h));
+	assertEquals(0, TreeMapAVLStack.Path.maxHeight(0));
+	assertEquals(3, TreeMapAVLStack.Path.maxHeight(6));
+	assertEquals(4, TreeMapAVLStack.Path.maxHeight(7));
+	int h = TreeMapAVLStack.Path.maxHeight(Integer.MAX_VALUE);
+	assertTrue(h <= 1.4405 * Math.log(Integer.MAX_VALUE + 2.0) / Math.log(2));
+    }
+    
+    @Test
+    public void testViewsMatchTreeMap() {
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	Random r = new Random(5);
+	for (int i=0; i < 5000; i++) {
+	    int k = r.nextInt(10000);
+	    expected.put(k, i);
+	    x.put(k, i);
+	}
+	assertEquals(expected, x);
+	assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(x.entrySet()));
+	assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(x.keySet()));
+	assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(x.values()));
+	assertTrue(x.containsKey(expected.firstKey()));
+	assertTrue(x.keySet().remove(expected.firstKey()));
+	expected.pollFirstEntry();
+	assertEquals(expected.size(), x.size());
+	for (int k=-1; k < 10001; k += 7) {
+	    TreeMapAVLStack.Entry<Integer, Integer> e = x.getEntry(k);
+	    if (e != null) {
+		assertEquals(expected.higherKey(k), TreeMapAVLStack.keyOrNull(x.successor(e)));
+		assertEquals(expected.lowerKey(k), TreeMapAVLStack.keyOrNull(x.predecessor(e)));
+	    }
+	}
+    }
+
+    @Test
+    public void testIteratorRemove() {
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	for (int i=0; i < 3000; i++) {
+	    x.put(i * 7 % 3000, i);
+	    expected.put(i * 7 % 3000, i);
+	}
+	Iterator<Integer> it = x.keySet().iterator();
+	while (it.hasNext())
+	    if (it.next() % 3 != 0)
+		it.remove();
+	expected.keySet().removeIf(k -> k % 3 != 0);
+	assertEquals(expected, x);
+	checkBalance(x.root);
+	x.values().removeIf(v -> v % 2 == 0);
+	expected.values().removeIf(v -> v % 2 == 0);
+	assertEquals(expected, x);
+	checkBalance(x.root);
+    }
+
+    @Test
+    public void testRangeIteration() {
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	for (int i=0; i < 1000; i += 3) {
+	    x.put(i, i);
+	    expected.put(i, i);
+	}
+	Random r = new Random(4);
+	for (int i=0; i < 200; i++) {
+	    int from = r.nextInt(1100) - 50, to = from + r.nextInt(200);
+	    List<Map.Entry<Integer, Integer>> range = new ArrayList<>();
+	    for (Iterator<Map.Entry<Integer, Integer>> it = x.entries(from, to); it.hasNext();)
+		range.add(it.next());
+	    assertEquals(new ArrayList<>(expected.subMap(from, to).entrySet()), range);
+	}
+	assertTrue(!x.entries(5, 5).hasNext());
+    }
+
+    @Test
+    public void testSpliterator() {
+	for (int n=0; n < 300; n++) {
+	    x.clear();
+	    for (int i=0; i < n; i++)
+		x.put(i, i);
+	    Spliterator<Integer> s = x.keySet().spliterator();
+	    assertEquals(n, s.estimateSize());
+	    assertTrue(s.hasCharacteristics(Spliterator.SIZED | Spliterator.SORTED));
+	    // recursively split every part and check the pieces cover the keys in order
+	    List<Integer> keys = new ArrayList<>();
+	    collect(s, keys);
+	    assertEquals(new ArrayList<>(x.keySet()), keys);
+	}
+	x.clear();
+	for (int i=0; i < 100000; i++)
+	    x.put(i, i);
+	long sum = StreamSupport.stream(x.values().spliterator(), true).mapToLong(Integer::longValue).sum();
+	assertEquals(99999L * 100000 / 2, sum);
+	assertEquals(new ArrayList<>(x.keySet()),
+		x.entrySet().parallelStream().map(Map.Entry::getKey).collect(Collectors.toList()));
+    }
+
+    private static void collect(Spliterator<Integer> s, List<Integer> out) {
+	Spliterator<Integer> prefix = s.trySplit();
+	if (prefix != null) {
+	    collect(prefix, out);
+	    collect(s, out);
+	} else if (s.tryAdvance(out::add)) {
+	    s.forEachRemaining(out::add);
+	}
+    }
+
+    // returns the height of the subtree
+    private int checkBalance(TreeMapAVLStack.Entry<Integer, Integer> node) {
+	if (node == null)
+	    return -1;
+	int leftHeight = checkBalance(node.left);
+	int rightHeight = checkBalance(node.right);
+	assertEquals(rightHeight - leftHeight, node.balance);
+	return 1 + Math.max(leftHeight, rightHeight);
+    }
+}
@@ -0,0 +1,56 @@
+package bbst_showdown;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class TreeMapRedBlackTest {
+
+    TreeMapRedBlack<Integer, Integer> x = new TreeMapRedBlack<>();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCloneKeepsColoursAndResetsState() {
+	// AVLTreeMapTest covers the copied shape; here the colours must be
+	// copied and the cached views, counters and modCount left behind
+	for (int i=0; i < 500; i++)
+	    x.put(i, i);
+	for (int i=0; i < 500; i += 3)
+	    x.remove(i);
+	x.setCounters(new TreeCounters());
+	Set<Map.Entry<Integer, Integer>> entries = x.entrySet();
+	NavigableSet<Integer> keys = x.navigableKeySet();
+	NavigableMap<Integer, Integer> descending = x.descendingMap();
+	TreeMap<Integer, Integer> before = new TreeMap<>(x);
+	Iterator<Integer> it = x.keySet().iterator();
+	TreeMapRedBlack<Integer, Integer> y = (TreeMapRedBlack<Integer, Integer>) x.clone();
+	TreeMapRedBlack.Entry<Integer, Integer> p = x.getFirstEntry(), q = y.getFirstEntry();
+	for (; p != null; p = TreeMapRedBlack.successor(p), q = TreeMapRedBlack.successor(q)) {
+	    assertTrue(p != q);
+	    assertEquals(p.key, q.key);
+	    assertEquals(p.color, q.color);
+	    assertEquals(p.parent == null ? null : p.parent.key, q.parent == null ? null : q.parent.key);
+	}
+	assertNull(q);
+	assertNull(y.counters());
+	assertTrue(y.entrySet() != entries);
+	assertTrue(y.navigableKeySet() != keys);
+	assertTrue(y.descendingMap() != descending);
+	y.remove(1);
+	assertEquals(x.size() - 1, y.entrySet().size());
+	assertEquals(x.size() - 1, y.navigableKeySet().size());
+	assertEquals(x.size() - 1, y.descendingMap().size());
+	assertEquals(before, x);
+	// the clone counts its own modifications
+	assertEquals(before.firstKey(), it.next());
+    }
+}
@@ -0,0 +1,81 @@
+package bbst_showdown;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TreeStatisticsTest {
+
+    @Test
+    public void testSmallTree() {
+	AVLTreeMap<Integer, Integer> x = new AVLTreeMap<>();
+	assertEquals(-1, x.treeHeight());
+	assertEquals(-1, x.statistics().height());
+	assertEquals(0, x.statistics().averageDepth(), 0);
+	for (int i=1; i <= 7; i++)
+	    x.put(i, i);
+	TreeStatistics s = x.statistics();
+	assertEquals(7, s.size());
+	assertEquals(2, s.height());
+	assertArrayEquals(new long[] {1, 2, 4}, s.depthHistogram());
+	assertEquals((0 + 2 * 1 + 4 * 2) / 7.0, s.averageDepth(), 1e-9);
+    }
+    
+    @Test
+    public void testHeightsMatchRecursiveHeight() {
+	AVLTreeMap<Integer, Integer> avl = new AVLTreeMap<>();
+	AVLTreeMapRB<Integer, Integer> avlRB = new AVLTreeMapRB<>();
+	WAVLTreeMap<Integer, Integer> wavl = new WAVLTreeMap<>(false);
+	WAVLTreeMap<Integer, Integer> wavlDeletes = new WAVLTreeMap<>(true);
+	TreeMapRedBlack<Integer, Integer> redBlack = new TreeMapRedBlack<>();
+	List<Map<Integer, Integer>> maps = Arrays.<Map<Integer, Integer>>asList(avl, avlRB, wavl, wavlDeletes, redBlack);
+	Random r = new Random(17);
+	for (int i=0; i < 20000; i++) {
+	    int k = r.nextInt(5000);
+	    boolean remove = r.nextInt(3) == 0;
+	    for (Map<Integer, Integer> m : maps) {
+		if (remove)
+		    m.remove(k);
+		else
+		    m.put(k, k);
+	    }
+	    if (i % 1000 == 0) {
+		assertEquals(avl.treeHeight(avl.root) - 1, avl.treeHeight());
+		assertEquals(avlRB.treeHeight(avlRB.root) - 1, avlRB.treeHeight());
+		assertEquals(wavl.treeHeight(wavl.root) - 1, wavl.treeHeight());
+		assertEquals(wavlDeletes.treeHeight(wavlDeletes.root) - 1, wavlDeletes.treeHeight());
+		assertEquals(avl.treeHeight(), avl.statistics().height());
+		assertEquals(avlRB.treeHeight(), avlRB.statistics().height());
+		assertEquals(wavl.treeHeight(), wavl.statistics().height());
+		assertTrue(redBlack.treeHeight() >= avl.treeHeight() - 1);
+	    }
+	}
+	TreeStatistics s = avl.statistics();
+	assertEquals(avl.size(), s.size());
+	long total = 0;
+	for (long c : s.depthHistogram())
+	    total += c;
+	assertEquals(avl.size(), total);
+	assertEquals(redBlack.size(), redBlack.statistics().size());
+    }
+    
+    @Test
+    public void testDegenerateTree() {
+	TreeMapBST<Integer, Integer> x = new TreeMapBST<>();
+	for (int i=0; i < 20000; i++)
+	    x.put(i, i);
+	// sorted inserts build a single chain, walked without recursion
+	assertEquals(20000, x.treeHeight());
+	TreeStatistics s = x.statistics();
+	assertEquals(19999, s.height());
+	assertEquals(19999 / 2.0, s.averageDepth(), 1e-9);
+	assertEquals(1, s.depthHistogram()[19999]);
+    }
+}
@@ -0,0 +1,58 @@
+package bbst_showdown;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class VanEmdeBoasTreeMapTest {
+
+    @Test
+    public void testLayout() {
+	WAVLTreeMap<Integer, Integer> x = new WAVLTreeMap<>();
+	for (int i=1; i <= 15; i++)
+	    x.put(i, i);
+	VanEmdeBoasTreeMap<Integer, Integer> f = x.freezeVanEmdeBoas();
+	// four levels: the top two levels, then the four bottom trees of two levels
+	assertArrayEquals(new Object[] { 8, 4, 12, 2, 1, 3, 6, 5, 7, 10, 9, 11, 14, 13, 15 }, f.keys);
+	assertEquals(3, f.treeHeight());
+	assertEquals(1, f.children[0]);
+	assertEquals(2, f.children[1]);
+	assertEquals(VanEmdeBoasTreeMap.NIL, f.children[2 * 4]);
+    }
+
+    @Test
+    public void testEmpty() {
+	VanEmdeBoasTreeMap<Integer, Integer> f = new WAVLTreeMap<Integer, Integer>().freezeVanEmdeBoas();
+	assertEquals(0, f.size());
+	assertNull(f.get(1));
+	assertNull(f.floorKey(1));
+	assertNull(f.ceilingKey(1));
+	assertFalse(f.entrySet().iterator().hasNext());
+    }
+
+    @Test
+    public void testLookupsMatchTreeMap() {
+	Random r = new Random(9);
+	for (int n=0; n < 300; n += 1 + n / 8) {
+	    TreeMap<Integer, Integer> expected = new TreeMap<>();
+	    WAVLTreeMap<Integer, Integer> x = new WAVLTreeMap<>(true);
+	    for (int i=0; i < n; i++) {
+		int key = 2 * r.nextInt(500);
+		expected.put(key, i);
+		x.put(key, i);
+	    }
+	    VanEmdeBoasTreeMap<Integer, Integer> f = x.freezeVanEmdeBoas();
+	    assertEquals(expected, f);
+	    assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(f.entrySet()));
+	    for (int key=-1; key <= 1001; key++) {
+		assertEquals(expected.get(key), f.get(key));
+		assertEquals(expected.floorKey(key), f.floorKey(key));
+		assertEquals(expected.ceilingKey(key), f.ceilingKey(key));
+	    }
+	}
+    }
+}
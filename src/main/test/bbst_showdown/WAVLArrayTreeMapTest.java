@@ -0,0 +1,152 @@
+package bbst_showdown;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class WAVLArrayTreeMapTest {
+    
+    WAVLArrayTreeMap<Integer, Integer> x = new WAVLArrayTreeMap<>(false);
+    
+    @Before
+    public void setup(){
+	x.clear();
+    }
+
+    @Test
+    public void testTreeHeight() {
+	x.put(2, 2);
+	assertEquals(0, x.treeHeight());
+	x.put(3, 3);
+	assertEquals(1, x.treeHeight());
+	x.put(1, 1);
+	x.put(0, 0);
+	assertEquals(2, x.treeHeight());
+    }
+    
+    @Test
+    public void testSameShapeAsWAVLTreeMap() {
+	WAVLTreeMap<Integer, Integer> y = new WAVLTreeMap<>(false);
+	Integer [] a = {477, 1193, 2130,398,1393,946,422,1381,1767,830,570,1085,741,598,1658,1801,487,1921,1918,258,135,975,1870};
+	for (int i=0; i < a.length; i++) {
+	    x.put(a[i], a[i]);
+	    y.put(a[i], a[i]);
+	}
+	assertEquals(y.rotations, x.rotations);
+	assertEquals(1193, (int) x.keys[x.root]);
+	assertEquals(1767, (int) x.keys[x.rights[x.root]]);
+	assertEquals(1393, (int) x.keys[x.lefts[x.rights[x.root]]]);
+	assertEquals(1921, (int) x.keys[x.rights[x.rights[x.root]]]);
+	assertEquals(y.root.rank, x.ranks[x.root]);
+    }
+    
+    @Test
+    public void testDeleteMany() {
+	Integer [] a = {477,1193,2130,398,1393,946,422,1381,1767,830,570,1085,741,598,1658,1801,487};
+	for (int i=0; i < a.length; i++)
+	    x.put(a[i], a[i]);
+	for (int i=a.length-1; i > 0; i--)
+	    assertEquals(a[i], x.remove(a[i]));
+	assertEquals(477, (int) x.keys[x.root]);
+	assertEquals(0, x.ranks[x.root]);
+	assertEquals(WAVLArrayTreeMap.NIL, x.lefts[x.root]);
+	assertEquals(WAVLArrayTreeMap.NIL, x.rights[x.root]);
+    }
+    
+    @Test
+    public void testRandomOpsAVLDeletes() {
+	randomOps(x, true);
+    }
+    
+    @Test
+    public void testRandomOpsWAVLDeletes() {
+	randomOps(new WAVLArrayTreeMap<Integer, Integer>(true), false);
+    }
+    
+    @Test
+    public void testFreedSlotsAreReused() {
+	for (int i=0; i < 1000; i++)
+	    x.put(i, i);
+	int capacity = x.keys.length;
+	for (int round=0; round < 10; round++) {
+	    for (int i=0; i < 1000; i += 2)
+		x.remove(i);
+	    for (int i=0; i < 1000; i += 2)
+		x.put(i, i);
+	}
+	assertEquals(1000, x.size());
+	assertEquals(1000, x.used);
+	assertEquals(capacity, x.keys.length);
+	for (int i=0; i < 1000; i++)
+	    x.remove(i);
+	for (int i=0; i < x.used; i++) {
+	    assertNull(x.keys[i]);
+	    assertNull(x.values[i]);
+	}
+    }
+    
+    @Test
+    public void testIteratorRemove() {
+	for (int i=0; i < 100; i++)
+	    x.put(i, i);
+	for (Iterator<Map.Entry<Integer, Integer>> it = x.entrySet().iterator(); it.hasNext();)
+	    if (it.next().getKey() % 3 != 0)
+		it.remove();
+	assertEquals(34, x.size());
+	int expected = 0;
+	for (Map.Entry<Integer, Integer> e : x.entrySet()) {
+	    assertEquals(expected, (int) e.getKey());
+	    e.setValue(-expected);
+	    expected += 3;
+	}
+	assertEquals(-99, (int) x.get(99));
+    }
+    
+    private void randomOps(WAVLArrayTreeMap<Integer, Integer> m, boolean avl) {
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	Random r = new Random(7);
+	for (int i=0; i < 50000; i++) {
+	    int key = r.nextInt(3000);
+	    if (r.nextInt(3) > 0)
+		assertEquals(expected.put(key, i), m.put(key, i));
+	    else
+		assertEquals(expected.remove(key), m.remove(key));
+	    if (i % 1000 == 0)
+		checkRanks(m, m.root, avl);
+	}
+	assertEquals(expected, m);
+	checkRanks(m, m.root, avl);
+    }
+    
+    // returns the height of the subtree
+    private int checkRanks(WAVLArrayTreeMap<Integer, Integer> m, int node, boolean avl) {
+	if (node == WAVLArrayTreeMap.NIL)
+	    return -1;
+	int left = m.lefts[node], right = m.rights[node];
+	if (left != WAVLArrayTreeMap.NIL)
+	    assertEquals(node, m.parents[left]);
+	if (right != WAVLArrayTreeMap.NIL)
+	    assertEquals(node, m.parents[right]);
+	int leftHeight = checkRanks(m, left, avl);
+	int rightHeight = checkRanks(m, right, avl);
+	int rank = m.ranks[node];
+	if (avl) {
+	    assertEquals(1 + Math.max(leftHeight, rightHeight), rank);
+	    assertTrue(Math.abs(leftHeight - rightHeight) <= 1);
+	} else {
+	    int leftRank = left == WAVLArrayTreeMap.NIL ? -1 : m.ranks[left];
+	    int rightRank = right == WAVLArrayTreeMap.NIL ? -1 : m.ranks[right];
+	    assertTrue(rank - leftRank == 1 || rank - leftRank == 2);
+	    assertTrue(rank - rightRank == 1 || rank - rightRank == 2);
+	    if (left == WAVLArrayTreeMap.NIL && right == WAVLArrayTreeMap.NIL)
+		assertEquals(0, rank);
+	}
+	return 1 + Math.max(leftHeight, rightHeight);
+    }
+}
@@ -2,6 +2,21 @@ package bbst_showdown;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeMap;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -477,4 +492,267 @@ public class WAVLTreeMapTest {
 	assertNull(x.root.left);
 	assertNull(x.root.right);
     }
-}
\ No newline at end of file
+    
+    @Test
+    public void testBuildFromSorted() {
+	for (int n=0; n < 300; n++) {
+	    TreeMap<Integer, Integer> sorted = new TreeMap<>();
+	    for (int i=0; i < n; i++)
+		sorted.put(i * 2, i);
+	    x = new WAVLTreeMap<>(sorted);
+	    assertEquals(n, x.size());
+	    assertEquals(sorted, x);
+	    checkRanks(x.root);
+	    assertEquals(0, x.rotations);
+	    x.put(-1, -1);
+	    x.remove(n);
+	    checkRanks(x.root);
+	}
+    }
+    
+    @Test
+    public void testPutAllSortedMap() {
+	TreeMap<Integer, Integer> sorted = new TreeMap<>();
+	for (int i=0; i < 1000; i++)
+	    sorted.put(i, i);
+	x.putAll(sorted);
+	assertEquals(sorted, x);
+	assertEquals(0, x.rotations);
+	checkRanks(x.root);
+	
+	// not empty, falls back to put()
+	TreeMap<Integer, Integer> more = new TreeMap<>();
+	for (int i=1000; i < 1100; i++)
+	    more.put(i, i);
+	x.putAll(more);
+	assertEquals(1100, x.size());
+	checkRanks(x.root);
+    }
+    
+    @Test
+    public void testEntrySpliterator() {
+	TreeMap<Integer, Integer> expected = new TreeMap<>();
+	long sum = 0;
+	for (int i=0; i < 10000; i++) {
+	    x.put(i, i);
+	    expected.put(i, i);
+	    sum += i;
+	}
+	Spliterator<Map.Entry<Integer, Integer>> s = x.entrySet().spliterator();
+	assertTrue(s.hasCharacteristics(Spliterator.SIZED | Spliterator.SORTED | Spliterator.DISTINCT));
+	assertEquals(10000, s.getExactSizeIfKnown());
+	Spliterator<Map.Entry<Integer, Integer>> prefix = s.trySplit();
+	assertNotNull(prefix);
+	List<Map.Entry<Integer, Integer>> entries = new ArrayList<>();
+	prefix.forEachRemaining(entries::add);
+	s.forEachRemaining(entries::add);
+	assertEquals(new ArrayList<>(expected.entrySet()), entries);
+	
+	assertEquals(sum, x.entrySet().parallelStream().mapToLong(Map.Entry::getValue).sum());
+    }
+    
+    @Test
+    public void testJoin() {
+	WAVLTreeMap<Integer, Integer> left = new WAVLTreeMap<>(false);
+	for (int i=0; i < 9; i++)
+	    left.put(i, i);
+	for (int i=10; i < 1000; i++)
+	    x.put(i, i);
+	left.join(9, 9, x);
+	assertEquals(1000, left.size());
+	assertEquals(0, x.size());
+	assertNull(left.root.parent);
+	checkRanks(left.root);
+	for (int i=0; i < 1000; i++)
+	    assertEquals((Integer) i, left.get(i));
+	try {
+	    x.join(5, 5, new WAVLTreeMap<Integer, Integer>(true));
+	    fail();
+	} catch (IllegalArgumentException expected) {
+	}
+    }
+
+    @Test
+    public void testSplit() {
+	Random r = new Random(11);
+	for (int round=0; round < 50; round++) {
+	    WAVLTreeMap<Integer, Integer> y = new WAVLTreeMap<>(round % 2 == 0);
+	    TreeMap<Integer, Integer> expected = new TreeMap<>();
+	    int n = r.nextInt(300);
+	    for (int i=0; i < 2 * n; i++) {
+		int key = r.nextInt(1000);
+		y.put(key, i);
+		expected.put(key, i);
+	    }
+	    for (int i=0; i < n; i++) {
+		int key = r.nextInt(1000);
+		y.remove(key);
+		expected.remove(key);
+	    }
+	    int cut = r.nextInt(1000);
+	    WAVLTreeMap<Integer, Integer> tail = y.split(cut);
+	    checkWAVLRanks(y.root, y.deleteWAVL);
+	    checkWAVLRanks(tail.root, y.deleteWAVL);
+	    assertEquals(expected.headMap(cut), y);
+	    assertEquals(expected.tailMap(cut), tail);
+	    assertEquals(expected.headMap(cut).size(), y.size());
+	    assertEquals(expected.tailMap(cut).size(), tail.size());
+	}
+    }
+
+    @Test
+    public void testSetOperationsMatchTreeMap() {
+	Random r = new Random(5);
+	int[][] sizes = { { 0, 10 }, { 10, 0 }, { 100, 100 }, { 10, 5000 }, { 5000, 10 }, { 20000, 30000 } };
+	for (boolean deleteWAVL : new boolean[] { false, true }) {
+	    for (int[] size : sizes) {
+		for (int op=0; op < 3; op++) {
+		    TreeMap<Integer, Integer> a = new TreeMap<>(), b = new TreeMap<>();
+		    WAVLTreeMap<Integer, Integer> y = new WAVLTreeMap<>(deleteWAVL), z = new WAVLTreeMap<>(deleteWAVL);
+		    for (int i=0; i < size[0]; i++) {
+			int key = r.nextInt(4 * size[0] + 4 * size[1]);
+			a.put(key, 1);
+			y.put(key, 1);
+		    }
+		    for (int i=0; i < size[1]; i++) {
+			int key = r.nextInt(4 * size[0] + 4 * size[1]);
+			b.put(key, 2);
+			z.put(key, 2);
+		    }
+		    if (op == 0) {
+			y.union(z);
+			a.putAll(b);
+		    } else if (op == 1) {
+			y.intersection(z);
+			a.keySet().retainAll(b.keySet());
+		    } else {
+			y.difference(z);
+			a.keySet().removeAll(b.keySet());
+		    }
+		    assertEquals(0, z.size());
+		    assertEquals(a.size(), y.size());
+		    assertEquals(a, y);
+		    checkWAVLRanks(y.root, deleteWAVL);
+		    if (y.root != null)
+			assertNull(y.root.parent);
+		}
+	    }
+	}
+    }
+    
+    // checks the rank rules, and that ranks are heights without WAVL deletes
+    private void checkWAVLRanks(WAVLTreeMap.Entry<Integer, Integer> node, boolean deleteWAVL) {
+	if (!deleteWAVL) {
+	    checkRanks(node);
+	    return;
+	}
+	if (node == null)
+	    return;
+	if (node.left != null)
+	    assertTrue(node.left.parent == node);
+	if (node.right != null)
+	    assertTrue(node.right.parent == node);
+	int left = node.left == null ? -1 : node.left.rank, right = node.right == null ? -1 : node.right.rank;
+	assertTrue(node.rank - left == 1 || node.rank - left == 2);
+	assertTrue(node.rank - right == 1 || node.rank - right == 2);
+	if (node.left == null && node.right == null)
+	    assertEquals(0, node.rank);
+	checkWAVLRanks(node.left, true);
+	checkWAVLRanks(node.right, true);
+    }
+    
+    // returns the height of the subtree
+    private int checkRanks(WAVLTreeMap.Entry<Integer, Integer> node) {
+	if (node == null)
+	    return -1;
+	if (node.left != null)
+	    assertTrue(node.left.parent == node);
+	if (node.right != null)
+	    assertTrue(node.right.parent == node);
+	int leftHeight = checkRanks(node.left);
+	int rightHeight = checkRanks(node.right);
+	// rank is height when deletes re-trace as in AVL
+	assertEquals(1 + Math.max(leftHeight, rightHeight), node.rank);
+	assertTrue(Math.abs(rightHeight - leftHeight) <= 1);
+	return 1 + Math.max(leftHeight, rightHeight);
+    }
+
+    @Test
+    public void testCloneKeepsRanksAndResetsState() {
+	// AVLTreeMapTest covers the copied shape; here WAVL deletes leave
+	// ranks that differ from heights and must be copied, not recomputed
+	WAVLTreeMap<Integer, Integer> a = new WAVLTreeMap<>(true);
+	for (int i=0; i < 500; i++)
+	    a.put(i, i);
+	for (int i=0; i < 500; i += 3)
+	    a.remove(i);
+	a.setCounters(new TreeCounters());
+	TreeMap<Integer, Integer> before = new TreeMap<>(a);
+	WAVLTreeMap<Integer, Integer> b = a.clone();
+	checkWAVLRanks(b.root, b.deleteWAVL);
+	WAVLTreeMap.Entry<Integer, Integer> p = a.getFirstEntry(), q = b.getFirstEntry();
+	for (; p != null; p = WAVLTreeMap.successor(p), q = WAVLTreeMap.successor(q)) {
+	    assertTrue(p != q);
+	    assertEquals(p.key, q.key);
+	    assertEquals(p.rank, q.rank);
+	    assertEquals(p.parent == null ? null : p.parent.key, q.parent == null ? null : q.parent.key);
+	}
+	assertNull(q);
+	assertEquals(0, b.modCount);
+	assertNull(b.counters());
+	assertTrue(b.entrySet() != a.entrySet());
+	b.remove(1);
+	assertEquals(a.size() - 1, b.entrySet().size());
+	assertEquals(before, a);
+    }
+
+    @Test
+    public void testWriteToReadFrom() throws IOException {
+	Random r = new Random(23);
+	for (int i=0; i < 3000; i++)
+	    x.put(r.nextInt(), i);
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	x.writeTo(new DataOutputStream(bytes), Codec.INT, Codec.INT);
+	assertEquals(4 + 8 * x.size(), bytes.size());
+	CountingComparator<Integer> comparisons = new CountingComparator<>();
+	WAVLTreeMap<Integer, Integer> y = new WAVLTreeMap<>(comparisons);
+	y.put(1, 1);
+	y.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), Codec.INT, Codec.INT);
+	assertEquals(1, comparisons.comparisons());
+	assertEquals(x, y);
+	checkRanks(y.root);
+	assertEquals(31 - Integer.numberOfLeadingZeros(y.size()), y.treeHeight());
+    }
+
+    @Test
+    public void testWriteToReadFromStrings() throws IOException {
+	WAVLTreeMap<String, Long> a = new WAVLTreeMap<>(Comparator.reverseOrder());
+	for (long i=0; i < 1000; i++)
+	    a.put(Long.toString(i * 7919 % 1000, 36) + "\u00e9\u4e2d", i);
+	a.put("", -1L);
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	a.writeTo(new DataOutputStream(bytes), Codec.STRING, Codec.LONG);
+	WAVLTreeMap<String, Long> b = new WAVLTreeMap<>(Comparator.reverseOrder());
+	b.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), Codec.STRING, Codec.LONG);
+	assertEquals(a, b);
+	assertEquals(new ArrayList<>(a.keySet()), new ArrayList<>(b.keySet()));
+    }
+
+    @Test
+    public void testReadFromTruncatedLeavesMapEmpty() throws IOException {
+	for (int i=0; i < 100; i++)
+	    x.put(i, i);
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	x.writeTo(new DataOutputStream(bytes), Codec.INT, Codec.INT);
+	byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 1);
+	try {
+	    x.readFrom(new DataInputStream(new ByteArrayInputStream(truncated)), Codec.INT, Codec.INT);
+	    fail();
+	} catch (EOFException e) {
+	}
+	assertTrue(x.isEmpty());
+	assertNull(x.root);
+	x.put(5, 5);
+	assertEquals(1, x.size());
+    }
+}
@@ -0,0 +1,160 @@
+package performanceTests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class WorkloadTest {
+
+    Workload w = new Workload(7);
+
+    @Test
+    public void testSameSeedSameStreams() {
+	assertArrayEquals(w.uniform(1000), new Workload(7).uniform(1000));
+	assertArrayEquals(w.zipfian(1000, 100, 0.99), new Workload(7).zipfian(1000, 100, 0.99));
+	assertArrayEquals(w.clustered(1000, 16), new Workload(7).clustered(1000, 16));
+	assertTrue(!Arrays.equals(w.uniform(1000), new Workload(8).uniform(1000)));
+	// a stream does not depend on the streams generated before it
+	w.zipfian(10, 10, 1);
+	assertArrayEquals(new Workload(7).uniform(10), w.uniform(10));
+    }
+
+    @Test
+    public void testUniformIsRandomNextInt() {
+	Random r = new Random(Workload.SEED);
+	int[] keys = new Workload().uniform(100);
+	for (int i=0; i < keys.length; i++)
+	    assertEquals(r.nextInt(), keys[i]);
+	for (int key : w.uniform(1000, 10))
+	    assertTrue(key >= 0 && key < 10);
+    }
+
+    @Test
+    public void testSequentialAndReverse() {
+	assertArrayEquals(new int[] { 0, 1, 2, 3 }, Workload.sequential(4));
+	assertArrayEquals(new int[] { 3, 2, 1, 0 }, Workload.reverse(4));
+    }
+
+    @Test
+    public void testSawtooth() {
+	assertArrayEquals(new int[] { 0, 3, 6, 1, 4, 7, 2, 5 }, Workload.sawtooth(8, 3));
+	int[] keys = Workload.sawtooth(10000, 64);
+	for (int i=1; i < keys.length; i++)
+	    assertEquals(i % 64 != 0, keys[i] > keys[i - 1]);
+	int[] sorted = keys.clone();
+	Arrays.sort(sorted);
+	for (int i=1; i < sorted.length; i++)
+	    assertTrue(sorted[i] != sorted[i - 1]);
+    }
+
+    @Test
+    public void testZipfianIsSkewed() {
+	int[] counts = new int[1000];
+	for (int key : w.zipfian(100000, 1000, 0.99))
+	    counts[key]++;
+	assertEquals(Math.pow(2, 0.99), (double) counts[0] / counts[1], 0.15);
+	assertTrue(counts[0] > 50 * counts[999]);
+	// about 1/H(1000, 0.99), one in 7.3
+	assertEquals(100000 / 7.3, counts[0], 100000 / 7.3 * 0.1);
+    }
+
+    @Test
+    public void testClusteredRuns() {
+	int[] keys = w.clustered(1000, 16);
+	for (int i=0; i < keys.length; i++) {
+	    assertTrue(keys[i] >= 0);
+	    if (i % 16 != 0)
+		assertEquals(keys[i - 1] + 1, keys[i]);
+	}
+	assertEquals(10, w.clustered(10, 16).length);
+    }
+
+    @Test
+    public void testMixedRatios() {
+	int[] present = Workload.sequential(100);
+	Workload.Operations ops = w.mixed(100000, present, 60, 10);
+	assertEquals(100000, ops.size());
+	int[] counts = new int[3];
+	for (int i=0; i < ops.size(); i++) {
+	    byte op = ops.ops()[i];
+	    counts[op]++;
+	    if (op != Workload.PUT)
+		assertTrue(ops.keys()[i] >= 0 && ops.keys()[i] < 100);
+	}
+	assertEquals(60000, counts[Workload.GET], 1000);
+	assertEquals(10000, counts[Workload.REMOVE], 1000);
+	assertEquals(30000, counts[Workload.PUT], 1000);
+    }
+
+    @Test
+    public void testMixedInRange() {
+	Workload.Operations ops = w.mixed(100000, 50, 80, 10);
+	int[] counts = new int[3];
+	for (int i=0; i < ops.size(); i++) {
+	    counts[ops.ops()[i]]++;
+	    assertTrue(ops.keys()[i] >= 0 && ops.keys()[i] < 50);
+	}
+	assertEquals(80000, counts[Workload.GET], 1000);
+	assertEquals(10000, counts[Workload.REMOVE], 1000);
+	assertEquals(10000, counts[Workload.PUT], 1000);
+	assertArrayEquals(ops.keys(), new Workload(7).mixed(100000, 50, 80, 10).keys());
+    }
+
+    @Test
+    public void testLookups() {
+	int[] present = { 1000, 2000, 3000 };
+	int hits = 0;
+	for (int key : w.lookups(10000, present, 30))
+	    if (key == 1000 || key == 2000 || key == 3000)
+		hits++;
+	assertEquals(3000, hits, 200);
+	assertArrayEquals(w.lookups(100, present, 30), new Workload(7).lookups(100, present, 30));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMixedRatiosOver100() {
+	w.mixed(10, new int[] { 1 }, 60, 50);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMixedGetsWithNothingPresent() {
+	w.mixed(10, new int[0], 50, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMixedRemovesWithNothingPresent() {
+	w.mixed(10, new int[0], 0, 50);
+    }
+
+    @Test
+    public void testMixedPutsOnlyWithNothingPresent() {
+	Workload.Operations ops = w.mixed(10, new int[0], 0, 0);
+	for (byte op : ops.ops())
+	    assertEquals(Workload.PUT, op);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMixedEmptyRange() {
+	w.mixed(10, 0, 50, 25);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLookupHitsWithNothingPresent() {
+	w.lookups(10, new int[0], 50);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testClusteredRunTooLong() {
+	w.clustered(10, Integer.MAX_VALUE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUniformEmptyRange() {
+	w.uniform(10, 0);
+    }
+}